@@ -38,7 +38,7 @@ import org.eclipse.jetty.util.component.Destroyable;
 public class GZIPContentDecoder implements Destroyable
 {
     private final List<ByteBuffer> _inflateds = new ArrayList<>();
-    private final Inflater _inflater = new Inflater(true);
+    private final Inflater _inflater;
     private final ByteBufferPool _pool;
     private final int _bufferSize;
     private State _state;
@@ -46,6 +46,7 @@ public class GZIPContentDecoder implements Destroyable
     private int _value;
     private byte _flags;
     private ByteBuffer _inflated;
+    private ByteBuffer _input;
 
     public GZIPContentDecoder()
     {
@@ -59,6 +60,22 @@ public class GZIPContentDecoder implements Destroyable
 
     public GZIPContentDecoder(ByteBufferPool pool, int bufferSize)
     {
+        this(new Inflater(true), pool, bufferSize);
+    }
+
+    /**
+     * <p>Creates a decoder that inflates with the given {@link Inflater}, which
+     * must have been created with {@code nowrap=true}.</p>
+     * <p>The inflater is ended by {@link #destroy()}, unless {@link #end(Inflater)}
+     * is overridden, for example to return the inflater to a pool.</p>
+     *
+     * @param inflater the inflater to use
+     * @param pool the pool to acquire buffers from, or null
+     * @param bufferSize the size of the inflated chunks
+     */
+    public GZIPContentDecoder(Inflater inflater, ByteBufferPool pool, int bufferSize)
+    {
+        _inflater = inflater;
         _bufferSize = bufferSize;
         _pool = pool;
         reset();
@@ -230,10 +247,13 @@ public class GZIPContentDecoder implements Destroyable
                                 }
                                 else
                                 {
-                                    // TODO use the pool
-                                    byte[] input = new byte[compressed.remaining()];
-                                    compressed.get(input);
-                                    _inflater.setInput(input);
+                                    // The inflater has consumed any previous copy of the input
+                                    if (_input != null)
+                                        release(_input);
+                                    int length = compressed.remaining();
+                                    _input = acquire(length);
+                                    compressed.get(_input.array(), _input.arrayOffset(), length);
+                                    _inflater.setInput(_input.array(), _input.arrayOffset(), length);
                                 }
                             }
                             else if (_inflater.finished())
@@ -407,6 +427,11 @@ public class GZIPContentDecoder implements Destroyable
     private void reset()
     {
         _inflater.reset();
+        if (_input != null)
+        {
+            release(_input);
+            _input = null;
+        }
         _state = State.INITIAL;
         _size = 0;
         _value = 0;
@@ -416,7 +441,22 @@ public class GZIPContentDecoder implements Destroyable
     @Override
     public void destroy()
     {
-        _inflater.end();
+        if (_input != null)
+        {
+            release(_input);
+            _input = null;
+        }
+        end(_inflater);
+    }
+
+    /**
+     * <p>Called by {@link #destroy()} to dispose of the inflater.</p>
+     *
+     * @param inflater the inflater of this decoder
+     */
+    protected void end(Inflater inflater)
+    {
+        inflater.end();
     }
 
     public boolean isFinished()
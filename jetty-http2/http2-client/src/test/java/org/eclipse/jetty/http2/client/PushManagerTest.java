@@ -0,0 +1,245 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.client;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PushPromiseFrame;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.http2.server.PushManager;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PushManagerTest extends AbstractTest
+{
+    private PushManager newPushManager()
+    {
+        PushManager pushManager = new PushManager();
+        connector.getConnectionFactory(HTTP2ServerConnectionFactory.class).setPushManager(pushManager);
+        return pushManager;
+    }
+
+    private void awaitNoActivePushes(PushManager pushManager) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pushManager.getPushed() != pushManager.getCompleted() + pushManager.getWasted() && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertEquals(pushManager.getPushed(), pushManager.getCompleted() + pushManager.getWasted());
+    }
+
+    @Test
+    public void testPushesNotManagedByDefault() throws Exception
+    {
+        start(new HttpServlet()
+        {
+        });
+        assertNull(connector.getConnectionFactory(HTTP2ServerConnectionFactory.class).getPushManager());
+    }
+
+    @Test
+    public void testResetPushIsPushedAgain() throws Exception
+    {
+        String primaryResource = "/primary.html";
+        String secondaryResource = "/secondary.png";
+        start(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                if (request.getRequestURI().endsWith(primaryResource))
+                    Request.getBaseRequest(request).getPushBuilder().path(servletPath + secondaryResource).push();
+                else
+                    // Larger than the flow control window, so the push cannot complete before the client resets it.
+                    response.getOutputStream().write(new byte[1024 * 1024]);
+            }
+        });
+        PushManager pushManager = newPushManager();
+
+        Session session = newClient(new Session.Listener.Adapter());
+        AtomicInteger pushes = new AtomicInteger();
+        for (int i = 0; i < 2; ++i)
+        {
+            awaitNoActivePushes(pushManager);
+            MetaData.Request request = newRequest("GET", primaryResource, new HttpFields());
+            CountDownLatch latch = new CountDownLatch(1);
+            session.newStream(new HeadersFrame(request, null, true), new Promise.Adapter<>(), new Stream.Listener.Adapter()
+            {
+                @Override
+                public void onHeaders(Stream stream, HeadersFrame frame)
+                {
+                    if (frame.isEndStream())
+                        latch.countDown();
+                }
+
+                @Override
+                public void onData(Stream stream, DataFrame frame, Callback callback)
+                {
+                    callback.succeeded();
+                    if (frame.isEndStream())
+                        latch.countDown();
+                }
+
+                @Override
+                public Stream.Listener onPush(Stream stream, PushPromiseFrame frame)
+                {
+                    pushes.incrementAndGet();
+                    stream.reset(new ResetFrame(stream.getId(), ErrorCode.CANCEL_STREAM_ERROR.code), Callback.NOOP);
+                    return null;
+                }
+            });
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        }
+        awaitNoActivePushes(pushManager);
+
+        // The cancelled push was not recorded, so the resource was pushed again.
+        assertEquals(2, pushes.get());
+        assertEquals(2, pushManager.getPushed());
+        assertEquals(2, pushManager.getWasted());
+        assertEquals(0, pushManager.getDuplicates());
+    }
+
+    @Test
+    public void testAlreadyPushedResourceIsNotPushedAgain() throws Exception
+    {
+        String primaryResource = "/primary.html";
+        String secondaryResource = "/secondary.png";
+        start(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                if (request.getRequestURI().endsWith(primaryResource))
+                {
+                    // Pushing twice the same resource must only push it once.
+                    Request.getBaseRequest(request).getPushBuilder().path(servletPath + secondaryResource).push();
+                    Request.getBaseRequest(request).getPushBuilder().path(servletPath + secondaryResource).push();
+                }
+                response.getOutputStream().print(request.getRequestURI());
+            }
+        });
+        PushManager pushManager = newPushManager();
+
+        Session session = newClient(new Session.Listener.Adapter());
+        AtomicInteger pushes = new AtomicInteger();
+        for (int i = 0; i < 2; ++i)
+        {
+            // The resource is recorded as pushed only once its push has completed.
+            awaitNoActivePushes(pushManager);
+
+            MetaData.Request request = newRequest("GET", primaryResource, new HttpFields());
+            CountDownLatch latch = new CountDownLatch(1);
+            session.newStream(new HeadersFrame(request, null, true), new Promise.Adapter<>(), new Stream.Listener.Adapter()
+            {
+                @Override
+                public void onData(Stream stream, DataFrame frame, Callback callback)
+                {
+                    callback.succeeded();
+                    if (frame.isEndStream())
+                        latch.countDown();
+                }
+
+                @Override
+                public Stream.Listener onPush(Stream stream, PushPromiseFrame frame)
+                {
+                    pushes.incrementAndGet();
+                    return new Adapter()
+                    {
+                        @Override
+                        public void onData(Stream stream, DataFrame frame, Callback callback)
+                        {
+                            callback.succeeded();
+                        }
+                    };
+                }
+            });
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, pushes.get());
+        assertEquals(1, pushManager.getPushed());
+        assertEquals(3, pushManager.getDuplicates());
+    }
+
+    @Test
+    public void testMaxConcurrentPushes() throws Exception
+    {
+        int resources = 4;
+        start(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                if (request.getRequestURI().endsWith("/primary"))
+                {
+                    for (int i = 0; i < resources; ++i)
+                        Request.getBaseRequest(request).getPushBuilder().path(servletPath + "/secondary_" + i).push();
+                }
+            }
+        });
+        PushManager pushManager = newPushManager();
+        pushManager.setMaxConcurrentPushes(0);
+
+        Session session = newClient(new Session.Listener.Adapter());
+        MetaData.Request request = newRequest("GET", "/primary", new HttpFields());
+        CountDownLatch latch = new CountDownLatch(1);
+        session.newStream(new HeadersFrame(request, null, true), new Promise.Adapter<>(), new Stream.Listener.Adapter()
+        {
+            @Override
+            public void onHeaders(Stream stream, HeadersFrame frame)
+            {
+                if (frame.isEndStream())
+                    latch.countDown();
+            }
+
+            @Override
+            public void onData(Stream stream, DataFrame frame, Callback callback)
+            {
+                callback.succeeded();
+                if (frame.isEndStream())
+                    latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        assertEquals(0, pushManager.getPushed());
+        assertEquals(resources, pushManager.getRefused());
+    }
+}
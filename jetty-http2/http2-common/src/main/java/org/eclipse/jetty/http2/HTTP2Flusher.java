@@ -27,8 +27,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.http2.frames.Frame;
+import org.eclipse.jetty.http2.frames.FrameType;
 import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.EofException;
@@ -49,6 +51,10 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
     private final Set<Entry> processedEntries = new HashSet<>();
     private final HTTP2Session session;
     private final ByteBufferPool.Lease lease;
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder dataFrames = new LongAdder();
+    private final LongAdder dataBytes = new LongAdder();
     private Throwable terminated;
     private Entry stalledEntry;
 
@@ -126,6 +132,38 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
         }
     }
 
+    /**
+     * @return the number of writes to the network
+     */
+    public long getWrites()
+    {
+        return writes.sum();
+    }
+
+    /**
+     * @return the number of frames written
+     */
+    public long getFrames()
+    {
+        return frames.sum();
+    }
+
+    /**
+     * @return the number of DATA frames written
+     */
+    public long getDataFrames()
+    {
+        return dataFrames.sum();
+    }
+
+    /**
+     * @return the number of DATA frame payload bytes written
+     */
+    public long getDataBytes()
+    {
+        return dataBytes.sum();
+    }
+
     @Override
     protected Action process() throws Throwable
     {
@@ -180,6 +218,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
 
                 try
                 {
+                    int dataRemaining = entry.getDataBytesRemaining();
                     if (entry.generate(lease))
                     {
                         if (LOG.isDebugEnabled())
@@ -187,6 +226,13 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
 
                         progress = true;
 
+                        frames.increment();
+                        if (entry.frame.getType() == FrameType.DATA)
+                        {
+                            dataFrames.increment();
+                            dataBytes.add(dataRemaining - entry.getDataBytesRemaining());
+                        }
+
                         processedEntries.add(entry);
 
                         if (entry.getDataBytesRemaining() == 0)
@@ -244,6 +290,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
                     processedEntries,
                     pendingEntries);
 
+        writes.increment();
         session.getEndPoint().write(this, byteBuffers.toArray(EMPTY_BYTE_BUFFERS));
         return Action.SCHEDULED;
     }
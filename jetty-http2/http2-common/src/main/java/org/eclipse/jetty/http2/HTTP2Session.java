@@ -25,8 +25,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -56,6 +54,7 @@ import org.eclipse.jetty.io.WriteFlusher;
 import org.eclipse.jetty.util.AtomicBiInteger;
 import org.eclipse.jetty.util.Atomics;
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.ConcurrentIntHashMap;
 import org.eclipse.jetty.util.CountingCallback;
 import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.Retainable;
@@ -72,7 +71,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
 {
     private static final Logger LOG = Log.getLogger(HTTP2Session.class);
 
-    private final ConcurrentMap<Integer, IStream> streams = new ConcurrentHashMap<>();
+    private final ConcurrentIntHashMap<IStream> streams = new ConcurrentIntHashMap<>();
     private final AtomicInteger localStreamIds = new AtomicInteger();
     private final AtomicInteger lastRemoteStreamId = new AtomicInteger();
     private final AtomicInteger localStreamCount = new AtomicInteger();
@@ -87,6 +86,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
     private final Session.Listener listener;
     private final FlowControlStrategy flowControl;
     private final HTTP2Flusher flusher;
+    private final Callback onResetCallback = new OnResetCallback();
     private int maxLocalStreams;
     private int maxRemoteStreams;
     private long streamIdleTimeout;
@@ -291,7 +291,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
         IStream stream = getStream(streamId);
         if (stream != null)
         {
-            stream.process(frame, new OnResetCallback());
+            stream.process(frame, onResetCallback);
         }
         else
         {
@@ -867,6 +867,20 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
         return streams.get(streamId);
     }
 
+    @ManagedAttribute(value = "The average number of frames per network write", readonly = true)
+    public double getFramesPerWrite()
+    {
+        long writes = flusher.getWrites();
+        return writes == 0 ? 0 : (double)flusher.getFrames() / writes;
+    }
+
+    @ManagedAttribute(value = "The average number of payload bytes per DATA frame", readonly = true)
+    public double getBytesPerDataFrame()
+    {
+        long dataFrames = flusher.getDataFrames();
+        return dataFrames == 0 ? 0 : (double)flusher.getDataBytes() / dataFrames;
+    }
+
     @ManagedAttribute(value = "The flow control send window", readonly = true)
     public int getSendWindow()
     {
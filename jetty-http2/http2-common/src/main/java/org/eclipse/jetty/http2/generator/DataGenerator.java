@@ -30,12 +30,27 @@ import org.eclipse.jetty.util.BufferUtil;
 public class DataGenerator
 {
     private final HeaderGenerator headerGenerator;
+    private int maxCopyLength = 1024;
 
     public DataGenerator(HeaderGenerator headerGenerator)
     {
         this.headerGenerator = headerGenerator;
     }
 
+    /**
+     * @return the max data length that is copied after the frame header,
+     * so that small DATA frames are written as a single buffer
+     */
+    public int getMaxCopyLength()
+    {
+        return maxCopyLength;
+    }
+
+    public void setMaxCopyLength(int maxCopyLength)
+    {
+        this.maxCopyLength = maxCopyLength;
+    }
+
     public int generate(ByteBufferPool.Lease lease, DataFrame frame, int maxLength)
     {
         return generateData(lease, frame.getStreamId(), frame.getData(), frame.isEndStream(), maxLength);
@@ -74,11 +89,21 @@ public class DataGenerator
         if (last)
             flags |= Flags.END_STREAM;
 
-        ByteBuffer header = headerGenerator.generate(lease, FrameType.DATA, Frame.HEADER_LENGTH + length, length, flags, streamId);
-        BufferUtil.flipToFlush(header, 0);
-        lease.append(header, true);
-        // Skip empty data buffers.
-        if (data.remaining() > 0)
+        if (length <= getMaxCopyLength())
+        {
+            // Small data is copied after the header, so that many small frames
+            // do not result in many small buffers to write.
+            ByteBuffer frame = headerGenerator.generate(lease, FrameType.DATA, Frame.HEADER_LENGTH + length, length, flags, streamId);
+            frame.put(data);
+            BufferUtil.flipToFlush(frame, 0);
+            lease.append(frame, true);
+        }
+        else
+        {
+            ByteBuffer header = headerGenerator.generate(lease, FrameType.DATA, Frame.HEADER_LENGTH, length, flags, streamId);
+            BufferUtil.flipToFlush(header, 0);
+            lease.append(header, true);
             lease.append(data, false);
+        }
     }
 }
@@ -75,6 +75,15 @@ public class Generator
         headerGenerator.setMaxFrameSize(maxFrameSize);
     }
 
+    /**
+     * @param maxCopyLength the max DATA frame length that is copied after the frame header
+     * @see DataGenerator#setMaxCopyLength(int)
+     */
+    public void setMaxDataCopyLength(int maxCopyLength)
+    {
+        dataGenerator.setMaxCopyLength(maxCopyLength);
+    }
+
     public int control(ByteBufferPool.Lease lease, Frame frame)
     {
         return generators[frame.getType().getType()].generate(lease, frame);
@@ -89,6 +89,27 @@ public class DataGenerateParseTest
         assertEquals(content, aggregate);
     }
 
+    @Test
+    public void testGenerateSmallContentSingleBuffer()
+    {
+        DataGenerator generator = new DataGenerator(new HeaderGenerator());
+        ByteBufferPool.Lease lease = new ByteBufferPool.Lease(byteBufferPool);
+        ByteBuffer content = ByteBuffer.wrap(smallContent);
+        generator.generateData(lease, 13, content, true, content.remaining());
+
+        // Small content is copied after the header.
+        assertEquals(1, lease.getByteBuffers().size());
+        assertEquals(Frame.HEADER_LENGTH + smallContent.length, lease.getTotalLength());
+
+        generator.setMaxCopyLength(0);
+        lease = new ByteBufferPool.Lease(byteBufferPool);
+        content = ByteBuffer.wrap(smallContent);
+        generator.generateData(lease, 13, content, true, content.remaining());
+
+        assertEquals(2, lease.getByteBuffers().size());
+        assertEquals(Frame.HEADER_LENGTH, lease.getByteBuffers().get(0).remaining());
+    }
+
     private List<DataFrame> testGenerateParse(ByteBuffer data)
     {
         DataGenerator generator = new DataGenerator(new HeaderGenerator());
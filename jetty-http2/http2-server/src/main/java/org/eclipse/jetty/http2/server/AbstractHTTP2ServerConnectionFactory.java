@@ -58,8 +58,10 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
     private int maxHeaderBlockFragment = 0;
     private int maxFrameLength = Frame.DEFAULT_MAX_LENGTH;
     private int maxSettingsKeys = SettingsFrame.DEFAULT_MAX_KEYS;
+    private int maxDataCopyLength = 1024;
     private FlowControlStrategy.Factory flowControlStrategyFactory = () -> new BufferingFlowControlStrategy(0.5F);
     private long streamIdleTimeout;
+    private PushManager pushManager;
 
     public AbstractHTTP2ServerConnectionFactory(@Name("config") HttpConfiguration httpConfiguration)
     {
@@ -176,6 +178,17 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         this.maxSettingsKeys = maxSettingsKeys;
     }
 
+    @ManagedAttribute("The max DATA frame length copied after the frame header to write small frames as a single buffer")
+    public int getMaxDataCopyLength()
+    {
+        return maxDataCopyLength;
+    }
+
+    public void setMaxDataCopyLength(int maxDataCopyLength)
+    {
+        this.maxDataCopyLength = maxDataCopyLength;
+    }
+
     /**
      * @return -1
      * @deprecated feature removed, no replacement
@@ -197,6 +210,26 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * @return the push manager, or null if pushes are not managed
+     */
+    public PushManager getPushManager()
+    {
+        return pushManager;
+    }
+
+    /**
+     * <p>Sets the push manager of this factory's connections.</p>
+     * <p>By default there is no push manager, and pushes are not managed.</p>
+     *
+     * @param pushManager the push manager, or null to not manage pushes
+     */
+    public void setPushManager(PushManager pushManager)
+    {
+        updateBean(this.pushManager, pushManager);
+        this.pushManager = pushManager;
+    }
+
     public HttpConfiguration getHttpConfiguration()
     {
         return httpConfiguration;
@@ -220,6 +253,7 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         ServerSessionListener listener = newSessionListener(connector, endPoint);
 
         Generator generator = new Generator(connector.getByteBufferPool(), getMaxDynamicTableSize(), getMaxHeaderBlockFragment());
+        generator.setMaxDataCopyLength(getMaxDataCopyLength());
         FlowControlStrategy flowControl = getFlowControlStrategyFactory().newFlowControlStrategy();
         HTTP2ServerSession session = new HTTP2ServerSession(connector.getScheduler(), endPoint, generator, listener, flowControl);
         session.setMaxLocalStreams(getMaxConcurrentStreams());
@@ -239,8 +273,11 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         parser.setMaxFrameLength(getMaxFrameLength());
         parser.setMaxSettingsKeys(getMaxSettingsKeys());
 
-        HTTP2Connection connection = new HTTP2ServerConnection(connector.getByteBufferPool(), connector.getExecutor(),
+        HTTP2ServerConnection connection = new HTTP2ServerConnection(connector.getByteBufferPool(), connector.getExecutor(),
                         endPoint, httpConfiguration, parser, session, getInputBufferSize(), listener);
+        PushManager pushManager = getPushManager();
+        if (pushManager != null)
+            connection.setPushes(pushManager.newPushes());
         connection.addListener(sessionContainer);
         return configure(connection, connector, endPoint);
     }
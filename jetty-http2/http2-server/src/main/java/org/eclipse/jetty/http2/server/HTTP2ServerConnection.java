@@ -94,6 +94,7 @@ public class HTTP2ServerConnection extends HTTP2Connection implements Connection
     private final ServerSessionListener listener;
     private final HttpConfiguration httpConfig;
     private boolean recycleHttpChannels;
+    private PushManager.Pushes pushes;
 
     public HTTP2ServerConnection(ByteBufferPool byteBufferPool, Executor executor, EndPoint endPoint, HttpConfiguration httpConfig, ServerParser parser, ISession session, int inputBufferSize, ServerSessionListener listener)
     {
@@ -130,6 +131,19 @@ public class HTTP2ServerConnection extends HTTP2Connection implements Connection
         this.recycleHttpChannels = recycleHttpChannels;
     }
 
+    /**
+     * @return the push state of this connection, or null if pushes are not managed
+     */
+    public PushManager.Pushes getPushes()
+    {
+        return pushes;
+    }
+
+    public void setPushes(PushManager.Pushes pushes)
+    {
+        this.pushes = pushes;
+    }
+
     @Override
     public void onUpgradeTo(ByteBuffer buffer)
     {
@@ -201,6 +201,11 @@ public class HttpTransportOverHTTP2 implements HttpTransport
             return;
         }
 
+        PushManager.Pushes pushes = connection.getPushes();
+        PushManager.Pushes.Push push = pushes == null ? null : pushes.newPush(request);
+        if (pushes != null && push == null)
+            return;
+
         if (LOG.isDebugEnabled())
             LOG.debug("HTTP/2 Push {}", request);
 
@@ -215,10 +220,12 @@ public class HttpTransportOverHTTP2 implements HttpTransport
             @Override
             public void failed(Throwable x)
             {
+                if (push != null)
+                    push.release();
                 if (LOG.isDebugEnabled())
                     LOG.debug("Could not push " + request, x);
             }
-        }, new Stream.Listener.Adapter()); // TODO: handle reset from the client ?
+        }, push != null ? push : new Stream.Listener.Adapter());
     }
 
     private void sendHeadersFrame(MetaData.Response info, boolean endStream, Callback callback)
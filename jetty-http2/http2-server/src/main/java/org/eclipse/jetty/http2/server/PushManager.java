@@ -0,0 +1,337 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.server;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.ErrorCode;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.frames.ResetFrame;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>Decides whether resources may be pushed over a HTTP/2 connection,
+ * and records statistics about pushed resources.</p>
+ * <p>Each connection has a {@link Pushes} instance that remembers, in a
+ * bloom filter digest, the resources already successfully pushed over that
+ * connection, so that they are not pushed again, and that limits the number of
+ * concurrent pushed streams.</p>
+ * <p>Pushes that the client resets with {@code CANCEL} or {@code REFUSED_STREAM}
+ * are accounted as wasted, as the client did not want the pushed resource;
+ * they are not recorded in the digest, so the resource may be pushed again.</p>
+ * <p>A PushManager is only used if it is set on the HTTP/2 server connection
+ * factory, see {@link AbstractHTTP2ServerConnectionFactory#setPushManager(PushManager)}.</p>
+ */
+@ManagedObject("Manages HTTP/2 pushed resources")
+public class PushManager
+{
+    private static final Logger LOG = Log.getLogger(PushManager.class);
+
+    private final LongAdder pushed = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder wasted = new LongAdder();
+    private int maxConcurrentPushes = 32;
+    private int digestSize = 1024;
+
+    @ManagedAttribute("The max number of concurrent pushed streams per connection, or -1 for no limit")
+    public int getMaxConcurrentPushes()
+    {
+        return maxConcurrentPushes;
+    }
+
+    public void setMaxConcurrentPushes(int maxConcurrentPushes)
+    {
+        this.maxConcurrentPushes = maxConcurrentPushes;
+    }
+
+    @ManagedAttribute("The size in bits of the per-connection digest of pushed resources, or 0 to disable the digest")
+    public int getDigestSize()
+    {
+        return digestSize;
+    }
+
+    public void setDigestSize(int digestSize)
+    {
+        this.digestSize = digestSize;
+    }
+
+    @ManagedAttribute("The number of pushed resources")
+    public long getPushed()
+    {
+        return pushed.sum();
+    }
+
+    @ManagedAttribute("The number of pushes skipped because the resource was already pushed over the connection")
+    public long getDuplicates()
+    {
+        return duplicates.sum();
+    }
+
+    @ManagedAttribute("The number of pushes skipped because of the concurrent pushes limit")
+    public long getRefused()
+    {
+        return refused.sum();
+    }
+
+    @ManagedAttribute("The number of pushed resources that were completely sent")
+    public long getCompleted()
+    {
+        return completed.sum();
+    }
+
+    @ManagedAttribute("The number of pushed resources that were reset by the client")
+    public long getWasted()
+    {
+        return wasted.sum();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void reset()
+    {
+        pushed.reset();
+        duplicates.reset();
+        refused.reset();
+        completed.reset();
+        wasted.reset();
+    }
+
+    /**
+     * @return a new per-connection push state
+     */
+    public Pushes newPushes()
+    {
+        return new Pushes(getDigestSize());
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{pushed=%d,duplicates=%d,refused=%d,completed=%d,wasted=%d}",
+                getClass().getSimpleName(),
+                hashCode(),
+                getPushed(),
+                getDuplicates(),
+                getRefused(),
+                getCompleted(),
+                getWasted());
+    }
+
+    /**
+     * <p>The push state of a single connection.</p>
+     */
+    public class Pushes
+    {
+        private static final int HASHES = 3;
+
+        private final AtomicInteger active = new AtomicInteger();
+        private final Set<String> pending = new HashSet<>();
+        private final long[] digest;
+        private int entries;
+
+        private Pushes(int digestSize)
+        {
+            this.digest = new long[(Math.max(0, digestSize) + 63) / 64];
+        }
+
+        /**
+         * <p>Decides whether the given request may be pushed.</p>
+         *
+         * @param request the request to push
+         * @return a {@link Push} that must be used as the pushed stream listener,
+         * or null if the request must not be pushed
+         */
+        public Push newPush(MetaData.Request request)
+        {
+            String key = request.getURI().getPathQuery();
+            int max = getMaxConcurrentPushes();
+            while (true)
+            {
+                int current = active.get();
+                if (max >= 0 && current >= max)
+                {
+                    refused.increment();
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Not pushing {}, max concurrent pushes {} exceeded", key, max);
+                    return null;
+                }
+                if (active.compareAndSet(current, current + 1))
+                    break;
+            }
+
+            if (!reserve(key))
+            {
+                active.decrementAndGet();
+                duplicates.increment();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Not pushing {}, already pushed", key);
+                return null;
+            }
+
+            pushed.increment();
+            return new Push(key);
+        }
+
+        /**
+         * @return the number of active pushed streams
+         */
+        public int getActivePushes()
+        {
+            return active.get();
+        }
+
+        /**
+         * @param key the resource key
+         * @return true if the key is neither in the digest nor being pushed, false otherwise
+         */
+        private synchronized boolean reserve(String key)
+        {
+            if (digest.length == 0 || key == null)
+                return true;
+            if (contains(key))
+                return false;
+            return pending.add(key);
+        }
+
+        /**
+         * <p>Ends a push of the given key, adding it to the digest if it succeeded.</p>
+         *
+         * @param key the resource key
+         * @param succeeded whether the resource was completely pushed
+         */
+        private synchronized void release(String key, boolean succeeded)
+        {
+            if (digest.length == 0 || key == null)
+                return;
+            pending.remove(key);
+            if (succeeded)
+                record(key);
+        }
+
+        private boolean contains(String key)
+        {
+            int bits = digest.length * 64;
+            int hash1 = key.hashCode();
+            int hash2 = hash2(hash1);
+            for (int i = 0; i < HASHES; ++i)
+            {
+                int index = Math.floorMod(hash1 + i * hash2, bits);
+                if ((digest[index >>> 6] & (1L << index)) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        private void record(String key)
+        {
+            if (contains(key))
+                return;
+
+            // Once saturated, false positives would prevent legit pushes,
+            // so start again with an empty digest.
+            int bits = digest.length * 64;
+            if (++entries > bits / 8)
+            {
+                Arrays.fill(digest, 0L);
+                entries = 1;
+            }
+            int hash1 = key.hashCode();
+            int hash2 = hash2(hash1);
+            for (int i = 0; i < HASHES; ++i)
+            {
+                int index = Math.floorMod(hash1 + i * hash2, bits);
+                digest[index >>> 6] |= 1L << index;
+            }
+        }
+
+        private int hash2(int hash1)
+        {
+            // Double hashing to derive the bloom filter indexes.
+            return (hash1 * 0x9E3779B9) ^ (hash1 >>> 16) | 1;
+        }
+
+        /**
+         * <p>The listener of a pushed stream, that tracks its outcome.</p>
+         * <p>Only pushes that complete without being reset are recorded in
+         * the digest, so that cancelled or refused pushes may be retried.</p>
+         */
+        public class Push extends Stream.Listener.Adapter
+        {
+            private final AtomicBoolean done = new AtomicBoolean();
+            private final AtomicBoolean reset = new AtomicBoolean();
+            private final String key;
+
+            private Push(String key)
+            {
+                this.key = key;
+            }
+
+            @Override
+            public void onReset(Stream stream, ResetFrame frame)
+            {
+                if (reset.compareAndSet(false, true))
+                {
+                    if (frame.getError() == ErrorCode.CANCEL_STREAM_ERROR.code || frame.getError() == ErrorCode.REFUSED_STREAM_ERROR.code)
+                        wasted.increment();
+                }
+                release();
+            }
+
+            @Override
+            public void onClosed(Stream stream)
+            {
+                // The stream is closed before the reset is notified.
+                if (stream.isReset())
+                {
+                    release();
+                }
+                else if (done.compareAndSet(false, true))
+                {
+                    completed.increment();
+                    active.decrementAndGet();
+                    Pushes.this.release(key, true);
+                }
+            }
+
+            /**
+             * <p>Releases the concurrent push slot without recording the resource as pushed;
+             * invoked when the push fails or is reset.</p>
+             */
+            public void release()
+            {
+                if (done.compareAndSet(false, true))
+                {
+                    active.decrementAndGet();
+                    Pushes.this.release(key, false);
+                }
+            }
+        }
+    }
+}
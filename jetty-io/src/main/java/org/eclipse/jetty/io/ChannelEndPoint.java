@@ -23,11 +23,13 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
 import java.nio.channels.CancelledKeyException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.thread.Invocable;
@@ -46,6 +48,7 @@ public abstract class ChannelEndPoint extends AbstractEndPoint implements Manage
     protected final ManagedSelector _selector;
     protected final SelectionKey _key;
     private boolean _updatePending;
+    private volatile Transfer _transfer;
 
     /**
      * The current value for {@link SelectionKey#interestOps()}.
@@ -252,9 +255,56 @@ public abstract class ChannelEndPoint extends AbstractEndPoint implements Manage
         return filled;
     }
 
+    /**
+     * @return whether {@link #transferFrom(FileChannel, long, long, Callback)} is supported by this endpoint
+     */
+    public boolean isTransferFromSupported()
+    {
+        return true;
+    }
+
+    /**
+     * <p>Writes a region of a file to this endpoint, using
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * so that the file content can be sent without being copied to user space.</p>
+     * <p>The transfer is non-blocking: when the channel is congested the
+     * {@link WriteFlusher} waits for the channel to be writable, exactly
+     * like it does for {@link #write(Callback, ByteBuffer...)}.</p>
+     *
+     * @param file the file to transfer from
+     * @param position the position in the file of the first byte to transfer
+     * @param length the number of bytes to transfer
+     * @param callback the callback notified when the transfer is complete
+     * @throws java.nio.channels.WritePendingException if another write operation is concurrent
+     */
+    public void transferFrom(FileChannel file, long position, long length, Callback callback)
+    {
+        if (length <= 0)
+        {
+            callback.succeeded();
+            return;
+        }
+
+        Transfer transfer = new Transfer(file, position, length);
+        _transfer = transfer;
+        write(Callback.from(() ->
+        {
+            _transfer = null;
+            callback.succeeded();
+        }, x ->
+        {
+            _transfer = null;
+            callback.failed(x);
+        }), transfer._marker);
+    }
+
     @Override
     public boolean flush(ByteBuffer... buffers) throws IOException
     {
+        Transfer transfer = _transfer;
+        if (transfer != null && buffers.length == 1 && buffers[0] == transfer._marker)
+            return transfer.flush();
+
         long flushed=0;
         try
         {
@@ -432,4 +482,74 @@ public abstract class ChannelEndPoint extends AbstractEndPoint implements Manage
                 ManagedSelector.safeInterestOps(_key),
                 ManagedSelector.safeReadyOps(_key));
     }
+
+    /**
+     * <p>A file region being transferred to the channel.</p>
+     * <p>The transfer is driven by the {@link WriteFlusher} via a one byte
+     * marker buffer, that is consumed only when the whole region has been
+     * transferred, so that the {@link WriteFlusher} waits for the channel
+     * to be writable until then.</p>
+     */
+    private class Transfer
+    {
+        private final ByteBuffer _marker = ByteBuffer.allocate(1);
+        private final FileChannel _file;
+        private long _position;
+        private long _remaining;
+
+        private Transfer(FileChannel file, long position, long length)
+        {
+            _file = file;
+            _position = position;
+            _remaining = length;
+        }
+
+        private boolean flush() throws IOException
+        {
+            long flushed = 0;
+            try
+            {
+                while (_remaining > 0)
+                {
+                    long transferred = _file.transferTo(_position, _remaining, _channel);
+                    if (transferred <= 0)
+                    {
+                        if (_position >= _file.size())
+                            throw new IOException("Unexpected end of file at " + _position);
+                        break;
+                    }
+                    _position += transferred;
+                    _remaining -= transferred;
+                    flushed += transferred;
+                }
+                if (LOG.isDebugEnabled())
+                    LOG.debug("transferred {} remaining {} {}", flushed, _remaining, ChannelEndPoint.this);
+            }
+            catch (IOException e)
+            {
+                throw new EofException(e);
+            }
+
+            if (flushed > 0)
+                notIdle();
+
+            if (_remaining > 0)
+            {
+                onFlushed(flushed);
+                return false;
+            }
+
+            // The WriteFlusher accounts for the marker byte.
+            onFlushed(flushed - 1);
+            _marker.position(_marker.limit());
+            return true;
+        }
+
+        private void onFlushed(long flushed) throws IOException
+        {
+            Connection connection = getConnection();
+            if (flushed > 0 && connection instanceof WriteFlusher.Listener)
+                ((WriteFlusher.Listener)connection).onFlushed(flushed);
+        }
+    }
 }
@@ -49,6 +49,13 @@ public class NetworkTrafficSelectChannelEndPoint extends SelectChannelEndPoint
         return read;
     }
 
+    @Override
+    public boolean isTransferFromSupported()
+    {
+        // Listeners must be notified of the outgoing bytes.
+        return false;
+    }
+
     @Override
     public boolean flush(ByteBuffer... buffers) throws IOException
     {
@@ -266,6 +266,28 @@ public class SslConnection extends AbstractConnection implements Connection.Upgr
             _encryptedInput = _bufferPool.acquire(_sslEngine.getSession().getPacketBufferSize(), _encryptedDirectBuffers);
     }
 
+    /**
+     * <p>Returns the space needed to unwrap the next TLS record in the given buffer.</p>
+     * <p>The decrypted content of a record is never larger than its encrypted content,
+     * so when the record header is available its length is enough, otherwise the
+     * application buffer size of the SSL session is needed.</p>
+     *
+     * @param encrypted the buffer with the encrypted data
+     * @return the space needed to unwrap the next record
+     */
+    private int getUnwrapSpace(ByteBuffer encrypted)
+    {
+        int position = encrypted.position();
+        if (encrypted.remaining() >= 5)
+        {
+            // Record types change_cipher_spec, alert, handshake and application_data.
+            int type = encrypted.get(position) & 0xFF;
+            if (type >= 20 && type <= 23)
+                return ((encrypted.get(position + 3) & 0xFF) << 8) | (encrypted.get(position + 4) & 0xFF);
+        }
+        return _sslEngine.getSession().getApplicationBufferSize();
+    }
+
     @Override
     public void onUpgradeTo(ByteBuffer buffer)
     {
@@ -543,12 +565,24 @@ public class SslConnection extends AbstractConnection implements Connection.Upgr
                             }
 
                             acquireEncryptedInput();
+                            if (_decryptedInput != null)
+                                BufferUtil.compact(_encryptedInput);
+
+                            // Let's try reading some encrypted data... even if we have some already.
+                            int net_filled = getEndPoint().fill(_encryptedInput);
+
+                            if (LOG.isDebugEnabled())
+                                LOG.debug("net filled={}", net_filled);
+
+                            if (net_filled > 0 && _handshake.get() == Handshake.INITIAL && isOutboundDone())
+                                throw new SSLHandshakeException("Closed during handshake");
 
-                            // can we use the passed buffer if it is big enough
+                            // Can we decrypt directly into the passed buffer, avoiding
+                            // to acquire the decrypted buffer and to copy from it?
                             ByteBuffer app_in;
                             if (_decryptedInput == null)
                             {
-                                if (BufferUtil.space(buffer) > _sslEngine.getSession().getApplicationBufferSize())
+                                if (BufferUtil.space(buffer) >= getUnwrapSpace(_encryptedInput))
                                     app_in = buffer;
                                 else
                                     app_in = _decryptedInput = _bufferPool.acquire(_sslEngine.getSession().getApplicationBufferSize(), _decryptedDirectBuffers);
@@ -556,18 +590,8 @@ public class SslConnection extends AbstractConnection implements Connection.Upgr
                             else
                             {
                                 app_in = _decryptedInput;
-                                BufferUtil.compact(_encryptedInput);
                             }
 
-                            // Let's try reading some encrypted data... even if we have some already.
-                            int net_filled = getEndPoint().fill(_encryptedInput);
-
-                            if (LOG.isDebugEnabled())
-                                LOG.debug("net filled={}", net_filled);
-
-                            if (net_filled > 0 && _handshake.get() == Handshake.INITIAL && isOutboundDone())
-                                throw new SSLHandshakeException("Closed during handshake");
-
                             // Let's unwrap even if we have no net data because in that
                             // case we want to fall through to the handshake handling
                             int pos = BufferUtil.flipToFill(app_in);
@@ -633,6 +657,16 @@ public class SslConnection extends AbstractConnection implements Connection.Upgr
                                     break;
                                 }
 
+                                case BUFFER_OVERFLOW:
+                                    // The record did not fit the passed buffer,
+                                    // unwrap it again into the decrypted buffer.
+                                    if (app_in == buffer)
+                                    {
+                                        _decryptedInput = _bufferPool.acquire(_sslEngine.getSession().getApplicationBufferSize(), _decryptedDirectBuffers);
+                                        continue;
+                                    }
+                                    throw new IllegalStateException("Unexpected unwrap result " + unwrap);
+
                                 default:
                                     throw new IllegalStateException("Unexpected unwrap result " + unwrap);
                             }
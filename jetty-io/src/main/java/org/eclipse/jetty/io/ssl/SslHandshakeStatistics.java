@@ -0,0 +1,115 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io.ssl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLSession;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+/**
+ * <p>A {@link SslHandshakeListener} that tracks TLS handshake statistics.</p>
+ * <p>Adding an instance of this class as a bean to a server Connector, to a
+ * {@code SslConnectionFactory} or to a client connector will trigger the
+ * tracking of full and abbreviated (resumed) TLS handshakes, so that the
+ * effectiveness of the TLS session cache configured via
+ * {@link org.eclipse.jetty.util.ssl.SslContextFactory#setSslSessionCacheSize(int)}
+ * and {@link org.eclipse.jetty.util.ssl.SslContextFactory#setSslSessionTimeout(int)}
+ * can be measured.</p>
+ * <p>A handshake is considered abbreviated when it completes with a
+ * {@link SSLSession} that was already seen by a previous handshake.</p>
+ */
+@ManagedObject("Tracks statistics on TLS handshakes")
+public class SslHandshakeStatistics implements SslHandshakeListener
+{
+    private static final String SESSION_MARKER = SslHandshakeStatistics.class.getName();
+
+    private final LongAdder _fullHandshakes = new LongAdder();
+    private final LongAdder _resumedHandshakes = new LongAdder();
+    private final LongAdder _failedHandshakes = new LongAdder();
+
+    @Override
+    public void handshakeSucceeded(Event event)
+    {
+        SSLSession session = event.getSSLEngine().getSession();
+        if (session.getValue(SESSION_MARKER) == null)
+        {
+            session.putValue(SESSION_MARKER, Boolean.TRUE);
+            _fullHandshakes.increment();
+        }
+        else
+        {
+            _resumedHandshakes.increment();
+        }
+    }
+
+    @Override
+    public void handshakeFailed(Event event, Throwable failure)
+    {
+        _failedHandshakes.increment();
+    }
+
+    @ManagedAttribute("The number of full TLS handshakes")
+    public long getFullHandshakes()
+    {
+        return _fullHandshakes.longValue();
+    }
+
+    @ManagedAttribute("The number of abbreviated TLS handshakes that resumed a TLS session")
+    public long getResumedHandshakes()
+    {
+        return _resumedHandshakes.longValue();
+    }
+
+    @ManagedAttribute("The number of failed TLS handshakes")
+    public long getFailedHandshakes()
+    {
+        return _failedHandshakes.longValue();
+    }
+
+    @ManagedAttribute("The ratio of successful TLS handshakes that resumed a TLS session")
+    public double getResumedHandshakesRatio()
+    {
+        long resumed = getResumedHandshakes();
+        long total = resumed + getFullHandshakes();
+        return total == 0 ? 0.0D : (double)resumed / total;
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void reset()
+    {
+        _fullHandshakes.reset();
+        _resumedHandshakes.reset();
+        _failedHandshakes.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[full=%d,resumed=%d,failed=%d]",
+                getClass().getSimpleName(),
+                hashCode(),
+                getFullHandshakes(),
+                getResumedHandshakes(),
+                getFailedHandshakes());
+    }
+}
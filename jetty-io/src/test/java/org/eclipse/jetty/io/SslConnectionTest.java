@@ -30,6 +30,8 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -37,7 +39,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 
 import org.eclipse.jetty.io.ssl.SslConnection;
@@ -70,6 +74,8 @@ public class SslConnectionTest
     protected volatile EndPoint _lastEndp;
     private volatile boolean _testFill=true;
     private volatile boolean _onXWriteThenShutdown=false;
+    private volatile int _inputBufferSize=8*1024;
+    private volatile boolean _strictUnwrap=false;
 
     private volatile FutureCallback _writeCallback;
     protected ServerSocketChannel _connector;
@@ -91,6 +97,8 @@ public class SslConnectionTest
         public Connection newConnection(SelectableChannel channel, EndPoint endpoint, Object attachment)
         {
             SSLEngine engine = _sslCtxFactory.newSSLEngine();
+            if (_strictUnwrap)
+                engine = new StrictUnwrapSSLEngine(engine);
             engine.setUseClientMode(false);
             SslConnection sslConnection = new SslConnection(__byteBufferPool, getExecutor(), endpoint, engine);
             sslConnection.setRenegotiationAllowed(_sslCtxFactory.isRenegotiationAllowed());
@@ -143,6 +151,181 @@ public class SslConnectionTest
         }
     }
 
+    static final AtomicInteger __unwraps = new AtomicInteger();
+    static final AtomicInteger __overflows = new AtomicInteger();
+    /**
+     * An SSLEngine that, like some SSLEngine implementations, refuses to unwrap
+     * into a buffer with less space than the application buffer size.
+     */
+    private static class StrictUnwrapSSLEngine extends SSLEngine
+    {
+        private final SSLEngine _engine;
+
+        private StrictUnwrapSSLEngine(SSLEngine engine)
+        {
+            _engine = engine;
+        }
+
+        @Override
+        public SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst) throws SSLException
+        {
+            return _engine.wrap(srcs, offset, length, dst);
+        }
+
+        @Override
+        public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length) throws SSLException
+        {
+            __unwraps.incrementAndGet();
+            long space = 0;
+            for (int i = offset; i < offset + length; i++)
+                space += dsts[i].remaining();
+            if (space < getSession().getApplicationBufferSize())
+            {
+                __overflows.incrementAndGet();
+                return new SSLEngineResult(SSLEngineResult.Status.BUFFER_OVERFLOW, getHandshakeStatus(), 0, 0);
+            }
+            return _engine.unwrap(src, dsts, offset, length);
+        }
+
+        @Override
+        public Runnable getDelegatedTask()
+        {
+            return _engine.getDelegatedTask();
+        }
+
+        @Override
+        public void closeInbound() throws SSLException
+        {
+            _engine.closeInbound();
+        }
+
+        @Override
+        public boolean isInboundDone()
+        {
+            return _engine.isInboundDone();
+        }
+
+        @Override
+        public void closeOutbound()
+        {
+            _engine.closeOutbound();
+        }
+
+        @Override
+        public boolean isOutboundDone()
+        {
+            return _engine.isOutboundDone();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites()
+        {
+            return _engine.getSupportedCipherSuites();
+        }
+
+        @Override
+        public String[] getEnabledCipherSuites()
+        {
+            return _engine.getEnabledCipherSuites();
+        }
+
+        @Override
+        public void setEnabledCipherSuites(String[] suites)
+        {
+            _engine.setEnabledCipherSuites(suites);
+        }
+
+        @Override
+        public String[] getSupportedProtocols()
+        {
+            return _engine.getSupportedProtocols();
+        }
+
+        @Override
+        public String[] getEnabledProtocols()
+        {
+            return _engine.getEnabledProtocols();
+        }
+
+        @Override
+        public void setEnabledProtocols(String[] protocols)
+        {
+            _engine.setEnabledProtocols(protocols);
+        }
+
+        @Override
+        public SSLSession getSession()
+        {
+            return _engine.getSession();
+        }
+
+        @Override
+        public SSLSession getHandshakeSession()
+        {
+            return _engine.getHandshakeSession();
+        }
+
+        @Override
+        public void beginHandshake() throws SSLException
+        {
+            _engine.beginHandshake();
+        }
+
+        @Override
+        public SSLEngineResult.HandshakeStatus getHandshakeStatus()
+        {
+            return _engine.getHandshakeStatus();
+        }
+
+        @Override
+        public void setUseClientMode(boolean mode)
+        {
+            _engine.setUseClientMode(mode);
+        }
+
+        @Override
+        public boolean getUseClientMode()
+        {
+            return _engine.getUseClientMode();
+        }
+
+        @Override
+        public void setNeedClientAuth(boolean need)
+        {
+            _engine.setNeedClientAuth(need);
+        }
+
+        @Override
+        public boolean getNeedClientAuth()
+        {
+            return _engine.getNeedClientAuth();
+        }
+
+        @Override
+        public void setWantClientAuth(boolean want)
+        {
+            _engine.setWantClientAuth(want);
+        }
+
+        @Override
+        public boolean getWantClientAuth()
+        {
+            return _engine.getWantClientAuth();
+        }
+
+        @Override
+        public void setEnableSessionCreation(boolean flag)
+        {
+            _engine.setEnableSessionCreation(flag);
+        }
+
+        @Override
+        public boolean getEnableSessionCreation()
+        {
+            return _engine.getEnableSessionCreation();
+        }
+    }
+
     @BeforeEach
     public void initSSL() throws Exception
     {
@@ -158,6 +341,10 @@ public class SslConnectionTest
     public void startManager() throws Exception
     {
         _testFill=true;
+        _inputBufferSize=8*1024;
+        _strictUnwrap=false;
+        __unwraps.set(0);
+        __overflows.set(0);
         _writeCallback=null;
         _lastEndp=null;
         _connector = ServerSocketChannel.open();
@@ -191,7 +378,7 @@ public class SslConnectionTest
 
     public class TestConnection extends AbstractConnection
     {
-        ByteBuffer _in = BufferUtil.allocate(8*1024);
+        ByteBuffer _in = BufferUtil.allocate(_inputBufferSize);
 
         public TestConnection(EndPoint endp)
         {
@@ -572,4 +759,76 @@ public class SslConnectionTest
             }
         }
     }
+
+    @Test
+    public void testLargeRecordsIntoCallerBuffer() throws Exception
+    {
+        // The records fit the caller's buffer, so they are decrypted directly into it.
+        _inputBufferSize=64*1024;
+        testLargeRecords();
+    }
+
+    @Test
+    public void testLargeRecordsUnwrapOverflow() throws Exception
+    {
+        // The records fit the caller's buffer, but the engine wants the whole
+        // application buffer size, so each unwrap into the caller's buffer
+        // overflows and falls back to the decrypted buffer.
+        _strictUnwrap=true;
+        startSSL();
+        _inputBufferSize=_sslCtxFactory.newSSLEngine().getSession().getApplicationBufferSize()-1;
+        testLargeRecords();
+        assertThat(__overflows.get(), Matchers.greaterThan(0));
+    }
+
+    private void testLargeRecords() throws Exception
+    {
+        startSSL();
+        try (Socket client = newClient())
+        {
+            client.setSoTimeout(10000);
+            try (SocketChannel server = _connector.accept())
+            {
+                server.configureBlocking(false);
+                _manager.accept(server);
+
+                // Several full sized TLS records in a single write.
+                byte[] data = new byte[64 * 1024];
+                new Random().nextBytes(data);
+
+                AtomicReference<byte[]> echoed = new AtomicReference<>();
+                Thread reader = new Thread(() ->
+                {
+                    try
+                    {
+                        byte[] echo = new byte[data.length];
+                        int offset = 0;
+                        while (offset < echo.length)
+                        {
+                            int len = client.getInputStream().read(echo, offset, echo.length - offset);
+                            if (len < 0)
+                                break;
+                            offset += len;
+                        }
+                        echoed.set(echo);
+                    }
+                    catch (IOException e)
+                    {
+                        e.printStackTrace();
+                    }
+                });
+                reader.start();
+
+                client.getOutputStream().write(data);
+                client.getOutputStream().flush();
+                reader.join(TimeUnit.SECONDS.toMillis(10));
+
+                assertTrue(Arrays.equals(data, echoed.get()));
+                if (_strictUnwrap)
+                    // Each record is unwrapped at most twice, plus the handshake:
+                    // the fill loop does not spin on the overflow.
+                    assertThat(__unwraps.get(), Matchers.lessThan(64));
+            }
+        }
+    }
 }
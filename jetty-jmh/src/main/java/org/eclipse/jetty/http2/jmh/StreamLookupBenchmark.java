@@ -0,0 +1,151 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.generator.DataGenerator;
+import org.eclipse.jetty.http2.generator.HeaderGenerator;
+import org.eclipse.jetty.http2.parser.Parser;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.ConcurrentIntHashMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Parses many small DATA frames spread over many streams, looking up
+ * the stream for every frame as {@code HTTP2Session} does.
+ */
+@State(Scope.Thread)
+@Threads(4)
+@Warmup(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+public class StreamLookupBenchmark
+{
+    @Param({"CHM", "INT"})
+    public String mapType;
+
+    @Param({"100"})
+    public int streams;
+
+    @Param({"16"})
+    public int frameSize;
+
+    private ByteBuffer frames;
+    private Parser parser;
+    private IntFunction<Object> lookup;
+    private long found;
+
+    @Setup(Level.Trial)
+    public void setupTrial()
+    {
+        switch (mapType)
+        {
+            case "CHM":
+            {
+                ConcurrentMap<Integer, Object> map = new ConcurrentHashMap<>();
+                for (int i = 0; i < streams; ++i)
+                    map.put(2 * i + 1, new Object());
+                lookup = map::get;
+                break;
+            }
+            case "INT":
+            {
+                ConcurrentIntHashMap<Object> map = new ConcurrentIntHashMap<>();
+                for (int i = 0; i < streams; ++i)
+                    map.put(2 * i + 1, new Object());
+                lookup = map::get;
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown mapType Parameter");
+        }
+
+        ByteBufferPool byteBufferPool = new MappedByteBufferPool();
+        DataGenerator generator = new DataGenerator(new HeaderGenerator());
+        ByteBufferPool.Lease lease = new ByteBufferPool.Lease(byteBufferPool);
+        byte[] content = new byte[frameSize];
+        for (int i = 0; i < 64 * streams; ++i)
+        {
+            int streamId = 2 * (i % streams) + 1;
+            generator.generateData(lease, streamId, ByteBuffer.wrap(content), false, content.length);
+        }
+        List<ByteBuffer> buffers = lease.getByteBuffers();
+        frames = BufferUtil.allocate((int)lease.getTotalLength());
+        for (ByteBuffer buffer : buffers)
+            BufferUtil.append(frames, buffer);
+
+        parser = new Parser(byteBufferPool, new Parser.Listener.Adapter()
+        {
+            @Override
+            public void onData(DataFrame frame)
+            {
+                if (lookup.apply(frame.getStreamId()) != null)
+                    ++found;
+            }
+        }, 4096, 8192);
+        parser.init(UnaryOperator.identity());
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public long testParseSmallDataFrames()
+    {
+        ByteBuffer buffer = frames.slice();
+        parser.parse(buffer);
+        return found;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(StreamLookupBenchmark.class.getSimpleName())
+            .warmupIterations(20)
+            .measurementIterations(10)
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .threads(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
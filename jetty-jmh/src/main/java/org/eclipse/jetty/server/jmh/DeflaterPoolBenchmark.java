@@ -18,6 +18,8 @@
 
 package org.eclipse.jetty.server.jmh;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.Deflater;
 
@@ -47,11 +49,23 @@ import org.openjdk.jmh.runner.options.OptionsBuilder;
 public class DeflaterPoolBenchmark
 {
     public static final String COMPRESSION_STRING = "hello world";
+    public static final int CONTENT_SIZE = 64 * 1024;
+    public static final int BUFFER_SIZE = 8 * 1024;
     DeflaterPool _pool;
+    byte[] _content;
 
     @Param({"NO_POOL", "DEFLATER_POOL_10", "DEFLATER_POOL_20", "DEFLATER_POOL_50"})
     public static String poolType;
 
+    @Param({"1", "6"})
+    public int compressionLevel;
+
+    @State(Scope.Thread)
+    public static class ThreadState
+    {
+        byte[] _buffer = new byte[BUFFER_SIZE];
+    }
+
     @Setup(Level.Trial)
     public void setupTrial() throws Exception
     {
@@ -79,7 +93,15 @@ public class DeflaterPoolBenchmark
                 throw new IllegalStateException("Unknown poolType Parameter");
         }
 
-        _pool = new DeflaterPool(capacity, Deflater.DEFAULT_COMPRESSION, true);
+        _pool = new DeflaterPool(capacity, compressionLevel, true);
+
+        // Text like content, with words picked from a small vocabulary.
+        String[] words = {"jetty", "server", "content", "request", "response", "header", "buffer", "gzip", "the", "of", "and", "a"};
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(CONTENT_SIZE);
+        while (text.length() < CONTENT_SIZE)
+            text.append(words[random.nextInt(words.length)]).append(random.nextInt(10) == 0 ? '\n' : ' ');
+        _content = text.substring(0, CONTENT_SIZE).getBytes(StandardCharsets.UTF_8);
     }
 
     @TearDown(Level.Trial)
@@ -104,6 +126,28 @@ public class DeflaterPoolBenchmark
         return compressedDataLength;
     }
 
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public long testCompressThroughput(ThreadState state) throws Exception
+    {
+        // Compress the content as the gzip interceptor does, writing chunks of a buffer size.
+        Deflater deflater = _pool.acquire();
+        byte[] buffer = state._buffer;
+        long compressed = 0;
+        for (int offset = 0; offset < _content.length; offset += BUFFER_SIZE)
+        {
+            deflater.setInput(_content, offset, Math.min(BUFFER_SIZE, _content.length - offset));
+            while (!deflater.needsInput())
+                compressed += deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH);
+        }
+        deflater.finish();
+        while (!deflater.finished())
+            compressed += deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH);
+        _pool.release(deflater);
+
+        return compressed;
+    }
+
     public static void main(String[] args) throws RunnerException
     {
         Options opt = new OptionsBuilder()
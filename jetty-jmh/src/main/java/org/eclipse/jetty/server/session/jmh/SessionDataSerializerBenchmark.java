@@ -0,0 +1,136 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.server.session.CompactSessionDataSerializer;
+import org.eclipse.jetty.server.session.JavaSessionDataSerializer;
+import org.eclipse.jetty.server.session.SessionData;
+import org.eclipse.jetty.server.session.SessionDataSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Benchmark)
+@Threads(4)
+@Warmup(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+public class SessionDataSerializerBenchmark
+{
+    @Param({"JAVA", "COMPACT"})
+    public String serializerType;
+
+    SessionDataSerializer _serializer;
+    SessionData _data;
+    byte[] _serialized;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        switch (serializerType)
+        {
+            case "JAVA":
+                _serializer = new JavaSessionDataSerializer();
+                break;
+
+            case "COMPACT":
+                _serializer = new CompactSessionDataSerializer();
+                break;
+
+            default:
+                throw new IllegalStateException("Unknown serializerType Parameter");
+        }
+
+        // A typical session: a user identity, some counters and flags, and a small cart.
+        long now = System.currentTimeMillis();
+        _data = new SessionData("node0abcdefghijklmnopqrstuvwxyz0", "/shop", "0.0.0.0", now, now, now, 1800000);
+        _data.setAttribute("user", "someone@example.com");
+        _data.setAttribute("userId", 1234567L);
+        _data.setAttribute("locale", "en_AU");
+        _data.setAttribute("visits", 42);
+        _data.setAttribute("admin", Boolean.FALSE);
+        _data.setAttribute("csrfToken", new byte[32]);
+        List<String> cart = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            cart.add("product-" + i);
+        _data.setAttribute("cart", cart);
+        Map<String, Object> preferences = new HashMap<>();
+        preferences.put("theme", "dark");
+        preferences.put("pageSize", 50);
+        preferences.put("notifications", Boolean.TRUE);
+        _data.setAttribute("preferences", preferences);
+
+        _serialized = serialize();
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public byte[] testSerialize() throws Exception
+    {
+        return serialize();
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public SessionData testDeserialize() throws Exception
+    {
+        SessionData data = new SessionData(_data.getId(), _data.getContextPath(), _data.getVhost(),
+            _data.getCreated(), _data.getAccessed(), _data.getLastAccessed(), _data.getMaxInactiveMs());
+        _serializer.deserializeAttributes(data, new ByteArrayInputStream(_serialized));
+        return data;
+    }
+
+    private byte[] serialize() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        _serializer.serializeAttributes(_data, out);
+        return out.toByteArray();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(SessionDataSerializerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
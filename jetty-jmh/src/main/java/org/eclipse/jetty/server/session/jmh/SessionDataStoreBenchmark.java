@@ -0,0 +1,169 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session.jmh;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.session.AbstractSessionDataStore;
+import org.eclipse.jetty.server.session.FileSessionDataStore;
+import org.eclipse.jetty.server.session.MappedFileSessionDataStore;
+import org.eclipse.jetty.server.session.SessionContext;
+import org.eclipse.jetty.server.session.SessionData;
+import org.eclipse.jetty.util.IO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Benchmark)
+@Threads(4)
+@Warmup(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+public class SessionDataStoreBenchmark
+{
+    @Param({"FILE", "MAPPED"})
+    public String storeType;
+
+    @Param({"10000"})
+    public int sessions;
+
+    File _storeDir;
+    ContextHandler _context;
+    AbstractSessionDataStore _store;
+    List<SessionData> _data;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        _storeDir = Files.createTempDirectory("sessions").toFile();
+        _context = new ContextHandler("/bench");
+
+        // Populate the store, so that starting it has sessions to recover.
+        _data = new ArrayList<>();
+        AbstractSessionDataStore store = newStore();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < sessions; i++)
+        {
+            SessionData data = store.newSessionData("session" + i, now, now, now, 1800000);
+            data.setLastNode("node0");
+            data.setExpiry(now + 1800000);
+            data.setAttribute("user", "someone" + i + "@example.com");
+            data.setAttribute("visits", i);
+            data.setAttribute("csrfToken", new byte[32]);
+            store.store(data.getId(), data);
+            _data.add(data);
+        }
+        store.stop();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws Exception
+    {
+        IO.delete(_storeDir);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() throws Exception
+    {
+        _store = newStore();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() throws Exception
+    {
+        _store.stop();
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public void testStore() throws Exception
+    {
+        SessionData data = _data.get(ThreadLocalRandom.current().nextInt(_data.size()));
+        SessionData copy = _store.newSessionData(data.getId(), data.getCreated(), data.getAccessed(), data.getLastAccessed(), data.getMaxInactiveMs());
+        copy.setLastNode(data.getLastNode());
+        copy.setExpiry(data.getExpiry());
+        copy.putAllAttributes(data.getAllAttributes());
+        _store.doStore(copy.getId(), copy, 0);
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.AverageTime})
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Threads(1)
+    public AbstractSessionDataStore testStart() throws Exception
+    {
+        AbstractSessionDataStore store = newStore();
+        store.stop();
+        return store;
+    }
+
+    private AbstractSessionDataStore newStore() throws Exception
+    {
+        AbstractSessionDataStore store;
+        switch (storeType)
+        {
+            case "FILE":
+                FileSessionDataStore fileStore = new FileSessionDataStore();
+                fileStore.setStoreDir(_storeDir);
+                store = fileStore;
+                break;
+
+            case "MAPPED":
+                MappedFileSessionDataStore mappedStore = new MappedFileSessionDataStore();
+                mappedStore.setStoreDir(_storeDir);
+                store = mappedStore;
+                break;
+
+            default:
+                throw new IllegalStateException("Unknown storeType Parameter");
+        }
+        store.initialize(new SessionContext("node0", _context.getServletContext()));
+        store.start();
+        return store;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(SessionDataStoreBenchmark.class.getSimpleName())
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
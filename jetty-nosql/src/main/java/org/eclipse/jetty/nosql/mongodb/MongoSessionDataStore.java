@@ -21,7 +21,7 @@ package org.eclipse.jetty.nosql.mongodb;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.ObjectOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -31,7 +31,6 @@ import org.eclipse.jetty.nosql.NoSqlSessionDataStore;
 import org.eclipse.jetty.server.session.SessionContext;
 import org.eclipse.jetty.server.session.SessionData;
 import org.eclipse.jetty.server.session.UnreadableSessionDataException;
-import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.log.Log;
@@ -134,6 +133,12 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
     
     public final static String __ATTRIBUTES = "attributes";
     
+    /**
+     * Attributes set or removed by delta stores since the attributes were last fully stored.
+     * A removed attribute has an empty value.
+     */
+    public final static String __ATTRIBUTE_DELTAS = "attributeDeltas";
+    
     /**
      * Time this session will expire, based on last access time and maxIdle
      */
@@ -243,7 +248,7 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
                     for (String name : sessionSubDocumentForContext.keySet())
                     {
                         //skip special metadata attribute which is not one of the actual session attributes
-                        if ( __METADATA.equals(name) )
+                        if ( __METADATA.equals(name) || __ATTRIBUTE_DELTAS.equals(name) )
                             continue;         
                         String attr = MongoUtils.decodeName(name);
                         Object value = MongoUtils.decodeValue(sessionSubDocumentForContext.get(name));
@@ -254,12 +259,35 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
                 else
                 {
                     //attributes have special serialized format
-                    try (ByteArrayInputStream bais = new ByteArrayInputStream(attributes);
-                         ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(bais);)
+                    try (ByteArrayInputStream bais = new ByteArrayInputStream(attributes))
                     {
-                        SessionData.deserializeAttributes(data, ois);
+                        _serializer.deserializeAttributes(data, bais);
                     }
                 }
+
+                //apply any attributes written by delta stores
+                DBObject deltas = (DBObject)sessionSubDocumentForContext.get(__ATTRIBUTE_DELTAS);
+                if (deltas != null)
+                {
+                    for (String name : deltas.keySet())
+                    {
+                        String attr = MongoUtils.decodeName(name);
+                        byte[] bytes = (byte[])deltas.get(name);
+                        if (bytes == null || bytes.length == 0)
+                        {
+                            data.setAttribute(attr, null);
+                        }
+                        else
+                        {
+                            try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes))
+                            {
+                                data.setAttribute(attr, _serializer.deserializeAttribute(bais));
+                            }
+                        }
+                    }
+                    //the data is as it is stored
+                    data.setDirty(false);
+                }
             }
             else
             {
@@ -520,10 +548,9 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
         sets.put(__ACCESSED, data.getAccessed());
         sets.put(__LAST_ACCESSED, data.getLastAccessed());
         
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(baos);)
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream())
         {
-            SessionData.serializeAttributes(data, oos);       
+            _serializer.serializeAttributes(data, baos);
             sets.put(getContextSubfield(__ATTRIBUTES), baos.toByteArray());
         }
 
@@ -531,11 +558,65 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
         if (!sets.isEmpty())
             update.put("$set",sets);
 
+        //the attributes have been fully stored, so discard any deltas
+        update.put("$unset", new BasicDBObject(getContextSubfield(__ATTRIBUTE_DELTAS), ""));
+
         WriteResult res = _dbSessions.update(key,update,upsert,false,WriteConcern.SAFE);
         if (LOG.isDebugEnabled())
             LOG.debug("Save:db.sessions.update( {}, {},{} )", key, update, res); 
     }
 
+    /**
+     * Update the metadata of the session, and set a field in the attribute deltas
+     * of the context for each attribute that has been set or removed.
+     * 
+     * @see org.eclipse.jetty.server.session.AbstractSessionDataStore#doStoreDelta(java.lang.String, org.eclipse.jetty.server.session.SessionData, long, java.util.Set)
+     */
+    @Override
+    public void doStoreDelta(String id, SessionData data, long lastSaveTime, Set<String> dirtyAttributes) throws Exception
+    {
+        BasicDBObject key = new BasicDBObject(__ID, id);
+        BasicDBObject update = new BasicDBObject();
+        BasicDBObject sets = new BasicDBObject();
+
+        Object version = ((NoSqlSessionData)data).getVersion();
+        version = new Long(((Number)version).longValue() + 1);
+        ((NoSqlSessionData)data).setVersion(version);
+        update.put("$inc",_version_1);
+
+        sets.put(getContextSubfield(__LASTSAVED), data.getLastSaved());
+        sets.put(getContextSubfield(__LASTNODE), data.getLastNode());
+        sets.put(__MAX_IDLE, data.getMaxInactiveMs());
+        sets.put(__EXPIRY, data.getExpiry());
+        sets.put(__ACCESSED, data.getAccessed());
+        sets.put(__LAST_ACCESSED, data.getLastAccessed());
+
+        String deltas = getContextSubfield(__ATTRIBUTE_DELTAS);
+        for (String name : dirtyAttributes)
+            sets.put(deltas + "." + MongoUtils.encodeName(name), serializeAttribute(data.getAttribute(name)));
+
+        update.put("$set",sets);
+
+        WriteResult res = _dbSessions.update(key,update,false,false,WriteConcern.SAFE);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Save delta:db.sessions.update( {}, {},{} )", key, update, res); 
+    }
+    
+    
+    private byte[] serializeAttribute (Object value) throws IOException
+    {
+        //an empty value records that the attribute was removed
+        if (value == null)
+            return new byte[0];
+
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream())
+        {
+            _serializer.serializeAttribute(value, baos);
+            return baos.toByteArray();
+        }
+    }
+
+
     protected void ensureIndexes() throws MongoException
     {
         _version_1 = new BasicDBObject(getContextSubfield(__VERSION),1);
@@ -593,6 +674,13 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
     }
 
 
+    @Override
+    public boolean isDeltaCapable()
+    {
+        return true;
+    }
+
+
 
     @Override
     public String toString()
@@ -135,6 +135,9 @@ public class MongoSessionDataStoreFactory extends AbstractSessionDataStoreFactor
         MongoSessionDataStore store = new MongoSessionDataStore();
         store.setGracePeriodSec(getGracePeriodSec());
         store.setSavePeriodSec(getSavePeriodSec());
+        store.setStoreDeltas(isStoreDeltas());
+        if (getSerializer() != null)
+            store.setSerializer(getSerializer());
         Mongo mongo;
 
         if (!StringUtil.isBlank(getConnectionString()))
@@ -23,12 +23,24 @@ etc/jetty-gzip.xml
 ## Gzip compression level (-1 for default)
 # jetty.gzip.compressionLevel=-1
 
+## Gzip compression level when the server is low on threads (-2 to use the compression level)
+# jetty.gzip.lowThreadsCompressionLevel=-2
+
 ## User agents for which gzip is disabled
 # jetty.gzip.excludedUserAgent=.*MSIE.6\.0.*
 
 ## Inflate request buffer size, or 0 for no request inflation
 # jetty.gzip.inflateBufferSize=0
 
+## Maximum inflated request size in bytes (-1 for no limit)
+# jetty.gzip.maxInflatedSize=-1
+
+## Maximum ratio of inflated to compressed request bytes (-1 for no limit)
+# jetty.gzip.maxInflateRatio=-1
+
+## Inflater pool max size (-1 for unlimited, 0 for no pool)
+# jetty.gzip.inflaterPoolCapacity=-1
+
 ## Deflater pool max size (-1 for unlimited, 0 for no pool)
 # jetty.gzip.deflaterPoolCapacity=-1
 
@@ -0,0 +1,29 @@
+DO NOT EDIT - See: https://www.eclipse.org/jetty/documentation/current/startup-modules.html
+
+[description]
+Enable first level session cache in ConcurrentHashMap, limited
+by number of sessions and/or their estimated size in bytes.
+When a limit is exceeded, the least recently or least frequently
+used sessions are saved to the session store and evicted.
+
+[tags]
+session
+
+[provides]
+session-cache
+
+[depends]
+sessions
+
+[xml]
+etc/sessions/session-cache-bounded.xml
+
+[ini-template]
+#jetty.session.evictionPolicy=-1
+#jetty.session.saveOnInactiveEvict=false
+#jetty.session.saveOnCreate=false
+#jetty.session.removeUnloadableSessions=false
+#jetty.session.coalesceAccess=false
+#jetty.session.bounded.maxSessions=-1
+#jetty.session.bounded.maxWeight=-1
+#jetty.session.bounded.evictionOrder=LRU
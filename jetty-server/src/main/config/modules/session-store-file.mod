@@ -21,4 +21,7 @@ sessions/
 [ini-template]
 jetty.session.file.storeDir=${jetty.base}/sessions
 #jetty.session.file.deleteUnrestorableFiles=false
+#jetty.session.file.shardDepth=0
+#jetty.session.file.indexed=false
+#jetty.session.file.syncIntervalMs=0
 #jetty.session.savePeriod.seconds=0
\ No newline at end of file
@@ -27,6 +27,12 @@ db-connection-type?=datasource
 #jetty.session.gracePeriod.seconds=3600
 #jetty.session.savePeriod.seconds=0
 
+## Only store the changed attributes of previously saved sessions
+#jetty.session.jdbc.storeDeltas=false
+
+## Store sessions with a single insert-or-update statement, if the database supports it
+#jetty.session.jdbc.upsert=false
+
 #jetty.session.jdbc.blobType=
 #jetty.session.jdbc.longType=
 #jetty.session.jdbc.stringType=
@@ -54,6 +60,9 @@ db-connection-type=datasource
 #jetty.session.jdbc.schema.maxIntervalColumn=maxInterval
 #jetty.session.jdbc.schema.mapColumn=map
 #jetty.session.jdbc.schema.table=JettySessions
+#jetty.session.jdbc.schema.attributeTable=JettySessionAttributes
+#jetty.session.jdbc.schema.attributeNameColumn=attributeName
+#jetty.session.jdbc.schema.attributeValueColumn=attributeValue
 
 
 
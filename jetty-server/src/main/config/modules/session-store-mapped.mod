@@ -0,0 +1,27 @@
+DO NOT EDIT - See: https://www.eclipse.org/jetty/documentation/current/startup-modules.html
+
+[description]
+Enables session persistent storage in memory mapped,
+log-structured segment files.
+
+[tags]
+session
+
+[provides]
+session-store
+
+[depends]
+sessions
+
+[xml]
+etc/sessions/mapped/session-store.xml
+
+[files]
+sessions/
+
+[ini-template]
+jetty.session.mapped.storeDir=${jetty.base}/sessions
+#jetty.session.mapped.segmentSize=67108864
+#jetty.session.mapped.compactionThreshold=0.5
+#jetty.session.mapped.syncIntervalMs=0
+#jetty.session.savePeriod.seconds=0
@@ -0,0 +1,24 @@
+DO NOT EDIT - See: https://www.eclipse.org/jetty/documentation/current/startup-modules.html
+
+[description]
+Enables asynchronous, batched writes of SessionData to a SessionDataStore.
+
+[tags]
+session
+
+
+[depend]
+session-store
+
+
+[xml]
+etc/sessions/session-write-behind-store.xml
+
+
+[ini-template]
+
+## Max ms a stored session waits before it is written
+#jetty.session.writeBehind.maxDelayMs=1000
+
+## Number of queued sessions that triggers a write
+#jetty.session.writeBehind.maxBatchSize=100
@@ -19,19 +19,30 @@
 package org.eclipse.jetty.server;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
 
 import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.DateGenerator;
@@ -43,16 +54,37 @@ import org.eclipse.jetty.http.MimeTypes.Type;
 import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.http.PrecompressedHttpContent;
 import org.eclipse.jetty.http.ResourceHttpContent;
+import org.eclipse.jetty.util.B64Code;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.resource.JarFileResource;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceFactory;
 
+/**
+ * <p>A {@link HttpContent.ContentFactory} that caches the content of resources.</p>
+ * <p>Cached entries are evicted with a segmented LRU policy: new entries enter a
+ * probationary segment and are promoted to a protected segment when accessed again,
+ * so that hot entries are not evicted by a scan of entries accessed only once.
+ * When the cache is full, a new entry is only admitted if it has been requested
+ * at least as frequently as the entry that it would evict, as estimated by a
+ * compact frequency sketch of recent requests.</p>
+ * <p>When {@link #setContentEtags(boolean) content etags} are enabled, cached entries
+ * have a strong ETag computed from a hash of their content, so that the same file
+ * has the same ETag on every server of a cluster.</p>
+ */
+@ManagedObject("Cache of resource contents")
 public class CachedContentFactory implements HttpContent.ContentFactory
 {
     private static final Logger LOG = Log.getLogger(CachedContentFactory.class);
     private final static Map<CompressedContentFormat, CachedPrecompressedHttpContent> NO_PRECOMPRESSED = Collections.unmodifiableMap(Collections.emptyMap());
+    private static final int MIN_GENERATED_PRECOMPRESSED_SIZE = 512;
+    private static final int MAX_INLINE_GENERATED_PRECOMPRESSED_SIZE = 64 * 1024;
 
     private final ConcurrentMap<String, CachedHttpContent> _cache;
     private final AtomicInteger _cachedSize;
@@ -64,9 +96,28 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     private final CompressedContentFormat[] _precompressedFormats;
     private final boolean _useFileMappedBuffer;
 
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final Segment _probation = new Segment();
+    private final Segment _protected = new Segment();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private final LongAdder _evictedBytes = new LongAdder();
+    private final LongAdder _rejections = new LongAdder();
+    private final LongAdder _validations = new LongAdder();
+    private final LongAdder _validationNanos = new LongAdder();
+    private final LongAdder _skippedValidations = new LongAdder();
+    private final LongAdder _generatedPrecompressed = new LongAdder();
+    private final LongAdder _contentEtagsComputed = new LongAdder();
+
     private int _maxCachedFileSize = 128 * 1024 * 1024;
     private int _maxCachedFiles = 2048;
     private int _maxCacheSize = 256 * 1024 * 1024;
+    private long _validationInterval;
+    private boolean _generatePrecompressed;
+    private boolean _contentEtags;
+    private Executor _executor;
+    private volatile FrequencySketch _sketch = new FrequencySketch(_maxCachedFiles);
 
     /**
      * Constructor.
@@ -91,16 +142,128 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         _precompressedFormats = precompressedFormats;
     }
 
+    @ManagedAttribute("The size in bytes of the cached content buffers")
     public int getCachedSize()
     {
         return _cachedSize.get();
     }
 
+    @ManagedAttribute("The number of cached files")
     public int getCachedFiles()
     {
         return _cachedFiles.get();
     }
 
+    @ManagedAttribute("The number of requests for content found in the cache")
+    public long getHits()
+    {
+        return _hits.longValue();
+    }
+
+    @ManagedAttribute("The number of requests for content not found in the cache")
+    public long getMisses()
+    {
+        return _misses.longValue();
+    }
+
+    @ManagedAttribute("The ratio of requests for content found in the cache")
+    public double getHitRatio()
+    {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0D : (double)hits / total;
+    }
+
+    @ManagedAttribute("The number of cached files evicted to respect the cache limits")
+    public long getEvictions()
+    {
+        return _evictions.longValue();
+    }
+
+    @ManagedAttribute("The size in bytes of the content buffers evicted to respect the cache limits")
+    public long getEvictedBytes()
+    {
+        return _evictedBytes.longValue();
+    }
+
+    @ManagedAttribute("The number of cacheable files not admitted in the full cache because requested less frequently than the eviction candidate")
+    public long getRejections()
+    {
+        return _rejections.longValue();
+    }
+
+    @ManagedAttribute("The number of validations of cached files against the file system")
+    public long getValidations()
+    {
+        return _validations.longValue();
+    }
+
+    @ManagedAttribute("The average time in ns of a validation of a cached file against the file system")
+    public long getValidationTimeAverage()
+    {
+        long validations = getValidations();
+        return validations == 0 ? 0 : _validationNanos.longValue() / validations;
+    }
+
+    @ManagedAttribute("The number of cache hits that skipped the validation against the file system")
+    public long getSkippedValidations()
+    {
+        return _skippedValidations.longValue();
+    }
+
+    @ManagedAttribute("The number of precompressed contents generated")
+    public long getGeneratedPrecompressed()
+    {
+        return _generatedPrecompressed.longValue();
+    }
+
+    @ManagedAttribute("The number of content hash ETags computed")
+    public long getContentEtagsComputed()
+    {
+        return _contentEtagsComputed.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _misses.reset();
+        _evictions.reset();
+        _evictedBytes.reset();
+        _rejections.reset();
+        _validations.reset();
+        _validationNanos.reset();
+        _skippedValidations.reset();
+        _generatedPrecompressed.reset();
+        _contentEtagsComputed.reset();
+    }
+
+    /**
+     * @return the interval in ms during which a validated cached file is not validated again
+     * @see #setValidationInterval(long)
+     */
+    @ManagedAttribute("The interval in ms during which a validated cached file is not validated again")
+    public long getValidationInterval()
+    {
+        return _validationInterval;
+    }
+
+    /**
+     * <p>Sets the interval during which a validated cached file is not validated again.</p>
+     * <p>Cached files are validated by checking the last modified time and length of their
+     * resource, which costs a file system access. By default they are validated on every
+     * access; with a positive interval, cache hits within the interval are served without
+     * accessing the file system, so that changes to a file are detected with a delay of at
+     * most the interval.</p>
+     *
+     * @param validationInterval the interval in ms, or 0 to validate cached files on every access
+     */
+    public void setValidationInterval(long validationInterval)
+    {
+        _validationInterval = validationInterval;
+    }
+
+    @ManagedAttribute("The maximum size in bytes of a cached file")
     public int getMaxCachedFileSize()
     {
         return _maxCachedFileSize;
@@ -112,6 +275,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         shrinkCache();
     }
 
+    @ManagedAttribute("The maximum size in bytes of the cached content buffers")
     public int getMaxCacheSize()
     {
         return _maxCacheSize;
@@ -126,6 +290,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     /**
      * @return the max number of cached files.
      */
+    @ManagedAttribute("The maximum number of cached files")
     public int getMaxCachedFiles()
     {
         return _maxCachedFiles;
@@ -137,14 +302,86 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     public void setMaxCachedFiles(int maxCachedFiles)
     {
         _maxCachedFiles = maxCachedFiles;
+        _sketch = new FrequencySketch(maxCachedFiles);
         shrinkCache();
     }
 
+    /**
+     * @return whether gzip precompressed content is generated for cached content that has none
+     * @see #setGeneratePrecompressed(boolean)
+     */
+    @ManagedAttribute("Whether gzip precompressed content is generated for cached content that has none")
+    public boolean isGeneratePrecompressed()
+    {
+        return _generatePrecompressed;
+    }
+
+    /**
+     * <p>Sets whether gzip precompressed content is generated for cached content that has none.</p>
+     * <p>When the {@link CompressedContentFormat#GZIP} format is one of the precompressed formats
+     * of this factory, the first request for the precompressed variants of a cached compressible
+     * content triggers its compression, using the {@link #setExecutor(Executor) executor} if any.
+     * Without an executor, only content smaller than 64 KiB is compressed, as it is compressed
+     * in the requesting thread. The identity content is served until the compression completes.
+     * The compressed bytes are then kept in memory with the cached content, counting towards
+     * the {@link #getMaxCacheSize() cache size}, and served as a precompressed variant until
+     * the content is evicted or invalidated.</p>
+     *
+     * @param generatePrecompressed whether to generate gzip precompressed content
+     */
+    public void setGeneratePrecompressed(boolean generatePrecompressed)
+    {
+        _generatePrecompressed = generatePrecompressed;
+    }
+
+    /**
+     * @return whether cached content has a strong ETag computed from a hash of its content
+     * @see #setContentEtags(boolean)
+     */
+    @ManagedAttribute("Whether cached content has a strong ETag computed from a hash of its content")
+    public boolean isContentEtags()
+    {
+        return _contentEtags;
+    }
+
+    /**
+     * <p>Sets whether cached content has a strong ETag computed from a hash of its content.</p>
+     * <p>The default weak ETags are derived from the last modified time and length of a file,
+     * which differ between servers deploying the same file at different times. Content ETags
+     * are instead computed once per version of a cached file, using the
+     * {@link #setExecutor(Executor) executor} if any, and are the same on every server.
+     * The weak ETag is used until the content ETag has been computed.</p>
+     * <p>This has no effect if the factory does not support etags.</p>
+     *
+     * @param contentEtags whether to compute content hash ETags
+     */
+    public void setContentEtags(boolean contentEtags)
+    {
+        _contentEtags = contentEtags;
+    }
+
+    /**
+     * @return the executor used to generate precompressed content and content ETags, or null to generate them in the requesting thread
+     */
+    public Executor getExecutor()
+    {
+        return _executor;
+    }
+
+    /**
+     * @param executor the executor used to generate precompressed content and content ETags, or null to generate them in the requesting thread
+     */
+    public void setExecutor(Executor executor)
+    {
+        _executor = executor;
+    }
+
     public boolean isUseFileMappedBuffer()
     {
         return _useFileMappedBuffer;
     }
 
+    @ManagedOperation(value = "Flushes the cache", impact = "ACTION")
     public void flushCache()
     {
         while (_cache.size() > 0)
@@ -179,10 +416,17 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     @Override
     public HttpContent getContent(String pathInContext, int maxBufferSize) throws IOException
     {
+        _sketch.increment(pathInContext);
+
         // Is the content in this cache?
         CachedHttpContent content = _cache.get(pathInContext);
         if (content != null && (content).isValid())
+        {
+            _hits.increment();
+            touch(content);
             return content;
+        }
+        _misses.increment();
 
         // try loading the content from our factory.
         Resource resource = _factory.getResource(pathInContext);
@@ -225,7 +469,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             return new ResourceHttpContent(resource, _mimeTypes.getMimeByExtension(resource.toString()), getMaxCachedFileSize());
 
         // Will it fit in the cache?
-        if (isCacheable(resource))
+        if (isCacheable(resource) && isAdmitted(pathInContext))
         {
             CachedHttpContent content;
 
@@ -251,6 +495,10 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                                 compressedContent.invalidate();
                                 compressedContent = added;
                             }
+                            else
+                            {
+                                link(compressedContent);
+                            }
                         }
                     }
                     if (compressedContent != null)
@@ -268,6 +516,10 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                 content.invalidate();
                 content = added;
             }
+            else
+            {
+                link(content);
+            }
 
             return content;
         }
@@ -299,36 +551,198 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         return new ResourceHttpContent(resource, mt, maxBufferSize);
     }
 
-    private void shrinkCache()
+    /**
+     * @param pathInContext the path of a cacheable content not in the cache
+     * @return whether the content may be added to the cache, possibly evicting another entry
+     */
+    private boolean isAdmitted(String pathInContext)
     {
-        // While we need to shrink
-        while (_cache.size() > 0 && (_cachedFiles.get() > _maxCachedFiles || _cachedSize.get() > _maxCacheSize))
+        if (_cachedFiles.get() < _maxCachedFiles)
+            return true;
+
+        CachedHttpContent victim;
+        _lock.lock();
+        try
         {
-            // Scan the entire cache and generate an ordered list by last accessed time.
-            SortedSet<CachedHttpContent> sorted = new TreeSet<>((c1, c2) ->
-            {
-                if (c1._lastAccessed < c2._lastAccessed)
-                    return -1;
+            victim = nextVictim();
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+
+        FrequencySketch sketch = _sketch;
+        if (victim == null || sketch.frequency(pathInContext) >= sketch.frequency(victim.getKey()))
+            return true;
+        _rejections.increment();
+        return false;
+    }
+
+    /**
+     * <p>Adds a new cache entry to the probationary segment.</p>
+     *
+     * @param content the content just added to the cache
+     */
+    private void link(CachedHttpContent content)
+    {
+        _lock.lock();
+        try
+        {
+            // The content may have been invalidated concurrently.
+            if (_cache.get(content.getKey()) == content && content._segment == null)
+                _probation.addLast(content);
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
 
-                if (c1._lastAccessed > c2._lastAccessed)
-                    return 1;
+    private void unlink(CachedHttpContent content)
+    {
+        _lock.lock();
+        try
+        {
+            if (content._segment != null)
+                content._segment.remove(content);
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
 
-                if (c1._contentLengthValue < c2._contentLengthValue)
-                    return -1;
+    /**
+     * <p>Records an access to a cache entry, promoting it to the protected
+     * segment, whose least recently used entries are demoted back to the
+     * probationary segment.</p>
+     * <p>Accesses are not recorded when the lock is contended, as a
+     * slightly inaccurate recency is preferable to a contended hit.</p>
+     *
+     * @param content the content accessed
+     */
+    private void touch(CachedHttpContent content)
+    {
+        if (!_lock.tryLock())
+            return;
+        try
+        {
+            Segment segment = content._segment;
+            if (segment == null)
+                return;
+            segment.remove(content);
+            _protected.addLast(content);
+            if (segment == _probation)
+            {
+                int maxProtected = Math.max(1, _maxCachedFiles - _maxCachedFiles / 5);
+                while (_protected._size > maxProtected)
+                    _probation.addLast(_protected.removeFirst());
+            }
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
 
-                return c1._key.compareTo(c2._key);
-            });
-            sorted.addAll(_cache.values());
+    private CachedHttpContent nextVictim()
+    {
+        CachedHttpContent victim = _probation._head;
+        return victim == null ? _protected._head : victim;
+    }
 
-            // Invalidate least recently used first
-            for (CachedHttpContent content : sorted)
+    private void shrinkCache()
+    {
+        _lock.lock();
+        try
+        {
+            // Evict least recently used first, probationary segment first.
+            while (_cachedFiles.get() > _maxCachedFiles || _cachedSize.get() > _maxCacheSize)
             {
-                if (_cachedFiles.get() <= _maxCachedFiles && _cachedSize.get() <= _maxCacheSize)
+                CachedHttpContent victim = nextVictim();
+                if (victim == null)
                     break;
-                if (content == _cache.remove(content.getKey()))
-                    content.invalidate();
+                victim._segment.remove(victim);
+                if (_cache.remove(victim.getKey(), victim))
+                {
+                    _evictions.increment();
+                    _evictedBytes.add(victim.getCachedBytes());
+                    victim.invalidate();
+                }
             }
         }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @param content the cached content
+     * @return whether the content type of the cached content is worth compressing
+     */
+    protected boolean isCompressible(HttpContent content)
+    {
+        String mimeType = content.getContentTypeValue();
+        if (mimeType == null)
+            return false;
+        mimeType = MimeTypes.getContentTypeWithoutCharset(mimeType).toLowerCase(Locale.ENGLISH);
+        return mimeType.startsWith("text/") ||
+            mimeType.endsWith("+xml") ||
+            mimeType.endsWith("+json") ||
+            mimeType.endsWith("/javascript") ||
+            mimeType.endsWith("/json") ||
+            mimeType.endsWith("/xml");
+    }
+
+    /**
+     * @param resource the resource to compress
+     * @return the gzip compressed bytes of the resource
+     * @throws IOException if the resource cannot be read
+     */
+    protected ByteBuffer compress(Resource resource) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int)Math.min(Integer.MAX_VALUE, resource.length() / 2));
+        try (InputStream in = resource.getInputStream(); GZIPOutputStream out = new GZIPOutputStream(bytes))
+        {
+            IO.copy(in, out);
+        }
+        return BufferUtil.toBuffer(bytes.toByteArray());
+    }
+
+    /**
+     * @param resource the resource to hash
+     * @return the strong ETag of the resource, computed from a hash of its content
+     * @throws IOException if the resource cannot be read
+     */
+    protected String computeContentEtag(Resource resource) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (Exception e)
+        {
+            throw new IOException(e);
+        }
+
+        byte[] bytes = new byte[8192];
+        try (InputStream in = resource.getInputStream())
+        {
+            int read;
+            while ((read = in.read(bytes)) >= 0)
+                digest.update(bytes, 0, read);
+        }
+
+        // 128 bits of the digest are plenty to identify a version of a file.
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+        StringBuilder etag = new StringBuilder(24);
+        etag.append('"');
+        B64Code.encode(hash.getLong(), etag);
+        B64Code.encode(hash.getLong(), etag);
+        etag.append('"');
+        return etag.toString();
     }
 
     protected ByteBuffer getIndirectBuffer(Resource resource)
@@ -352,6 +766,9 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         {
             if (_useFileMappedBuffer && resource.getFile() != null && resource.length() < Integer.MAX_VALUE)
                 return BufferUtil.toMappedBuffer(resource.getFile());
+            // Stored jar entries are mapped regions of the jar file
+            if (_useFileMappedBuffer && resource instanceof JarFileResource)
+                return ((JarFileResource)resource).getMappedBuffer();
         }
         catch (IOException | IllegalArgumentException e)
         {
@@ -393,12 +810,19 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         private final HttpField _contentLength;
         private final HttpField _lastModified;
         private final long _lastModifiedValue;
-        private final HttpField _etag;
-        private final Map<CompressedContentFormat, CachedPrecompressedHttpContent> _precompressed;
+        private volatile HttpField _etag;
+        private volatile Map<CompressedContentFormat, CachedPrecompressedHttpContent> _precompressed;
+        private final AtomicBoolean _hashing = new AtomicBoolean();
+        private final AtomicBoolean _generating = new AtomicBoolean();
+        private final AtomicReference<ByteBuffer> _generatedBuffer = new AtomicReference<>();
         private final AtomicReference<ByteBuffer> _indirectBuffer = new AtomicReference<>();
         private final AtomicReference<ByteBuffer> _directBuffer = new AtomicReference<>();
         private final AtomicReference<ByteBuffer> _mappedBuffer = new AtomicReference<>();
-        private volatile long _lastAccessed;
+        // Segment list fields, guarded by the factory lock.
+        private Segment _segment;
+        private CachedHttpContent _prev;
+        private CachedHttpContent _next;
+        private volatile long _validated;
 
         CachedHttpContent(String pathInContext, Resource resource, Map<CompressedContentFormat, CachedHttpContent> precompressedResources)
         {
@@ -411,6 +835,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             _mimeType = _contentType == null ? null : MimeTypes.CACHE.get(MimeTypes.getContentTypeWithoutCharset(contentType));
 
             boolean exists = resource.exists();
+            _validated = System.nanoTime();
             _lastModifiedValue = exists ? resource.lastModified() : -1L;
             _lastModified = _lastModifiedValue == -1 ? null
                     : new PreEncodedHttpField(HttpHeader.LAST_MODIFIED, DateGenerator.formatDate(_lastModifiedValue));
@@ -421,17 +846,16 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             if (_cachedFiles.incrementAndGet() > _maxCachedFiles)
                 shrinkCache();
 
-            _lastAccessed = System.currentTimeMillis();
-
             _etag = CachedContentFactory.this._etags ? new PreEncodedHttpField(HttpHeader.ETAG, resource.getWeakETag()) : null;
 
             if (precompressedResources != null)
             {
-                _precompressed = new HashMap<>(precompressedResources.size());
+                Map<CompressedContentFormat, CachedPrecompressedHttpContent> precompressed = new HashMap<>(precompressedResources.size());
                 for (Map.Entry<CompressedContentFormat, CachedHttpContent> entry : precompressedResources.entrySet())
                 {
-                    _precompressed.put(entry.getKey(), new CachedPrecompressedHttpContent(this, entry.getValue(), entry.getKey()));
+                    precompressed.put(entry.getKey(), new CachedPrecompressedHttpContent(this, entry.getValue(), entry.getKey()));
                 }
+                _precompressed = precompressed;
             }
             else
             {
@@ -458,30 +882,49 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         @Override
         public HttpField getETag()
         {
+            if (_contentEtags && _etag != null && _hashing.compareAndSet(false, true))
+                computeEtag();
             return _etag;
         }
 
         @Override
         public String getETagValue()
         {
-            return _etag.getValue();
+            HttpField etag = getETag();
+            return etag == null ? null : etag.getValue();
         }
 
         boolean isValid()
         {
-            if (_lastModifiedValue == _resource.lastModified() && _contentLengthValue == _resource.length())
+            long interval = _validationInterval;
+            long now = System.nanoTime();
+            if (interval > 0 && now - _validated < TimeUnit.MILLISECONDS.toNanos(interval))
             {
-                _lastAccessed = System.currentTimeMillis();
+                _skippedValidations.increment();
                 return true;
             }
 
+            boolean valid = _lastModifiedValue == _resource.lastModified() && _contentLengthValue == _resource.length();
+            _validations.increment();
+            _validated = System.nanoTime();
+            _validationNanos.add(_validated - now);
+            if (valid)
+                return true;
+
             if (this == _cache.remove(_key))
                 invalidate();
             return false;
         }
 
+        private long getCachedBytes()
+        {
+            return BufferUtil.length(_indirectBuffer.get()) + BufferUtil.length(_directBuffer.get()) + BufferUtil.length(_generatedBuffer.get());
+        }
+
         protected void invalidate()
         {
+            unlink(this);
+
             ByteBuffer indirect = _indirectBuffer.getAndSet(null);
             if (indirect != null)
                 _cachedSize.addAndGet(-BufferUtil.length(indirect));
@@ -492,6 +935,10 @@ public class CachedContentFactory implements HttpContent.ContentFactory
 
             _mappedBuffer.getAndSet(null);
 
+            ByteBuffer generated = _generatedBuffer.getAndSet(null);
+            if (generated != null)
+                _cachedSize.addAndGet(-BufferUtil.length(generated));
+
             _cachedFiles.decrementAndGet();
             _resource.close();
         }
@@ -642,6 +1089,90 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             return _resource.getReadableByteChannel();
         }
 
+        private void computeEtag()
+        {
+            Runnable task = () ->
+            {
+                try
+                {
+                    String etag = computeContentEtag(_resource);
+                    // Do not publish the hash of a newer version of the file.
+                    if (_lastModifiedValue == _resource.lastModified() && _contentLengthValue == _resource.length())
+                    {
+                        _etag = new PreEncodedHttpField(HttpHeader.ETAG, etag);
+                        _contentEtagsComputed.increment();
+                    }
+                }
+                catch (Throwable x)
+                {
+                    LOG.warn("Could not hash " + this, x);
+                }
+            };
+
+            Executor executor = getExecutor();
+            if (executor == null)
+                task.run();
+            else
+                executor.execute(task);
+        }
+
+        private void generatePrecompressed()
+        {
+            CompressedContentFormat format = CompressedContentFormat.GZIP;
+            if (!Arrays.asList(_precompressedFormats).contains(format) || _precompressed.containsKey(format))
+                return;
+            if (_contentLengthValue < MIN_GENERATED_PRECOMPRESSED_SIZE || !isCompressible(this))
+                return;
+            Executor executor = getExecutor();
+            if (executor == null && _contentLengthValue > MAX_INLINE_GENERATED_PRECOMPRESSED_SIZE)
+                return;
+
+            Runnable task = () ->
+            {
+                try
+                {
+                    long generated = System.currentTimeMillis();
+                    ByteBuffer buffer = compress(_resource);
+                    int length = buffer.remaining();
+                    if (length >= _contentLengthValue)
+                        return;
+
+                    // Account the size before publishing, as invalidate() releases it.
+                    int size = _cachedSize.addAndGet(length);
+                    if (!_generatedBuffer.compareAndSet(null, buffer))
+                    {
+                        _cachedSize.addAndGet(-length);
+                        return;
+                    }
+
+                    Map<CompressedContentFormat, CachedPrecompressedHttpContent> precompressed = new HashMap<>(_precompressed);
+                    precompressed.put(format, new CachedPrecompressedHttpContent(this, new GeneratedHttpContent(this, buffer, generated), format));
+                    _precompressed = precompressed;
+                    _generatedPrecompressed.increment();
+
+                    if (_cache.get(_key) != this)
+                    {
+                        // Invalidated while compressing.
+                        if (_generatedBuffer.compareAndSet(buffer, null))
+                            _cachedSize.addAndGet(-length);
+                    }
+                    else if (size > _maxCacheSize)
+                    {
+                        shrinkCache();
+                    }
+                }
+                catch (Throwable x)
+                {
+                    LOG.warn("Could not compress " + this, x);
+                }
+            };
+
+            if (executor == null)
+                task.run();
+            else
+                executor.execute(task);
+        }
+
         @Override
         public String toString()
         {
@@ -651,15 +1182,19 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         @Override
         public Map<CompressedContentFormat, ? extends HttpContent> getPrecompressedContents()
         {
-            if (_precompressed.size() == 0)
+            if (isGeneratePrecompressed() && _generating.compareAndSet(false, true))
+                generatePrecompressed();
+
+            Map<CompressedContentFormat, CachedPrecompressedHttpContent> precompressed = _precompressed;
+            if (precompressed.size() == 0)
                 return null;
-            Map<CompressedContentFormat, CachedPrecompressedHttpContent> ret = _precompressed;
-            for (Map.Entry<CompressedContentFormat, CachedPrecompressedHttpContent> entry : _precompressed.entrySet())
+            Map<CompressedContentFormat, CachedPrecompressedHttpContent> ret = precompressed;
+            for (Map.Entry<CompressedContentFormat, CachedPrecompressedHttpContent> entry : precompressed.entrySet())
             {
                 if (!entry.getValue().isValid())
                 {
-                    if (ret == _precompressed)
-                        ret = new HashMap<>(_precompressed);
+                    if (ret == precompressed)
+                        ret = new HashMap<>(precompressed);
                     ret.remove(entry.getKey());
                 }
             }
@@ -667,40 +1202,173 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         }
     }
 
+    /**
+     * <p>A doubly linked list of cache entries, from least to most recently used.</p>
+     */
+    private static class Segment
+    {
+        private CachedHttpContent _head;
+        private CachedHttpContent _tail;
+        private int _size;
+
+        private void addLast(CachedHttpContent content)
+        {
+            content._segment = this;
+            content._prev = _tail;
+            content._next = null;
+            if (_tail == null)
+                _head = content;
+            else
+                _tail._next = content;
+            _tail = content;
+            ++_size;
+        }
+
+        private CachedHttpContent removeFirst()
+        {
+            CachedHttpContent content = _head;
+            remove(content);
+            return content;
+        }
+
+        private void remove(CachedHttpContent content)
+        {
+            if (content._prev == null)
+                _head = content._next;
+            else
+                content._prev._next = content._next;
+            if (content._next == null)
+                _tail = content._prev;
+            else
+                content._next._prev = content._prev;
+            content._segment = null;
+            content._prev = null;
+            content._next = null;
+            --_size;
+        }
+    }
+
+    /**
+     * <p>A count-min sketch estimating how frequently keys have been requested.</p>
+     * <p>Counters are 4 bits and are halved periodically, so that the estimates
+     * reflect recent requests. Updates are not atomic, so a few increments may be
+     * lost under contention, which is acceptable for an estimate.</p>
+     */
+    private static class FrequencySketch
+    {
+        private static final int[] SEEDS = {0x97CB3127, 0xB4B82E39, 0x9D9B6A4F, 0xE0D1C4A1};
+
+        private final byte[] _counters;
+        private final int _width;
+        private final int _sampleSize;
+        private final AtomicInteger _samples = new AtomicInteger();
+
+        private FrequencySketch(int capacity)
+        {
+            int width = 16;
+            while (width < capacity && width < (1 << 24))
+                width <<= 1;
+            _width = width;
+            _counters = new byte[SEEDS.length * width];
+            _sampleSize = 10 * width;
+        }
+
+        private void increment(String key)
+        {
+            int hash = key.hashCode();
+            boolean incremented = false;
+            for (int row = 0; row < SEEDS.length; ++row)
+            {
+                int index = indexOf(hash, row);
+                if (_counters[index] < 15)
+                {
+                    ++_counters[index];
+                    incremented = true;
+                }
+            }
+            if (incremented && _samples.incrementAndGet() >= _sampleSize)
+                age();
+        }
+
+        private int frequency(String key)
+        {
+            int hash = key.hashCode();
+            int frequency = Integer.MAX_VALUE;
+            for (int row = 0; row < SEEDS.length; ++row)
+                frequency = Math.min(frequency, _counters[indexOf(hash, row)]);
+            return frequency;
+        }
+
+        private int indexOf(int hash, int row)
+        {
+            int h = (hash ^ SEEDS[row]) * 0x9E3779B9;
+            h ^= h >>> 16;
+            return row * _width + (h & (_width - 1));
+        }
+
+        private void age()
+        {
+            _samples.set(0);
+            for (int i = 0; i < _counters.length; ++i)
+                _counters[i] >>= 1;
+        }
+    }
+
     public class CachedPrecompressedHttpContent extends PrecompressedHttpContent
     {
         private final CachedHttpContent _content;
-        private final CachedHttpContent _precompressedContent;
-        private final HttpField _etag;
+        private final HttpContent _precompressedContent;
+        private final CompressedContentFormat _format;
+        private volatile HttpField _etag;
+        private volatile HttpField _contentEtag;
 
-        CachedPrecompressedHttpContent(CachedHttpContent content, CachedHttpContent precompressedContent, CompressedContentFormat format)
+        CachedPrecompressedHttpContent(CachedHttpContent content, HttpContent precompressedContent, CompressedContentFormat format)
         {
             super(content, precompressedContent, format);
             _content = content;
             _precompressedContent = precompressedContent;
-
-            _etag = (CachedContentFactory.this._etags) ? new PreEncodedHttpField(HttpHeader.ETAG, _content.getResource().getWeakETag(format._etag)) : null;
+            _format = format;
         }
 
         public boolean isValid()
         {
-            return _precompressedContent.isValid() && _content.isValid() && _content.getResource().lastModified() <= _precompressedContent.getResource().lastModified();
+            if (_precompressedContent instanceof CachedHttpContent)
+            {
+                CachedHttpContent precompressed = (CachedHttpContent)_precompressedContent;
+                return precompressed.isValid() && _content.isValid() && _content._lastModifiedValue <= precompressed._lastModifiedValue;
+            }
+            // Generated from the content itself.
+            return _content.isValid() && _content._lastModifiedValue <= _precompressedContent.getResource().lastModified();
+        }
+
+        @Override
+        public Resource getResource()
+        {
+            return _precompressedContent.getResource();
         }
 
         @Override
         public HttpField getETag()
         {
-            if (_etag != null)
-                return _etag;
-            return super.getETag();
+            // Derived from the ETag of the content, which may change once its hash is computed.
+            HttpField contentEtag = _content.getETag();
+            if (contentEtag == null)
+                return super.getETag();
+            HttpField etag = _etag;
+            if (etag == null || _contentEtag != contentEtag)
+            {
+                String value = contentEtag.getValue();
+                etag = new PreEncodedHttpField(HttpHeader.ETAG, value.substring(0, value.length() - 1) + _format._etagQuote);
+                _contentEtag = contentEtag;
+                _etag = etag;
+            }
+            return etag;
         }
 
         @Override
         public String getETagValue()
         {
-            if (_etag != null)
-                return _etag.getValue();
-            return super.getETagValue();
+            return getETag().getValue();
         }
 
         @Override
@@ -709,4 +1377,255 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             return "Cached" + super.toString();
         }
     }
+
+    /**
+     * <p>The in memory compressed bytes generated from a cached content.</p>
+     */
+    private static class GeneratedHttpContent implements HttpContent
+    {
+        private final CachedHttpContent _content;
+        private final ByteBuffer _buffer;
+        private final GeneratedResource _resource;
+        private final HttpField _contentLength;
+
+        private GeneratedHttpContent(CachedHttpContent content, ByteBuffer buffer, long generated)
+        {
+            _content = content;
+            _buffer = buffer;
+            _resource = new GeneratedResource(content.getResource(), buffer, generated);
+            _contentLength = new PreEncodedHttpField(HttpHeader.CONTENT_LENGTH, Long.toString(buffer.remaining()));
+        }
+
+        @Override
+        public HttpField getContentType()
+        {
+            return _content.getContentType();
+        }
+
+        @Override
+        public String getContentTypeValue()
+        {
+            return _content.getContentTypeValue();
+        }
+
+        @Override
+        public String getCharacterEncoding()
+        {
+            return _content.getCharacterEncoding();
+        }
+
+        @Override
+        public Type getMimeType()
+        {
+            return _content.getMimeType();
+        }
+
+        @Override
+        public HttpField getContentEncoding()
+        {
+            return null;
+        }
+
+        @Override
+        public String getContentEncodingValue()
+        {
+            return null;
+        }
+
+        @Override
+        public HttpField getContentLength()
+        {
+            return _contentLength;
+        }
+
+        @Override
+        public long getContentLengthValue()
+        {
+            return _buffer.remaining();
+        }
+
+        @Override
+        public HttpField getLastModified()
+        {
+            return _content.getLastModified();
+        }
+
+        @Override
+        public String getLastModifiedValue()
+        {
+            return _content.getLastModifiedValue();
+        }
+
+        @Override
+        public HttpField getETag()
+        {
+            return null;
+        }
+
+        @Override
+        public String getETagValue()
+        {
+            return null;
+        }
+
+        @Override
+        public ByteBuffer getIndirectBuffer()
+        {
+            return _buffer.slice();
+        }
+
+        @Override
+        public ByteBuffer getDirectBuffer()
+        {
+            return null;
+        }
+
+        @Override
+        public Resource getResource()
+        {
+            return _resource;
+        }
+
+        @Override
+        public InputStream getInputStream()
+        {
+            return _resource.getInputStream();
+        }
+
+        @Override
+        public ReadableByteChannel getReadableByteChannel()
+        {
+            return _resource.getReadableByteChannel();
+        }
+
+        @Override
+        public void release()
+        {
+        }
+
+        @Override
+        public Map<CompressedContentFormat, ? extends HttpContent> getPrecompressedContents()
+        {
+            return null;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("GeneratedContent@%x{r=%s,l=%d}", hashCode(), _content.getResource(), _buffer.remaining());
+        }
+    }
+
+    /**
+     * <p>The resource of the in memory compressed bytes generated from a cached content,
+     * last modified when the compression started.</p>
+     */
+    private static class GeneratedResource extends Resource
+    {
+        private final Resource _source;
+        private final ByteBuffer _buffer;
+        private final long _lastModified;
+
+        private GeneratedResource(Resource source, ByteBuffer buffer, long lastModified)
+        {
+            _source = source;
+            _buffer = buffer;
+            _lastModified = lastModified;
+        }
+
+        @Override
+        public boolean isContainedIn(Resource r)
+        {
+            return false;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public boolean exists()
+        {
+            return true;
+        }
+
+        @Override
+        public boolean isDirectory()
+        {
+            return false;
+        }
+
+        @Override
+        public long lastModified()
+        {
+            return _lastModified;
+        }
+
+        @Override
+        public long length()
+        {
+            return _buffer.remaining();
+        }
+
+        @Override
+        public URL getURL()
+        {
+            return null;
+        }
+
+        @Override
+        public File getFile()
+        {
+            return null;
+        }
+
+        @Override
+        public String getName()
+        {
+            return _source.getName() + CompressedContentFormat.GZIP._extension;
+        }
+
+        @Override
+        public InputStream getInputStream()
+        {
+            return new ByteArrayInputStream(_buffer.array(), _buffer.arrayOffset() + _buffer.position(), _buffer.remaining());
+        }
+
+        @Override
+        public ReadableByteChannel getReadableByteChannel()
+        {
+            return Channels.newChannel(getInputStream());
+        }
+
+        @Override
+        public boolean delete()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean renameTo(Resource dest)
+        {
+            return false;
+        }
+
+        @Override
+        public String[] list()
+        {
+            return null;
+        }
+
+        @Override
+        public Resource addPath(String path) throws IOException
+        {
+            throw new IOException("Not a directory: " + this);
+        }
+
+        @Override
+        public String toString()
+        {
+            return getName();
+        }
+    }
 }
@@ -21,6 +21,7 @@ package org.eclipse.jetty.server;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executor;
@@ -921,6 +922,42 @@ public class HttpChannel implements Runnable, HttpOutput.Interceptor
         sendResponse(null,content,complete,callback);
     }
 
+    /**
+     * @return true if file content can be sent with {@link #transfer(FileChannel, long, long, Callback)}
+     */
+    public boolean isFileTransferSupported()
+    {
+        // Listeners are notified of the response content buffers, that a transfer does not have.
+        return getHttpConfiguration().isFileTransferEnabled() &&
+            _listeners.isEmpty() &&
+            !_request.isHead() &&
+            _transport.isFileTransferSupported();
+    }
+
+    /**
+     * <p>Non-Blocking send of a region of a file as response content, without copying it.</p>
+     * <p>The response must be committed with a known content length and must be completed
+     * with a subsequent {@link #write(ByteBuffer, boolean, Callback)}.</p>
+     *
+     * @param file the file to send the content from
+     * @param position the position in the file of the first byte to send
+     * @param length the number of bytes to send
+     * @param callback the callback notified when the transfer is complete
+     * @see HttpTransport#transfer(FileChannel, long, long, Callback)
+     */
+    public void transfer(FileChannel file, long position, long length, Callback callback)
+    {
+        _transport.transfer(file, position, length, new Callback.Nested(callback)
+        {
+            @Override
+            public void succeeded()
+            {
+                _written += length;
+                super.succeeded();
+            }
+        });
+    }
+
     @Override
     public void resetBuffer()
     {
@@ -76,6 +76,7 @@ public class HttpConfiguration implements Dumpable
     private CookieCompliance _responseCookieCompliance = CookieCompliance.RFC6265;
     private MultiPartFormDataCompliance _multiPartCompliance = MultiPartFormDataCompliance.LEGACY; // TODO change default in jetty-10
     private boolean _notifyRemoteAsyncErrors = true;
+    private boolean _fileTransferEnabled = true;
 
     /**
      * <p>An interface that allows a request object to be customized 
@@ -139,6 +140,7 @@ public class HttpConfiguration implements Dumpable
         _requestCookieCompliance =config._requestCookieCompliance;
         _responseCookieCompliance =config._responseCookieCompliance;
         _notifyRemoteAsyncErrors=config._notifyRemoteAsyncErrors;
+        _fileTransferEnabled=config._fileTransferEnabled;
     }
     
     /**
@@ -622,6 +624,25 @@ public class HttpConfiguration implements Dumpable
         return _notifyRemoteAsyncErrors;
     }
 
+    /**
+     * @param fileTransferEnabled whether static file content may be sent without copying it to user space,
+     * when the transport supports it
+     */
+    public void setFileTransferEnabled(boolean fileTransferEnabled)
+    {
+        _fileTransferEnabled = fileTransferEnabled;
+    }
+
+    /**
+     * @return whether static file content may be sent without copying it to user space,
+     * when the transport supports it
+     */
+    @ManagedAttribute("Whether static file content may be sent without copying it to user space")
+    public boolean isFileTransferEnabled()
+    {
+        return _fileTransferEnabled;
+    }
+
     @Override public String dump()
     {
         return Dumpable.dump(this);
@@ -651,7 +672,8 @@ public class HttpConfiguration implements Dumpable
             "minResponseDataRate=" + _minResponseDataRate,
             "cookieCompliance=" + _requestCookieCompliance,
             "setRequestCookieCompliance=" + _responseCookieCompliance,
-            "notifyRemoteAsyncErrors=" + _notifyRemoteAsyncErrors
+            "notifyRemoteAsyncErrors=" + _notifyRemoteAsyncErrors,
+            "fileTransferEnabled=" + _fileTransferEnabled
         );
     }
 
@@ -20,6 +20,7 @@ package org.eclipse.jetty.server;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritePendingException;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -37,6 +38,7 @@ import org.eclipse.jetty.http.MetaData;
 import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.ChannelEndPoint;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.EofException;
@@ -172,6 +174,24 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         return getEndPoint().isOptimizedForDirectBuffers();
     }
 
+    @Override
+    public boolean isFileTransferSupported()
+    {
+        EndPoint endPoint = getEndPoint();
+        return endPoint instanceof ChannelEndPoint && ((ChannelEndPoint)endPoint).isTransferFromSupported();
+    }
+
+    @Override
+    public void transfer(FileChannel file, long position, long length, Callback callback)
+    {
+        if (!isFileTransferSupported() || !_generator.isCommitted() || _generator.isEnd())
+        {
+            callback.failed(new IllegalStateException("Cannot transfer " + _generator));
+            return;
+        }
+        ((ChannelEndPoint)getEndPoint()).transferFrom(file, position, length, callback);
+    }
+
     @Override
     public long getMessagesIn()
     {
@@ -22,12 +22,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritePendingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
 import java.nio.charset.CodingErrorAction;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -878,6 +880,101 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         }
     }
 
+    /**
+     * Blocking send of a range of HTTP content.
+     * <p>If the content is a file and the transport supports it, the range is sent
+     * without copying it, otherwise it is written via the content resource.</p>
+     *
+     * @param httpContent The HTTP content to send a range of
+     * @param position The position of the first byte of the range
+     * @param length The length of the range
+     * @throws IOException if the send fails
+     */
+    public void sendContent(HttpContent httpContent, long position, long length) throws IOException
+    {
+        FileChannel file = null;
+        if (BufferUtil.isEmpty(_aggregate) && !_channel.isCommitted() && isFileTransferSupported(length))
+        {
+            ReadableByteChannel rbc = httpContent.getReadableByteChannel();
+            if (rbc instanceof FileChannel && _state.compareAndSet(OutputState.OPEN, OutputState.PENDING))
+                file = (FileChannel)rbc;
+            else
+                IO.close(rbc);
+        }
+
+        if (file == null)
+        {
+            httpContent.getResource().writeTo(this, position, length);
+            return;
+        }
+
+        FileChannelTransferCB transfer = null;
+        try (Blocker blocker = _writeBlocker.acquire())
+        {
+            transfer = new FileChannelTransferCB(file, position, length, blocker);
+            transfer.iterate();
+            blocker.block();
+        }
+        catch (Throwable failure)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug(failure);
+            // A failed transfer has already aborted.
+            if (transfer == null || !transfer.isFailed())
+                abort(failure);
+            throw failure;
+        }
+    }
+
+    /**
+     * Blocking send of ranges of HTTP content.
+     *
+     * @param httpContent The HTTP content to send ranges of
+     * @param ranges The ranges to send
+     * @param headers The buffers to send before each range
+     * @param trailer The buffer to send after the last range
+     * @throws IOException if the send fails
+     * @see #sendContent(HttpContent, List, ByteBuffer[], ByteBuffer, Callback)
+     */
+    public void sendContent(HttpContent httpContent, List<InclusiveByteRange> ranges, ByteBuffer[] headers, ByteBuffer trailer) throws IOException
+    {
+        RangesWritingCB writer = null;
+        try (Blocker blocker = _writeBlocker.acquire())
+        {
+            try
+            {
+                writer = sendRanges(httpContent, ranges, headers, trailer, blocker);
+            }
+            catch (Throwable x)
+            {
+                blocker.failed(x);
+            }
+            blocker.block();
+        }
+        catch (Throwable failure)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug(failure);
+            // A failed write of the ranges has already aborted.
+            if (writer == null || !writer.isFailed())
+                abort(failure);
+            throw failure;
+        }
+    }
+
+    /**
+     * @param length the length of the content to send
+     * @return whether the content can be sent with {@link HttpChannel#transfer(FileChannel, long, long, Callback)}
+     */
+    private boolean isFileTransferSupported(long length)
+    {
+        // The content must be framed by the content length, and must not be intercepted (eg by gzip).
+        return length > 0 &&
+            _interceptor == _channel &&
+            _channel.getResponse().getLongContentLength() == length &&
+            _channel.isFileTransferSupported();
+    }
+
     /**
      * Asynchronous send of whole content.
      *
@@ -949,39 +1046,8 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         if (LOG.isDebugEnabled())
             LOG.debug("sendContent(http={},{})", httpContent, callback);
 
-        if (BufferUtil.hasContent(_aggregate))
-        {
-            callback.failed(new IOException("cannot sendContent() after write()"));
+        if (!pendingContent(callback))
             return;
-        }
-        if (_channel.isCommitted())
-        {
-            callback.failed(new IOException("cannot sendContent(), output already committed"));
-            return;
-        }
-
-        while (true)
-        {
-            switch (_state.get())
-            {
-                case OPEN:
-                    if (!_state.compareAndSet(OutputState.OPEN, OutputState.PENDING))
-                        continue;
-                    break;
-
-                case ERROR:
-                    callback.failed(new EofException(_onError));
-                    return;
-
-                case CLOSED:
-                    callback.failed(new EofException("Closed"));
-                    return;
-
-                default:
-                    throw new IllegalStateException();
-            }
-            break;
-        }
 
         ByteBuffer buffer = _channel.useDirectBuffers() ? httpContent.getDirectBuffer() : null;
         if (buffer == null)
@@ -999,7 +1065,11 @@ public class HttpOutput extends ServletOutputStream implements Runnable
             if (rbc != null)
             {
                 // Close of the rbc is done by the async sendContent
-                sendContent(rbc, callback);
+                long length = httpContent.getContentLengthValue();
+                if (rbc instanceof FileChannel && isFileTransferSupported(length))
+                    new FileChannelTransferCB((FileChannel)rbc, 0, length, callback).iterate();
+                else
+                    sendContent(rbc, callback);
                 return;
             }
 
@@ -1019,6 +1089,125 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         }
     }
 
+    /**
+     * <p>Asynchronous send of ranges of HTTP content, each preceded by a header buffer
+     * and followed by a trailer buffer, for example the parts of a multipart/byteranges
+     * response.</p>
+     * <p>The ranges are not copied: they are sent as slices of the content buffer if
+     * any, or transferred from the content file if the transport supports it. Otherwise
+     * the ranges are read from the content with a pooled buffer.</p>
+     * <p>The response content length, if set, must be the total length of the buffers
+     * and ranges.</p>
+     *
+     * @param httpContent The HTTP content to send ranges of
+     * @param ranges The ranges to send
+     * @param headers The buffers to send before each range
+     * @param trailer The buffer to send after the last range
+     * @param callback The callback to use to notify success or failure
+     */
+    public void sendContent(HttpContent httpContent, List<InclusiveByteRange> ranges, ByteBuffer[] headers, ByteBuffer trailer, Callback callback)
+    {
+        try
+        {
+            sendRanges(httpContent, ranges, headers, trailer, callback);
+        }
+        catch (Throwable th)
+        {
+            abort(th);
+            callback.failed(th);
+        }
+    }
+
+    /**
+     * Start sending ranges of HTTP content.
+     *
+     * @param httpContent The HTTP content to send ranges of
+     * @param ranges The ranges to send
+     * @param headers The buffers to send before each range
+     * @param trailer The buffer to send after the last range
+     * @param callback The callback to use to notify success or failure
+     * @return the callback writing the ranges, which aborts if it fails, or null if
+     * the callback was failed before writing started
+     * @throws IOException if the content cannot be read
+     */
+    private RangesWritingCB sendRanges(HttpContent httpContent, List<InclusiveByteRange> ranges, ByteBuffer[] headers, ByteBuffer trailer, Callback callback) throws IOException
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("sendContent(http={},ranges={},{})", httpContent, ranges, callback);
+
+        if (ranges.size() != headers.length)
+        {
+            callback.failed(new IllegalArgumentException("ranges and headers differ in size"));
+            return null;
+        }
+
+        if (!pendingContent(callback))
+            return null;
+
+        long length = trailer.remaining();
+        for (int i = 0; i < headers.length; i++)
+            length += headers[i].remaining() + ranges.get(i).getSize();
+
+        ByteBuffer buffer = _channel.useDirectBuffers() ? httpContent.getDirectBuffer() : null;
+        if (buffer == null)
+            buffer = httpContent.getIndirectBuffer();
+
+        FileChannel file = null;
+        if (buffer == null)
+        {
+            ReadableByteChannel rbc = httpContent.getReadableByteChannel();
+            if (rbc instanceof FileChannel)
+                file = (FileChannel)rbc;
+            else
+                IO.close(rbc);
+        }
+
+        boolean transfer = file != null && isFileTransferSupported(length);
+        RangesWritingCB writer = new RangesWritingCB(httpContent, ranges, headers, trailer, buffer, file, transfer, callback);
+        writer.iterate();
+        return writer;
+    }
+
+    /**
+     * @param callback the callback to fail if content cannot be sent
+     * @return whether the output was moved to the pending state to send content
+     */
+    private boolean pendingContent(Callback callback)
+    {
+        if (BufferUtil.hasContent(_aggregate))
+        {
+            callback.failed(new IOException("cannot sendContent() after write()"));
+            return false;
+        }
+        if (_channel.isCommitted())
+        {
+            callback.failed(new IOException("cannot sendContent(), output already committed"));
+            return false;
+        }
+
+        while (true)
+        {
+            switch (_state.get())
+            {
+                case OPEN:
+                    if (!_state.compareAndSet(OutputState.OPEN, OutputState.PENDING))
+                        continue;
+                    return true;
+
+                case ERROR:
+                    callback.failed(new EofException(_onError));
+                    return false;
+
+                case CLOSED:
+                    callback.failed(new EofException("Closed"));
+                    return false;
+
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+    }
+
     public int getBufferSize()
     {
         return _bufferSize;
@@ -1513,6 +1702,226 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         }
     }
 
+    /**
+     * An iterating callback that will send a region of a FileChannel to the
+     * {@link HttpChannel} without copying it to user space.
+     * The response is first committed, then the region is transferred with
+     * {@link HttpChannel#transfer(FileChannel, long, long, Callback)} and
+     * finally the response is completed.
+     */
+    private class FileChannelTransferCB extends IteratingNestedCallback
+    {
+        private final FileChannel _file;
+        private final long _position;
+        private final long _length;
+        private int _step;
+
+        public FileChannelTransferCB(FileChannel file, long position, long length, Callback callback)
+        {
+            super(callback);
+            _file = file;
+            _position = position;
+            _length = length;
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            switch (_step++)
+            {
+                case 0:
+                    // Commit the response.
+                    write(BufferUtil.EMPTY_BUFFER, false, this);
+                    return Action.SCHEDULED;
+
+                case 1:
+                    _written += _length;
+                    _channel.transfer(_file, _position, _length, this);
+                    return Action.SCHEDULED;
+
+                case 2:
+                    // Complete the response.
+                    write(BufferUtil.EMPTY_BUFFER, true, this);
+                    return Action.SCHEDULED;
+
+                default:
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Transferred {} of {}", _length, this);
+                    _file.close();
+                    closed();
+                    return Action.SUCCEEDED;
+            }
+        }
+
+        @Override
+        public void onCompleteFailure(Throwable x)
+        {
+            abort(x);
+            IO.close(_file);
+            super.onCompleteFailure(x);
+        }
+    }
+
+    /**
+     * An iterating callback that will send ranges of HTTP content to the
+     * {@link HttpChannel}, each preceded by its header buffer, followed by
+     * the trailer buffer.
+     * Each range is written as a slice of the content buffer if any, or
+     * transferred with {@link HttpChannel#transfer(FileChannel, long, long, Callback)}
+     * if supported, or read in a pooled buffer of size {@link HttpOutput#getBufferSize()}
+     * from the content file or stream.
+     */
+    private class RangesWritingCB extends IteratingNestedCallback
+    {
+        private final HttpContent _content;
+        private final List<InclusiveByteRange> _ranges;
+        private final ByteBuffer[] _headers;
+        private final ByteBuffer _trailer;
+        private final ByteBuffer _source;
+        private final FileChannel _file;
+        private final boolean _transfer;
+        private ByteBuffer _buffer;
+        private InputStream _in;
+        private long _inPosition;
+        private int _range;
+        private long _position;
+        private long _remaining = -1;
+        private boolean _completed;
+
+        public RangesWritingCB(HttpContent content, List<InclusiveByteRange> ranges, ByteBuffer[] headers, ByteBuffer trailer, ByteBuffer source, FileChannel file, boolean transfer, Callback callback)
+        {
+            super(callback);
+            _content = content;
+            _ranges = ranges;
+            _headers = headers;
+            _trailer = trailer;
+            _source = source;
+            _file = file;
+            _transfer = transfer;
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            while (true)
+            {
+                if (_completed)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Sent {} ranges of {}", _ranges.size(), this);
+                    release();
+                    closed();
+                    return Action.SUCCEEDED;
+                }
+
+                if (_range == _ranges.size())
+                {
+                    _completed = true;
+                    _written += _trailer.remaining();
+                    write(_trailer, true, this);
+                    return Action.SCHEDULED;
+                }
+
+                // Start a new part.
+                if (_remaining < 0)
+                {
+                    InclusiveByteRange range = _ranges.get(_range);
+                    _position = range.getFirst();
+                    _remaining = range.getSize();
+                    ByteBuffer header = _headers[_range];
+                    _written += header.remaining();
+                    write(header, false, this);
+                    return Action.SCHEDULED;
+                }
+
+                if (_remaining == 0)
+                {
+                    ++_range;
+                    _remaining = -1;
+                    continue;
+                }
+
+                long length = _remaining;
+                if (_source != null)
+                {
+                    ByteBuffer slice = _source.duplicate();
+                    slice.limit((int)(_position + length));
+                    slice.position((int)_position);
+                    _remaining = 0;
+                    _written += length;
+                    write(slice, false, this);
+                    return Action.SCHEDULED;
+                }
+
+                if (_transfer)
+                {
+                    _remaining = 0;
+                    _written += length;
+                    _channel.transfer(_file, _position, length, this);
+                    return Action.SCHEDULED;
+                }
+
+                if (_buffer == null)
+                    _buffer = _channel.getByteBufferPool().acquire(getBufferSize(), _file != null && _channel.useDirectBuffers());
+                BufferUtil.clearToFill(_buffer);
+                _buffer.limit((int)Math.min(_buffer.capacity(), length));
+                int read = _file != null ? _file.read(_buffer, _position) : read(_buffer);
+                if (read < 0)
+                    throw new EofException("Unexpected EOF of " + _content);
+                BufferUtil.flipToFlush(_buffer, 0);
+                _position += read;
+                _remaining -= read;
+                _written += read;
+                write(_buffer, false, this);
+                return Action.SCHEDULED;
+            }
+        }
+
+        private int read(ByteBuffer buffer) throws IOException
+        {
+            // Ranges may not be in order, so the stream may need to be reopened.
+            if (_in == null || _inPosition > _position)
+            {
+                IO.close(_in);
+                _in = _content.getInputStream();
+                _inPosition = 0;
+            }
+            while (_inPosition < _position)
+            {
+                long skipped = _in.skip(_position - _inPosition);
+                if (skipped <= 0)
+                    return -1;
+                _inPosition += skipped;
+            }
+            int read = _in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if (read > 0)
+            {
+                buffer.position(buffer.position() + read);
+                _inPosition += read;
+            }
+            return read;
+        }
+
+        private void release()
+        {
+            if (_buffer != null)
+            {
+                _channel.getByteBufferPool().release(_buffer);
+                _buffer = null;
+            }
+            IO.close(_file);
+            IO.close(_in);
+        }
+
+        @Override
+        public void onCompleteFailure(Throwable x)
+        {
+            abort(x);
+            release();
+            super.onCompleteFailure(x);
+        }
+    }
+
     private static class WriteBlocker extends SharedBlockingCallback
     {
         private final HttpChannel _channel;
@@ -19,6 +19,7 @@
 package org.eclipse.jetty.server;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.eclipse.jetty.http.MetaData;
 import org.eclipse.jetty.util.Callback;
@@ -76,4 +77,27 @@ public interface HttpTransport
      * @return True if direct buffers can be used optimally.
      */
     boolean isOptimizedForDirectBuffers();
+
+    /* ------------------------------------------------------------ */
+    /** Is the underlying transport able to send file content without copying it
+     * @return True if {@link #transfer(FileChannel, long, long, Callback)} is supported.
+     */
+    default boolean isFileTransferSupported()
+    {
+        return false;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Asynchronous call to send a region of a file as response content, without copying it.
+     * <p>The response must have been committed with a known content length
+     * and must be completed with a subsequent call to {@link #send(MetaData.Response, boolean, ByteBuffer, boolean, Callback)}.
+     * @param file The file to send the content from.
+     * @param position The position in the file of the first byte to send.
+     * @param length The number of bytes to send.
+     * @param callback The Callback instance that success or failure of the transfer is notified on
+     */
+    default void transfer(FileChannel file, long position, long length, Callback callback)
+    {
+        callback.failed(new UnsupportedOperationException());
+    }
 }
@@ -266,6 +266,10 @@ public class ResourceService
             // Conditional response?
             if (!included && !passConditionalHeaders(request,response,content))
                 return true;
+
+            // Ranges of a changed representation?
+            if (reqRanges!=null && !passIfRange(request,content))
+                reqRanges=null;
                 
             // Precompressed variant available?
             Map<CompressedContentFormat,? extends HttpContent> precompressedContents = checkPrecompressedVariants?content.getPrecompressedContents():null;
@@ -608,6 +612,28 @@ public class ResourceService
         return true;
     }
 
+    /* ------------------------------------------------------------ */
+    /* Check the If-Range header, as per RFC 7233 section 3.2: the ranges
+     * are only sent if the validator matches the current representation,
+     * otherwise the whole representation is sent.
+     */
+    protected boolean passIfRange(HttpServletRequest request, HttpContent content)
+    {
+        String ifr=request.getHeader(HttpHeader.IF_RANGE.asString());
+        if (ifr==null)
+            return true;
+
+        if (ifr.startsWith("\"") || ifr.startsWith("W/"))
+        {
+            // Only a strong etag can validate a range
+            String etag=_etags?content.getETagValue():null;
+            return etag!=null && !etag.startsWith("W/") && etag.equals(ifr);
+        }
+
+        long ifrl=DateParser.parseDate(ifr);
+        return ifrl!=-1 && content.getResource().lastModified()/1000 == ifrl/1000;
+    }
+
     /* ------------------------------------------------------------------- */
     protected void sendDirectory(HttpServletRequest request,
             HttpServletResponse response,
@@ -699,32 +725,7 @@ public class ResourceService
                     final AsyncContext context = request.startAsync();
                     context.setTimeout(0);
 
-                    ((HttpOutput)out).sendContent(content,new Callback()
-                    {
-                        @Override
-                        public void succeeded()
-                        {   
-                            context.complete();
-                            content.release();
-                        }
-
-                        @Override
-                        public void failed(Throwable x)
-                        {
-                            if (x instanceof IOException)
-                                LOG.debug(x);
-                            else
-                                LOG.warn(x);
-                            context.complete();
-                            content.release();
-                        }
-                        
-                        @Override
-                        public String toString() 
-                        {
-                            return String.format("ResourceService@%x$CB", ResourceService.this.hashCode());
-                        }
-                    });
+                    ((HttpOutput)out).sendContent(content,new AsyncContentCallback(context,content));
                     return false;
                 }
                 // otherwise write content blocking
@@ -758,7 +759,10 @@ public class ResourceService
                     response.addDateHeader(HttpHeader.DATE.asString(),System.currentTimeMillis());
                 response.setHeader(HttpHeader.CONTENT_RANGE.asString(),
                         singleSatisfiableRange.toHeaderRangeString(content_length));
-                content.getResource().writeTo(out,singleSatisfiableRange.getFirst(),singleLength);
+                if (!written && out instanceof HttpOutput)
+                    ((HttpOutput)out).sendContent(content,singleSatisfiableRange.getFirst(),singleLength);
+                else
+                    content.getResource().writeTo(out,singleSatisfiableRange.getFirst(),singleLength);
                 return true;
             }
 
@@ -770,7 +774,7 @@ public class ResourceService
             String mimetype=(content==null?null:content.getContentTypeValue());
             if (mimetype==null)
                 LOG.warn("Unknown mimetype for "+request.getRequestURI());
-            MultiPartOutputStream multi = new MultiPartOutputStream(out);
+            String boundary="jetty"+System.identityHashCode(ranges)+Long.toString(System.currentTimeMillis(),36);
             response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
             if (!response.containsHeader(HttpHeader.DATE.asString()))
                 response.addDateHeader(HttpHeader.DATE.asString(),System.currentTimeMillis());
@@ -783,29 +787,45 @@ public class ResourceService
                 ctp = "multipart/x-byteranges; boundary=";
             else
                 ctp = "multipart/byteranges; boundary=";
-            response.setContentType(ctp+multi.getBoundary());
+            response.setContentType(ctp+boundary);
 
-            InputStream in=content.getResource().getInputStream();
-            long pos=0;
-
-            // calculate the content-length
-            int length=0;
+            // Precompute the part headers and the content-length
+            long length=0;
             String[] header = new String[ranges.size()];
+            ByteBuffer[] parts = new ByteBuffer[ranges.size()];
             int i = 0;
             for (InclusiveByteRange ibr:ranges)
             {
                 header[i]=ibr.toHeaderRangeString(content_length);
-                length+=
-                    ((i>0)?2:0)+
-                    2+multi.getBoundary().length()+2+
-                    (mimetype==null?0:HttpHeader.CONTENT_TYPE.asString().length()+2+mimetype.length())+2+
-                    HttpHeader.CONTENT_RANGE.asString().length()+2+header[i].length()+2+
-                    2+
-                    (ibr.getLast()-ibr.getFirst())+1;
+                parts[i]=BufferUtil.toBuffer(((i>0)?"\r\n":"")+
+                    "--"+boundary+"\r\n"+
+                    (mimetype==null?"":HttpHeader.CONTENT_TYPE.asString()+": "+mimetype+"\r\n")+
+                    HttpHeader.CONTENT_RANGE.asString()+": "+header[i]+"\r\n"+
+                    "\r\n");
+                length+=parts[i].remaining()+ibr.getSize();
                 i++;
             }
-            length+=2+2+multi.getBoundary().length()+2+2;
-            response.setContentLength(length);
+            ByteBuffer trailer=BufferUtil.toBuffer("\r\n--"+boundary+"--\r\n");
+            length+=trailer.remaining();
+            response.setContentLengthLong(length);
+
+            // Send the ranges without copying them if possible
+            if (!written && out instanceof HttpOutput)
+            {
+                if (request.isAsyncSupported())
+                {
+                    final AsyncContext context = request.startAsync();
+                    context.setTimeout(0);
+                    ((HttpOutput)out).sendContent(content,ranges,parts,trailer,new AsyncContentCallback(context,content));
+                    return false;
+                }
+                ((HttpOutput)out).sendContent(content,ranges,parts,trailer);
+                return true;
+            }
+
+            MultiPartOutputStream multi = new MultiPartOutputStream(out,boundary);
+            InputStream in=content.getResource().getInputStream();
+            long pos=0;
 
             i=0;
             for (InclusiveByteRange ibr:ranges)
@@ -870,6 +890,45 @@ public class ResourceService
         }
     }
 
+    /* ------------------------------------------------------------ */
+    /* Completes the async context once the content has been sent.
+     */
+    private class AsyncContentCallback implements Callback
+    {
+        private final AsyncContext _context;
+        private final HttpContent _content;
+
+        private AsyncContentCallback(AsyncContext context, HttpContent content)
+        {
+            _context=context;
+            _content=content;
+        }
+
+        @Override
+        public void succeeded()
+        {
+            _context.complete();
+            _content.release();
+        }
+
+        @Override
+        public void failed(Throwable x)
+        {
+            if (x instanceof IOException)
+                LOG.debug(x);
+            else
+                LOG.warn(x);
+            _context.complete();
+            _content.release();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("ResourceService@%x$CB", ResourceService.this.hashCode());
+        }
+    }
+
     /* ------------------------------------------------------------ */
     /* ------------------------------------------------------------ */
     /* ------------------------------------------------------------ */
@@ -32,6 +32,7 @@ import org.eclipse.jetty.io.ssl.SslHandshakeListener;
 import org.eclipse.jetty.util.annotation.Name;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.ssl.SslSessionStore;
 
 public class SslConnectionFactory extends AbstractConnectionFactory
 {
@@ -91,6 +92,11 @@ public class SslConnectionFactory extends AbstractConnectionFactory
     @Override
     protected void doStart() throws Exception
     {
+        // Manage the TLS session store along with this factory.
+        SslSessionStore store = _sslContextFactory.getSslSessionStore();
+        if (store != null)
+            addBean(store);
+
         super.doStart();
 
         SSLEngine engine = _sslContextFactory.newSSLEngine();
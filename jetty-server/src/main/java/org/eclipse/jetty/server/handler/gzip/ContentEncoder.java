@@ -0,0 +1,93 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.server.Request;
+
+/**
+ * <p>A content encoding that compresses response content, such as gzip, br or zstd.</p>
+ * <p>Content encoders are added to a {@link GzipHandler}, which chooses the encoding of
+ * a response from the request {@code Accept-Encoding} header. The gzip encoding is built
+ * in, other encodings may be added by implementations using a native library.</p>
+ */
+public interface ContentEncoder
+{
+    /**
+     * @return the format of the encoding, with its {@code Content-Encoding} value and ETag suffix
+     */
+    CompressedContentFormat getFormat();
+
+    /**
+     * @param request the request
+     * @param contentLength the response content length, or -1 if not known
+     * @return a new compressor for the response, or null if the response is not to be compressed with this encoding
+     */
+    Compressor newCompressor(Request request, long contentLength);
+
+    /**
+     * <p>Compresses the content of a response, with the same usage as a {@link java.util.zip.Deflater}:
+     * input is set when {@link #needsInput() needed}, and {@link #compress(byte[], int, int, boolean) compressed}
+     * until the compressor is {@link #finished() finished} after being told to {@link #finish()}.</p>
+     * <p>The compressed bytes include any framing of the encoding, such as the gzip header and trailer.</p>
+     */
+    interface Compressor
+    {
+        /**
+         * @return the format of the encoding
+         */
+        CompressedContentFormat getFormat();
+
+        /**
+         * @return whether more input is needed to produce compressed bytes
+         */
+        boolean needsInput();
+
+        /**
+         * @param bytes the array of the content to compress
+         * @param offset the offset of the content in the array
+         * @param length the length of the content
+         */
+        void setInput(byte[] bytes, int offset, int length);
+
+        /**
+         * Indicates that there is no more input to compress.
+         */
+        void finish();
+
+        /**
+         * @return whether all the compressed bytes have been produced
+         */
+        boolean finished();
+
+        /**
+         * @param bytes the array to fill with compressed bytes
+         * @param offset the offset in the array
+         * @param length the maximum number of bytes to produce
+         * @param flush whether to flush all the pending compressed bytes
+         * @return the number of compressed bytes produced
+         */
+        int compress(byte[] bytes, int offset, int length, boolean flush);
+
+        /**
+         * Releases the resources of this compressor, that cannot be used afterwards.
+         */
+        void release();
+    }
+}
@@ -0,0 +1,171 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.eclipse.jetty.http.BadMessageException;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.server.HttpInput;
+import org.eclipse.jetty.server.HttpInput.Content;
+import org.eclipse.jetty.server.InflaterPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.component.Destroyable;
+
+/**
+ * A HttpInput Interceptor that inflates "deflate" (zlib, RFC 1950) encoded request content.
+ * <p>Inflated content is produced one buffer at a time, so that the application consuming
+ * a buffer applies backpressure to the inflation. The limits are enforced as for
+ * {@link GzipHttpInputInterceptor}.</p>
+ */
+public class DeflateHttpInputInterceptor implements HttpInput.Interceptor, Destroyable
+{
+    private final InflaterPool _inflaterPool;
+    private final Inflater _inflater;
+    private final ByteBufferPool _pool;
+    private final int _bufferSize;
+    private final InflateLimit _limit;
+    private ByteBuffer _input;
+    private boolean _destroyed;
+
+    /**
+     * @param inflaterPool the pool of zlib inflaters, or null to create an inflater
+     * @param pool the pool of inflated buffers, or null
+     * @param bufferSize the size of the inflated buffers
+     * @param maxInflatedSize the maximum number of inflated bytes, or -1 for no limit
+     * @param maxInflateRatio the maximum ratio of inflated to compressed bytes, or -1 for no limit
+     */
+    public DeflateHttpInputInterceptor(InflaterPool inflaterPool, ByteBufferPool pool, int bufferSize, long maxInflatedSize, int maxInflateRatio)
+    {
+        _inflaterPool = inflaterPool;
+        _inflater = inflaterPool == null ? new Inflater() : inflaterPool.acquire();
+        _pool = pool;
+        _bufferSize = bufferSize;
+        _limit = new InflateLimit(maxInflatedSize, maxInflateRatio, bufferSize);
+    }
+
+    @Override
+    public Content readFrom(Content content)
+    {
+        ByteBuffer compressed = content.getByteBuffer();
+        ByteBuffer buffer = null;
+        try
+        {
+            while (true)
+            {
+                if (_inflater.finished())
+                {
+                    // Ignore any content after the end of the deflate stream
+                    compressed.position(compressed.limit());
+                    return null;
+                }
+
+                if (buffer == null)
+                    buffer = acquire(_bufferSize);
+
+                int length = _inflater.inflate(buffer.array(), buffer.arrayOffset(), buffer.capacity());
+                if (length > 0)
+                {
+                    buffer.limit(length);
+                    _limit.inflated(length);
+                    final ByteBuffer chunk = buffer;
+                    buffer = null;
+                    return new Content(chunk)
+                    {
+                        @Override
+                        public void succeeded()
+                        {
+                            release(chunk);
+                        }
+                    };
+                }
+
+                if (_inflater.needsDictionary())
+                    throw new BadMessageException(HttpStatus.BAD_REQUEST_400, "Unsupported deflate dictionary");
+
+                if (_inflater.needsInput())
+                {
+                    if (!compressed.hasRemaining())
+                        return null;
+                    setInput(compressed);
+                }
+            }
+        }
+        catch (DataFormatException x)
+        {
+            throw new BadMessageException(HttpStatus.BAD_REQUEST_400, "Invalid deflate content", x);
+        }
+        finally
+        {
+            if (buffer != null)
+                release(buffer);
+        }
+    }
+
+    private void setInput(ByteBuffer compressed)
+    {
+        int length = compressed.remaining();
+        _limit.compressed(length);
+        if (compressed.hasArray())
+        {
+            _inflater.setInput(compressed.array(), compressed.arrayOffset() + compressed.position(), length);
+        }
+        else
+        {
+            // The inflater has consumed any previous copy of the input
+            if (_input != null)
+                release(_input);
+            _input = acquire(length);
+            compressed.get(_input.array(), _input.arrayOffset(), length);
+            _inflater.setInput(_input.array(), _input.arrayOffset(), length);
+        }
+        compressed.position(compressed.limit());
+    }
+
+    private ByteBuffer acquire(int capacity)
+    {
+        return _pool == null ? BufferUtil.allocate(capacity) : _pool.acquire(capacity, false);
+    }
+
+    private void release(ByteBuffer buffer)
+    {
+        if (_pool != null)
+            _pool.release(buffer);
+    }
+
+    @Override
+    public void destroy()
+    {
+        if (_destroyed)
+            return;
+        _destroyed = true;
+        if (_input != null)
+        {
+            release(_input);
+            _input = null;
+        }
+        if (_inflaterPool == null)
+            _inflater.end();
+        else
+            _inflaterPool.release(_inflater);
+    }
+}
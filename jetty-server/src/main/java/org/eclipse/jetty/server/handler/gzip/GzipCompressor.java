@@ -0,0 +1,141 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+
+/**
+ * <p>A {@link ContentEncoder.Compressor} producing gzip content with a {@link Deflater},
+ * that is recycled via its {@link GzipFactory} when released.</p>
+ */
+public class GzipCompressor implements ContentEncoder.Compressor
+{
+    private final static byte[] GZIP_HEADER = new byte[] { (byte)0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    private final CRC32 _crc = new CRC32();
+    private final GzipFactory _factory;
+    private Deflater _deflater;
+    private byte[] _pending = GZIP_HEADER;
+    private int _pendingOffset;
+    private boolean _trailer;
+
+    public GzipCompressor(GzipFactory factory, Deflater deflater)
+    {
+        _factory = factory;
+        _deflater = deflater;
+    }
+
+    @Override
+    public CompressedContentFormat getFormat()
+    {
+        return CompressedContentFormat.GZIP;
+    }
+
+    @Override
+    public boolean needsInput()
+    {
+        return _deflater.needsInput();
+    }
+
+    @Override
+    public void setInput(byte[] bytes, int offset, int length)
+    {
+        _crc.update(bytes, offset, length);
+        _deflater.setInput(bytes, offset, length);
+    }
+
+    @Override
+    public void finish()
+    {
+        _deflater.finish();
+    }
+
+    @Override
+    public boolean finished()
+    {
+        return _trailer && _pending == null;
+    }
+
+    @Override
+    public int compress(byte[] bytes, int offset, int length, boolean flush)
+    {
+        int produced = drain(bytes, offset, length);
+        if (_pending != null)
+            return produced;
+
+        if (!_deflater.finished())
+            produced += _deflater.deflate(bytes, offset + produced, length - produced, flush ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH);
+
+        if (_deflater.finished() && !_trailer)
+        {
+            _trailer = true;
+            _pending = trailer();
+            _pendingOffset = 0;
+            produced += drain(bytes, offset + produced, length - produced);
+        }
+        return produced;
+    }
+
+    private int drain(byte[] bytes, int offset, int length)
+    {
+        if (_pending == null)
+            return 0;
+        int drained = Math.min(length, _pending.length - _pendingOffset);
+        System.arraycopy(_pending, _pendingOffset, bytes, offset, drained);
+        _pendingOffset += drained;
+        if (_pendingOffset == _pending.length)
+            _pending = null;
+        return drained;
+    }
+
+    private byte[] trailer()
+    {
+        byte[] trailer = new byte[8];
+        int v = (int)_crc.getValue();
+        trailer[0] = (byte)(v & 0xFF);
+        trailer[1] = (byte)((v >>> 8) & 0xFF);
+        trailer[2] = (byte)((v >>> 16) & 0xFF);
+        trailer[3] = (byte)((v >>> 24) & 0xFF);
+
+        v = _deflater.getTotalIn();
+        trailer[4] = (byte)(v & 0xFF);
+        trailer[5] = (byte)((v >>> 8) & 0xFF);
+        trailer[6] = (byte)((v >>> 16) & 0xFF);
+        trailer[7] = (byte)((v >>> 24) & 0xFF);
+        return trailer;
+    }
+
+    @Override
+    public void release()
+    {
+        Deflater deflater = _deflater;
+        _deflater = null;
+        if (deflater != null)
+            _factory.recycle(deflater);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s}", getClass().getSimpleName(), hashCode(), _deflater);
+    }
+}
@@ -29,4 +29,16 @@ public interface GzipFactory
     boolean isMimeTypeGzipable(String mimetype);
 
     void recycle(Deflater deflater);
+
+    /**
+     * @param request the request
+     * @param content_length the response content length, or -1 if not known
+     * @return a compressor for the response in an encoding accepted by the request,
+     * or null if the response is not to be compressed
+     */
+    default ContentEncoder.Compressor getCompressor(Request request, long content_length)
+    {
+        Deflater deflater = getDeflater(request, content_length);
+        return deflater == null ? null : new GzipCompressor(this, deflater);
+    }
 }
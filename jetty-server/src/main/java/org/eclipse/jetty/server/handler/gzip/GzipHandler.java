@@ -20,11 +20,13 @@ package org.eclipse.jetty.server.handler.gzip;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.zip.Deflater;
 import javax.servlet.DispatcherType;
 import javax.servlet.ServletContext;
@@ -34,8 +36,10 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.http.*;
 import org.eclipse.jetty.http.pathmap.PathSpecSet;
+import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.server.DeflaterPool;
 import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.InflaterPool;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.HandlerWrapper;
 import org.eclipse.jetty.util.IncludeExclude;
@@ -44,6 +48,7 @@ import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.ThreadPool;
 
 /**
  * A Handler that can dynamically GZIP uncompress requests, and compress responses.
@@ -89,11 +94,18 @@ import org.eclipse.jetty.util.log.Logger;
  *         <br> (Default: 16 bytes. see {@link GzipHandler#DEFAULT_MIN_GZIP_SIZE})
  *     </li>
  *     <li>
- *         Is the Request {@code Accept} header present and does it contain the
- *         required {@code gzip} value?
+ *         Is the Request {@code Accept-Encoding} header present and does it contain
+ *         the value of a supported content encoding?
  *     </li>
  * </ol>
  * <p>
+ *     The {@code gzip} content encoding is built in. Other content encodings, such as
+ *     {@code br} or {@code zstd}, may be supported by adding {@link ContentEncoder}s
+ *     with {@link #addContentEncoder(ContentEncoder)}. The encoding of a response is the
+ *     one with the highest quality in the request {@code Accept-Encoding} header, or the
+ *     first added content encoder for encodings of equal quality, gzip being the last.
+ * </p>
+ * <p>
  *     When you encounter a configurable filter in the GzipHandler (method, paths, user-agent,
  *     mime-types, etc) that has both Included and Excluded values, note that the Included
  *     values always win over the Excluded values.
@@ -149,16 +161,22 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     public static final String GZIP = "gzip";
     public static final String DEFLATE = "deflate";
     public static final int DEFAULT_MIN_GZIP_SIZE=16;
+    public static final int NO_LOW_THREADS_COMPRESSION_LEVEL=-2;
     private static final Logger LOG = Log.getLogger(GzipHandler.class);
     private static final HttpField X_CE_GZIP = new PreEncodedHttpField("X-Content-Encoding","gzip");
+    private static final HttpField X_CE_DEFLATE = new PreEncodedHttpField("X-Content-Encoding","deflate");
     private static final HttpField TE_CHUNKED = new PreEncodedHttpField(HttpHeader.TRANSFER_ENCODING, HttpHeaderValue.CHUNKED.asString());
-    private static final Pattern COMMA_GZIP = Pattern.compile(".*, *gzip");
 
     private int POOL_CAPACITY = -1;
     private DeflaterPool _deflaterPool = null;
+    private int _inflaterPoolCapacity = -1;
+    private InflaterPool _gzipInflaterPool = null;
+    private InflaterPool _deflateInflaterPool = null;
 
     private int _minGzipSize=DEFAULT_MIN_GZIP_SIZE;
     private int _compressionLevel=Deflater.DEFAULT_COMPRESSION;
+    private int _lowThreadsCompressionLevel=NO_LOW_THREADS_COMPRESSION_LEVEL;
+    private ThreadPool _threadPool;
     /**
      * @deprecated feature will be removed in Jetty 10.x, with no replacement.
      */
@@ -166,6 +184,8 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     private boolean _checkGzExists = false;
     private boolean _syncFlush = false;
     private int _inflateBufferSize = -1;
+    private long _maxInflatedSize = -1;
+    private int _maxInflateRatio = -1;
     private EnumSet<DispatcherType> _dispatchers = EnumSet.of(DispatcherType.REQUEST);
     // non-static, as other GzipHandler instances may have different configurations
     private final IncludeExclude<String> _agentPatterns=new IncludeExclude<>(RegexSet.class);
@@ -173,12 +193,28 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     private final IncludeExclude<String> _paths = new IncludeExclude<>(PathSpecSet.class);
     private final IncludeExclude<String> _mimeTypes = new IncludeExclude<>();
     private HttpField _vary;
+    private final List<ContentEncoder> _encoders = new CopyOnWriteArrayList<>();
+    private final ContentEncoder _gzipEncoder = new ContentEncoder()
+    {
+        @Override
+        public CompressedContentFormat getFormat()
+        {
+            return CompressedContentFormat.GZIP;
+        }
+
+        @Override
+        public Compressor newCompressor(Request request, long contentLength)
+        {
+            return new GzipCompressor(GzipHandler.this,acquireDeflater());
+        }
+    };
 
     /**
      * Instantiates a new GzipHandler.
      */
     public GzipHandler()
     {
+        _encoders.add(_gzipEncoder);
         _methods.include(HttpMethod.GET.asString());
         for (String type:MimeTypes.getKnownMimeTypes())
         {
@@ -194,6 +230,7 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         _mimeTypes.exclude("application/gzip");
         _mimeTypes.exclude("application/bzip2");
         _mimeTypes.exclude("application/brotli");
+        _mimeTypes.exclude("application/zstd");
         _mimeTypes.exclude("application/x-xz");
         _mimeTypes.exclude("application/x-rar-compressed");
 
@@ -203,6 +240,37 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         _agentPatterns.exclude(".*MSIE 6.0.*");
     }
 
+    /**
+     * Add a content encoder, preferred to the content encoders previously added
+     * and to the built in gzip encoder when accepted with the same quality.
+     *
+     * @param encoder the content encoder to add
+     * @see #getContentEncoders()
+     */
+    public void addContentEncoder(ContentEncoder encoder)
+    {
+        _encoders.add(_encoders.size()-1,encoder);
+    }
+
+    /**
+     * Remove a content encoder.
+     *
+     * @param encoder the content encoder to remove, which cannot be the built in gzip encoder
+     * @return whether the content encoder was removed
+     */
+    public boolean removeContentEncoder(ContentEncoder encoder)
+    {
+        return encoder!=_gzipEncoder && _encoders.remove(encoder);
+    }
+
+    /**
+     * @return the content encoders, in order of preference
+     */
+    public List<ContentEncoder> getContentEncoders()
+    {
+        return new ArrayList<>(_encoders);
+    }
+
     /**
      * Add excluded to the User-Agent filtering.
      *
@@ -402,6 +470,9 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     protected void doStart() throws Exception
     {
         _deflaterPool = newDeflaterPool(POOL_CAPACITY);
+        _gzipInflaterPool = newInflaterPool(_inflaterPoolCapacity, true);
+        _deflateInflaterPool = newInflaterPool(_inflaterPoolCapacity, false);
+        _threadPool = getServer()==null?null:getServer().getThreadPool();
         _vary=(_agentPatterns.size()>0)?GzipHttpOutputInterceptor.VARY_ACCEPT_ENCODING_USER_AGENT:GzipHttpOutputInterceptor.VARY_ACCEPT_ENCODING;
         super.doStart();
     }
@@ -419,22 +490,48 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     {
         return _compressionLevel;
     }
+
+    /**
+     * @return the compression level used when the server is low on threads
+     * @see #setLowThreadsCompressionLevel(int)
+     */
+    public int getLowThreadsCompressionLevel()
+    {
+        return _lowThreadsCompressionLevel;
+    }
+
+    /**
+     * Set the compression level that {@link Deflater} uses when the server is low on threads.
+     * <p>
+     * Compression is CPU bound, so when the server {@link ThreadPool#isLowOnThreads() is low on threads}
+     * a lower compression level, such as {@link Deflater#BEST_SPEED}, can be used to trade a slightly
+     * bigger response for a faster one.  The level is chosen when a response starts being compressed.
+     * </p>
+     *
+     * @param compressionLevel The compression level to use when low on threads, or
+     * {@link #NO_LOW_THREADS_COMPRESSION_LEVEL} to always use the {@link #getCompressionLevel() compression level}
+     */
+    public void setLowThreadsCompressionLevel(int compressionLevel)
+    {
+        _lowThreadsCompressionLevel = compressionLevel;
+    }
+
+    /**
+     * @return the compression level to use for a response compressed now
+     */
+    protected int getCurrentCompressionLevel()
+    {
+        ThreadPool threadPool = _threadPool;
+        if (_lowThreadsCompressionLevel!=NO_LOW_THREADS_COMPRESSION_LEVEL && threadPool!=null && threadPool.isLowOnThreads())
+            return _lowThreadsCompressionLevel;
+        return _compressionLevel;
+    }
     
     @Override
     public Deflater getDeflater(Request request, long content_length)
     {
-        String ua = request.getHttpFields().get(HttpHeader.USER_AGENT);
-        if (ua!=null && !isAgentGzipable(ua))
-        {
-            LOG.debug("{} excluded user agent {}",this,request);
-            return null;
-        }
-        
-        if (content_length>=0 && content_length<_minGzipSize)
-        {
-            LOG.debug("{} excluded minGzipSize {}",this,request);
+        if (!isCompressible(request,content_length))
             return null;
-        }
 
         // check the accept encoding header
         HttpField accept = request.getHttpFields().getField(HttpHeader.ACCEPT_ENCODING);
@@ -452,7 +549,71 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
             return null;
         }
 
-        return _deflaterPool.acquire();
+        return acquireDeflater();
+    }
+
+    @Override
+    public ContentEncoder.Compressor getCompressor(Request request, long content_length)
+    {
+        if (!isCompressible(request,content_length))
+            return null;
+
+        String accept = request.getHttpFields().get(HttpHeader.ACCEPT_ENCODING);
+        if (accept==null)
+        {
+            LOG.debug("{} excluded !accept {}",this,request);
+            return null;
+        }
+
+        // Order the accepted encodings by quality, then by our preference
+        List<ContentEncoder> encoders = _encoders;
+        String[] preferred = new String[encoders.size()];
+        for (int i=0;i<preferred.length;i++)
+            preferred[i]=encoders.get(i).getFormat()._encoding;
+        QuotedQualityCSV accepted = new QuotedQualityCSV(preferred);
+        accepted.addValue(accept);
+
+        for (String encoding : accepted)
+        {
+            for (ContentEncoder encoder : encoders)
+            {
+                if ("*".equals(encoding) || encoder.getFormat()._encoding.equalsIgnoreCase(encoding))
+                {
+                    ContentEncoder.Compressor compressor = encoder.newCompressor(request,content_length);
+                    if (compressor!=null)
+                        return compressor;
+                }
+            }
+        }
+
+        LOG.debug("{} excluded no accepted encoding {}",this,request);
+        return null;
+    }
+
+    private boolean isCompressible(Request request, long content_length)
+    {
+        String ua = request.getHttpFields().get(HttpHeader.USER_AGENT);
+        if (ua!=null && !isAgentGzipable(ua))
+        {
+            LOG.debug("{} excluded user agent {}",this,request);
+            return false;
+        }
+
+        if (content_length>=0 && content_length<_minGzipSize)
+        {
+            LOG.debug("{} excluded minGzipSize {}",this,request);
+            return false;
+        }
+        return true;
+    }
+
+    private Deflater acquireDeflater()
+    {
+        Deflater deflater = _deflaterPool.acquire();
+        // Pooled deflaters keep the level they were last used with.
+        if (_lowThreadsCompressionLevel!=NO_LOW_THREADS_COMPRESSION_LEVEL)
+            deflater.setLevel(getCurrentCompressionLevel());
+        return deflater;
     }
 
     /**
@@ -600,6 +761,51 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     {
         _inflateBufferSize = size;
     }
+
+    /**
+     * Get the maximum number of bytes a compressed request body may inflate to.
+     *
+     * @return the maximum inflated size in bytes, or -1 for no limit.
+     */
+    public long getMaxInflatedSize()
+    {
+        return _maxInflatedSize;
+    }
+
+    /**
+     * Set the maximum number of bytes a compressed request body may inflate to.
+     * A request that exceeds the limit fails with a 413 status as soon as the
+     * limit is reached, without the content being buffered.
+     *
+     * @param size the maximum inflated size in bytes, or -1 for no limit.
+     */
+    public void setMaxInflatedSize(long size)
+    {
+        _maxInflatedSize = size;
+    }
+
+    /**
+     * Get the maximum ratio of inflated to compressed bytes of a request body.
+     *
+     * @return the maximum inflate ratio, or -1 for no limit.
+     */
+    public int getMaxInflateRatio()
+    {
+        return _maxInflateRatio;
+    }
+
+    /**
+     * Set the maximum ratio of inflated to compressed bytes of a request body.
+     * The ratio is only enforced once more than {@link #getInflateBufferSize()}
+     * bytes have been inflated, so that small and highly compressible bodies are accepted.
+     * A request that exceeds the ratio fails with a 413 status.
+     *
+     * @param ratio the maximum inflate ratio, or -1 for no limit.
+     */
+    public void setMaxInflateRatio(int ratio)
+    {
+        _maxInflateRatio = ratio;
+    }
     
     @Override
     public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
@@ -618,35 +824,42 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         // Handle request inflation
         if (_inflateBufferSize>0)
         {
-            boolean inflate = false;
+            HttpField inflate = null;
             for (ListIterator<HttpField> i = baseRequest.getHttpFields().listIterator(); i.hasNext();)
             {
                 HttpField field = i.next();
 
                 if (field.getHeader()==HttpHeader.CONTENT_ENCODING)
                 {
-                    if (field.getValue().equalsIgnoreCase("gzip"))
-                    {
-                        i.set(X_CE_GZIP);
-                        inflate = true;
+                    // Only the last applied coding can be removed
+                    String v = field.getValue();
+                    int comma = v.lastIndexOf(',');
+                    String coding = v.substring(comma+1).trim();
+                    if (GZIP.equalsIgnoreCase(coding))
+                        inflate = X_CE_GZIP;
+                    else if (DEFLATE.equalsIgnoreCase(coding))
+                        inflate = X_CE_DEFLATE;
+                    else
                         break;
-                    }
 
-                    if (COMMA_GZIP.matcher(field.getValue()).matches())
+                    if (comma<0)
+                        i.set(inflate);
+                    else
                     {
-                        String v = field.getValue();
-                        v = v.substring(0, v.lastIndexOf(','));
-                        i.set(new HttpField(HttpHeader.CONTENT_ENCODING, v));
-                        i.add(X_CE_GZIP);
-                        inflate = true;
-                        break;
+                        i.set(new HttpField(HttpHeader.CONTENT_ENCODING, v.substring(0,comma)));
+                        i.add(inflate);
                     }
+                    break;
                 }
             }
 
-            if (inflate)
+            if (inflate!=null)
             {
-                baseRequest.getHttpInput().addInterceptor(new GzipHttpInputInterceptor(baseRequest.getHttpChannel().getByteBufferPool(), _inflateBufferSize));
+                ByteBufferPool bufferPool = baseRequest.getHttpChannel().getByteBufferPool();
+                if (inflate==X_CE_GZIP)
+                    baseRequest.getHttpInput().addInterceptor(new GzipHttpInputInterceptor(_gzipInflaterPool,bufferPool,_inflateBufferSize,_maxInflatedSize,_maxInflateRatio));
+                else
+                    baseRequest.getHttpInput().addInterceptor(new DeflateHttpInputInterceptor(_deflateInflaterPool,bufferPool,_inflateBufferSize,_maxInflatedSize,_maxInflateRatio));
 
                 for (ListIterator<HttpField> i = baseRequest.getHttpFields().listIterator(); i.hasNext();)
                 {
@@ -681,18 +894,22 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
             if (field.getHeader()==HttpHeader.IF_NONE_MATCH || field.getHeader()==HttpHeader.IF_MATCH)
             {
                 String etag = field.getValue();
-                int i=etag.indexOf(CompressedContentFormat.GZIP._etagQuote);
-                if (i>0)
+                for (ContentEncoder encoder : _encoders)
                 {
-                    baseRequest.setAttribute("o.e.j.s.h.gzip.GzipHandler.etag",etag);
-                    while (i>=0)
+                    CompressedContentFormat format = encoder.getFormat();
+                    int i=etag.indexOf(format._etagQuote);
+                    if (i>0)
                     {
-                        etag=etag.substring(0,i)+etag.substring(i+CompressedContentFormat.GZIP._etag.length());
-                        i=etag.indexOf(CompressedContentFormat.GZIP._etagQuote,i);
+                        baseRequest.setAttribute("o.e.j.s.h.gzip.GzipHandler.etag",field.getValue());
+                        while (i>=0)
+                        {
+                            etag=etag.substring(0,i)+etag.substring(i+format._etag.length());
+                            i=etag.indexOf(format._etagQuote,i);
+                        }
                     }
-                    
+                }
+                if (!etag.equals(field.getValue()))
                     fields.set(new HttpField(field.getHeader(),etag));
-                }   
             }
         }
         
@@ -1012,4 +1229,31 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     {
         return new DeflaterPool(capacity, getCompressionLevel(), true);
     }
+
+    /**
+     * Gets the maximum number of Inflaters that each InflaterPool can hold.
+     * @return the Inflater pool capacity
+     */
+    public int getInflaterPoolCapacity()
+    {
+        return _inflaterPoolCapacity;
+    }
+
+    /**
+     * Sets the maximum number of Inflaters that each InflaterPool can hold.
+     * Separate pools are kept for "gzip" and "deflate" request inflation.
+     * @param capacity the Inflater pool capacity (-1 for unlimited, 0 for no pool)
+     */
+    public void setInflaterPoolCapacity(int capacity)
+    {
+        if(isStarted())
+            throw new IllegalStateException(getState());
+
+        _inflaterPoolCapacity = capacity;
+    }
+
+    protected InflaterPool newInflaterPool(int capacity, boolean nowrap)
+    {
+        return new InflaterPool(capacity, nowrap);
+    }
 }
@@ -19,35 +19,68 @@
 package org.eclipse.jetty.server.handler.gzip;
 
 import java.nio.ByteBuffer;
+import java.util.zip.Inflater;
 
 import org.eclipse.jetty.http.GZIPContentDecoder;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.server.HttpInput;
 import org.eclipse.jetty.server.HttpInput.Content;
+import org.eclipse.jetty.server.InflaterPool;
 import org.eclipse.jetty.util.component.Destroyable;
 
 /**
  * A HttpInput Interceptor that inflates GZIP encoded request content.
+ * <p>If an {@link InflaterPool} is given, the {@link Inflater} is taken from
+ * and returned to the pool. If a maximum inflated size or ratio is given,
+ * a {@link org.eclipse.jetty.http.BadMessageException} with status 413 is thrown
+ * from {@link #readFrom(Content)} as soon as the inflated content exceeds it.</p>
  */
 public class GzipHttpInputInterceptor implements HttpInput.Interceptor, Destroyable
 {
     private final Decoder _decoder;
+    private final InflateLimit _limit;
     private ByteBuffer _chunk;
 
     public GzipHttpInputInterceptor(ByteBufferPool pool, int bufferSize)
     {
-        _decoder = new Decoder(pool, bufferSize);
+        this(null, pool, bufferSize, -1, -1);
+    }
+
+    /**
+     * @param inflaterPool the pool of nowrap inflaters, or null to create an inflater
+     * @param pool the pool of inflated buffers
+     * @param bufferSize the size of the inflated buffers
+     * @param maxInflatedSize the maximum number of inflated bytes, or -1 for no limit
+     * @param maxInflateRatio the maximum ratio of inflated to compressed bytes, or -1 for no limit
+     */
+    public GzipHttpInputInterceptor(InflaterPool inflaterPool, ByteBufferPool pool, int bufferSize, long maxInflatedSize, int maxInflateRatio)
+    {
+        _decoder = new Decoder(inflaterPool, pool, bufferSize);
+        _limit = new InflateLimit(maxInflatedSize, maxInflateRatio, bufferSize);
     }
 
     @Override
     public Content readFrom(Content content)
     {
-        _decoder.decodeChunks(content.getByteBuffer());
+        ByteBuffer compressed = content.getByteBuffer();
+        int remaining = compressed.remaining();
+        _decoder.decodeChunks(compressed);
+        _limit.compressed(remaining - compressed.remaining());
         final ByteBuffer chunk = _chunk;
 
         if (chunk == null)
             return null;
 
+        try
+        {
+            _limit.inflated(chunk.remaining());
+        }
+        catch (RuntimeException x)
+        {
+            _decoder.release(chunk);
+            throw x;
+        }
+
         return new Content(chunk)
         {
             @Override
@@ -66,9 +99,13 @@ public class GzipHttpInputInterceptor implements HttpInput.Interceptor, Destroya
 
     private class Decoder extends GZIPContentDecoder
     {
-        private Decoder(ByteBufferPool pool, int bufferSize)
+        private final InflaterPool _inflaterPool;
+        private boolean _ended;
+
+        private Decoder(InflaterPool inflaterPool, ByteBufferPool pool, int bufferSize)
         {
-            super(pool, bufferSize);
+            super(inflaterPool == null ? new Inflater(true) : inflaterPool.acquire(), pool, bufferSize);
+            _inflaterPool = inflaterPool;
         }
 
         @Override
@@ -84,5 +121,17 @@ public class GzipHttpInputInterceptor implements HttpInput.Interceptor, Destroya
             _chunk = null;
             super.decodeChunks(compressed);
         }
+
+        @Override
+        protected void end(Inflater inflater)
+        {
+            if (_ended)
+                return;
+            _ended = true;
+            if (_inflaterPool == null)
+                inflater.end();
+            else
+                _inflaterPool.release(inflater);
+        }
     }
 }
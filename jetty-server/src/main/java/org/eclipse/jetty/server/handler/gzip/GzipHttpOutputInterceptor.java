@@ -21,9 +21,8 @@ package org.eclipse.jetty.server.handler.gzip;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritePendingException;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.zip.CRC32;
-import java.util.zip.Deflater;
 
+import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
@@ -39,19 +38,19 @@ import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
-import static org.eclipse.jetty.http.CompressedContentFormat.GZIP;
-
+/**
+ * <p>An {@link HttpOutput.Interceptor} that compresses the response content with the
+ * {@link ContentEncoder.Compressor} provided by a {@link GzipFactory}, gzip by default.</p>
+ */
 public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
 {
     public static Logger LOG = Log.getLogger(GzipHttpOutputInterceptor.class);
-    private final static byte[] GZIP_HEADER = new byte[] { (byte)0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
 
     public final static HttpField VARY_ACCEPT_ENCODING_USER_AGENT=new PreEncodedHttpField(HttpHeader.VARY,HttpHeader.ACCEPT_ENCODING+", "+HttpHeader.USER_AGENT);
     public final static HttpField VARY_ACCEPT_ENCODING=new PreEncodedHttpField(HttpHeader.VARY,HttpHeader.ACCEPT_ENCODING.asString());
 
     private enum GZState {  MIGHT_COMPRESS, NOT_COMPRESSING, COMMITTING, COMPRESSING, FINISHED};
     private final AtomicReference<GZState> _state = new AtomicReference<>(GZState.MIGHT_COMPRESS);
-    private final CRC32 _crc = new CRC32();
 
     private final GzipFactory _factory;
     private final HttpOutput.Interceptor _interceptor;
@@ -60,7 +59,7 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
     private final int _bufferSize;
     private final boolean _syncFlush;
 
-    private Deflater _deflater;
+    private ContentEncoder.Compressor _compressor;
     private ByteBuffer _buffer;
 
     public GzipHttpOutputInterceptor(GzipFactory factory, HttpChannel channel, HttpOutput.Interceptor next,boolean syncFlush)
@@ -123,25 +122,6 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
         }
     }
 
-    private void addTrailer()
-    {
-        int i=_buffer.limit();
-        _buffer.limit(i+8);
-
-        int v=(int)_crc.getValue();
-        _buffer.put(i++,(byte)(v & 0xFF));
-        _buffer.put(i++,(byte)((v>>>8) & 0xFF));
-        _buffer.put(i++,(byte)((v>>>16) & 0xFF));
-        _buffer.put(i++,(byte)((v>>>24) & 0xFF));
-
-        v=_deflater.getTotalIn();
-        _buffer.put(i++,(byte)(v & 0xFF));
-        _buffer.put(i++,(byte)((v>>>8) & 0xFF));
-        _buffer.put(i++,(byte)((v>>>16) & 0xFF));
-        _buffer.put(i++,(byte)((v>>>24) & 0xFF));
-    }
-
-
     private void gzip(ByteBuffer content, boolean complete, final Callback callback)
     {
         if (content.hasRemaining() || complete)
@@ -166,9 +146,9 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 String response_etag = response.getHttpFields().get(HttpHeader.ETAG);
                 if (request_etags!=null && response_etag!=null)
                 {
-                    String response_etag_gzip=etagGzip(response_etag);
-                    if (request_etags.contains(response_etag_gzip))
-                        response.getHttpFields().put(HttpHeader.ETAG,response_etag_gzip);
+                    String response_etag_encoded=etagEncoded(request_etags,response_etag);
+                    if (response_etag_encoded!=null)
+                        response.getHttpFields().put(HttpHeader.ETAG,response_etag_encoded);
                 }
             }
             
@@ -217,28 +197,27 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             if (content_length<0 && complete)
                 content_length=content.remaining();
 
-            _deflater = _factory.getDeflater(_channel.getRequest(),content_length);
+            _compressor = _factory.getCompressor(_channel.getRequest(),content_length);
 
-            if (_deflater==null)
+            if (_compressor==null)
             {
-                LOG.debug("{} exclude no deflater",this);
+                LOG.debug("{} exclude no compressor",this);
                 _state.set(GZState.NOT_COMPRESSING);
                 _interceptor.write(content, complete, callback);
                 return;
             }
 
-            fields.put(GZIP._contentEncoding);
-            _crc.reset();
+            CompressedContentFormat format = _compressor.getFormat();
+            fields.put(format._contentEncoding);
             _buffer=_channel.getByteBufferPool().acquire(_bufferSize,false);
-            BufferUtil.fill(_buffer,GZIP_HEADER,0,GZIP_HEADER.length);
 
             // Adjust headers
             response.setContentLength(-1);
             String etag=fields.get(HttpHeader.ETAG);
             if (etag!=null)
-                fields.put(HttpHeader.ETAG,etagGzip(etag));
+                fields.put(HttpHeader.ETAG,etagEncoded(etag,format));
 
-            LOG.debug("{} compressing {}",this,_deflater);
+            LOG.debug("{} compressing {}",this,_compressor);
             _state.set(GZState.COMPRESSING);
 
             gzip(content,complete,callback);
@@ -247,10 +226,29 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             callback.failed(new WritePendingException());
     }
 
-    private String etagGzip(String etag)
+    private String etagEncoded(String etag, CompressedContentFormat format)
     {
         int end = etag.length()-1;
-        return (etag.charAt(end)=='"')?etag.substring(0,end)+ GZIP._etag+'"':etag+GZIP._etag;
+        return (etag.charAt(end)=='"')?etag.substring(0,end)+ format._etag+'"':etag+format._etag;
+    }
+
+    /**
+     * @param requestEtags the request etags, some of which have an encoding suffix
+     * @param etag the response etag
+     * @return the response etag with the encoding suffix of a matching request etag, or null if none matches
+     */
+    private String etagEncoded(String requestEtags, String etag)
+    {
+        int end = etag.length()-1;
+        String prefix = ((etag.charAt(end)=='"')?etag.substring(0,end):etag)+"--";
+        int i = requestEtags.indexOf(prefix);
+        if (i<0)
+            return null;
+        int suffix = i+prefix.length();
+        while (suffix<requestEtags.length() && requestEtags.charAt(suffix)!='"' && requestEtags.charAt(suffix)!=',')
+            suffix++;
+        String encoded = requestEtags.substring(i,suffix);
+        return (etag.charAt(end)=='"')?encoded+'"':encoded;
     }
     
     public void noCompression()
@@ -313,25 +311,26 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
 
         @Override
         protected void onCompleteFailure(Throwable x) {
-            _factory.recycle(_deflater);
-            _deflater=null;
+            if (_compressor!=null)
+                _compressor.release();
+            _compressor=null;
             super.onCompleteFailure(x);
         }
 
         @Override
         protected Action process() throws Exception
         {
-            if (_deflater==null)
+            if (_compressor==null)
                 return Action.SUCCEEDED;
 
-            if (_deflater.needsInput())
+            if (_compressor.needsInput())
             {
                 if (BufferUtil.isEmpty(_content))
                 {
-                    if (_deflater.finished())
+                    if (_compressor.finished())
                     {
-                        _factory.recycle(_deflater);
-                        _deflater=null;
+                        _compressor.release();
+                        _compressor=null;
                         _channel.getByteBufferPool().release(_buffer);
                         _buffer=null;
                         if (_copy!=null)
@@ -347,7 +346,7 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                         return Action.SUCCEEDED;
                     }
 
-                    _deflater.finish();
+                    _compressor.finish();
                 }
                 else if (_content.hasArray())
                 {
@@ -356,10 +355,9 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                     int len=_content.remaining();
                     BufferUtil.clear(_content);
 
-                    _crc.update(array,off,len);
-                    _deflater.setInput(array,off,len);
+                    _compressor.setInput(array,off,len);
                     if (_last)
-                        _deflater.finish();
+                        _compressor.finish();
                 }
                 else
                 {
@@ -375,25 +373,21 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                     int off=_copy.arrayOffset()+_copy.position();
                     int len=_copy.remaining();
 
-                    _crc.update(array,off,len);
-                    _deflater.setInput(array,off,len);
+                    _compressor.setInput(array,off,len);
                     if (_last && BufferUtil.isEmpty(_content))
-                        _deflater.finish();
+                        _compressor.finish();
                 }
             }
 
             BufferUtil.compact(_buffer);
             int off=_buffer.arrayOffset()+_buffer.limit();
-            int len=_buffer.capacity()-_buffer.limit() - (_last?8:0);
+            int len=_buffer.capacity()-_buffer.limit();
             if (len>0)
             {
-                int produced=_deflater.deflate(_buffer.array(),off,len,_syncFlush?Deflater.SYNC_FLUSH:Deflater.NO_FLUSH);
+                int produced=_compressor.compress(_buffer.array(),off,len,_syncFlush);
                 _buffer.limit(_buffer.limit()+produced);
             }
-            boolean finished=_deflater.finished();
-
-            if (finished)
-                addTrailer();
+            boolean finished=_compressor.finished();
 
             _interceptor.write(_buffer,finished,this);
             return Action.SCHEDULED;
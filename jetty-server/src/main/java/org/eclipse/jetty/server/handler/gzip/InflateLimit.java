@@ -0,0 +1,70 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import org.eclipse.jetty.http.BadMessageException;
+import org.eclipse.jetty.http.HttpStatus;
+
+/**
+ * Tracks the compressed and inflated byte counts of a request body and
+ * rejects bodies that inflate beyond a maximum size or ratio, so that
+ * compression bombs are detected as they are read rather than after
+ * they have been buffered.
+ */
+class InflateLimit
+{
+    private final long _maxInflatedSize;
+    private final int _maxInflateRatio;
+    private final int _ratioThreshold;
+    private long _compressed;
+    private long _inflated;
+
+    /**
+     * @param maxInflatedSize the maximum number of inflated bytes, or -1 for no limit
+     * @param maxInflateRatio the maximum ratio of inflated to compressed bytes, or -1 for no limit
+     * @param ratioThreshold the number of inflated bytes below which the ratio is not enforced
+     */
+    InflateLimit(long maxInflatedSize, int maxInflateRatio, int ratioThreshold)
+    {
+        _maxInflatedSize = maxInflatedSize;
+        _maxInflateRatio = maxInflateRatio;
+        _ratioThreshold = ratioThreshold;
+    }
+
+    void compressed(long bytes)
+    {
+        _compressed += bytes;
+    }
+
+    void inflated(long bytes)
+    {
+        _inflated += bytes;
+
+        if (_maxInflatedSize >= 0 && _inflated > _maxInflatedSize)
+            throw new BadMessageException(HttpStatus.PAYLOAD_TOO_LARGE_413, "Inflated content exceeds " + _maxInflatedSize + " bytes");
+
+        if (_maxInflateRatio > 0 && _inflated > _ratioThreshold && _inflated > _maxInflateRatio * Math.max(1, _compressed))
+            throw new BadMessageException(HttpStatus.PAYLOAD_TOO_LARGE_413, "Inflated content exceeds ratio " + _maxInflateRatio);
+    }
+
+    long getInflated()
+    {
+        return _inflated;
+    }
+}
@@ -22,6 +22,7 @@ package org.eclipse.jetty.server.session;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -98,6 +99,13 @@ public abstract class AbstractSessionCache extends ContainerLifeCycle implements
      */
     protected boolean _removeUnloadableSessions;
     
+    
+    /**
+     * If true, concurrent requests for a session share a single load of it,
+     * and only the last request to exit a session writes it to the SessionDataStore.
+     */
+    protected boolean _coalesceAccess;
+    
  
 
     /**
@@ -165,6 +173,8 @@ public abstract class AbstractSessionCache extends ContainerLifeCycle implements
      */
     protected class PlaceHolderSession extends Session
     {
+        private final CountDownLatch _loaded = new CountDownLatch(1);
+        private volatile Session _loadedSession;
 
         /**
          * @param handler SessionHandler to which this session belongs
@@ -174,6 +184,29 @@ public abstract class AbstractSessionCache extends ContainerLifeCycle implements
         {
             super(handler, data);
         }
+        
+        /**
+         * Release the threads waiting for the load of the session to finish.
+         * 
+         * @param session the loaded session or null if it could not be loaded
+         */
+        protected void loaded (Session session)
+        {
+            _loadedSession = session;
+            _loaded.countDown();
+        }
+        
+        /**
+         * Wait for the load of the session to finish.
+         * 
+         * @return the loaded session or null if it could not be loaded
+         * @throws InterruptedException if interrupted while waiting
+         */
+        protected Session awaitLoaded () throws InterruptedException
+        {
+            _loaded.await();
+            return _loadedSession;
+        }
     }
     
     
@@ -326,6 +359,32 @@ public abstract class AbstractSessionCache extends ContainerLifeCycle implements
     }
 
 
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionCache#isCoalesceAccess()
+     */
+    @ManagedAttribute(value="coalesce concurrent accesses to a session", readonly=true)
+    @Override
+    public boolean isCoalesceAccess()
+    {
+        return _coalesceAccess;
+    }
+
+
+    /**
+     * If true, requests that arrive for a session while it is being loaded wait
+     * for that load rather than queueing on the session lock to repeat the lookup,
+     * a session is only written through to the SessionDataStore when the last
+     * concurrent request exits it, and the access times of a session are only
+     * updated by the first of a group of concurrent requests.
+     * 
+     * @param coalesceAccess if <code>true</code> concurrent accesses to a session are coalesced
+     */
+    public void setCoalesceAccess(boolean coalesceAccess)
+    {
+        _coalesceAccess = coalesceAccess;
+    }
+
+
     /** 
      *  Get a session object.
      * 
@@ -362,50 +421,77 @@ public abstract class AbstractSessionCache extends ContainerLifeCycle implements
                     //My placeholder won, go ahead and load the full session data
                     try
                     {
-                        session = loadSession(id);
-                        if (session == null)
-                        {
-                            //session does not exist, remove the placeholder
-                            doDelete(id);
-                            phsLock.close();
-                            break;
-                        }
-                        
-                        try (Lock lock = session.lock())
+                        try
                         {
-                            //swap it in instead of the placeholder
-                            boolean success = doReplace(id, phs, session);
-                            if (!success)
+                            session = loadSession(id);
+                            if (session == null)
                             {
-                                //something has gone wrong, it should have been our placeholder
+                                //session does not exist, remove the placeholder
                                 doDelete(id);
-                                session = null;
-                                LOG.warn("Replacement of placeholder for session {} failed", id);
                                 phsLock.close();
                                 break;
                             }
-                            else
+                            
+                            try (Lock lock = session.lock())
                             {
-                                //successfully swapped in the session
-                                session.setResident(true);
-                                phsLock.close();
-                                break;
+                                //swap it in instead of the placeholder
+                                boolean success = doReplace(id, phs, session);
+                                if (!success)
+                                {
+                                    //something has gone wrong, it should have been our placeholder
+                                    doDelete(id);
+                                    session = null;
+                                    LOG.warn("Replacement of placeholder for session {} failed", id);
+                                    phsLock.close();
+                                    break;
+                                }
+                                else
+                                {
+                                    //successfully swapped in the session
+                                    session.setResident(true);
+                                    phsLock.close();
+                                    break;
+                                }
                             }
                         }
+                        catch (Exception e)
+                        {
+                            ex = e; //remember a problem happened loading the session
+                            doDelete(id); //remove the placeholder
+                            phsLock.close();
+                            session = null;
+                            break;
+                        }
                     }
-                    catch (Exception e)
+                    finally
                     {
-                        ex = e; //remember a problem happened loading the session
-                        doDelete(id); //remove the placeholder
-                        phsLock.close();
-                        session = null;
-                        break;
+                        //hand the result to any requests waiting on the placeholder
+                        phs.loaded(session);
                     }
                 }
                 else
                 {
                     //my placeholder didn't win, check the session returned
                     phsLock.close();
+                    if (_coalesceAccess)
+                    {
+                        if (s instanceof PlaceHolderSession)
+                        {
+                            //share the load in progress
+                            session = ((PlaceHolderSession)s).awaitLoaded();
+                            if (session == null || session.isResident())
+                                break;
+                        }
+                        else if (s.isResident())
+                        {
+                            //not locked: Session.access() checks it is still resident
+                            session = s;
+                            break;
+                        }
+                        session = null;
+                        continue;
+                    }
+
                     try (Lock lock = s.lock())
                     {
                         //is it a placeholder? or is a non-resident session? In both cases, chuck it away and start again
@@ -422,6 +508,21 @@ public abstract class AbstractSessionCache extends ContainerLifeCycle implements
             }
             else
             {
+                if (_coalesceAccess)
+                {
+                    if (session instanceof PlaceHolderSession)
+                    {
+                        //share the load in progress
+                        session = ((PlaceHolderSession)session).awaitLoaded();
+                        if (session == null || session.isResident())
+                            break;
+                    }
+                    else if (session.isResident())
+                        break; //not locked: Session.access() checks it is still resident
+                    session = null;
+                    continue;
+                }
+
                 //check the session returned
                 try (Lock lock = session.lock())
                 {                    
@@ -20,6 +20,9 @@
 package org.eclipse.jetty.server.session;
 
 
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -44,6 +47,8 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
     protected int _gracePeriodSec = 60 * 60; //default of 1hr 
     protected long _lastExpiryCheckTime = 0; //last time in ms that getExpired was called
     protected int _savePeriodSec = 0; //time in sec between saves
+    protected boolean _storeDeltas = false; //only store changed attributes of previously saved sessions
+    protected SessionDataSerializer _serializer = new JavaSessionDataSerializer(); //converts attributes to and from bytes
 
     /**
      * Store the session data persistently.
@@ -55,6 +60,25 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
      */
     public abstract void doStore(String id, SessionData data, long lastSaveTime) throws Exception;
     
+    
+    /**
+     * Store the metadata of a previously stored session, and only those attributes
+     * that have been set or removed since it was last stored.
+     * <p>
+     * Only called if {@link #isDeltaCapable()} and {@link #isStoreDeltas()} are true.
+     * The default implementation stores the whole session.
+     * 
+     * @param id identity of session to store
+     * @param data info of the session
+     * @param lastSaveTime time of previous save
+     * @param dirtyAttributes the names of the attributes set or removed since the previous save
+     * @throws Exception if unable to store data
+     */
+    public void doStoreDelta(String id, SessionData data, long lastSaveTime, Set<String> dirtyAttributes) throws Exception
+    {
+        doStore(id, data, lastSaveTime);
+    }
+    
     /**
      * Load the session from persistent store.
      * 
@@ -129,20 +153,21 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
             public void run ()
             {
                 long lastSave = data.getLastSaved();
-                long savePeriodMs = (_savePeriodSec <=0? 0: TimeUnit.SECONDS.toMillis(_savePeriodSec));
 
                 if (LOG.isDebugEnabled())
-                    LOG.debug("Store: id={}, dirty={}, lsave={}, period={}, elapsed={}", id,data.isDirty(), data.getLastSaved(), savePeriodMs, (System.currentTimeMillis()-lastSave));
+                    LOG.debug("Store: id={}, dirty={}, lsave={}, period={}, elapsed={}", id,data.isDirty(), data.getLastSaved(), _savePeriodSec, (System.currentTimeMillis()-lastSave));
 
-                //save session if attribute changed or never been saved or time between saves exceeds threshold
-                if (data.isDirty() || (lastSave <= 0) || ((System.currentTimeMillis()-lastSave) > savePeriodMs))
+                if (isStoreRequired(data))
                 {
                     //set the last saved time to now
                     data.setLastSaved(System.currentTimeMillis());
                     try
                     {
                         //call the specific store method, passing in previous save time
-                        doStore(id, data, lastSave);
+                        if (_storeDeltas && isDeltaCapable() && lastSave > 0)
+                            doStoreDelta(id, data, lastSave, new HashSet<>(data.getDirtyAttributes()));
+                        else
+                            doStore(id, data, lastSave);
                         data.setDirty(false); //only undo the dirty setting if we saved it
                     }
                     catch (Exception e)
@@ -161,6 +186,48 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
     }
     
 
+    /**
+     * Store several sessions. Each session is only written if {@link #isStoreRequired(SessionData)}.
+     * This implementation stores each session in turn; stores that can write
+     * several sessions more efficiently may override it.
+     * 
+     * @param sessions the sessions to store, keyed by id
+     * @return the ids of the sessions that could not be stored
+     */
+    public Set<String> storeAll(Map<String, SessionData> sessions)
+    {
+        Set<String> failed = new HashSet<>();
+        for (Map.Entry<String, SessionData> entry : sessions.entrySet())
+        {
+            try
+            {
+                store(entry.getKey(), entry.getValue());
+            }
+            catch (Exception e)
+            {
+                LOG.warn("Unable to store session "+entry.getKey(), e);
+                failed.add(entry.getKey());
+            }
+        }
+        return failed;
+    }
+
+
+    /**
+     * A session is written if an attribute has changed, if it has never been 
+     * saved, or if the time since it was last saved exceeds the save period.
+     * 
+     * @param data the session data
+     * @return true if the session should be written by {@link #store(String, SessionData)}
+     */
+    protected boolean isStoreRequired(SessionData data)
+    {
+        long lastSave = data.getLastSaved();
+        long savePeriodMs = (_savePeriodSec <=0? 0: TimeUnit.SECONDS.toMillis(_savePeriodSec));
+        return data.isDirty() || (lastSave <= 0) || ((System.currentTimeMillis()-lastSave) > savePeriodMs);
+    }
+
+
     @Override
     public Set<String> getExpired(Set<String> candidates)
     {
@@ -240,6 +307,67 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
         _savePeriodSec = savePeriodSec;
     }
 
+    /**
+     * @return true if this store implements {@link #doStoreDelta(String, SessionData, long, Set)}
+     * so that only the changed attributes of a session are written
+     */
+    @ManagedAttribute(value="can this store write only changed attributes", readonly=true)
+    public boolean isDeltaCapable()
+    {
+        return false;
+    }
+
+
+    /**
+     * @return true if only the changed attributes of previously saved sessions are stored
+     */
+    @ManagedAttribute(value="are only changed attributes stored", readonly=true)
+    public boolean isStoreDeltas()
+    {
+        return _storeDeltas;
+    }
+
+
+    /**
+     * If true and the store {@link #isDeltaCapable()}, a session that has
+     * been saved before is stored by writing its metadata and only the
+     * attributes that have been set or removed since it was last saved.
+     * <p>
+     * Attribute values that are mutated without calling
+     * {@link javax.servlet.http.HttpSession#setAttribute(String, Object)}
+     * are not written in this mode.
+     * 
+     * @param storeDeltas true to only store changed attributes
+     */
+    public void setStoreDeltas(boolean storeDeltas)
+    {
+        checkStarted();
+        _storeDeltas = storeDeltas;
+    }
+
+    /**
+     * @return the serializer of the session attributes
+     */
+    @ManagedAttribute(value="serializer of session attributes", readonly=true)
+    public SessionDataSerializer getSerializer()
+    {
+        return _serializer;
+    }
+
+
+    /**
+     * Set the serializer used by passivating stores to convert the
+     * session attributes to and from bytes. By default a 
+     * {@link JavaSessionDataSerializer} is used.
+     * 
+     * @param serializer the serializer
+     */
+    public void setSerializer(SessionDataSerializer serializer)
+    {
+        checkStarted();
+        _serializer = Objects.requireNonNull(serializer);
+    }
+
     @Override
     public String toString()
     {
@@ -29,6 +29,8 @@ public abstract class AbstractSessionDataStoreFactory implements SessionDataStor
 
     int _gracePeriodSec;
     int _savePeriodSec;
+    boolean _storeDeltas;
+    SessionDataSerializer _serializer;
     
     
     
@@ -66,6 +68,42 @@ public abstract class AbstractSessionDataStoreFactory implements SessionDataStor
     {
         _savePeriodSec = savePeriodSec;
     }
+
+
+    /**
+     * @return true if stores only write the changed attributes of previously saved sessions
+     */
+    public boolean isStoreDeltas()
+    {
+        return _storeDeltas;
+    }
+
+
+    /**
+     * @param storeDeltas true if stores should only write the changed attributes of previously saved sessions
+     */
+    public void setStoreDeltas(boolean storeDeltas)
+    {
+        _storeDeltas = storeDeltas;
+    }
+
+
+    /**
+     * @return the serializer given to stores, or null if stores use their default
+     */
+    public SessionDataSerializer getSerializer()
+    {
+        return _serializer;
+    }
+
+
+    /**
+     * @param serializer the serializer given to stores, shared by the stores of all contexts
+     */
+    public void setSerializer(SessionDataSerializer serializer)
+    {
+        _serializer = serializer;
+    }
    
 
 }
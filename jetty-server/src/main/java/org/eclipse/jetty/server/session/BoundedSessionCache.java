@@ -0,0 +1,587 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.Locker.Lock;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * BoundedSessionCache
+ *
+ * A {@link DefaultSessionCache} that limits the number of sessions it holds
+ * and/or their estimated size in bytes. When a limit is exceeded, sessions
+ * that are not in use by a request are written to the SessionDataStore and
+ * evicted, least recently used (LRU) or least frequently used (LFU) first.
+ * An evicted session is reloaded from the SessionDataStore on its next request.
+ * <p>
+ * Evictions are performed asynchronously by the scheduler of the SessionHandler,
+ * so the limits may be briefly exceeded. The weight of a session is an
+ * estimate computed by {@link #estimateWeight(Session)} when the session
+ * enters the cache and when a request exits it.
+ */
+@ManagedObject
+public class BoundedSessionCache extends DefaultSessionCache
+{
+    private  final static Logger LOG = Log.getLogger("org.eclipse.jetty.server.session");
+    
+    /**
+     * The order in which sessions are chosen for eviction
+     */
+    public enum EvictionOrder
+    {
+        /** evict the session that was used longest ago */
+        LRU,
+        /** evict the session that has been used least often, ageing the counts after each eviction pass */
+        LFU
+    }
+    
+    /**
+     * Per-session bookkeeping used to choose eviction candidates
+     */
+    protected static class Usage
+    {
+        private volatile long _lastUse = System.nanoTime();
+        private final AtomicLong _uses = new AtomicLong();
+        private volatile long _weight;
+        
+        protected Usage (long weight)
+        {
+            _weight = weight;
+        }
+        
+        protected void touch()
+        {
+            _lastUse = System.nanoTime();
+            _uses.incrementAndGet();
+        }
+    }
+    
+    /**
+     * A stable copy of a Usage for sorting
+     */
+    private static class Candidate
+    {
+        private final String _id;
+        private final long _lastUse;
+        private final long _uses;
+        
+        private Candidate (String id, Usage usage)
+        {
+            _id = id;
+            _lastUse = usage._lastUse;
+            _uses = usage._uses.get();
+        }
+    }
+    
+    private static final Comparator<Candidate> LRU_ORDER = Comparator.comparingLong(c -> c._lastUse);
+    private static final Comparator<Candidate> LFU_ORDER = Comparator.<Candidate>comparingLong(c -> c._uses).thenComparingLong(c -> c._lastUse);
+    
+    private static final int MAX_WEIGH_DEPTH = 4;
+    
+    protected final ConcurrentHashMap<String, Usage> _usage = new ConcurrentHashMap<>();
+    private final AtomicLong _weight = new AtomicLong();
+    private final AtomicBoolean _evictionScheduled = new AtomicBoolean();
+    private final Object _evictionLock = new Object();
+    private final LongAdder _evictions = new LongAdder();
+    
+    protected int _maxSessions = -1;
+    protected long _maxWeight = -1;
+    protected EvictionOrder _evictionOrder = EvictionOrder.LRU;
+    
+    
+    /**
+     * @param manager The SessionHandler related to this SessionCache
+     */
+    public BoundedSessionCache (SessionHandler manager)
+    {
+        super (manager);
+    }
+    
+    
+    @Override
+    protected void doStart() throws Exception
+    {
+        super.doStart();
+        if (isBounded() && _sessionDataStore instanceof NullSessionDataStore)
+            LOG.warn("Sessions evicted from {} will be lost as there is no persistent SessionDataStore", this);
+    }
+    
+    
+    /**
+     * @return the maximum number of sessions in the cache, or -1 if unlimited
+     */
+    @ManagedAttribute(value="max sessions before eviction (-1 unlimited)", readonly=true)
+    public int getMaxSessions()
+    {
+        return _maxSessions;
+    }
+
+
+    /**
+     * @param maxSessions the maximum number of sessions in the cache, or -1 if unlimited
+     */
+    public void setMaxSessions(int maxSessions)
+    {
+        _maxSessions = maxSessions;
+    }
+
+
+    /**
+     * @return the maximum estimated size in bytes of the sessions in the cache, or -1 if unlimited
+     */
+    @ManagedAttribute(value="max estimated bytes of sessions before eviction (-1 unlimited)", readonly=true)
+    public long getMaxWeight()
+    {
+        return _maxWeight;
+    }
+
+
+    /**
+     * Sessions are only weighed if this is set before the cache is started.
+     * 
+     * @param maxWeight the maximum estimated size in bytes of the sessions in the cache, or -1 if unlimited
+     */
+    public void setMaxWeight(long maxWeight)
+    {
+        if (isStarted() && (_maxWeight > 0) != (maxWeight > 0))
+            throw new IllegalStateException("Already started");
+        _maxWeight = maxWeight;
+    }
+
+
+    /**
+     * @return the order in which sessions are evicted
+     */
+    @ManagedAttribute(value="order of eviction", readonly=true)
+    public EvictionOrder getEvictionOrder()
+    {
+        return _evictionOrder;
+    }
+
+
+    /**
+     * @param evictionOrder the order in which sessions are evicted
+     */
+    public void setEvictionOrder(EvictionOrder evictionOrder)
+    {
+        _evictionOrder = Objects.requireNonNull(evictionOrder);
+    }
+    
+    
+    /**
+     * @return the estimated size in bytes of the sessions in the cache
+     */
+    @ManagedAttribute(value="estimated bytes of sessions in cache", readonly=true)
+    public long getWeight()
+    {
+        return _weight.get();
+    }
+    
+    
+    /**
+     * @return the number of sessions evicted because a limit was exceeded
+     */
+    @ManagedAttribute(value="sessions evicted to stay within limits", readonly=true)
+    public long getEvictions()
+    {
+        return _evictions.sum();
+    }
+    
+    
+    /** 
+     * @see org.eclipse.jetty.server.session.DefaultSessionCache#resetStats()
+     */
+    @Override
+    public void resetStats()
+    {
+        super.resetStats();
+        _evictions.reset();
+    }
+    
+    
+    /**
+     * @return true if a limit on the number or weight of sessions is set
+     */
+    public boolean isBounded()
+    {
+        return _maxSessions > 0 || _maxWeight > 0;
+    }
+    
+    
+    /**
+     * @return true if the cache holds more sessions, or more weight, than allowed
+     */
+    protected boolean isOverBounds()
+    {
+        return (_maxSessions > 0 && getSessionsCurrent() > _maxSessions) || (_maxWeight > 0 && _weight.get() > _maxWeight);
+    }
+    
+    
+    /** 
+     * @see org.eclipse.jetty.server.session.DefaultSessionCache#doGet(java.lang.String)
+     */
+    @Override
+    public Session doGet(String id)
+    {
+        Session session = super.doGet(id);
+        if (session != null)
+        {
+            Usage usage = _usage.get(id);
+            if (usage != null)
+                usage.touch();
+        }
+        return session;
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.DefaultSessionCache#doPutIfAbsent(java.lang.String, org.eclipse.jetty.server.session.Session)
+     */
+    @Override
+    public Session doPutIfAbsent(String id, Session session)
+    {
+        Session s = super.doPutIfAbsent(id, session);
+        if (s == null && !(session instanceof PlaceHolderSession))
+            admit(id, session);
+        return s;
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.DefaultSessionCache#doReplace(java.lang.String, org.eclipse.jetty.server.session.Session, org.eclipse.jetty.server.session.Session)
+     */
+    @Override
+    public boolean doReplace(String id, Session oldValue, Session newValue)
+    {
+        boolean result = super.doReplace(id, oldValue, newValue);
+        if (result && (oldValue instanceof PlaceHolderSession))
+            admit(id, newValue);
+        return result;
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.DefaultSessionCache#doDelete(java.lang.String)
+     */
+    @Override
+    public Session doDelete(String id)
+    {
+        Session s = super.doDelete(id);
+        if (s != null && !(s instanceof PlaceHolderSession))
+        {
+            Usage usage = _usage.remove(id);
+            if (usage != null)
+                _weight.addAndGet(-usage._weight);
+        }
+        return s;
+    }
+
+
+    /** 
+     * Re-weigh the session once the request has exited it, as its attributes may have changed.
+     * 
+     * @see org.eclipse.jetty.server.session.AbstractSessionCache#put(java.lang.String, org.eclipse.jetty.server.session.Session)
+     */
+    @Override
+    public void put(String id, Session session) throws Exception
+    {
+        super.put(id, session);
+        
+        if (_maxWeight > 0 && session.getRequests() <= 0)
+        {
+            Usage usage = _usage.get(id);
+            if (usage != null)
+            {
+                long weight = estimateWeight(session);
+                _weight.addAndGet(weight - usage._weight);
+                usage._weight = weight;
+            }
+        }
+        checkBounds();
+    }
+    
+    
+    /**
+     * Start tracking a session that has entered the cache.
+     * 
+     * @param id the session id
+     * @param session the session
+     */
+    private void admit (String id, Session session)
+    {
+        Usage usage = new Usage(_maxWeight > 0 ? estimateWeight(session) : 0);
+        usage.touch();
+        Usage old = _usage.put(id, usage);
+        _weight.addAndGet(usage._weight - (old == null ? 0 : old._weight));
+        checkBounds();
+    }
+    
+    
+    /**
+     * If a limit is exceeded, arrange for sessions to be evicted by the scheduler.
+     * Eviction is not done by the calling thread, as it may hold the lock of
+     * another session.
+     */
+    private void checkBounds ()
+    {
+        if (!isOverBounds() || !_evictionScheduled.compareAndSet(false, true))
+            return;
+        
+        Scheduler scheduler = getSessionHandler().getScheduler();
+        if (scheduler == null)
+        {
+            _evictionScheduled.set(false);
+            return;
+        }
+        
+        try
+        {
+            scheduler.schedule(this::runEviction, 0, TimeUnit.MILLISECONDS);
+        }
+        catch (Exception e)
+        {
+            //scheduler may be stopping
+            _evictionScheduled.set(false);
+            LOG.ignore(e);
+        }
+    }
+    
+    
+    private void runEviction ()
+    {
+        int evicted = 0;
+        try
+        {
+            evicted = evict();
+        }
+        catch (Exception e)
+        {
+            LOG.warn(e);
+        }
+        finally
+        {
+            _evictionScheduled.set(false);
+        }
+        
+        //only try again if we are making progress, otherwise wait for the next session to arrive or exit a request
+        if (evicted > 0)
+            checkBounds();
+    }
+    
+    
+    /**
+     * Evict sessions that are not in use by a request until the cache
+     * is within its limits.
+     * 
+     * @return the number of sessions evicted
+     */
+    @ManagedOperation(value="evict sessions until within limits", impact="ACTION")
+    public int evict ()
+    {
+        if (!isStarted())
+            return 0;
+        
+        synchronized (_evictionLock)
+        {
+            if (!isOverBounds())
+                return 0;
+            
+            List<Candidate> candidates = new ArrayList<>(_usage.size());
+            for (Map.Entry<String, Usage> entry : _usage.entrySet())
+                candidates.add(new Candidate(entry.getKey(), entry.getValue()));
+            candidates.sort(_evictionOrder == EvictionOrder.LFU ? LFU_ORDER : LRU_ORDER);
+            
+            int evicted = 0;
+            for (Candidate candidate : candidates)
+            {
+                if (!isOverBounds())
+                    break;
+
+                Session session = _sessions.get(candidate._id);
+                if (session == null)
+                {
+                    //session left the cache while being admitted
+                    Usage usage = _usage.get(candidate._id);
+                    if (usage != null && _sessions.get(candidate._id) == null && _usage.remove(candidate._id, usage))
+                        _weight.addAndGet(-usage._weight);
+                    continue;
+                }
+                
+                if (session instanceof PlaceHolderSession)
+                    continue;
+                
+                if (evict(session))
+                    ++evicted;
+            }
+            
+            //age the use counts so that sessions popular in the past do not stay forever
+            if (_evictionOrder == EvictionOrder.LFU)
+            {
+                for (Usage usage : _usage.values())
+                    usage._uses.updateAndGet(u -> u >> 1);
+            }
+            
+            if (LOG.isDebugEnabled())
+                LOG.debug("Evicted {} sessions, current={} weight={}", evicted, getSessionsCurrent(), getWeight());
+            return evicted;
+        }
+    }
+    
+    
+    /**
+     * Write the session to the SessionDataStore and evict it from the cache,
+     * unless it is in use by a request.
+     * 
+     * @param session the session to evict
+     * @return true if the session was evicted
+     */
+    protected boolean evict (Session session)
+    {
+        try (Lock lock = session.lock())
+        {
+            if (!session.isValid() || !session.isResident() || session.getRequests() > 0)
+                return false;
+            
+            boolean passivating = _sessionDataStore.isPassivating();
+            try
+            {
+                if (passivating)
+                    session.willPassivate();
+                _sessionDataStore.store(session.getId(), session.getSessionData());
+            }
+            catch (Exception e)
+            {
+                LOG.warn("Passivation of session {} for eviction failed", session.getId(), e);
+                if (passivating)
+                    session.didActivate();
+                return false;
+            }
+
+            doDelete(session.getId()); //detach from this cache
+            session.setResident(false);
+            _evictions.increment();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Evicted session {} to stay within limits", session.getId());
+            return true;
+        }
+    }
+    
+    
+    /**
+     * Estimate the number of bytes of heap held by a session. Strings, boxed 
+     * primitives, arrays, collections and maps are sized from their contents; 
+     * other attribute values are given a fixed estimate. Attributes that have 
+     * not been deserialized yet are sized from their serialized bytes, so that
+     * weighing a session does not deserialize them.
+     * 
+     * @param session the session to weigh
+     * @return the estimated size of the session in bytes
+     */
+    protected long estimateWeight (Session session)
+    {
+        SessionData data = session.getSessionData();
+        long weight = 512; //session, session data and their fixed fields
+        for (String name : data.getKeys())
+        {
+            SessionData.LazyAttribute lazy = data.getLazyAttribute(name);
+            Object value = lazy == null ? data.getAttribute(name) : lazy.getBytes();
+            weight += 32 + estimateWeight(name, 0) + estimateWeight(value, 0);
+        }
+        return weight;
+    }
+    
+    
+    /**
+     * @param value an attribute value
+     * @param depth the nesting depth of the value
+     * @return the estimated size of the value in bytes
+     */
+    protected long estimateWeight (Object value, int depth)
+    {
+        if (value == null)
+            return 0;
+        if (value instanceof String)
+            return 40 + 2L * ((String)value).length();
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character)
+            return 16;
+        if (value instanceof byte[])
+            return 16 + ((byte[])value).length;
+        if (depth >= MAX_WEIGH_DEPTH)
+            return 64;
+        
+        try
+        {
+            if (value instanceof Collection)
+            {
+                long weight = 40;
+                for (Object o : (Collection<?>)value)
+                    weight += 8 + estimateWeight(o, depth+1);
+                return weight;
+            }
+            if (value instanceof Map)
+            {
+                long weight = 48;
+                for (Map.Entry<?,?> e : ((Map<?,?>)value).entrySet())
+                    weight += 32 + estimateWeight(e.getKey(), depth+1) + estimateWeight(e.getValue(), depth+1);
+                return weight;
+            }
+            if (value.getClass().isArray())
+            {
+                int length = Array.getLength(value);
+                if (value.getClass().getComponentType().isPrimitive())
+                    return 16 + 8L * length;
+                long weight = 16;
+                for (int i = 0; i < length; i++)
+                    weight += 8 + estimateWeight(Array.get(value, i), depth+1);
+                return weight;
+            }
+        }
+        catch (RuntimeException e)
+        {
+            //modified while being weighed
+            LOG.ignore(e);
+        }
+        return 64;
+    }
+    
+    
+    @Override
+    public String toString()
+    {
+        return String.format("%s[maxSessions=%d,maxWeight=%d,order=%s]", super.toString(), _maxSessions, _maxWeight, _evictionOrder);
+    }
+}
@@ -0,0 +1,112 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.util.Locale;
+
+/**
+ * BoundedSessionCacheFactory
+ *
+ * Factory for creating new BoundedSessionCaches.
+ */
+public class BoundedSessionCacheFactory extends DefaultSessionCacheFactory
+{
+    int _maxSessions = -1;
+    long _maxWeight = -1;
+    BoundedSessionCache.EvictionOrder _evictionOrder = BoundedSessionCache.EvictionOrder.LRU;
+    
+    
+    /**
+     * @return the maximum number of sessions in the cache, or -1 if unlimited
+     */
+    public int getMaxSessions()
+    {
+        return _maxSessions;
+    }
+
+
+
+    /**
+     * @param maxSessions the maximum number of sessions in the cache, or -1 if unlimited
+     */
+    public void setMaxSessions(int maxSessions)
+    {
+        _maxSessions = maxSessions;
+    }
+
+
+
+    /**
+     * @return the maximum estimated size in bytes of the sessions in the cache, or -1 if unlimited
+     */
+    public long getMaxWeight()
+    {
+        return _maxWeight;
+    }
+
+
+
+    /**
+     * @param maxWeight the maximum estimated size in bytes of the sessions in the cache, or -1 if unlimited
+     */
+    public void setMaxWeight(long maxWeight)
+    {
+        _maxWeight = maxWeight;
+    }
+
+
+
+    /**
+     * @return the name of the order in which sessions are evicted
+     */
+    public String getEvictionOrder()
+    {
+        return _evictionOrder.name();
+    }
+
+
+
+    /**
+     * @param evictionOrder LRU or LFU
+     */
+    public void setEvictionOrder(String evictionOrder)
+    {
+        _evictionOrder = BoundedSessionCache.EvictionOrder.valueOf(evictionOrder.trim().toUpperCase(Locale.ENGLISH));
+    }
+
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.DefaultSessionCacheFactory#getSessionCache(org.eclipse.jetty.server.session.SessionHandler)
+     */
+    @Override
+    public SessionCache getSessionCache (SessionHandler handler)
+    {
+        BoundedSessionCache cache = new BoundedSessionCache(handler);
+        cache.setEvictionPolicy(getEvictionPolicy());
+        cache.setSaveOnInactiveEviction(isSaveOnInactiveEvict());
+        cache.setSaveOnCreate(isSaveOnCreate());
+        cache.setRemoveUnloadableSessions(isRemoveUnloadableSessions());
+        cache.setCoalesceAccess(isCoalesceAccess());
+        cache.setMaxSessions(getMaxSessions());
+        cache.setMaxWeight(getMaxWeight());
+        cache.setEvictionOrder(_evictionOrder);
+        return cache;
+    }
+}
@@ -0,0 +1,576 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
+
+/**
+ * CompactSessionDataSerializer
+ *
+ * Serializes attributes whose values are Strings, boxed primitives, byte arrays,
+ * or ArrayLists, HashMaps and LinkedHashMaps of those in a compact binary format.
+ * Any other attribute value is written with java serialization, in the same way
+ * as the {@link JavaSessionDataSerializer}.
+ * <p>
+ * Data written by the {@link JavaSessionDataSerializer} can still be read,
+ * so a store can be switched to this serializer without losing existing sessions.
+ * The reverse is not true.
+ */
+public class CompactSessionDataSerializer implements SessionDataSerializer
+{
+    /**
+     * First byte of the compact format, which is never the first byte of a java serialization stream
+     */
+    public static final int MAGIC = 0x4A;
+    public static final int VERSION = 1;
+    
+    private static final int MAX_DEPTH = 8;
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int LONG = 3;
+    private static final int TRUE = 4;
+    private static final int FALSE = 5;
+    private static final int DOUBLE = 6;
+    private static final int FLOAT = 7;
+    private static final int SHORT = 8;
+    private static final int BYTE = 9;
+    private static final int CHARACTER = 10;
+    private static final int BYTES = 11;
+    private static final int ARRAY_LIST = 12;
+    private static final int HASH_MAP = 13;
+    private static final int LINKED_HASH_MAP = 14;
+    private static final int SERIALIZED = 15;
+
+    private final JavaSessionDataSerializer _java = new JavaSessionDataSerializer();
+
+    @Override
+    public void serializeAttributes(SessionData data, OutputStream out) throws IOException
+    {
+        Writer writer = new Writer();
+        for (Map.Entry<String,Object> entry : data.getAllAttributes().entrySet())
+        {
+            //name lengths are offset by one, so that 0 marks the end of the attributes
+            writer.writeString(entry.getKey(), 1);
+            writeAttribute(writer, entry.getValue());
+        }
+        writer.writeVarInt(0);
+        writer.writeTo(out);
+    }
+
+    @Override
+    public void deserializeAttributes(SessionData data, InputStream in) throws IOException, ClassNotFoundException
+    {
+        int b = in.read();
+        if (b != MAGIC)
+        {
+            //written by the JavaSessionDataSerializer
+            _java.deserializeAttributes(data, unread(b, in));
+            return;
+        }
+
+        Reader reader = new Reader(readBody(in));
+        Map<String,Object> attributes = new ConcurrentHashMap<>();
+        while (true)
+        {
+            String name = reader.readString(1);
+            if (name == null)
+                break;
+            attributes.put(name, readAttribute(reader));
+        }
+        data._attributes = attributes;
+    }
+
+    @Override
+    public void serializeAttribute(Object value, OutputStream out) throws IOException
+    {
+        Writer writer = new Writer();
+        writeAttribute(writer, value);
+        writer.writeTo(out);
+    }
+
+    @Override
+    public Object deserializeAttribute(InputStream in) throws IOException, ClassNotFoundException
+    {
+        int b = in.read();
+        if (b != MAGIC)
+            return _java.deserializeAttribute(unread(b, in));
+
+        return readAttribute(new Reader(readBody(in)));
+    }
+
+    private InputStream unread(int b, InputStream in) throws IOException
+    {
+        if (b < 0)
+            throw new EOFException();
+        return new SequenceInputStream(new ByteArrayInputStream(new byte[]{(byte)b}), in);
+    }
+
+    private byte[] readBody(InputStream in) throws IOException
+    {
+        int version = in.read();
+        if (version != VERSION)
+            throw new StreamCorruptedException("Unknown version "+version);
+
+        int length = 0;
+        for (int shift = 0; ; shift += 7)
+        {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException();
+            if (shift > 28)
+                throw new StreamCorruptedException("Bad length");
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                break;
+        }
+
+        byte[] body = new byte[length];
+        new DataInputStream(in).readFully(body);
+        return body;
+    }
+
+    private void writeAttribute(Writer writer, Object value) throws IOException
+    {
+        if (isCompact(value, 0))
+        {
+            writeValue(writer, value);
+        }
+        else
+        {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(baos))
+            {
+                SessionData.serializeAttribute(value, oos);
+            }
+            writer.writeByte(SERIALIZED);
+            writer.writeVarInt(baos.size());
+            writer.writeBytes(baos.toByteArray());
+        }
+    }
+
+    private Object readAttribute(Reader reader) throws IOException, ClassNotFoundException
+    {
+        if (reader.peek() != SERIALIZED)
+            return readValue(reader);
+
+        reader.readByte();
+        byte[] bytes = reader.readBytes(reader.readVarInt());
+        try (ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(new ByteArrayInputStream(bytes)))
+        {
+            return SessionData.deserializeAttribute(ois);
+        }
+    }
+
+    private static boolean isCompact(Object value, int depth)
+    {
+        if (value == null)
+            return depth > 0;
+
+        Class<?> type = value.getClass();
+        if (type == String.class || type == Integer.class || type == Long.class || type == Boolean.class ||
+            type == Double.class || type == Float.class || type == Short.class || type == Byte.class ||
+            type == Character.class || type == byte[].class)
+            return true;
+
+        if (depth >= MAX_DEPTH)
+            return false;
+
+        if (type == ArrayList.class)
+        {
+            for (Object element : (List<?>)value)
+            {
+                if (!isCompact(element, depth + 1))
+                    return false;
+            }
+            return true;
+        }
+
+        if (type == HashMap.class || type == LinkedHashMap.class)
+        {
+            for (Map.Entry<?,?> entry : ((Map<?,?>)value).entrySet())
+            {
+                if (!isCompact(entry.getKey(), depth + 1) || !isCompact(entry.getValue(), depth + 1))
+                    return false;
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    private static void writeValue(Writer writer, Object value)
+    {
+        if (value == null)
+        {
+            writer.writeByte(NULL);
+        }
+        else if (value instanceof String)
+        {
+            writer.writeByte(STRING);
+            writer.writeString((String)value, 0);
+        }
+        else if (value instanceof Integer)
+        {
+            writer.writeByte(INTEGER);
+            writer.writeVarLong(zigZag((Integer)value));
+        }
+        else if (value instanceof Long)
+        {
+            writer.writeByte(LONG);
+            writer.writeVarLong(zigZag((Long)value));
+        }
+        else if (value instanceof Boolean)
+        {
+            writer.writeByte((Boolean)value ? TRUE : FALSE);
+        }
+        else if (value instanceof Double)
+        {
+            writer.writeByte(DOUBLE);
+            writer.writeFixed(Double.doubleToRawLongBits((Double)value), 8);
+        }
+        else if (value instanceof Float)
+        {
+            writer.writeByte(FLOAT);
+            writer.writeFixed(Float.floatToRawIntBits((Float)value), 4);
+        }
+        else if (value instanceof Short)
+        {
+            writer.writeByte(SHORT);
+            writer.writeVarLong(zigZag((Short)value));
+        }
+        else if (value instanceof Byte)
+        {
+            writer.writeByte(BYTE);
+            writer.writeByte((Byte)value);
+        }
+        else if (value instanceof Character)
+        {
+            writer.writeByte(CHARACTER);
+            writer.writeVarInt((Character)value);
+        }
+        else if (value instanceof byte[])
+        {
+            byte[] bytes = (byte[])value;
+            writer.writeByte(BYTES);
+            writer.writeVarInt(bytes.length);
+            writer.writeBytes(bytes);
+        }
+        else if (value instanceof List)
+        {
+            List<?> list = (List<?>)value;
+            writer.writeByte(ARRAY_LIST);
+            writer.writeVarInt(list.size());
+            for (Object element : list)
+                writeValue(writer, element);
+        }
+        else
+        {
+            Map<?,?> map = (Map<?,?>)value;
+            writer.writeByte(value instanceof LinkedHashMap ? LINKED_HASH_MAP : HASH_MAP);
+            writer.writeVarInt(map.size());
+            for (Map.Entry<?,?> entry : map.entrySet())
+            {
+                writeValue(writer, entry.getKey());
+                writeValue(writer, entry.getValue());
+            }
+        }
+    }
+
+    private static Object readValue(Reader reader) throws IOException
+    {
+        int type = reader.readByte();
+        switch (type)
+        {
+            case NULL:
+                return null;
+            case STRING:
+                return reader.readString(0);
+            case INTEGER:
+                return (int)unZigZag(reader.readVarLong());
+            case LONG:
+                return unZigZag(reader.readVarLong());
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case DOUBLE:
+                return Double.longBitsToDouble(reader.readFixed(8));
+            case FLOAT:
+                return Float.intBitsToFloat((int)reader.readFixed(4));
+            case SHORT:
+                return (short)unZigZag(reader.readVarLong());
+            case BYTE:
+                return (byte)reader.readByte();
+            case CHARACTER:
+                return (char)reader.readVarInt();
+            case BYTES:
+                return reader.readBytes(reader.readVarInt());
+            case ARRAY_LIST:
+            {
+                int size = reader.readVarInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                    list.add(readValue(reader));
+                return list;
+            }
+            case HASH_MAP:
+            case LINKED_HASH_MAP:
+            {
+                int size = reader.readVarInt();
+                Map<Object,Object> map = type == HASH_MAP ? new HashMap<>() : new LinkedHashMap<>();
+                for (int i = 0; i < size; i++)
+                    map.put(readValue(reader), readValue(reader));
+                return map;
+            }
+            default:
+                throw new StreamCorruptedException("Unknown type "+type);
+        }
+    }
+
+    private static long zigZag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName();
+    }
+
+
+    /**
+     * Accumulates the body of the compact format, which is written
+     * to the stream after the magic, version and length of the body.
+     */
+    private static class Writer
+    {
+        private byte[] _bytes = new byte[256];
+        private int _length;
+
+        private void ensure(int space)
+        {
+            if (_length + space > _bytes.length)
+                _bytes = Arrays.copyOf(_bytes, Math.max(_bytes.length * 2, _length + space));
+        }
+
+        void writeByte(int b)
+        {
+            ensure(1);
+            _bytes[_length++] = (byte)b;
+        }
+
+        void writeBytes(byte[] bytes)
+        {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, _bytes, _length, bytes.length);
+            _length += bytes.length;
+        }
+
+        void writeVarInt(int value)
+        {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarLong(long value)
+        {
+            ensure(10);
+            while ((value & ~0x7FL) != 0)
+            {
+                _bytes[_length++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            _bytes[_length++] = (byte)value;
+        }
+
+        void writeFixed(long value, int size)
+        {
+            ensure(size);
+            for (int i = 0; i < size; i++)
+            {
+                _bytes[_length++] = (byte)value;
+                value >>>= 8;
+            }
+        }
+
+        /**
+         * Strings are written as their length followed by each char as a var int,
+         * so ascii text takes one byte per char and any string is written exactly.
+         */
+        void writeString(String value, int lengthOffset)
+        {
+            int length = value.length();
+            writeVarInt(length + lengthOffset);
+            ensure(length * 3);
+            for (int i = 0; i < length; i++)
+            {
+                char c = value.charAt(i);
+                while ((c & ~0x7F) != 0)
+                {
+                    _bytes[_length++] = (byte)((c & 0x7F) | 0x80);
+                    c >>>= 7;
+                }
+                _bytes[_length++] = (byte)c;
+            }
+        }
+
+        void writeTo(OutputStream out) throws IOException
+        {
+            byte[] header = new byte[7];
+            header[0] = (byte)MAGIC;
+            header[1] = (byte)VERSION;
+            int h = 2;
+            int length = _length;
+            while ((length & ~0x7F) != 0)
+            {
+                header[h++] = (byte)((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            header[h++] = (byte)length;
+            out.write(header, 0, h);
+            out.write(_bytes, 0, _length);
+            out.flush();
+        }
+    }
+
+
+    private static class Reader
+    {
+        private final byte[] _bytes;
+        private int _position;
+
+        Reader(byte[] bytes)
+        {
+            _bytes = bytes;
+        }
+
+        int peek() throws IOException
+        {
+            if (_position >= _bytes.length)
+                throw new EOFException();
+            return _bytes[_position] & 0xFF;
+        }
+
+        int readByte() throws IOException
+        {
+            int b = peek();
+            _position++;
+            return b;
+        }
+
+        byte[] readBytes(int length) throws IOException
+        {
+            if (length < 0 || length > _bytes.length - _position)
+                throw new EOFException();
+            byte[] bytes = Arrays.copyOfRange(_bytes, _position, _position + length);
+            _position += length;
+            return bytes;
+        }
+
+        int readVarInt() throws IOException
+        {
+            long value = readVarLong();
+            if ((value & ~0xFFFFFFFFL) != 0)
+                throw new StreamCorruptedException("Bad var int");
+            return (int)value;
+        }
+
+        long readVarLong() throws IOException
+        {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7)
+            {
+                int b = readByte();
+                value |= (long)(b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new StreamCorruptedException("Bad var long");
+        }
+
+        long readFixed(int size) throws IOException
+        {
+            long value = 0;
+            for (int i = 0; i < size; i++)
+                value |= (long)readByte() << (8 * i);
+            return value;
+        }
+
+        /**
+         * @param lengthOffset the offset added to the length when written
+         * @return the string, or null if the written length was 0 and the offset non zero
+         */
+        String readString(int lengthOffset) throws IOException
+        {
+            int length = readVarInt() - lengthOffset;
+            if (length < 0)
+                return null;
+            if (length > _bytes.length - _position)
+                throw new EOFException();
+
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++)
+            {
+                int b = readByte();
+                if ((b & 0x80) == 0)
+                {
+                    chars[i] = (char)b;
+                }
+                else
+                {
+                    int c = b & 0x7F;
+                    for (int shift = 7; (b & 0x80) != 0; shift += 7)
+                    {
+                        if (shift > 14)
+                            throw new StreamCorruptedException("Bad char");
+                        b = readByte();
+                        c |= (b & 0x7F) << shift;
+                    }
+                    chars[i] = (char)c;
+                }
+            }
+            return new String(chars);
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package org.eclipse.jetty.server.session;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -48,6 +49,10 @@ public class DefaultSessionCache extends AbstractSessionCache
     
     private final CounterStatistic _stats = new CounterStatistic();
     
+    private final LongAdder _hits = new LongAdder();
+    
+    private final LongAdder _misses = new LongAdder();
+    
     
     
     /**
@@ -88,6 +93,26 @@ public class DefaultSessionCache extends AbstractSessionCache
         return _stats.getTotal();
     }
     
+    
+    /**
+     * @return the number of lookups that found the session resident in the cache
+     */
+    @ManagedAttribute(value="lookups satisfied by the cache", readonly=true)
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+    
+    
+    /**
+     * @return the number of lookups that did not find the session resident in the cache
+     */
+    @ManagedAttribute(value="lookups not satisfied by the cache", readonly=true)
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+    
     /**
      * 
      */
@@ -95,6 +120,23 @@ public class DefaultSessionCache extends AbstractSessionCache
     public void resetStats()
     {
         _stats.reset();
+        _hits.reset();
+        _misses.reset();
+    }
+    
+    
+    /** 
+     * @see org.eclipse.jetty.server.session.AbstractSessionCache#get(java.lang.String)
+     */
+    @Override
+    public Session get(String id) throws Exception
+    {
+        Session session = (id == null ? null : _sessions.get(id));
+        if (session != null && !(session instanceof PlaceHolderSession) && session.isResident())
+            _hits.increment();
+        else
+            _misses.increment();
+        return super.get(id);
     }
     
     
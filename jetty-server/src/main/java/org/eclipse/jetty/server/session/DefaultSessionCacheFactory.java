@@ -30,6 +30,7 @@ public class DefaultSessionCacheFactory implements SessionCacheFactory
     boolean _saveOnInactiveEvict;
     boolean _saveOnCreate;
     boolean _removeUnloadableSessions;
+    boolean _coalesceAccess;
 
     
     /**
@@ -77,6 +78,28 @@ public class DefaultSessionCacheFactory implements SessionCacheFactory
 
 
 
+    /**
+     * @return the coalesceAccess
+     */
+    public boolean isCoalesceAccess()
+    {
+        return _coalesceAccess;
+    }
+
+
+
+
+    /**
+     * @param coalesceAccess the coalesceAccess to set
+     */
+    public void setCoalesceAccess(boolean coalesceAccess)
+    {
+        _coalesceAccess = coalesceAccess;
+    }
+
+
+
+
     /**
      * @return the evictionPolicy
      */
@@ -132,6 +155,7 @@ public class DefaultSessionCacheFactory implements SessionCacheFactory
         cache.setSaveOnInactiveEviction(isSaveOnInactiveEvict());
         cache.setSaveOnCreate(isSaveOnCreate());
         cache.setRemoveUnloadableSessions(isRemoveUnloadableSessions());
+        cache.setCoalesceAccess(isCoalesceAccess());
         return cache;
     }
 
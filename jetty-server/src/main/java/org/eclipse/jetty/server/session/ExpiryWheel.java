@@ -0,0 +1,362 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ExpiryWheel
+ *
+ * An index of session ids by expiry time, organised as a hierarchical timing wheel.
+ * <p>
+ * Each level of the wheel has {@value #SLOTS} slots. A slot at level 0 holds the
+ * sessions expiring within one tick, a slot at level 1 the sessions expiring within
+ * {@value #SLOTS} ticks, and so on. As time advances, the slots of the higher levels
+ * are cascaded into the lower ones, so that finding the expired sessions only touches
+ * sessions that are actually due, rather than every session in the store. Sessions
+ * expiring beyond the range of the top level are held in an overflow set that is
+ * revisited each time the top level wraps.
+ * <p>
+ * Sessions that have expired remain in the index until they are removed or given
+ * a new expiry time.
+ */
+public class ExpiryWheel
+{
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final int DUE = -1;
+    private static final int OVERFLOW = LEVELS;
+    
+    private static class Entry
+    {
+        private final String _id;
+        private long _expiry;
+        private int _level;
+        private int _slot;
+        
+        private Entry (String id, long expiry)
+        {
+            _id = id;
+            _expiry = expiry;
+        }
+    }
+    
+    private final long _tickMs;
+    private final Map<String, Entry> _entries = new HashMap<>();
+    @SuppressWarnings("unchecked")
+    private final Set<Entry>[][] _wheels = new Set[LEVELS][SLOTS];
+    private final int[] _levelSizes = new int[LEVELS];
+    private final Set<Entry> _overflow = new HashSet<>();
+    private final Set<Entry> _due = new HashSet<>();
+    private long _currentTick = -1; //all ticks before this have been processed
+    
+    
+    public ExpiryWheel ()
+    {
+        this(1000L);
+    }
+    
+    
+    /**
+     * @param tickMs the resolution of the lowest level of the wheel in ms
+     */
+    public ExpiryWheel (long tickMs)
+    {
+        if (tickMs <= 0)
+            throw new IllegalArgumentException("tick must be positive");
+        _tickMs = tickMs;
+    }
+    
+    
+    /**
+     * @return the resolution of the lowest level of the wheel in ms
+     */
+    public long getTickMs()
+    {
+        return _tickMs;
+    }
+    
+    
+    /**
+     * @return the number of sessions in the index
+     */
+    public synchronized int size()
+    {
+        return _entries.size();
+    }
+    
+    
+    /**
+     * Add a session to the index, or change its expiry time.
+     * 
+     * @param id the session id
+     * @param expiry the time in ms at which the session expires, or &lt;= 0 if it never expires
+     */
+    public synchronized void update (String id, long expiry)
+    {
+        if (expiry <= 0)
+        {
+            remove(id);
+            return;
+        }
+        
+        Entry entry = _entries.get(id);
+        if (entry == null)
+        {
+            entry = new Entry(id, expiry);
+            _entries.put(id, entry);
+        }
+        else
+        {
+            if (entry._expiry == expiry)
+                return;
+            unlink(entry);
+            entry._expiry = expiry;
+        }
+        if (_currentTick < 0)
+            _currentTick = tickOf(System.currentTimeMillis());
+        place(entry);
+    }
+    
+    
+    /**
+     * Remove a session from the index.
+     * 
+     * @param id the session id
+     * @return true if the session was in the index
+     */
+    public synchronized boolean remove (String id)
+    {
+        Entry entry = _entries.remove(id);
+        if (entry == null)
+            return false;
+        unlink(entry);
+        return true;
+    }
+    
+    
+    /**
+     * Remove all sessions from the index.
+     */
+    public synchronized void clear ()
+    {
+        _entries.clear();
+        for (Set<Entry>[] wheel : _wheels)
+        {
+            for (int i = 0; i < SLOTS; i++)
+                wheel[i] = null;
+        }
+        for (int level = 0; level < LEVELS; level++)
+            _levelSizes[level] = 0;
+        _overflow.clear();
+        _due.clear();
+        _currentTick = -1;
+    }
+    
+    
+    /**
+     * Advance the wheel to the given time and return the sessions that have expired.
+     * 
+     * @param now the time now in ms
+     * @return the ids of the sessions with an expiry time at or before now
+     */
+    public synchronized Set<String> getExpired (long now)
+    {
+        long nowTick = tickOf(now);
+        while (_currentTick >= 0 && _currentTick < nowTick)
+        {
+            //skip over the ticks of the empty lower levels to the next cascade
+            int empty = 0;
+            while (empty < LEVELS && _levelSizes[empty] == 0)
+                empty++;
+            if (empty > 0)
+            {
+                long next = (_currentTick | ((1L << (SLOT_BITS * empty)) - 1)) + 1;
+                if (next > nowTick)
+                {
+                    _currentTick = nowTick;
+                    break;
+                }
+                _currentTick = next - 1;
+            }
+            tick();
+        }
+        
+        //sessions in the current tick may already be expired
+        if (_currentTick == nowTick)
+        {
+            Set<Entry> slot = _wheels[0][(int)(nowTick & SLOT_MASK)];
+            if (slot != null)
+            {
+                List<Entry> expired = null;
+                for (Entry entry : slot)
+                {
+                    if (entry._expiry <= now)
+                    {
+                        if (expired == null)
+                            expired = new ArrayList<>();
+                        expired.add(entry);
+                    }
+                }
+                if (expired != null)
+                {
+                    for (Entry entry : expired)
+                    {
+                        unlink(entry);
+                        link(entry, DUE, 0);
+                    }
+                }
+            }
+        }
+        
+        Set<String> ids = new HashSet<>(_due.size());
+        for (Entry entry : _due)
+            ids.add(entry._id);
+        return ids;
+    }
+    
+    
+    /**
+     * Move any sessions due in the current tick to the due set,
+     * then advance a tick, cascading higher levels into lower ones
+     * when their slots come into range.
+     */
+    private void tick ()
+    {
+        Set<Entry> slot = _wheels[0][(int)(_currentTick & SLOT_MASK)];
+        _wheels[0][(int)(_currentTick & SLOT_MASK)] = null;
+        if (slot != null)
+        {
+            _levelSizes[0] -= slot.size();
+            for (Entry entry : slot)
+                link(entry, DUE, 0);
+        }
+        
+        _currentTick++;
+        
+        if ((_currentTick & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0 && !_overflow.isEmpty())
+        {
+            List<Entry> overflow = new ArrayList<>(_overflow);
+            _overflow.clear();
+            for (Entry entry : overflow)
+                place(entry);
+        }
+        
+        for (int level = LEVELS - 1; level > 0; level--)
+        {
+            if ((_currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0)
+                continue;
+            int index = (int)((_currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            Set<Entry> cascade = _wheels[level][index];
+            _wheels[level][index] = null;
+            if (cascade != null)
+            {
+                _levelSizes[level] -= cascade.size();
+                for (Entry entry : cascade)
+                    place(entry);
+            }
+        }
+    }
+    
+    
+    /**
+     * Put an entry in the level and slot for its expiry relative to the current tick.
+     */
+    private void place (Entry entry)
+    {
+        long tick = tickOf(entry._expiry);
+        long delta = tick - _currentTick;
+        if (delta < 0)
+        {
+            link(entry, DUE, 0);
+            return;
+        }
+        
+        for (int level = 0; level < LEVELS; level++)
+        {
+            if (delta < (1L << (SLOT_BITS * (level + 1))))
+            {
+                link(entry, level, (int)((tick >>> (SLOT_BITS * level)) & SLOT_MASK));
+                return;
+            }
+        }
+        link(entry, OVERFLOW, 0);
+    }
+    
+    
+    private void link (Entry entry, int level, int slot)
+    {
+        entry._level = level;
+        entry._slot = slot;
+        if (level == DUE)
+            _due.add(entry);
+        else if (level == OVERFLOW)
+            _overflow.add(entry);
+        else
+        {
+            Set<Entry> set = _wheels[level][slot];
+            if (set == null)
+            {
+                set = new HashSet<>();
+                _wheels[level][slot] = set;
+            }
+            set.add(entry);
+            _levelSizes[level]++;
+        }
+    }
+    
+    
+    private void unlink (Entry entry)
+    {
+        if (entry._level == DUE)
+            _due.remove(entry);
+        else if (entry._level == OVERFLOW)
+            _overflow.remove(entry);
+        else
+        {
+            Set<Entry> set = _wheels[entry._level][entry._slot];
+            if (set != null && set.remove(entry))
+            {
+                _levelSizes[entry._level]--;
+                if (set.isEmpty())
+                    _wheels[entry._level][entry._slot] = null;
+            }
+        }
+    }
+    
+    
+    private long tickOf (long time)
+    {
+        return time / _tickMs;
+    }
+    
+    
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[tick=%d,size=%d]", this.getClass().getSimpleName(), hashCode(), _tickMs, size());
+    }
+}
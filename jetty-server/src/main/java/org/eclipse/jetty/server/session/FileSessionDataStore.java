@@ -19,6 +19,8 @@
 
 package org.eclipse.jetty.server.session;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -26,29 +28,53 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
 import org.eclipse.jetty.util.MultiException;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
 
 /**
  * FileSessionDataStore
  *
  * A file-based store of session data.
+ * <p>
+ * By default all session files are kept in the store directory. With a 
+ * shard depth greater than 0, they are spread over that many levels of
+ * subdirectories chosen by a hash of the session id. An indexed store also
+ * records each file written and deleted in an append-only index file, which
+ * is read at startup instead of walking the store directories, and from which
+ * the store is swept of old files. An index that was not closed by a clean stop
+ * may not match the files, so the store directories are then scanned. With a sync
+ * interval greater than 0, the files written are forced to disk in batches
+ * at that interval, rather than being left to the operating system.
  */
 @ManagedObject
 public class FileSessionDataStore extends AbstractSessionDataStore
@@ -59,6 +85,23 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     protected Map<String,String> _sessionFileMap = new ConcurrentHashMap<>();
     protected String _contextString;
     protected long _lastSweepTime = 0L;
+    protected final ExpiryWheel _expiryWheel = new ExpiryWheel(); //ids of our sessions by expiry time
+    protected int _shardDepth = 0; //levels of hashed subdirectories
+    protected boolean _indexed = false; //keep an index of the session files
+    protected long _syncIntervalMs = 0; //ms between batched fsyncs, 0 to never fsync
+    protected File _indexFile;
+    
+    public static final int MAX_SHARD_DEPTH = 3;
+    private static final String INDEX_HEADER = "#jetty-session-index";
+    private static final String INDEX_CLOSED = "#closed";
+    private static final int MIN_COMPACT_RECORDS = 1024;
+    private final Object _indexLock = new Object();
+    private FileChannel _indexChannel;
+    private long _indexRecords;
+    private boolean _indexDirty;
+    private final Set<Path> _unsynced = ConcurrentHashMap.newKeySet();
+    private Scheduler _scheduler;
+    private Scheduler.Task _syncTask;
 
     @Override
     public void initialize(SessionContext context) throws Exception
@@ -71,15 +114,35 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     protected void doStart() throws Exception
     {
         initializeStore();
+        if (_syncIntervalMs > 0)
+        {
+            _scheduler = new ScheduledExecutorScheduler(String.format("FileSessionDataStore@%x", hashCode()), true);
+            addBean(_scheduler, true);
+        }
         super.doStart();
+        if (_scheduler != null)
+            scheduleSync();
     }
 
     @Override
     protected void doStop() throws Exception
     {
+        if (_syncTask != null)
+            _syncTask.cancel();
+        _syncTask = null;
+        if (_syncIntervalMs > 0)
+            sync();
+        closeIndex(true);
         _sessionFileMap.clear();
+        _expiryWheel.clear();
+        _unsynced.clear();
         _lastSweepTime = 0;
         super.doStop();
+        if (_scheduler != null)
+        {
+            removeBean(_scheduler);
+            _scheduler = null;
+        }
     }
 
     @ManagedAttribute(value="dir where sessions are stored", readonly=true)
@@ -105,6 +168,56 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         _deleteUnrestorableFiles = deleteUnrestorableFiles;
     }
 
+    @ManagedAttribute(value="levels of subdirectories sessions are spread over", readonly=true)
+    public int getShardDepth()
+    {
+        return _shardDepth;
+    }
+
+    /**
+     * @param shardDepth the number of levels of subdirectories, each of 256 directories,
+     * that session files are spread over, from 0 (all files in the store directory) to {@value #MAX_SHARD_DEPTH}
+     */
+    public void setShardDepth(int shardDepth)
+    {
+        checkStarted();
+        if (shardDepth < 0 || shardDepth > MAX_SHARD_DEPTH)
+            throw new IllegalArgumentException("shardDepth must be between 0 and "+MAX_SHARD_DEPTH);
+        _shardDepth = shardDepth;
+    }
+
+    @ManagedAttribute(value="are session files recorded in an index", readonly=true)
+    public boolean isIndexed()
+    {
+        return _indexed;
+    }
+
+    /**
+     * @param indexed true to record the session files in an append-only index
+     * file that is read at startup instead of walking the store directories
+     */
+    public void setIndexed(boolean indexed)
+    {
+        checkStarted();
+        _indexed = indexed;
+    }
+
+    @ManagedAttribute(value="ms between batched syncs of written files to disk", readonly=true)
+    public long getSyncIntervalMs()
+    {
+        return _syncIntervalMs;
+    }
+
+    /**
+     * @param syncIntervalMs the interval in ms at which the session files written
+     * since the last interval are forced to disk, or 0 to leave it to the operating system
+     */
+    public void setSyncIntervalMs(long syncIntervalMs)
+    {
+        checkStarted();
+        _syncIntervalMs = syncIntervalMs;
+    }
+
  
 
     /** 
@@ -121,9 +234,13 @@ public class FileSessionDataStore extends AbstractSessionDataStore
             String filename = _sessionFileMap.remove(getIdWithContext(id));
             if (filename == null)
                 return false;
+            _expiryWheel.remove(id);
             
             //remove the file
-            return deleteFile(filename);
+            boolean deleted = deleteFile(filename);
+            if (_indexed)
+                appendIndex('-', filename);
+            return deleted;
         }
          
         return false;
@@ -144,7 +261,9 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     {
         if (filename == null)
             return false;
-        File file = new File(_storeDir, filename);
+        File file = getSessionFile(filename);
+        if (_syncIntervalMs > 0)
+            _unsynced.add(file.toPath());
         return Files.deleteIfExists(file.toPath());
     }
     
@@ -163,20 +282,11 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         final long now = System.currentTimeMillis();
         HashSet<String> expired = new HashSet<String>();
 
-        //iterate over the files and work out which have expired
-        for (String filename:_sessionFileMap.values())
-        {
-            try
-            {
-                long expiry = getExpiryFromFilename(filename);
-                if (expiry > 0 && expiry < now)
-                    expired.add(getIdFromFilename(filename));
-            }
-            catch (Exception e)
-            {
-                LOG.warn(e);
-            }
-        }
+        //only look at the files that are due to expire
+        expired.addAll(_expiryWheel.getExpired(now));
+        
+        if (_indexed)
+            compactIndex();
         
         //check candidates that were not found to be expired, perhaps 
         //because they no longer exist and they should be expired
@@ -208,15 +318,22 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     /**
      * Check all session files that do not belong to this context and
      * remove any that expired long ago (ie at least 5 gracePeriods ago).
+     * An indexed store only checks the files listed in the index files
+     * of the other contexts, rather than walking the store directories.
      */
     public void sweepDisk()
     {
         //iterate over the files in the store dir and check expiry times
         long now = System.currentTimeMillis();
         if (LOG.isDebugEnabled()) LOG.debug("Sweeping {} for old session files", _storeDir);
+        if (_indexed)
+        {
+            sweepIndexes(now);
+            return;
+        }
         try
         {
-            Files.walk(_storeDir.toPath(), 1, FileVisitOption.FOLLOW_LINKS)
+            Files.walk(_storeDir.toPath(), 1+MAX_SHARD_DEPTH, FileVisitOption.FOLLOW_LINKS)
             .filter(p->!Files.isDirectory(p)).filter(p->!isOurContextSessionFilename(p.getFileName().toString()))
             .filter(p->isSessionFilename(p.getFileName().toString()))
             .forEach(p->{
@@ -240,6 +357,46 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     }
     
 
+    /**
+     * Check the session files listed in the index files of the other
+     * contexts in the store, and remove any that expired long ago.
+     * 
+     * @param now the time now in msec
+     */
+    protected void sweepIndexes (long now)
+    {
+        try (DirectoryStream<Path> indexes = Files.newDirectoryStream(_storeDir.toPath(), "index-*.log"))
+        {
+            for (Path index : indexes)
+            {
+                if (index.getFileName().toString().equals(_indexFile.getName()))
+                    continue;
+                try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8))
+                {
+                    //the header records the shard depth of the files
+                    String[] header = StringUtil.nonNull(reader.readLine()).split(" ");
+                    if (header.length < 3 || !INDEX_HEADER.equals(header[0]))
+                        continue;
+                    int shardDepth = Integer.parseInt(header[header.length-1]);
+                    
+                    Set<String> filenames = new HashSet<>();
+                    readIndex(reader, filenames::add, filenames::remove);
+                    for (String filename : filenames)
+                        sweepFile(now, new File(getShardDir(getIdFromFilename(filename), shardDepth), filename).toPath());
+                }
+                catch (Exception e)
+                {
+                    LOG.warn("Unable to sweep index {}", index, e);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            LOG.warn(e);
+        }
+    }
+    
+
     /**
      * Check to see if the expiry on the file is very old, and
      * delete the file if so. "Old" means that it expired at least
@@ -286,7 +443,7 @@ public class FileSessionDataStore extends AbstractSessionDataStore
                 LOG.debug("Unknown file {}",idWithContext);
             return null;
         }
-        File file = new File (_storeDir, filename);
+        File file = getSessionFile(filename);
         if (!file.exists())
         {
             if (LOG.isDebugEnabled())
@@ -302,7 +459,7 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         }
         catch (UnreadableSessionDataException e)
         {
-            if (isDeleteUnrestorableFiles() && file.exists() && file.getParentFile().equals(_storeDir))
+            if (isDeleteUnrestorableFiles() && file.exists() && file.getParentFile().equals(getShardDir(id)))
             {
                 try
                 {
@@ -331,12 +488,15 @@ public class FileSessionDataStore extends AbstractSessionDataStore
             //make a fresh file using the latest session expiry
             String filename = getIdWithContextAndExpiry(data);
             String idWithContext = getIdWithContext(id);
-            file = new File(_storeDir, filename);
+            file = getSessionFile(filename);
+            if (_shardDepth > 0)
+                file.getParentFile().mkdirs();
 
             try(FileOutputStream fos = new FileOutputStream(file,false))
             {
                 save(fos, id, data);
                 _sessionFileMap.put(idWithContext, filename);
+                _expiryWheel.update(id, data.getExpiry());
             }
             catch (Exception e)
             { 
@@ -344,6 +504,11 @@ public class FileSessionDataStore extends AbstractSessionDataStore
                     file.delete(); // No point keeping the file if we didn't save the whole session
                 throw new UnwriteableSessionDataException(id, _context,e);             
             }
+            
+            if (_indexed)
+                appendIndex('+', filename);
+            if (_syncIntervalMs > 0)
+                _unsynced.add(file.toPath());
         }
     }
     
@@ -353,6 +518,11 @@ public class FileSessionDataStore extends AbstractSessionDataStore
      * is more than one file for the same session, only the most recently modified will
      * be kept and the rest deleted. At the same time, any files - for any context -
      * that expired a long time ago will be cleaned up.
+     * <p>
+     * If the store is indexed and the index file was written for the same
+     * context and layout, the map is read from the index file instead.
+     * Session files that are not in the subdirectory required by the
+     * current shard depth are moved there.
      * 
      * @throws Exception if storeDir doesn't exist, isn't readable/writeable
      * or contains 2 files with the same lastmodify time for the same session. Throws IOException
@@ -364,6 +534,8 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         if (_storeDir == null)
             throw new IllegalStateException("No file store specified");
 
+        _indexFile = new File(_storeDir, getIndexFilename());
+        
         if (!_storeDir.exists())
             _storeDir.mkdirs();
         else
@@ -371,74 +543,448 @@ public class FileSessionDataStore extends AbstractSessionDataStore
             if (!(_storeDir.isDirectory() &&_storeDir.canWrite() && _storeDir.canRead()))
                 throw new IllegalStateException(_storeDir.getAbsolutePath()+" must be readable/writeable dir");
 
-            //iterate over files in _storeDir and build map of session id to filename.
-            //if we come across files for sessions in other contexts, check if they're
-            //ancient and remove if necessary.
-            MultiException me = new MultiException();
-            long now = System.currentTimeMillis();
+            if (!_indexed || !loadIndex())
+                scanStore();
             
-                Files.walk(_storeDir.toPath(), 1, FileVisitOption.FOLLOW_LINKS)
-                .filter(p->!Files.isDirectory(p)).filter(p->isSessionFilename(p.getFileName().toString()))
-                .forEach(p->{
-                    //first get rid of all ancient files, regardless of which
-                    //context they are for
+            //index the expiry times of our sessions
+            for (String filename:_sessionFileMap.values())
+                _expiryWheel.update(getIdFromFilename(filename), getExpiryFromFilename(filename));
+        }
+        
+        if (_indexed)
+            writeIndex();
+        else
+            Files.deleteIfExists(_indexFile.toPath()); //don't leave a stale index behind
+    }
+    
+    
+    /**
+     * Walk the store directory and its subdirectories to build the
+     * map of session ids to filenames.
+     * 
+     * @throws Exception if the store can't be read
+     * @see #initializeStore()
+     */
+    protected void scanStore ()
+    throws Exception
+    {
+        //iterate over files in _storeDir and build map of session id to filename.
+        //if we come across files for sessions in other contexts, check if they're
+        //ancient and remove if necessary.
+        MultiException me = new MultiException();
+        long now = System.currentTimeMillis();
+
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(_storeDir.toPath(), 1+MAX_SHARD_DEPTH, FileVisitOption.FOLLOW_LINKS))
+        {
+            paths = stream.filter(p->!Files.isDirectory(p)).filter(p->isSessionFilename(p.getFileName().toString())).collect(Collectors.toList());
+        }
+        
+        for (Path p : paths)
+        {
+            //first get rid of all ancient files, regardless of which
+            //context they are for
+            try
+            {
+                sweepFile(now, p);
+            }
+            catch (Exception x)
+            {
+                me.add(x);
+            }
+
+            String filename = p.getFileName().toString();
+            String context = getContextFromFilename(filename);
+            //now process it if it wasn't deleted, and it is for our context
+            if (Files.exists(p) && _contextString.equals(context))
+            {
+                //the session is for our context, populate the map with it
+                String sessionIdWithContext = getIdWithContextFromFilename(filename);
+                if (sessionIdWithContext != null)
+                {
                     try
                     {
-                        sweepFile(now, p);
-                    }
-                    catch (Exception x)
-                    {
-                        me.add(x);
-                    }
-                    
-                    String filename = p.getFileName().toString();
-                    String context = getContextFromFilename(filename);
-                    //now process it if it wasn't deleted, and it is for our context
-                    if (Files.exists(p) && _contextString.equals(context))
-                    {
-                        //the session is for our context, populate the map with it
-                        String sessionIdWithContext = getIdWithContextFromFilename(filename);
-                        if (sessionIdWithContext != null)
+                        //move the file if the layout of the store has changed
+                        Path target = getSessionFile(filename).toPath();
+                        if (!target.equals(p))
                         {
-                            //handle multiple session files existing for the same session: remove all
-                            //but the file with the most recent expiry time
-                            String existing = _sessionFileMap.putIfAbsent(sessionIdWithContext, filename);
-                            if (existing != null)
+                            Files.createDirectories(target.getParent());
+                            Files.move(p, target, StandardCopyOption.REPLACE_EXISTING);
+                            p = target;
+                        }
+                        
+                        //handle multiple session files existing for the same session: remove all
+                        //but the file with the most recent expiry time
+                        String existing = _sessionFileMap.putIfAbsent(sessionIdWithContext, filename);
+                        if (existing != null && !existing.equals(filename))
+                        {
+                            //if there was a prior filename, work out which has the most
+                            //recent modify time
+                            long existingExpiry = getExpiryFromFilename(existing);
+                            long thisExpiry = getExpiryFromFilename(filename);
+
+                            if (thisExpiry > existingExpiry)
                             {
-                                //if there was a prior filename, work out which has the most
-                                //recent modify time
-                                try
-                                {
-                                    long existingExpiry = getExpiryFromFilename(existing);
-                                    long thisExpiry = getExpiryFromFilename(filename);
-                                    
-                                    if (thisExpiry > existingExpiry)
-                                    {
-                                        //replace with more recent file
-                                        Path existingPath = _storeDir.toPath().resolve(existing);
-                                        //update the file we're keeping
-                                        _sessionFileMap.put(sessionIdWithContext, filename);
-                                        //delete the old file
-                                        Files.delete(existingPath);
-                                        if (LOG.isDebugEnabled()) LOG.debug("Replaced {} with {}", existing, filename);
-                                    }
-                                    else
-                                    {
-                                        //we found an older file, delete it
-                                        Files.delete(p);
-                                        if (LOG.isDebugEnabled()) LOG.debug("Deleted expired session file {}", filename);
-                                    }
-                                }
-                                catch (IOException e)
-                                {
-                                    me.add(e);
-                                }
+                                //replace with more recent file
+                                Path existingPath = getSessionFile(existing).toPath();
+                                //update the file we're keeping
+                                _sessionFileMap.put(sessionIdWithContext, filename);
+                                //delete the old file
+                                Files.delete(existingPath);
+                                if (LOG.isDebugEnabled()) LOG.debug("Replaced {} with {}", existing, filename);
+                            }
+                            else
+                            {
+                                //we found an older file, delete it
+                                Files.delete(p);
+                                if (LOG.isDebugEnabled()) LOG.debug("Deleted expired session file {}", filename);
                             }
                         }
                     }
-                });
-                me.ifExceptionThrow();
+                    catch (IOException e)
+                    {
+                        me.add(e);
+                    }
+                }
+            }
         }
+        me.ifExceptionThrow();
+    }
+    
+    
+    /**
+     * Read the map of session ids to filenames from the index file.
+     * 
+     * @return true if the index was read, false if there is no index file,
+     * it was written for a different context or layout, or it was not closed
+     * by a clean stop and so may not match the files
+     * @throws IOException if the index file can't be read
+     */
+    protected boolean loadIndex ()
+    throws IOException
+    {
+        if (!_indexFile.exists())
+            return false;
+        
+        try (BufferedReader reader = Files.newBufferedReader(_indexFile.toPath(), StandardCharsets.UTF_8))
+        {
+            if (!getIndexHeader().equals(reader.readLine()))
+            {
+                LOG.info("Ignoring index {} written for a different layout", _indexFile);
+                return false;
+            }
+            
+            boolean closed = readIndex(reader, 
+                filename -> _sessionFileMap.put(getIdWithContextFromFilename(filename), filename),
+                filename -> _sessionFileMap.remove(getIdWithContextFromFilename(filename), filename));
+            if (!closed)
+            {
+                //the records of the files written before a crash may be missing
+                LOG.info("Ignoring index {} that was not closed", _indexFile);
+                _sessionFileMap.clear();
+                return false;
+            }
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("Loaded {} sessions from index {}", _sessionFileMap.size(), _indexFile);
+        return true;
+    }
+    
+    
+    /**
+     * Read the records of an index file.
+     * 
+     * @param reader the reader of the index, positioned after the header
+     * @param added called with the name of each session file written
+     * @param deleted called with the name of each session file deleted
+     * @return true if the last record of the index marks it as closed
+     * @throws IOException if the index file can't be read
+     */
+    private boolean readIndex (BufferedReader reader, Consumer<String> added, Consumer<String> deleted)
+    throws IOException
+    {
+        boolean closed = false;
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            closed = INDEX_CLOSED.equals(line);
+            if (closed || line.length() < 2)
+                continue;
+            String filename = line.substring(1);
+            if (!isSessionFilename(filename))
+                continue; //incomplete record
+
+            if (line.charAt(0) == '+')
+                added.accept(filename);
+            else if (line.charAt(0) == '-')
+                deleted.accept(filename);
+        }
+        return closed;
+    }
+    
+    
+    /**
+     * Replace the index file with one that lists only the current 
+     * session files, and open it for appending.
+     * 
+     * @throws IOException if the index can't be written
+     */
+    protected void writeIndex ()
+    throws IOException
+    {
+        synchronized (_indexLock)
+        {
+            if (_indexChannel != null)
+                _indexChannel.close();
+            _indexChannel = null;
+            
+            Path tmp = _indexFile.toPath().resolveSibling(_indexFile.getName()+".tmp");
+            long records = 0;
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1)))
+            {
+                writer.write(getIndexHeader());
+                writer.write('\n');
+                for (String filename:_sessionFileMap.values())
+                {
+                    writer.write('+');
+                    writer.write(filename);
+                    writer.write('\n');
+                    records++;
+                }
+                writer.flush();
+                if (_syncIntervalMs > 0)
+                    channel.force(true);
+            }
+            Files.move(tmp, _indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            
+            _indexRecords = records;
+            _indexChannel = FileChannel.open(_indexFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+    }
+    
+    
+    /**
+     * Append a record to the index.
+     * 
+     * @param op '+' for a session file written, '-' for a session file deleted
+     * @param filename the name of the session file
+     */
+    protected void appendIndex (char op, String filename)
+    {
+        ByteBuffer record = StandardCharsets.UTF_8.encode(op+filename+"\n");
+        synchronized (_indexLock)
+        {
+            if (_indexChannel == null)
+                return;
+            try
+            {
+                while (record.hasRemaining())
+                    _indexChannel.write(record);
+                _indexRecords++;
+                _indexDirty = true;
+            }
+            catch (IOException e)
+            {
+                //the index no longer matches the files, so make sure it is not used on restart
+                LOG.warn("Unable to write index {}, falling back to directory scan", _indexFile, e);
+                closeIndex();
+                _indexFile.delete();
+            }
+        }
+    }
+    
+    
+    /**
+     * Rewrite the index if most of its records are obsolete.
+     */
+    protected void compactIndex ()
+    {
+        synchronized (_indexLock)
+        {
+            if (_indexChannel == null || _indexRecords < MIN_COMPACT_RECORDS || _indexRecords < 2L * _sessionFileMap.size())
+                return;
+            try
+            {
+                writeIndex();
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Unable to compact index {}, falling back to directory scan", _indexFile, e);
+                closeIndex();
+                _indexFile.delete();
+            }
+        }
+    }
+    
+    
+    private void closeIndex ()
+    {
+        closeIndex(false);
+    }
+    
+    
+    /**
+     * Close the index.
+     * 
+     * @param clean true if the index matches the files, in which case it is
+     * marked as closed and forced to disk so that it can be loaded on restart
+     */
+    private void closeIndex (boolean clean)
+    {
+        synchronized (_indexLock)
+        {
+            if (_indexChannel == null)
+                return;
+            try
+            {
+                if (clean)
+                {
+                    ByteBuffer record = StandardCharsets.UTF_8.encode(INDEX_CLOSED+"\n");
+                    while (record.hasRemaining())
+                        _indexChannel.write(record);
+                    _indexChannel.force(false);
+                }
+                _indexChannel.close();
+            }
+            catch (IOException e)
+            {
+                LOG.ignore(e);
+            }
+            _indexChannel = null;
+        }
+    }
+    
+    
+    /**
+     * Force the session files written or deleted since the last sync,
+     * their directories, and the index to disk.
+     */
+    public void sync ()
+    {
+        Set<Path> dirs = new HashSet<>();
+        int files = 0;
+        for (Iterator<Path> i = _unsynced.iterator(); i.hasNext();)
+        {
+            Path p = i.next();
+            i.remove();
+            dirs.add(p.getParent());
+            try (FileChannel channel = FileChannel.open(p, StandardOpenOption.WRITE))
+            {
+                channel.force(true);
+                files++;
+            }
+            catch (NoSuchFileException e)
+            {
+                //deleted, sync the directory only
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Unable to sync {}", p, e);
+            }
+        }
+        
+        for (Path dir : dirs)
+        {
+            try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ))
+            {
+                channel.force(true);
+            }
+            catch (IOException e)
+            {
+                //not all platforms allow directories to be synced
+                LOG.ignore(e);
+            }
+        }
+        
+        synchronized (_indexLock)
+        {
+            if (_indexChannel != null && _indexDirty)
+            {
+                try
+                {
+                    _indexChannel.force(false);
+                    _indexDirty = false;
+                }
+                catch (IOException e)
+                {
+                    LOG.warn("Unable to sync {}", _indexFile, e);
+                }
+            }
+        }
+        
+        if (LOG.isDebugEnabled() && files > 0)
+            LOG.debug("Synced {} session files in {} dirs", files, dirs.size());
+    }
+    
+    
+    private void scheduleSync ()
+    {
+        _syncTask = _scheduler.schedule(() ->
+        {
+            try
+            {
+                sync();
+            }
+            catch (Throwable x)
+            {
+                LOG.warn(x);
+            }
+            finally
+            {
+                if (isRunning())
+                    scheduleSync();
+            }
+        }, _syncIntervalMs, TimeUnit.MILLISECONDS);
+    }
+    
+    
+    /**
+     * @param filename the name of a session file
+     * @return the session file, in the subdirectory for its session id if the store is sharded
+     */
+    protected File getSessionFile (String filename)
+    {
+        return new File(getShardDir(getIdFromFilename(filename)), filename);
+    }
+    
+    
+    /**
+     * Sessions are spread over {@link #getShardDepth()} levels of subdirectories
+     * named by successive bytes of a hash of the session id.
+     * 
+     * @param id the session id
+     * @return the directory of the session file
+     */
+    protected File getShardDir (String id)
+    {
+        return getShardDir(id, _shardDepth);
+    }
+    
+    
+    private File getShardDir (String id, int shardDepth)
+    {
+        File dir = _storeDir;
+        if (shardDepth <= 0)
+            return dir;
+        
+        int hash = id.hashCode() * 0x9E3779B9;
+        hash ^= (hash >>> 16);
+        for (int i = 0; i < shardDepth; i++)
+            dir = new File(dir, Integer.toHexString(0x100 | ((hash >>> (8*i)) & 0xFF)).substring(1));
+        return dir;
+    }
+    
+    
+    protected String getIndexFilename ()
+    {
+        //no underscores, so it can't be mistaken for a session file
+        return "index-"+Integer.toHexString(_contextString.hashCode())+".log";
+    }
+    
+    
+    protected String getIndexHeader ()
+    {
+        return INDEX_HEADER+" "+_contextString+" "+_shardDepth;
     }
     
     
@@ -491,8 +1037,7 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         out.writeLong(data.getExpiry());
         out.writeLong(data.getMaxInactiveMs());
         
-        ObjectOutputStream oos = new ObjectOutputStream(out);
-        SessionData.serializeAttributes(data, oos);
+        _serializer.serializeAttributes(data, os);
     }
     
   
@@ -644,8 +1189,7 @@ public class FileSessionDataStore extends AbstractSessionDataStore
             data.setMaxInactiveMs(maxIdle);
 
             // Attributes
-            ClassLoadingObjectInputStream ois =  new ClassLoadingObjectInputStream(is);
-            SessionData.deserializeAttributes(data, ois);
+            _serializer.deserializeAttributes(data, is);
             return data;        
         }
         catch (Exception e)
@@ -658,6 +1202,6 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     @Override
     public String toString()
     {
-        return String.format("%s[dir=%s,deleteUnrestorableFiles=%b]",super.toString(),_storeDir,_deleteUnrestorableFiles);
+        return String.format("%s[dir=%s,deleteUnrestorableFiles=%b,shardDepth=%d,indexed=%b,syncIntervalMs=%d]",super.toString(),_storeDir,_deleteUnrestorableFiles,_shardDepth,_indexed,_syncIntervalMs);
     }
 }
@@ -30,6 +30,9 @@ public class FileSessionDataStoreFactory extends AbstractSessionDataStoreFactory
 {
     boolean _deleteUnrestorableFiles;
     File _storeDir;
+    int _shardDepth;
+    boolean _indexed;
+    long _syncIntervalMs;
 
 
 
@@ -67,6 +70,60 @@ public class FileSessionDataStoreFactory extends AbstractSessionDataStoreFactory
         _storeDir = storeDir;
     }
 
+
+    /**
+     * @return the number of levels of subdirectories session files are spread over
+     */
+    public int getShardDepth()
+    {
+        return _shardDepth;
+    }
+
+
+    /**
+     * @param shardDepth the number of levels of subdirectories session files are spread over
+     */
+    public void setShardDepth(int shardDepth)
+    {
+        _shardDepth = shardDepth;
+    }
+
+
+    /**
+     * @return true if session files are recorded in an index file
+     */
+    public boolean isIndexed()
+    {
+        return _indexed;
+    }
+
+
+    /**
+     * @param indexed true to record session files in an index file
+     */
+    public void setIndexed(boolean indexed)
+    {
+        _indexed = indexed;
+    }
+
+
+    /**
+     * @return the ms between batched syncs of written files to disk
+     */
+    public long getSyncIntervalMs()
+    {
+        return _syncIntervalMs;
+    }
+
+
+    /**
+     * @param syncIntervalMs the ms between batched syncs of written files to disk, 0 to not sync
+     */
+    public void setSyncIntervalMs(long syncIntervalMs)
+    {
+        _syncIntervalMs = syncIntervalMs;
+    }
+
     
     /** 
      * @see org.eclipse.jetty.server.session.SessionDataStoreFactory#getSessionDataStore(org.eclipse.jetty.server.session.SessionHandler)
@@ -77,8 +134,13 @@ public class FileSessionDataStoreFactory extends AbstractSessionDataStoreFactory
         FileSessionDataStore fsds = new FileSessionDataStore();
         fsds.setDeleteUnrestorableFiles(isDeleteUnrestorableFiles());
         fsds.setStoreDir(getStoreDir());
+        fsds.setShardDepth(getShardDepth());
+        fsds.setIndexed(isIndexed());
+        fsds.setSyncIntervalMs(getSyncIntervalMs());
         fsds.setGracePeriodSec(getGracePeriodSec());
         fsds.setSavePeriodSec(getSavePeriodSec());
+        if (getSerializer() != null)
+            fsds.setSerializer(getSerializer());
         return fsds;
     }
 
@@ -22,17 +22,24 @@ package org.eclipse.jetty.server.session;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.io.ObjectOutputStream;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
-import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
+import org.eclipse.jetty.server.SessionIdManager;
+import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
@@ -58,6 +65,20 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
     protected DatabaseAdaptor _dbAdaptor;
     protected SessionTableSchema _sessionTableSchema;
     protected boolean _schemaProvided;
+    protected boolean _upsert = false;
+    protected String _upsertStatement; //the upsert sql if enabled and supported by the database
+    protected long _lastOrphanCheckTime = 0; //last time in ms that the sessions of other contexts were deleted
+    
+    /**
+     * The maximum number of ids checked by a single query
+     */
+    protected static final int MAX_IDS_PER_QUERY = 100;
+    
+    /**
+     * The number of grace periods, or of scavenge intervals if longer, after 
+     * which an expired session of another context is deleted
+     */
+    protected static final int ORPHAN_GRACE_PERIODS = 10;
 
 
     
@@ -84,6 +105,9 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
         protected String _expiryTimeColumn = "expiryTime";
         protected String _maxIntervalColumn = "maxInterval";
         protected String _mapColumn = "map";
+        protected String _attributeTableName = "JettySessionAttributes";
+        protected String _attributeNameColumn = "attributeName";
+        protected String _attributeValueColumn = "attributeValue";
 
         
         
@@ -225,6 +249,40 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             _mapColumn = mapColumn;
         }
         
+        public String getAttributeTableName()
+        {
+            return _attributeTableName;
+        }
+        public void setAttributeTableName(String attributeTableName)
+        {
+            checkNotNull(attributeTableName);
+            _attributeTableName = attributeTableName;
+        }
+        
+        private String getSchemaAttributeTableName()
+        {
+            return (getSchemaName()!=null?getSchemaName()+".":"")+getAttributeTableName();
+        }
+        
+        public String getAttributeNameColumn()
+        {
+            return _attributeNameColumn;
+        }
+        public void setAttributeNameColumn(String attributeNameColumn)
+        {
+            checkNotNull(attributeNameColumn);
+            _attributeNameColumn = attributeNameColumn;
+        }
+        public String getAttributeValueColumn()
+        {
+            return _attributeValueColumn;
+        }
+        public void setAttributeValueColumn(String attributeValueColumn)
+        {
+            checkNotNull(attributeValueColumn);
+            _attributeValueColumn = attributeValueColumn;
+        }
+        
         public String getCreateStatementAsString ()
         {
             if (_dbAdaptor == null)
@@ -241,6 +299,27 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
                     _mapColumn+" "+blobType+", primary key("+_idColumn+", "+_contextPathColumn+","+_virtualHostColumn+"))";
         }
         
+        /**
+         * The attribute table holds one row per attribute changed by a delta store
+         * since the session was last fully stored. A row with an empty value records
+         * a removed attribute.
+         * 
+         * @return the statement to create the attribute table
+         */
+        public String getCreateAttributeTableStatementAsString ()
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException ("No DBAdaptor");
+            
+            String blobType = _dbAdaptor.getBlobType();
+            String stringType = _dbAdaptor.getStringType();
+            
+            return "create table "+_attributeTableName+" ("+_idColumn+" "+stringType+"(120), "+
+                    _contextPathColumn+" "+stringType+"(60), "+_virtualHostColumn+" "+stringType+"(60), "+
+                    _attributeNameColumn+" "+stringType+"(120), "+_attributeValueColumn+" "+blobType+", "+
+                    "primary key("+_idColumn+", "+_contextPathColumn+","+_virtualHostColumn+","+_attributeNameColumn+"))";
+        }
+        
         public String getCreateIndexOverExpiryStatementAsString (String indexName)
         {
             return "create index "+indexName+" on "+getSchemaTableName()+" ("+getExpiryTimeColumn()+")";
@@ -297,6 +376,79 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             return statement;
         }
 
+        
+        public PreparedStatement getUpdateSessionMetadataStatement(Connection connection, String id, SessionContext context)
+                throws SQLException
+        {
+            String s =  "update "+getSchemaTableName()+
+                    " set "+getLastNodeColumn()+" = ?, "+getAccessTimeColumn()+" = ?, "+
+                    getLastAccessTimeColumn()+" = ?, "+getLastSavedTimeColumn()+" = ?, "+getExpiryTimeColumn()+" = ?, "+
+                    getMaxIntervalColumn()+" = ? where "+getIdColumn()+" = ? and "+getContextPathColumn()+
+                    " = ? and "+getVirtualHostColumn()+" = ?";
+
+            PreparedStatement statement = connection.prepareStatement(s);
+            statement.setString(7, id);
+            statement.setString(8, getContextPath(context));
+            statement.setString(9, context.getVhost());
+            return statement;
+        }
+        
+        public PreparedStatement getInsertAttributeStatement(Connection connection, String id, SessionContext context)
+                throws SQLException
+        {
+            PreparedStatement statement = connection.prepareStatement("insert into "+getSchemaAttributeTableName()+
+                                                                      " ("+getIdColumn()+", "+getContextPathColumn()+", "+getVirtualHostColumn()+", "+
+                                                                      getAttributeNameColumn()+", "+getAttributeValueColumn()+") values (?, ?, ?, ?, ?)");
+            statement.setString(1, id);
+            statement.setString(2, getContextPath(context));
+            statement.setString(3, context.getVhost());
+            return statement;
+        }
+        
+        public PreparedStatement getDeleteAttributeStatement(Connection connection, String id, SessionContext context)
+                throws SQLException
+        {
+            PreparedStatement statement = connection.prepareStatement("delete from "+getSchemaAttributeTableName()+
+                                                                      " where "+getIdColumn()+" = ? and "+getContextPathColumn()+
+                                                                      " = ? and "+getVirtualHostColumn()+" = ? and "+getAttributeNameColumn()+" = ?");
+            statement.setString(1, id);
+            statement.setString(2, getContextPath(context));
+            statement.setString(3, context.getVhost());
+            return statement;
+        }
+        
+        public PreparedStatement getDeleteAttributesStatement(Connection connection, String id, SessionContext context)
+                throws SQLException
+        {
+            PreparedStatement statement = connection.prepareStatement("delete from "+getSchemaAttributeTableName()+
+                                                                      " where "+getIdColumn()+" = ? and "+getContextPathColumn()+
+                                                                      " = ? and "+getVirtualHostColumn()+" = ?");
+            statement.setString(1, id);
+            statement.setString(2, getContextPath(context));
+            statement.setString(3, context.getVhost());
+            return statement;
+        }
+        
+        public PreparedStatement getLoadAttributesStatement(Connection connection, String id, SessionContext context)
+                throws SQLException
+        {
+            PreparedStatement statement = connection.prepareStatement("select "+getAttributeNameColumn()+", "+getAttributeValueColumn()+
+                                                                      " from "+getSchemaAttributeTableName()+
+                                                                      " where "+getIdColumn()+" = ? and "+getContextPathColumn()+
+                                                                      " = ? and "+getVirtualHostColumn()+" = ?");
+            statement.setString(1, id);
+            statement.setString(2, getContextPath(context));
+            statement.setString(3, context.getVhost());
+            return statement;
+        }
+        
+        private String getContextPath(SessionContext context)
+        {
+            String cp = context.getCanonicalContextPath();
+            if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
+                cp = NULL_CONTEXT_PATH;
+            return cp;
+        }
       
         public PreparedStatement getExpiredSessionsStatement (Connection connection, String canonicalContextPath, String vhost, long expiry)
         throws SQLException
@@ -458,6 +610,163 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
         }
 
         
+        /**
+         * Select which of several sessions exist for a context, in a single query.
+         * The ids are bound from parameter 3.
+         * 
+         * @param connection the connection to use
+         * @param context the context of the sessions
+         * @param count the number of ids
+         * @return the statement
+         * @throws SQLException if the statement cannot be prepared
+         */
+        public PreparedStatement getCheckSessionsExistStatement (Connection connection, SessionContext context, int count)
+        throws SQLException
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+
+            StringBuilder s = new StringBuilder();
+            s.append("select ").append(getIdColumn()).append(" from ").append(getSchemaTableName())
+             .append(" where ").append(getContextPathColumn()).append(" = ? and ")
+             .append(getVirtualHostColumn()).append(" = ? and ").append(getIdColumn()).append(" in (");
+            for (int i = 0; i < count; i++)
+                s.append(i == 0 ? "?" : ", ?");
+            s.append(")");
+
+            PreparedStatement statement = connection.prepareStatement(s.toString());
+            statement.setString(1, getContextPath(context));
+            statement.setString(2, context.getVhost());
+            return statement;
+        }
+
+
+        /**
+         * Delete, in a single statement, the sessions of all other contexts that
+         * expired before the time bound to parameter 3.
+         * 
+         * @param connection the connection to use
+         * @param context the context whose sessions are not deleted
+         * @return the statement
+         * @throws SQLException if the statement cannot be prepared
+         */
+        public PreparedStatement getDeleteOrphanedSessionsStatement (Connection connection, SessionContext context)
+        throws SQLException
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+
+            PreparedStatement statement = connection.prepareStatement("delete from "+getSchemaTableName()+
+                                                                      " where ("+getContextPathColumn()+" <> ? or "+getVirtualHostColumn()+" <> ?) and "+
+                                                                      getExpiryTimeColumn()+" >0 and "+getExpiryTimeColumn()+" <= ?");
+            statement.setString(1, getContextPath(context));
+            statement.setString(2, context.getVhost());
+            return statement;
+        }
+
+
+        /**
+         * Delete the attribute rows of the sessions that would be deleted by 
+         * {@link #getDeleteOrphanedSessionsStatement(Connection, SessionContext)}.
+         * 
+         * @param connection the connection to use
+         * @param context the context whose sessions are not deleted
+         * @return the statement
+         * @throws SQLException if the statement cannot be prepared
+         */
+        public PreparedStatement getDeleteOrphanedAttributesStatement (Connection connection, SessionContext context)
+        throws SQLException
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+
+            String s = getSchemaTableName();
+            String a = getSchemaAttributeTableName();
+            PreparedStatement statement = connection.prepareStatement("delete from "+a+" where exists (select "+getIdColumn()+" from "+s+
+                                                                      " where "+s+"."+getIdColumn()+" = "+a+"."+getIdColumn()+
+                                                                      " and "+s+"."+getContextPathColumn()+" = "+a+"."+getContextPathColumn()+
+                                                                      " and "+s+"."+getVirtualHostColumn()+" = "+a+"."+getVirtualHostColumn()+
+                                                                      " and ("+s+"."+getContextPathColumn()+" <> ? or "+s+"."+getVirtualHostColumn()+" <> ?) and "+
+                                                                      s+"."+getExpiryTimeColumn()+" >0 and "+s+"."+getExpiryTimeColumn()+" <= ?)");
+            statement.setString(1, getContextPath(context));
+            statement.setString(2, context.getVhost());
+            return statement;
+        }
+
+
+        /**
+         * @return true if the upsert statement of the database is a merge, whose
+         * parameters are the key columns, then the values to update, then the 
+         * values to insert
+         */
+        public boolean isMergeUpsert()
+        {
+            String dbName = _dbAdaptor == null ? null : _dbAdaptor.getDBName();
+            return dbName != null && (dbName.startsWith("apache derby") || dbName.startsWith("oracle"));
+        }
+
+
+        /**
+         * A statement that inserts a session, or updates it if it already exists, 
+         * in a single round trip. The parameters are those of 
+         * {@link #getInsertSessionStatementAsString()}, unless {@link #isMergeUpsert()}.
+         * 
+         * @return the statement, or null if the database is not known to support one
+         */
+        public String getUpsertSessionStatementAsString()
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+
+            String dbName = _dbAdaptor.getDBName();
+            if (dbName == null)
+                return null;
+
+            String[] values = {getLastNodeColumn(), getAccessTimeColumn(), getLastAccessTimeColumn(), getCreateTimeColumn(), 
+                               getCookieTimeColumn(), getLastSavedTimeColumn(), getExpiryTimeColumn(), getMaxIntervalColumn(), getMapColumn()};
+            String keys = getIdColumn()+", "+getContextPathColumn()+", "+getVirtualHostColumn();
+            StringBuilder s = new StringBuilder();
+
+            if (dbName.startsWith("postgres"))
+            {
+                s.append(getInsertSessionStatementAsString()).append(" on conflict (").append(keys).append(") do update set ");
+                for (int i = 0; i < values.length; i++)
+                    s.append(i == 0 ? "" : ", ").append(values[i]).append(" = excluded.").append(values[i]);
+            }
+            else if (dbName.startsWith("mysql") || dbName.startsWith("mariadb"))
+            {
+                s.append(getInsertSessionStatementAsString()).append(" on duplicate key update ");
+                for (int i = 0; i < values.length; i++)
+                    s.append(i == 0 ? "" : ", ").append(values[i]).append(" = values(").append(values[i]).append(")");
+            }
+            else if (dbName.startsWith("h2"))
+            {
+                s.append(getInsertSessionStatementAsString().replaceFirst("insert into", "merge into")
+                    .replaceFirst("\\)\\s+values", ") key ("+keys+") values"));
+            }
+            else if (isMergeUpsert())
+            {
+                s.append("merge into ").append(getSchemaTableName()).append(" using ")
+                 .append(dbName.startsWith("oracle") ? "dual" : "SYSIBM.SYSDUMMY1")
+                 .append(" on (").append(getIdColumn()).append(" = ? and ").append(getContextPathColumn()).append(" = ? and ")
+                 .append(getVirtualHostColumn()).append(" = ?) when matched then update set ");
+                for (int i = 0; i < values.length; i++)
+                    s.append(i == 0 ? "" : ", ").append(values[i]).append(" = ?");
+                s.append(" when not matched then insert (").append(keys);
+                for (String value : values)
+                    s.append(", ").append(value);
+                s.append(") values (?, ?, ?");
+                for (int i = 0; i < values.length; i++)
+                    s.append(", ?");
+                s.append(")");
+            }
+            else
+                return null;
+
+            return s.toString();
+        }
+
+
         /**
          * Set up the tables in the database
          * @throws SQLException if unable to prepare tables
@@ -548,6 +857,39 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             }
         }
 
+        /**
+         * Create the attribute table used by delta stores, if it does not exist.
+         * @throws SQLException if unable to prepare the table
+         */
+        public void prepareAttributeTable()
+        throws SQLException
+        {
+            try (Connection connection = _dbAdaptor.getConnection();
+                 Statement statement = connection.createStatement())
+            {
+                connection.setAutoCommit(true);
+                if (!hasAttributeTable(connection))
+                    statement.executeUpdate(getCreateAttributeTableStatementAsString());
+            }
+        }
+
+        /**
+         * @param connection the connection to use
+         * @return true if the attribute table used by delta stores exists
+         * @throws SQLException if unable to read the database metadata
+         */
+        public boolean hasAttributeTable(Connection connection)
+        throws SQLException
+        {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String tableName = _dbAdaptor.convertIdentifier(getAttributeTableName());
+            String schemaName = _dbAdaptor.convertIdentifier(getSchemaName());
+            try (ResultSet result = metaData.getTables(null, schemaName, tableName, null))
+            {
+                return result.next();
+            }
+        }
+
         @Override
         public String toString()
         {
@@ -590,6 +932,7 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
     {
         super.doStop();
         _initialized = false;
+        _lastOrphanCheckTime = 0;
         if (!_schemaProvided)
             _sessionTableSchema = null;
     }
@@ -613,6 +956,16 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             _dbAdaptor.initialize();
             _sessionTableSchema.setDatabaseAdaptor(_dbAdaptor);
             _sessionTableSchema.prepareTables();
+            if (_storeDeltas)
+                _sessionTableSchema.prepareAttributeTable();
+            
+            _upsertStatement = null;
+            if (_upsert)
+            {
+                _upsertStatement = _sessionTableSchema.getUpsertSessionStatementAsString();
+                if (_upsertStatement == null)
+                    LOG.warn("Upsert not supported for database {}, using insert and update", _dbAdaptor.getDBName());
+            }
         }
     }
 
@@ -639,10 +992,11 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
                 data.setContextPath(_context.getCanonicalContextPath());          
                 data.setVhost(_context.getVhost());
 
-                try (InputStream is = _dbAdaptor.getBlobInputStream(result, _sessionTableSchema.getMapColumn());
-                        ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(is))
+                try (InputStream is = _dbAdaptor.getBlobInputStream(result, _sessionTableSchema.getMapColumn()))
                 {
-                    SessionData.deserializeAttributes(data, ois);
+                    _serializer.deserializeAttributes(data, is);
+                    if (_storeDeltas)
+                        loadAttributeDeltas(connection, data);
                 }
                 catch (Exception e)
                 {
@@ -662,6 +1016,46 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
 
 
 
+    /**
+     * Apply the attributes stored by {@link #doStoreDelta(String, SessionData, long, Set)}
+     * over the attributes loaded from the map column.
+     * 
+     * @param connection the connection to use
+     * @param data the loaded session data
+     * @throws Exception if the attributes cannot be loaded
+     */
+    private void loadAttributeDeltas(Connection connection, SessionData data) throws Exception
+    {
+        try (PreparedStatement statement = _sessionTableSchema.getLoadAttributesStatement(connection, data.getId(), _context);
+             ResultSet result = statement.executeQuery())
+        {
+            while (result.next())
+            {
+                String name = result.getString(_sessionTableSchema.getAttributeNameColumn());
+                byte[] bytes;
+                try (InputStream is = result.getBinaryStream(_sessionTableSchema.getAttributeValueColumn()))
+                {
+                    bytes = is == null ? new byte[0] : IO.readBytes(is);
+                }
+
+                if (bytes.length == 0)
+                {
+                    data.setAttribute(name, null);
+                }
+                else
+                {
+                    try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes))
+                    {
+                        data.setAttribute(name, _serializer.deserializeAttribute(bais));
+                    }
+                }
+            }
+        }
+        //the data is as it is stored
+        data.setDirty(false);
+    }
+
+
     @Override
     public boolean delete(String id) throws Exception
     {   
@@ -669,6 +1063,13 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
              PreparedStatement statement = _sessionTableSchema.getDeleteStatement(connection, id, _context))
         {
             connection.setAutoCommit(true);
+            if (_storeDeltas)
+            {
+                try (PreparedStatement deleteAttributes = _sessionTableSchema.getDeleteAttributesStatement(connection, id, _context))
+                {
+                    deleteAttributes.executeUpdate();
+                }
+            }
             int rows = statement.executeUpdate();
             if (LOG.isDebugEnabled())
                 LOG.debug("Deleted Session {}:{}",id,(rows>0));
@@ -685,13 +1086,98 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
         if (data==null || id==null)
             return;
 
-        if (lastSaveTime <= 0)
+        if (lastSaveTime <= 0 && _storeDeltas)
         {     
-            doInsert(id, data);
+            //remove any attributes left over from a previous session with the same id
+            try (Connection connection = _dbAdaptor.getConnection();
+                 PreparedStatement statement = _sessionTableSchema.getDeleteAttributesStatement(connection, id, _context))
+            {
+                connection.setAutoCommit(true);
+                statement.executeUpdate();
+            }
         }
+        
+        if (_upsertStatement != null)
+            doUpsert(id, data);
+        else if (lastSaveTime <= 0)
+            doInsert(id, data);
         else
-        {
             doUpdate(id, data);            
+    }
+
+
+    /**
+     * Update the metadata of the session, and write a row to the attribute table
+     * for each attribute that has been set or removed, in a single transaction.
+     * 
+     * @see org.eclipse.jetty.server.session.AbstractSessionDataStore#doStoreDelta(java.lang.String, org.eclipse.jetty.server.session.SessionData, long, java.util.Set)
+     */
+    @Override
+    public void doStoreDelta(String id, SessionData data, long lastSaveTime, Set<String> dirtyAttributes) throws Exception
+    {
+        if (data==null || id==null)
+            return;
+
+        try (Connection connection = _dbAdaptor.getConnection())
+        {
+            connection.setAutoCommit(false);
+            try
+            {
+                try (PreparedStatement statement = _sessionTableSchema.getUpdateSessionMetadataStatement(connection, id, _context))
+                {
+                    statement.setString(1, data.getLastNode());//should be my node id
+                    statement.setLong(2, data.getAccessed());//accessTime
+                    statement.setLong(3, data.getLastAccessed()); //lastAccessTime
+                    statement.setLong(4, data.getLastSaved()); //last saved time
+                    statement.setLong(5, data.getExpiry());
+                    statement.setLong(6, data.getMaxInactiveMs());
+                    statement.executeUpdate();
+                }
+
+                if (!dirtyAttributes.isEmpty())
+                {
+                    try (PreparedStatement delete = _sessionTableSchema.getDeleteAttributeStatement(connection, id, _context);
+                         PreparedStatement insert = _sessionTableSchema.getInsertAttributeStatement(connection, id, _context))
+                    {
+                        for (String name : dirtyAttributes)
+                        {
+                            delete.setString(4, name);
+                            delete.addBatch();
+
+                            //an empty value records that the attribute was removed
+                            byte[] bytes = serializeAttribute(data.getAttribute(name));
+                            insert.setString(4, name);
+                            insert.setBinaryStream(5, new ByteArrayInputStream(bytes), bytes.length);
+                            insert.addBatch();
+                        }
+                        delete.executeBatch();
+                        insert.executeBatch();
+                    }
+                }
+                connection.commit();
+
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Updated session {} attributes {}", data, dirtyAttributes);
+            }
+            catch (Exception e)
+            {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+
+    private byte[] serializeAttribute (Object value)
+    throws IOException
+    {
+        if (value == null)
+            return new byte[0];
+
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream())
+        {
+            _serializer.serializeAttribute(value, baos);
+            return baos.toByteArray();
         }
     }
 
@@ -707,36 +1193,111 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             connection.setAutoCommit(true);
             try  (PreparedStatement statement = connection.prepareStatement(s))
             {
-                statement.setString(1, id); //session id
-                
-                String cp = _context.getCanonicalContextPath();
-                if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
-                        cp = NULL_CONTEXT_PATH;
-                
-                statement.setString(2, cp); //context path
-                      
-                statement.setString(3, _context.getVhost()); //first vhost
-                statement.setString(4, data.getLastNode());//my node id
-                statement.setLong(5, data.getAccessed());//accessTime
-                statement.setLong(6, data.getLastAccessed()); //lastAccessTime
-                statement.setLong(7, data.getCreated()); //time created
-                statement.setLong(8, data.getCookieSet());//time cookie was set
-                statement.setLong(9, data.getLastSaved()); //last saved time
-                statement.setLong(10, data.getExpiry());
-                statement.setLong(11, data.getMaxInactiveMs());
-
-                try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                     ObjectOutputStream oos = new ObjectOutputStream(baos))
-                {
-                    SessionData.serializeAttributes(data, oos);
-                    byte[] bytes = baos.toByteArray();
-                    ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-                    statement.setBinaryStream(12, bais, bytes.length);//attribute map as blob
-                    statement.executeUpdate();
-                    if (LOG.isDebugEnabled())
-                        LOG.debug("Inserted session "+data);
-                }
+                bindInsert(statement, id, data);
+                statement.executeUpdate();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Inserted session "+data);
+            }
+        }
+    }
+
+
+    private void bindInsert (PreparedStatement statement, String id, SessionData data)
+    throws Exception
+    {
+        statement.setString(1, id); //session id
+
+        String cp = _context.getCanonicalContextPath();
+        if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
+            cp = NULL_CONTEXT_PATH;
+
+        statement.setString(2, cp); //context path
+
+        statement.setString(3, _context.getVhost()); //first vhost
+        statement.setString(4, data.getLastNode());//my node id
+        statement.setLong(5, data.getAccessed());//accessTime
+        statement.setLong(6, data.getLastAccessed()); //lastAccessTime
+        statement.setLong(7, data.getCreated()); //time created
+        statement.setLong(8, data.getCookieSet());//time cookie was set
+        statement.setLong(9, data.getLastSaved()); //last saved time
+        statement.setLong(10, data.getExpiry());
+        statement.setLong(11, data.getMaxInactiveMs());
+
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream())
+        {
+            _serializer.serializeAttributes(data, baos);
+            byte[] bytes = baos.toByteArray();
+            ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+            statement.setBinaryStream(12, bais, bytes.length);//attribute map as blob
+        }
+    }
+
+    
+    /**
+     * Insert the session, or update it if it already exists, with a single statement.
+     * 
+     * @param id the id of the session
+     * @param data the session data
+     * @throws Exception if the session cannot be stored
+     */
+    protected void doUpsert (String id, SessionData data)
+    throws Exception
+    {
+        try (Connection connection = _dbAdaptor.getConnection())        
+        {
+            connection.setAutoCommit(true);
+            try (PreparedStatement statement = connection.prepareStatement(_upsertStatement))
+            {
+                bindUpsert(statement, id, data);
+                statement.executeUpdate();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Upserted session "+data);
+            }
+        }
+    }
+
+
+    private void bindUpsert (PreparedStatement statement, String id, SessionData data)
+    throws Exception
+    {
+        if (!_sessionTableSchema.isMergeUpsert())
+        {
+            bindInsert(statement, id, data);
+            return;
+        }
+
+        //the keys, the values to update, then the keys and values to insert
+        String cp = _context.getCanonicalContextPath();
+        if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
+            cp = NULL_CONTEXT_PATH;
+        byte[] bytes;
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream())
+        {
+            _serializer.serializeAttributes(data, baos);
+            bytes = baos.toByteArray();
+        }
+
+        int p = 1;
+        statement.setString(p++, id);
+        statement.setString(p++, cp);
+        statement.setString(p++, _context.getVhost());
+        for (int i = 0; i < 2; i++)
+        {
+            if (i == 1)
+            {
+                statement.setString(p++, id);
+                statement.setString(p++, cp);
+                statement.setString(p++, _context.getVhost());
             }
+            statement.setString(p++, data.getLastNode());
+            statement.setLong(p++, data.getAccessed());
+            statement.setLong(p++, data.getLastAccessed());
+            statement.setLong(p++, data.getCreated());
+            statement.setLong(p++, data.getCookieSet());
+            statement.setLong(p++, data.getLastSaved());
+            statement.setLong(p++, data.getExpiry());
+            statement.setLong(p++, data.getMaxInactiveMs());
+            statement.setBinaryStream(p++, new ByteArrayInputStream(bytes), bytes.length);
         }
     }
 
@@ -749,29 +1310,135 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             connection.setAutoCommit(true);
             try (PreparedStatement statement = _sessionTableSchema.getUpdateSessionStatement(connection, data.getId(), _context))
             {
-                statement.setString(1, data.getLastNode());//should be my node id
-                statement.setLong(2, data.getAccessed());//accessTime
-                statement.setLong(3, data.getLastAccessed()); //lastAccessTime
-                statement.setLong(4, data.getLastSaved()); //last saved time
-                statement.setLong(5, data.getExpiry());
-                statement.setLong(6, data.getMaxInactiveMs());
-
-                try(ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    ObjectOutputStream oos = new ObjectOutputStream(baos))
+                bindUpdate(statement, data);
+                statement.executeUpdate();
+
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Updated session "+data);
+            }
+        }
+    }
+
+
+    private void bindUpdate (PreparedStatement statement, SessionData data)
+    throws Exception
+    {
+        statement.setString(1, data.getLastNode());//should be my node id
+        statement.setLong(2, data.getAccessed());//accessTime
+        statement.setLong(3, data.getLastAccessed()); //lastAccessTime
+        statement.setLong(4, data.getLastSaved()); //last saved time
+        statement.setLong(5, data.getExpiry());
+        statement.setLong(6, data.getMaxInactiveMs());
+
+        try(ByteArrayOutputStream baos = new ByteArrayOutputStream())
+        {
+            _serializer.serializeAttributes(data, baos);
+            byte[] bytes = baos.toByteArray();
+            statement.setBinaryStream(7, new ByteArrayInputStream(bytes), bytes.length);//attribute map as blob
+        }
+    }
+
+
+    /**
+     * Store several sessions with batched insert and update statements
+     * in a single transaction. If the batch fails, each session is stored
+     * individually, so that one bad session does not prevent the others
+     * being stored. Delta stores are not batched.
+     * 
+     * @see org.eclipse.jetty.server.session.AbstractSessionDataStore#storeAll(java.util.Map)
+     */
+    @Override
+    public Set<String> storeAll(Map<String, SessionData> sessions)
+    {
+        if (_storeDeltas || sessions.size() < 2)
+            return super.storeAll(sessions);
+
+        final AtomicReference<Exception> exception = new AtomicReference<>();
+        _context.run(() ->
+        {
+            try
+            {
+                doStoreAll(sessions);
+            }
+            catch (Exception e)
+            {
+                exception.set(e);
+            }
+        });
+
+        if (exception.get() == null)
+            return Collections.emptySet();
+
+        LOG.warn("Batch store of {} sessions failed, storing individually", sessions.size(), exception.get());
+        return super.storeAll(sessions);
+    }
+
+
+    private void doStoreAll(Map<String, SessionData> sessions) throws Exception
+    {
+        Map<SessionData, Long> lastSaves = new HashMap<>();
+        long now = System.currentTimeMillis();
+
+        try (Connection connection = _dbAdaptor.getConnection();
+             PreparedStatement insert = connection.prepareStatement(_upsertStatement != null ? _upsertStatement : _sessionTableSchema.getInsertSessionStatementAsString());
+             PreparedStatement update = _sessionTableSchema.getUpdateSessionStatement(connection, null, _context))
+        {
+            connection.setAutoCommit(false);
+            try
+            {
+                int inserts = 0;
+                int updates = 0;
+                for (Map.Entry<String, SessionData> entry : sessions.entrySet())
                 {
-                    SessionData.serializeAttributes(data, oos);
-                    byte[] bytes = baos.toByteArray();
-                    try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes))
+                    SessionData data = entry.getValue();
+                    if (!isStoreRequired(data))
+                        continue;
+
+                    long lastSave = data.getLastSaved();
+                    lastSaves.put(data, lastSave);
+                    data.setLastSaved(now);
+                    if (_upsertStatement != null)
                     {
-                        statement.setBinaryStream(7, bais, bytes.length);//attribute map as blob
-                        statement.executeUpdate();
-
-                        if (LOG.isDebugEnabled())
-                            LOG.debug("Updated session "+data);
+                        bindUpsert(insert, entry.getKey(), data);
+                        insert.addBatch();
+                        inserts++;
+                    }
+                    else if (lastSave <= 0)
+                    {
+                        bindInsert(insert, entry.getKey(), data);
+                        insert.addBatch();
+                        inserts++;
+                    }
+                    else
+                    {
+                        bindUpdate(update, data);
+                        update.setString(8, entry.getKey());
+                        update.addBatch();
+                        updates++;
                     }
                 }
+
+                if (inserts > 0)
+                    insert.executeBatch();
+                if (updates > 0)
+                    update.executeBatch();
+                connection.commit();
+
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Batch inserted {} and updated {} sessions", inserts, updates);
+            }
+            catch (Exception e)
+            {
+                connection.rollback();
+                //reset last save times as the save failed
+                for (Map.Entry<SessionData, Long> entry : lastSaves.entrySet())
+                    entry.getKey().setLastSaved(entry.getValue());
+                throw e;
             }
         }
+
+        for (SessionData data : lastSaves.keySet())
+            data.setDirty(false);
     }
 
 
@@ -837,6 +1504,19 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
                 }
             }
 
+            /*
+             * 3. Infrequently delete the sessions of other contexts that have been expired 
+             * for so long that no node is managing them. Their own contexts must have had
+             * the chance to expire them and call their listeners first, so if the 
+             * graceperiod is disabled, don't delete them.
+             */
+            if ((_gracePeriodSec > 0) && ((_lastOrphanCheckTime == 0) || ((now - _lastOrphanCheckTime) >= (5 * 1000L * _gracePeriodSec))))
+            {
+                _lastOrphanCheckTime = now;
+                long orphanSec = Math.max(_gracePeriodSec, getScavengeIntervalSec());
+                deleteOrphans(connection, now - (ORPHAN_GRACE_PERIODS * 1000L * orphanSec));
+            }
+
 
             Set<String> notExpiredInDB = new HashSet<>();
             for (String k: candidates)
@@ -851,27 +1531,30 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
 
             if (!notExpiredInDB.isEmpty())
             {
-                //we have some sessions to check
-                try (PreparedStatement checkSessionExists = _sessionTableSchema.getCheckSessionExistsStatement(connection, _context))
+                //we have some sessions to check, several at a time
+                List<String> ids = new ArrayList<>(notExpiredInDB);
+                for (int i = 0; i < ids.size(); i += MAX_IDS_PER_QUERY)
                 {
-                    for (String k: notExpiredInDB)
+                    List<String> chunk = ids.subList(i, Math.min(ids.size(), i + MAX_IDS_PER_QUERY));
+                    try (PreparedStatement checkSessionsExist = _sessionTableSchema.getCheckSessionsExistStatement(connection, _context, chunk.size()))
                     {
-                        checkSessionExists.setString(1, k);
-                        try (ResultSet result = checkSessionExists.executeQuery())
-                        {        
-                            if (!result.next())
-                            {
-                                //session doesn't exist any more, can be expired
-                                expiredSessionKeys.add(k);
-                            }
-                            //else its expiry time has not been reached
-                        }
-                        catch (Exception e)
+                        for (int j = 0; j < chunk.size(); j++)
+                            checkSessionsExist.setString(3 + j, chunk.get(j));
+                        
+                        Set<String> missing = new HashSet<>(chunk);
+                        try (ResultSet result = checkSessionsExist.executeQuery())
                         {
-                            LOG.warn("{} Problem checking if potentially expired session {} exists in db", _context.getWorkerName(), k,e);
+                            //those that still exist have not reached their expiry time
+                            while (result.next())
+                                missing.remove(result.getString(_sessionTableSchema.getIdColumn()));
                         }
+                        //sessions that don't exist any more can be expired
+                        expiredSessionKeys.addAll(missing);
+                    }
+                    catch (Exception e)
+                    {
+                        LOG.warn("{} Problem checking if potentially expired sessions {} exist in db", _context.getWorkerName(), chunk, e);
                     }
-
                 }
             }
 
@@ -885,6 +1568,67 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
     }
     
     
+    /**
+     * @return the interval in sec at which the sessions of this context are scavenged, 
+     * or 0 if not known
+     */
+    private long getScavengeIntervalSec()
+    {
+        SessionHandler handler = _context.getSessionHandler();
+        SessionIdManager sessionIdManager = handler == null ? null : handler.getSessionIdManager();
+        HouseKeeper houseKeeper = sessionIdManager == null ? null : sessionIdManager.getSessionHouseKeeper();
+        return houseKeeper == null ? 0 : houseKeeper.getIntervalSec();
+    }
+    
+    
+    /**
+     * Delete in a batch the sessions of other contexts that expired before a time,
+     * along with their attribute rows, which other contexts may have stored even if
+     * this one does not store deltas.
+     * 
+     * @param connection the connection to use
+     * @param upperBound the time before which the sessions expired
+     */
+    private void deleteOrphans(Connection connection, long upperBound)
+    {
+        if (upperBound <= 0)
+            return;
+        
+        try
+        {
+            boolean attributes = _storeDeltas || _sessionTableSchema.hasAttributeTable(connection);
+            connection.setAutoCommit(false);
+            try (PreparedStatement deleteAttributes = attributes ? _sessionTableSchema.getDeleteOrphanedAttributesStatement(connection, _context) : null;
+                 PreparedStatement deleteSessions = _sessionTableSchema.getDeleteOrphanedSessionsStatement(connection, _context))
+            {
+                if (deleteAttributes != null)
+                {
+                    deleteAttributes.setLong(3, upperBound);
+                    deleteAttributes.executeUpdate();
+                }
+                deleteSessions.setLong(3, upperBound);
+                int rows = deleteSessions.executeUpdate();
+                connection.commit();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("{}- Deleted {} sessions of other contexts expired before {}", _context.getWorkerName(), rows, upperBound);
+            }
+            catch (Exception e)
+            {
+                connection.rollback();
+                throw e;
+            }
+            finally
+            {
+                connection.setAutoCommit(true);
+            }
+        }
+        catch (Exception e)
+        {
+            LOG.warn("{} Problem deleting expired sessions of other contexts", _context.getWorkerName(), e);
+        }
+    }
+    
+    
     public void setDatabaseAdaptor (DatabaseAdaptor dbAdaptor)
     {
         checkStarted();
@@ -902,6 +1646,31 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
 
   
 
+   /**
+    * @return true if sessions are stored with a single insert-or-update statement
+    */
+   @ManagedAttribute(value="are sessions stored with an upsert statement", readonly=true)
+   public boolean isUpsert()
+   {
+       return _upsert;
+   }
+
+
+   /**
+    * If true and the database is one whose upsert statement is known (PostgreSQL,
+    * MySQL, MariaDB, H2, Derby and Oracle), a session is stored with a single statement
+    * that inserts it or updates it if it already exists. Otherwise a new session 
+    * is inserted and a previously saved session is updated.
+    * 
+    * @param upsert true to store sessions with an upsert statement
+    */
+   public void setUpsert(boolean upsert)
+   {
+       checkStarted();
+       _upsert = upsert;
+   }
+
+
    @Override
    @ManagedAttribute(value="does this store serialize sessions", readonly=true)
    public boolean isPassivating()
@@ -910,6 +1679,13 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
    }
 
 
+   @Override
+   public boolean isDeltaCapable()
+   {
+       return true;
+   }
+
+
 
 
    @Override
@@ -36,6 +36,11 @@ public class JDBCSessionDataStoreFactory extends AbstractSessionDataStoreFactory
      * 
      */
     JDBCSessionDataStore.SessionTableSchema _schema;
+    
+    /**
+     * 
+     */
+    boolean _upsert;
 
 
     /** 
@@ -49,6 +54,10 @@ public class JDBCSessionDataStoreFactory extends AbstractSessionDataStoreFactory
         ds.setSessionTableSchema(_schema);
         ds.setGracePeriodSec(getGracePeriodSec());
         ds.setSavePeriodSec(getSavePeriodSec());
+        ds.setStoreDeltas(isStoreDeltas());
+        ds.setUpsert(isUpsert());
+        if (getSerializer() != null)
+            ds.setSerializer(getSerializer());
         return ds;
     }
 
@@ -69,4 +78,22 @@ public class JDBCSessionDataStoreFactory extends AbstractSessionDataStoreFactory
     {
         _schema = schema;
     }
+
+
+    /**
+     * @return true if sessions are stored with a single upsert statement
+     */
+    public boolean isUpsert()
+    {
+        return _upsert;
+    }
+
+
+    /**
+     * @param upsert true to store sessions with a single upsert statement, if the database supports it
+     */
+    public void setUpsert(boolean upsert)
+    {
+        _upsert = upsert;
+    }
 }
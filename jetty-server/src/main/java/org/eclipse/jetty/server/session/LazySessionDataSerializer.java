@@ -0,0 +1,181 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import javax.servlet.http.HttpSessionActivationListener;
+
+/**
+ * LazySessionDataSerializer
+ *
+ * Serializes each attribute of a session separately, so that when a session
+ * is loaded its attributes are only deserialized when they are first accessed.
+ * <p>
+ * The values are written by a delegate serializer, by default a 
+ * {@link JavaSessionDataSerializer}. A loaded value is held by the 
+ * {@link SessionData} as a {@link SessionData.LazyAttribute}, along with
+ * the thread context classloader of the load, normally that of the webapp.
+ * When the session is stored again, the bytes of the values that have not 
+ * been accessed are written as they were read, and only the other values 
+ * are serialized.
+ * <p>
+ * Sessions written by the delegate serializer are still read, so a store can
+ * be switched to this serializer without losing its sessions.
+ */
+public class LazySessionDataSerializer implements SessionDataSerializer
+{
+    public static final int MAGIC = 0x4C;
+    public static final int VERSION = 1;
+
+    private final SessionDataSerializer _delegate;
+
+
+    public LazySessionDataSerializer()
+    {
+        this(new JavaSessionDataSerializer());
+    }
+
+
+    /**
+     * @param delegate the serializer of the values of the attributes
+     */
+    public LazySessionDataSerializer(SessionDataSerializer delegate)
+    {
+        _delegate = Objects.requireNonNull(delegate);
+    }
+
+
+    /**
+     * @return the serializer of the values of the attributes
+     */
+    public SessionDataSerializer getDelegate()
+    {
+        return _delegate;
+    }
+
+
+    @Override
+    public void serializeAttributes(SessionData data, OutputStream out) throws IOException
+    {
+        List<String> names = new ArrayList<>();
+        List<SessionData.LazyAttribute> values = new ArrayList<>();
+        for (String name : data.getKeys())
+        {
+            SessionData.LazyAttribute lazy = data.getLazyAttribute(name);
+            if (lazy == null || lazy.getSerializer() != _delegate)
+            {
+                //the value has been accessed, or was not written by our delegate
+                Object value = data.getAttribute(name);
+                if (value == null)
+                    continue; //removed since we got the name
+                lazy = new SessionData.LazyAttribute(serializeAttributeBytes(value), _delegate, null, value instanceof HttpSessionActivationListener);
+            }
+            names.add(name);
+            values.add(lazy);
+        }
+
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeByte(MAGIC);
+        dos.writeByte(VERSION);
+        dos.writeInt(names.size());
+        for (int i = 0; i < names.size(); i++)
+        {
+            byte[] bytes = values.get(i).getBytes();
+            dos.writeUTF(names.get(i));
+            dos.writeBoolean(values.get(i).isActivationListener());
+            dos.writeInt(bytes.length);
+            dos.write(bytes);
+        }
+        dos.flush();
+    }
+
+
+    @Override
+    public void deserializeAttributes(SessionData data, InputStream in) throws IOException, ClassNotFoundException
+    {
+        int b = in.read();
+        if (b < 0)
+            throw new EOFException();
+        if (b != MAGIC)
+        {
+            //written by the delegate
+            _delegate.deserializeAttributes(data, new SequenceInputStream(new ByteArrayInputStream(new byte[]{(byte)b}), in));
+            return;
+        }
+
+        DataInputStream dis = new DataInputStream(in);
+        int version = dis.readUnsignedByte();
+        if (version != VERSION)
+            throw new IOException("Unknown version "+version);
+
+        //values are deserialized later with the classloader of the context
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        data.clearAllAttributes();
+        int entries = dis.readInt();
+        for (int i = 0; i < entries; i++)
+        {
+            String name = dis.readUTF();
+            boolean activationListener = dis.readBoolean();
+            byte[] bytes = new byte[dis.readInt()];
+            dis.readFully(bytes);
+            data.putLazyAttribute(name, new SessionData.LazyAttribute(bytes, _delegate, loader, activationListener));
+        }
+    }
+
+
+    @Override
+    public void serializeAttribute(Object value, OutputStream out) throws IOException
+    {
+        _delegate.serializeAttribute(value, out);
+    }
+
+
+    @Override
+    public Object deserializeAttribute(InputStream in) throws IOException, ClassNotFoundException
+    {
+        return _delegate.deserializeAttribute(in);
+    }
+
+
+    private byte[] serializeAttributeBytes(Object value) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        _delegate.serializeAttribute(value, baos);
+        return baos.toByteArray();
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[%s]", getClass().getSimpleName(), _delegate);
+    }
+}
@@ -0,0 +1,850 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * MappedFileSessionDataStore
+ *
+ * A local, log-structured store of session data in memory mapped segment files.
+ * <p>
+ * Every store and delete of a session appends a record to the active segment
+ * of the context's directory, and the location of each session's latest record
+ * is kept in memory. When the active segment is full a new one is started, and
+ * older segments whose records are mostly superseded are compacted by copying
+ * their current records to the active segment and deleting them. At startup
+ * the segments are replayed in order to rebuild the index, ignoring any damaged
+ * records at the end of a segment.
+ * <p>
+ * Writes reach the operating system as soon as they are appended, so they survive
+ * a restart of the JVM. With a sync interval greater than 0, segments are also
+ * forced to disk at that interval.
+ * <p>
+ * This store is intended for a single node, or for sticky sessions: other nodes
+ * do not see the sessions it stores.
+ */
+@ManagedObject
+public class MappedFileSessionDataStore extends AbstractSessionDataStore
+{
+    private  final static Logger LOG = Log.getLogger("org.eclipse.jetty.server.session");
+    
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    //record layout: int length (of the rest of the record), int crc (of the rest after it),
+    //byte type, long expiry, short id length, id bytes, then for PUT the session data
+    private static final int CRC_OFFSET = 4;
+    private static final int TYPE_OFFSET = 8;
+    private static final int EXPIRY_OFFSET = 9;
+    private static final int ID_LENGTH_OFFSET = 17;
+    private static final int HEADER_LENGTH = 19;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    
+    /**
+     * A memory mapped segment file
+     */
+    private static class Segment
+    {
+        private final long _seq;
+        private final File _file;
+        private final MappedByteBuffer _buffer;
+        private int _position; //end of the records written, guarded by _lock
+        private long _liveBytes; //bytes of records that are the latest for their session, guarded by _lock
+        
+        private Segment (long seq, File file, MappedByteBuffer buffer)
+        {
+            _seq = seq;
+            _file = file;
+            _buffer = buffer;
+        }
+        
+        @Override
+        public String toString()
+        {
+            return String.format("%s[position=%d,live=%d]", _file.getName(), _position, _liveBytes);
+        }
+    }
+    
+    /**
+     * The location of the latest record of a session
+     */
+    private static class Location
+    {
+        private final Segment _segment;
+        private final int _offset;
+        private final int _length;
+        private final long _expiry;
+        
+        private Location (Segment segment, int offset, int length, long expiry)
+        {
+            _segment = segment;
+            _offset = offset;
+            _length = length;
+            _expiry = expiry;
+        }
+    }
+    
+    protected File _storeDir;
+    protected int _segmentSize = 64 * 1024 * 1024;
+    protected double _compactionThreshold = 0.5;
+    protected long _syncIntervalMs = 0;
+    protected String _contextString;
+    protected File _contextDir;
+    
+    private final Object _lock = new Object();
+    private final ConcurrentHashMap<String, Location> _index = new ConcurrentHashMap<>();
+    private final ExpiryWheel _expiryWheel = new ExpiryWheel();
+    private final List<Segment> _segments = new ArrayList<>(); //oldest first, guarded by _lock
+    private Segment _active; //guarded by _lock
+    private final Set<Segment> _unsynced = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean _compacting = new AtomicBoolean();
+    private final Object _compactionLock = new Object();
+    private final LongAdder _compactions = new LongAdder();
+    private Scheduler _scheduler;
+    private Scheduler.Task _syncTask;
+    
+    
+    @Override
+    public void initialize(SessionContext context) throws Exception
+    {
+        super.initialize(context);
+        _contextString = _context.getCanonicalContextPath()+"_"+_context.getVhost();
+    }
+    
+    
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (_storeDir == null)
+            throw new IllegalStateException("No store dir specified");
+        
+        _contextDir = new File(_storeDir, _contextString);
+        if (!_contextDir.exists())
+            _contextDir.mkdirs();
+        if (!(_contextDir.isDirectory() && _contextDir.canWrite() && _contextDir.canRead()))
+            throw new IllegalStateException(_contextDir.getAbsolutePath()+" must be readable/writeable dir");
+        
+        _scheduler = new ScheduledExecutorScheduler(String.format("MappedFileSessionDataStore@%x", hashCode()), true);
+        addBean(_scheduler, true);
+        
+        recover();
+        super.doStart();
+        
+        if (_syncIntervalMs > 0)
+            scheduleSync();
+        scheduleCompaction();
+    }
+    
+    
+    @Override
+    protected void doStop() throws Exception
+    {
+        if (_syncTask != null)
+            _syncTask.cancel();
+        _syncTask = null;
+        
+        synchronized (_lock)
+        {
+            for (Segment segment : _segments)
+                segment._buffer.force();
+            _segments.clear();
+            _active = null;
+        }
+        _unsynced.clear();
+        _index.clear();
+        _expiryWheel.clear();
+        
+        super.doStop();
+        removeBean(_scheduler);
+        _scheduler = null;
+    }
+    
+    
+    @ManagedAttribute(value="dir where sessions are stored", readonly=true)
+    public File getStoreDir()
+    {
+        return _storeDir;
+    }
+
+
+    /**
+     * @param storeDir the directory in which each context has a directory of segment files
+     */
+    public void setStoreDir(File storeDir)
+    {
+        checkStarted();
+        _storeDir = storeDir;
+    }
+
+
+    @ManagedAttribute(value="size in bytes of segment files", readonly=true)
+    public int getSegmentSize()
+    {
+        return _segmentSize;
+    }
+
+
+    /**
+     * @param segmentSize the size in bytes of each segment file. A session too large 
+     * for a segment of this size is written to a segment of its own.
+     */
+    public void setSegmentSize(int segmentSize)
+    {
+        checkStarted();
+        if (segmentSize < 1024)
+            throw new IllegalArgumentException("segmentSize must be at least 1024");
+        _segmentSize = segmentSize;
+    }
+
+
+    @ManagedAttribute(value="fraction of live records below which a segment is compacted", readonly=true)
+    public double getCompactionThreshold()
+    {
+        return _compactionThreshold;
+    }
+
+
+    /**
+     * @param compactionThreshold the fraction, between 0 and 1, of a full segment's bytes that
+     * must belong to the latest records of sessions for the segment not to be compacted
+     */
+    public void setCompactionThreshold(double compactionThreshold)
+    {
+        checkStarted();
+        if (compactionThreshold < 0 || compactionThreshold > 1)
+            throw new IllegalArgumentException("compactionThreshold must be between 0 and 1");
+        _compactionThreshold = compactionThreshold;
+    }
+
+
+    @ManagedAttribute(value="ms between syncs of segments to disk", readonly=true)
+    public long getSyncIntervalMs()
+    {
+        return _syncIntervalMs;
+    }
+
+
+    /**
+     * @param syncIntervalMs the interval in ms at which segments written since the last interval
+     * are forced to disk, or 0 to leave it to the operating system
+     */
+    public void setSyncIntervalMs(long syncIntervalMs)
+    {
+        checkStarted();
+        _syncIntervalMs = syncIntervalMs;
+    }
+    
+    
+    @ManagedAttribute(value="number of segment files", readonly=true)
+    public int getSegmentCount()
+    {
+        synchronized (_lock)
+        {
+            return _segments.size();
+        }
+    }
+    
+    
+    @ManagedAttribute(value="number of sessions stored", readonly=true)
+    public int getSessionCount()
+    {
+        return _index.size();
+    }
+    
+    
+    @ManagedAttribute(value="number of segments compacted", readonly=true)
+    public long getCompactions()
+    {
+        return _compactions.sum();
+    }
+    
+    
+    @Override
+    @ManagedAttribute(value="are sessions serialized by this store", readonly=true)
+    public boolean isPassivating()
+    {
+        return true;
+    }
+    
+    
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStore#exists(java.lang.String)
+     */
+    @Override
+    public boolean exists(String id) throws Exception
+    {
+        Location location = _index.get(id);
+        if (location == null)
+            return false;
+        
+        //check the expiry
+        if (location._expiry <= 0)
+            return true; //never expires
+        return (location._expiry > System.currentTimeMillis()); //hasn't yet expired
+    }
+    
+    
+    /** 
+     * @see org.eclipse.jetty.server.session.AbstractSessionDataStore#doLoad(java.lang.String)
+     */
+    @Override
+    public SessionData doLoad(String id) throws Exception
+    {
+        Location location = _index.get(id);
+        if (location == null)
+            return null;
+        
+        //a compacted segment stays mapped while a location refers to it
+        ByteBuffer buffer = location._segment._buffer.duplicate();
+        int start = location._offset + HEADER_LENGTH + (buffer.getShort(location._offset + ID_LENGTH_OFFSET) & 0xFFFF);
+        byte[] bytes = new byte[location._offset + location._length - start];
+        buffer.position(start);
+        buffer.get(bytes);
+        
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes)))
+        {
+            String contextPath = in.readUTF();
+            String vhost = in.readUTF();
+            String lastNode = in.readUTF();
+            long created = in.readLong();
+            long accessed = in.readLong();
+            long lastAccessed = in.readLong();
+            long cookieSet = in.readLong();
+            long expiry = in.readLong();
+            long maxIdle = in.readLong();
+            long lastSaved = in.readLong();
+
+            SessionData data = newSessionData(id, created, accessed, lastAccessed, maxIdle); 
+            data.setContextPath(contextPath);
+            data.setVhost(vhost);
+            data.setLastNode(lastNode);
+            data.setCookieSet(cookieSet);
+            data.setExpiry(expiry);
+            data.setMaxInactiveMs(maxIdle);
+            data.setLastSaved(lastSaved);
+
+            _serializer.deserializeAttributes(data, in);
+            return data;
+        }
+        catch (Exception e)
+        {
+            throw new UnreadableSessionDataException(id, _context, e);
+        }
+    }
+    
+    
+    /** 
+     * @see org.eclipse.jetty.server.session.AbstractSessionDataStore#doStore(java.lang.String, org.eclipse.jetty.server.session.SessionData, long)
+     */
+    @Override
+    public void doStore(String id, SessionData data, long lastSaveTime) throws Exception
+    {
+        byte[] record;
+        try
+        {
+            record = newRecord(PUT, id, data);
+        }
+        catch (Exception e)
+        {
+            throw new UnwriteableSessionDataException(id, _context, e);
+        }
+        
+        synchronized (_lock)
+        {
+            Location location = append(record, data.getExpiry());
+            index(id, location);
+        }
+    }
+    
+    
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStore#delete(java.lang.String)
+     */
+    @Override
+    public boolean delete(String id) throws Exception
+    {
+        if (!_index.containsKey(id))
+            return false;
+        
+        byte[] record = newRecord(DELETE, id, null);
+        synchronized (_lock)
+        {
+            if (!_index.containsKey(id))
+                return false;
+            append(record, 0);
+            unindex(id);
+            return true;
+        }
+    }
+    
+    
+    /** 
+     * @see org.eclipse.jetty.server.session.AbstractSessionDataStore#doGetExpired(java.util.Set)
+     */
+    @Override
+    public Set<String> doGetExpired(Set<String> candidates)
+    {
+        //segments may have become sparse since the last compaction
+        scheduleCompaction();
+        
+        long now = System.currentTimeMillis();
+        Set<String> expired = new HashSet<>(_expiryWheel.getExpired(now));
+        
+        //candidates that are not in the store don't exist, so should be expired
+        for (String c : candidates)
+        {
+            if (!_index.containsKey(c))
+                expired.add(c);
+        }
+        return expired;
+    }
+    
+    
+    /**
+     * Force the segments written since the last sync to disk.
+     */
+    public void sync ()
+    {
+        for (Iterator<Segment> i = _unsynced.iterator(); i.hasNext();)
+        {
+            Segment segment = i.next();
+            i.remove();
+            segment._buffer.force();
+        }
+    }
+    
+    
+    /**
+     * Copy the latest records out of the segments that are mostly superseded,
+     * and delete them.
+     */
+    public void compact ()
+    {
+        synchronized (_compactionLock)
+        {
+            List<Segment> candidates = new ArrayList<>();
+            synchronized (_lock)
+            {
+                for (Segment segment : _segments)
+                {
+                    if (segment != _active && segment._liveBytes < segment._position * _compactionThreshold)
+                        candidates.add(segment);
+                }
+            }
+
+            for (Segment segment : candidates)
+            {
+                try
+                {
+                    if (!compact(segment))
+                        return;
+                }
+                catch (Exception e)
+                {
+                    LOG.warn("Unable to compact {}", segment._file, e);
+                }
+            }
+        }
+    }
+    
+    
+    /**
+     * @param segment the segment to compact
+     * @return false if the store has stopped
+     * @throws IOException if the segment could not be deleted
+     */
+    private boolean compact (Segment segment) throws IOException
+    {
+        ByteBuffer buffer = segment._buffer;
+        int position = 0;
+        int end;
+        synchronized (_lock)
+        {
+            end = segment._position;
+        }
+        
+        while (position < end)
+        {
+            int length = 4 + buffer.getInt(position);
+            byte type = buffer.get(position + TYPE_OFFSET);
+            String id = readId(buffer, position);
+            
+            synchronized (_lock)
+            {
+                if (_active == null)
+                    return false;
+                
+                if (type == PUT)
+                {
+                    //copy the record if it is still the latest for the session
+                    Location location = _index.get(id);
+                    if (location != null && location._segment == segment && location._offset == position)
+                        index(id, append(copy(buffer, position, length), location._expiry));
+                }
+                else if (type == DELETE && !_index.containsKey(id) && _segments.indexOf(segment) > 0)
+                {
+                    //keep the delete while an older segment may still hold the session
+                    append(copy(buffer, position, length), 0);
+                }
+            }
+            position += length;
+        }
+        
+        //make sure the copies are on disk before the originals go
+        sync();
+        synchronized (_lock)
+        {
+            _segments.remove(segment);
+            _unsynced.remove(segment);
+        }
+        Files.deleteIfExists(segment._file.toPath());
+        _compactions.increment();
+        if (LOG.isDebugEnabled())
+            LOG.debug("Compacted {}", segment);
+        return true;
+    }
+    
+    
+    /**
+     * Open the segment files and replay their records to build the index.
+     * 
+     * @throws IOException if a segment could not be opened
+     */
+    private void recover () throws IOException
+    {
+        File[] files = _contextDir.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null)
+            files = new File[0];
+        Arrays.sort(files, Comparator.comparingLong(f -> getSeq(f.getName())));
+        
+        synchronized (_lock)
+        {
+            for (File file : files)
+            {
+                Segment segment = openSegment(getSeq(file.getName()), file, (int)file.length());
+                replay(segment);
+                _segments.add(segment);
+            }
+            
+            //nothing is older than the oldest segment, so it is not needed if nothing in it is current
+            while (_segments.size() > 1 && _segments.get(0)._liveBytes == 0)
+            {
+                Segment segment = _segments.remove(0);
+                Files.deleteIfExists(segment._file.toPath());
+            }
+
+            if (_segments.isEmpty())
+                roll(0);
+            else
+                _active = _segments.get(_segments.size() - 1);
+            
+            if (LOG.isDebugEnabled())
+                LOG.debug("Recovered {} sessions from {}", _index.size(), _segments);
+        }
+    }
+    
+    
+    private void replay (Segment segment)
+    {
+        ByteBuffer buffer = segment._buffer;
+        int position = 0;
+        while (position + HEADER_LENGTH <= buffer.capacity())
+        {
+            int length = buffer.getInt(position);
+            if (length == 0)
+                break; //end of the records
+            
+            if (length < HEADER_LENGTH - 4 || position + 4 + length > buffer.capacity() || !isValid(buffer, position, length))
+            {
+                LOG.warn("Ignoring damaged records in {} from offset {}", segment._file, position);
+                break;
+            }
+            
+            String id = readId(buffer, position);
+            if (buffer.get(position + TYPE_OFFSET) == PUT)
+                index(id, new Location(segment, position, 4 + length, buffer.getLong(position + EXPIRY_OFFSET)));
+            else
+                unindex(id);
+            position += 4 + length;
+        }
+        segment._position = position;
+    }
+    
+    
+    /**
+     * Make a location the latest for a session. Must be called holding _lock.
+     */
+    private void index (String id, Location location)
+    {
+        Location old = _index.put(id, location);
+        if (old != null)
+            old._segment._liveBytes -= old._length;
+        location._segment._liveBytes += location._length;
+        _expiryWheel.update(id, location._expiry);
+    }
+    
+    
+    /**
+     * Remove a session from the index. Must be called holding _lock.
+     */
+    private void unindex (String id)
+    {
+        Location old = _index.remove(id);
+        if (old != null)
+            old._segment._liveBytes -= old._length;
+        _expiryWheel.remove(id);
+    }
+    
+    
+    /**
+     * Append a record to the active segment, starting a new one if it is full.
+     * The length of the record is written last, so that an incomplete record
+     * is seen as the end of the segment. Must be called holding _lock.
+     * 
+     * @param record the record, including its length and crc
+     * @param expiry the expiry of the session
+     * @return the location of the record
+     * @throws IOException if a new segment could not be created
+     */
+    private Location append (byte[] record, long expiry) throws IOException
+    {
+        Segment segment = _active;
+        if (segment == null)
+            throw new IllegalStateException("Not started");
+        
+        //leave room for a terminating 0 length
+        if (segment._position + record.length + 4 > segment._buffer.capacity())
+            segment = roll(record.length + 4);
+        
+        int position = segment._position;
+        ByteBuffer buffer = segment._buffer.duplicate();
+        buffer.position(position + 4);
+        buffer.put(record, 4, record.length - 4);
+        buffer.putInt(position + record.length, 0);
+        buffer.putInt(position, record.length - 4);
+        segment._position = position + record.length;
+        _unsynced.add(segment);
+        return new Location(segment, position, record.length, expiry);
+    }
+    
+    
+    /**
+     * Start a new active segment. Must be called holding _lock.
+     * 
+     * @param minSize the minimum size of the segment
+     * @return the new segment
+     * @throws IOException if the segment could not be created
+     */
+    private Segment roll (int minSize) throws IOException
+    {
+        long seq = _segments.isEmpty() ? 1 : _segments.get(_segments.size() - 1)._seq + 1;
+        File file = new File(_contextDir, String.format("%s%016x%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+        Segment segment = openSegment(seq, file, Math.max(_segmentSize, minSize));
+        _segments.add(segment);
+        _active = segment;
+        if (LOG.isDebugEnabled())
+            LOG.debug("Started segment {}", file);
+        
+        scheduleCompaction();
+        return segment;
+    }
+    
+    
+    private Segment openSegment (long seq, File file, int size) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            return new Segment(seq, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+    
+    
+    /**
+     * Make a record for a session.
+     * 
+     * @param type PUT or DELETE
+     * @param id the session id
+     * @param data the session data for a PUT, or null
+     * @return the record including its length and crc
+     * @throws IOException if the session could not be serialized
+     */
+    private byte[] newRecord (byte type, String id, SessionData data) throws IOException
+    {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        if (idBytes.length > 0xFFFF)
+            throw new IllegalArgumentException("Session id too long");
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data == null ? HEADER_LENGTH + idBytes.length : 512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); //length
+        out.writeInt(0); //crc
+        out.writeByte(type);
+        out.writeLong(data == null ? 0 : data.getExpiry());
+        out.writeShort(idBytes.length);
+        out.write(idBytes);
+        if (data != null)
+        {
+            out.writeUTF(data.getContextPath());
+            out.writeUTF(data.getVhost());
+            out.writeUTF(data.getLastNode());
+            out.writeLong(data.getCreated());
+            out.writeLong(data.getAccessed());
+            out.writeLong(data.getLastAccessed());
+            out.writeLong(data.getCookieSet());
+            out.writeLong(data.getExpiry());
+            out.writeLong(data.getMaxInactiveMs());
+            out.writeLong(data.getLastSaved());
+            _serializer.serializeAttributes(data, out);
+        }
+        
+        byte[] record = bytes.toByteArray();
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.putInt(0, record.length - 4);
+        CRC32 crc = new CRC32();
+        crc.update(record, TYPE_OFFSET, record.length - TYPE_OFFSET);
+        buffer.putInt(CRC_OFFSET, (int)crc.getValue());
+        return record;
+    }
+    
+    
+    private static boolean isValid (ByteBuffer buffer, int position, int length)
+    {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(position + 4 + length);
+        view.position(position + TYPE_OFFSET);
+        CRC32 crc = new CRC32();
+        crc.update(view);
+        return (int)crc.getValue() == buffer.getInt(position + CRC_OFFSET);
+    }
+    
+    
+    private static String readId (ByteBuffer buffer, int position)
+    {
+        int length = buffer.getShort(position + ID_LENGTH_OFFSET) & 0xFFFF;
+        byte[] id = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + HEADER_LENGTH);
+        view.get(id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+    
+    
+    private static byte[] copy (ByteBuffer buffer, int position, int length)
+    {
+        byte[] record = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(record);
+        return record;
+    }
+    
+    
+    private static long getSeq (String filename)
+    {
+        return Long.parseLong(filename.substring(SEGMENT_PREFIX.length(), filename.length() - SEGMENT_SUFFIX.length()), 16);
+    }
+    
+    
+    private void scheduleCompaction ()
+    {
+        Scheduler scheduler = _scheduler;
+        if (scheduler == null || !_compacting.compareAndSet(false, true))
+            return;
+        
+        try
+        {
+            scheduler.schedule(() ->
+            {
+                try
+                {
+                    compact();
+                }
+                finally
+                {
+                    _compacting.set(false);
+                }
+            }, 0, TimeUnit.MILLISECONDS);
+        }
+        catch (Exception e)
+        {
+            //scheduler may be stopping
+            _compacting.set(false);
+            LOG.ignore(e);
+        }
+    }
+    
+    
+    private void scheduleSync ()
+    {
+        _syncTask = _scheduler.schedule(() ->
+        {
+            try
+            {
+                sync();
+            }
+            catch (Throwable x)
+            {
+                LOG.warn(x);
+            }
+            finally
+            {
+                if (isRunning())
+                    scheduleSync();
+            }
+        }, _syncIntervalMs, TimeUnit.MILLISECONDS);
+    }
+    
+    
+    @Override
+    public String toString()
+    {
+        return String.format("%s[dir=%s,segmentSize=%d,compactionThreshold=%s,syncIntervalMs=%d]",super.toString(),_storeDir,_segmentSize,_compactionThreshold,_syncIntervalMs);
+    }
+}
@@ -0,0 +1,126 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.File;
+
+/**
+ * MappedFileSessionDataStoreFactory
+ *
+ *
+ */
+public class MappedFileSessionDataStoreFactory extends AbstractSessionDataStoreFactory
+{
+    File _storeDir;
+    int _segmentSize = 64 * 1024 * 1024;
+    double _compactionThreshold = 0.5;
+    long _syncIntervalMs;
+
+
+    /**
+     * @return the storeDir
+     */
+    public File getStoreDir()
+    {
+        return _storeDir;
+    }
+
+
+    /**
+     * @param storeDir the storeDir to set
+     */
+    public void setStoreDir(File storeDir)
+    {
+        _storeDir = storeDir;
+    }
+
+
+    /**
+     * @return the size in bytes of each segment file
+     */
+    public int getSegmentSize()
+    {
+        return _segmentSize;
+    }
+
+
+    /**
+     * @param segmentSize the size in bytes of each segment file
+     */
+    public void setSegmentSize(int segmentSize)
+    {
+        _segmentSize = segmentSize;
+    }
+
+
+    /**
+     * @return the fraction of live records below which a segment is compacted
+     */
+    public double getCompactionThreshold()
+    {
+        return _compactionThreshold;
+    }
+
+
+    /**
+     * @param compactionThreshold the fraction of live records below which a segment is compacted
+     */
+    public void setCompactionThreshold(double compactionThreshold)
+    {
+        _compactionThreshold = compactionThreshold;
+    }
+
+
+    /**
+     * @return the ms between syncs of segments to disk
+     */
+    public long getSyncIntervalMs()
+    {
+        return _syncIntervalMs;
+    }
+
+
+    /**
+     * @param syncIntervalMs the ms between syncs of segments to disk, 0 to not sync
+     */
+    public void setSyncIntervalMs(long syncIntervalMs)
+    {
+        _syncIntervalMs = syncIntervalMs;
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStoreFactory#getSessionDataStore(org.eclipse.jetty.server.session.SessionHandler)
+     */
+    @Override
+    public SessionDataStore getSessionDataStore(SessionHandler handler)
+    {
+        MappedFileSessionDataStore store = new MappedFileSessionDataStore();
+        store.setStoreDir(getStoreDir());
+        store.setSegmentSize(getSegmentSize());
+        store.setCompactionThreshold(getCompactionThreshold());
+        store.setSyncIntervalMs(getSyncIntervalMs());
+        store.setGracePeriodSec(getGracePeriodSec());
+        store.setSavePeriodSec(getSavePeriodSec());
+        if (getSerializer() != null)
+            store.setSerializer(getSerializer());
+        return store;
+    }
+
+}
@@ -98,7 +98,7 @@ public class Session implements SessionHandler.SessionIf
 
     protected Locker _lock = new Locker(); // sync lock
     protected Condition _stateChangeCompleted = _lock.newCondition();
-    protected boolean _resident = false;
+    protected volatile boolean _resident = false;
     protected final SessionInactivityTimer _sessionInactivityTimer;
 
 
@@ -231,7 +231,7 @@ public class Session implements SessionHandler.SessionIf
      */
     public long getRequests()
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             return _requests;
         }
@@ -248,7 +248,7 @@ public class Session implements SessionHandler.SessionIf
     /* ------------------------------------------------------------- */
     protected void cookieSet()
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             _sessionData.setCookieSet(_sessionData.getAccessed());
         }
@@ -256,19 +256,41 @@ public class Session implements SessionHandler.SessionIf
     /* ------------------------------------------------------------ */
     protected boolean access(long time)
     {
-        try (Lock lock = _lock.lock())
+        return access(time, false);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * A request enters the session.
+     * <p>
+     * If coalesce is true and other requests are already active in the session,
+     * the access times and expiry are left as set by the first of those requests:
+     * the expiry is recalculated anyway when the last request exits. As the
+     * SessionCache then returns the session without locking it, the session is
+     * not accessed if it is no longer resident, and must be looked up again.
+     * 
+     * @param time the time of the access
+     * @param coalesce if true, don't update the access times while other requests are active
+     * @return true if the session is valid and was accessed
+     */
+    protected boolean access(long time, boolean coalesce)
+    {
+        try (Lock lock = lockAndRecordWait())
         {
-            if (!isValid())
+            if (!isValid() || (coalesce && !isResident()))
                 return false;
             _newSession = false;
-            long lastAccessed = _sessionData.getAccessed();
-            _sessionData.setAccessed(time);
-            _sessionData.setLastAccessed(lastAccessed);
-            _sessionData.calcAndSetExpiry(time);
-            if (isExpiredAt(time))
+            if (!coalesce || _requests <= 0)
             {
-                invalidate();
-                return false;
+                long lastAccessed = _sessionData.getAccessed();
+                _sessionData.setAccessed(time);
+                _sessionData.setLastAccessed(lastAccessed);
+                _sessionData.calcAndSetExpiry(time);
+                if (isExpiredAt(time))
+                {
+                    invalidate();
+                    return false;
+                }
             }
             _requests++;
 
@@ -285,7 +307,18 @@ public class Session implements SessionHandler.SessionIf
     /* ------------------------------------------------------------ */
     protected void complete()
     {
-        try (Lock lock = _lock.lock())
+        release();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * A request exits the session.
+     * 
+     * @return true if it was the last active request in the session
+     */
+    protected boolean release()
+    {
+        try (Lock lock = lockAndRecordWait())
         {
             _requests--;
 
@@ -300,7 +333,9 @@ public class Session implements SessionHandler.SessionIf
                 long now = System.currentTimeMillis();
                 _sessionData.calcAndSetExpiry(now);
                 _sessionInactivityTimer.schedule(calculateInactivityTimeout(now));
+                return true;
             }
+            return false;
         }
     }
 
@@ -314,7 +349,7 @@ public class Session implements SessionHandler.SessionIf
      */
     protected boolean isExpiredAt(long time)
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             return _sessionData.isExpiredAt(time);
         }
@@ -330,7 +365,7 @@ public class Session implements SessionHandler.SessionIf
     protected boolean isIdleLongerThan(int sec)
     {
         long now = System.currentTimeMillis();
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             return ((_sessionData.getAccessed() + (sec * 1000)) <= now);
         }
@@ -404,7 +439,11 @@ public class Session implements SessionHandler.SessionIf
         HttpSessionEvent event = new HttpSessionEvent(this);
         for (Iterator<String> iter = _sessionData.getKeys().iterator(); iter.hasNext();)
         {
-            Object value = _sessionData.getAttribute(iter.next());
+            String name = iter.next();
+            SessionData.LazyAttribute lazy = _sessionData.getLazyAttribute(name);
+            if (lazy != null && !lazy.isActivationListener())
+                continue; //don't deserialize a value just to find it isn't a listener
+            Object value = _sessionData.getAttribute(name);
             if (value instanceof HttpSessionActivationListener)
             {
                 HttpSessionActivationListener listener = (HttpSessionActivationListener) value;
@@ -423,7 +462,11 @@ public class Session implements SessionHandler.SessionIf
         HttpSessionEvent event = new HttpSessionEvent(this);
         for (Iterator<String> iter = _sessionData.getKeys().iterator(); iter.hasNext();)
         {
-            Object value = _sessionData.getAttribute(iter.next());
+            String name = iter.next();
+            SessionData.LazyAttribute lazy = _sessionData.getLazyAttribute(name);
+            if (lazy != null && !lazy.isActivationListener())
+                continue; //don't deserialize a value just to find it isn't a listener
+            Object value = _sessionData.getAttribute(name);
             if (value instanceof HttpSessionActivationListener)
             {
                 HttpSessionActivationListener listener = (HttpSessionActivationListener) value;
@@ -435,7 +478,7 @@ public class Session implements SessionHandler.SessionIf
     /* ------------------------------------------------------------ */
     public boolean isValid()
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             return _state == State.VALID;
         }
@@ -451,7 +494,7 @@ public class Session implements SessionHandler.SessionIf
     /* ------------------------------------------------------------- */
     public long getCookieSetTime()
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             return _sessionData.getCookieSet();
         }
@@ -462,7 +505,7 @@ public class Session implements SessionHandler.SessionIf
     @Override
     public long getCreationTime() throws IllegalStateException
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             checkValidForRead();
             return _sessionData.getCreated();
@@ -475,7 +518,7 @@ public class Session implements SessionHandler.SessionIf
     @Override
     public String getId()
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             return _sessionData.getId();
         }
@@ -504,7 +547,7 @@ public class Session implements SessionHandler.SessionIf
     @Override
     public long getLastAccessedTime()
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             return _sessionData.getLastAccessed();
         }
@@ -527,7 +570,7 @@ public class Session implements SessionHandler.SessionIf
     @Override
     public void setMaxInactiveInterval(int secs)
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             _sessionData.setMaxInactiveMs((long) secs * 1000L);
             _sessionData.calcAndSetExpiry();
@@ -563,7 +606,7 @@ public class Session implements SessionHandler.SessionIf
     {
         long time = 0;
         
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             long remaining = _sessionData.getExpiry() - now;
             long maxInactive = _sessionData.getMaxInactiveMs();
@@ -626,7 +669,7 @@ public class Session implements SessionHandler.SessionIf
     @Override
     public int getMaxInactiveInterval()
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             long maxInactiveMs = _sessionData.getMaxInactiveMs();
             return (int) (maxInactiveMs < 0 ? -1 : maxInactiveMs / 1000);
@@ -724,7 +767,7 @@ public class Session implements SessionHandler.SessionIf
     @Override
     public Object getAttribute(String name)
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             checkValidForRead();
             return _sessionData.getAttribute(name);
@@ -738,7 +781,7 @@ public class Session implements SessionHandler.SessionIf
     @Deprecated
     public Object getValue(String name)
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             return _sessionData.getAttribute(name);
         }
@@ -750,7 +793,7 @@ public class Session implements SessionHandler.SessionIf
     @Override
     public Enumeration<String> getAttributeNames()
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             checkValidForRead();
             final Iterator<String> itor = _sessionData.getKeys().iterator();
@@ -797,7 +840,7 @@ public class Session implements SessionHandler.SessionIf
     @Override
     public String[] getValueNames() throws IllegalStateException
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             checkValidForRead();
             Iterator<String> itor = _sessionData.getKeys().iterator();
@@ -819,7 +862,7 @@ public class Session implements SessionHandler.SessionIf
     public void setAttribute(String name, Object value)
     {
         Object old = null;
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             // if session is not valid, don't accept the set
             checkValidForWrite();
@@ -877,7 +920,7 @@ public class Session implements SessionHandler.SessionIf
 
         String id = null;
         String extendedId = null;
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             while (true)
             {
@@ -914,7 +957,7 @@ public class Session implements SessionHandler.SessionIf
 
         String newId = _handler._sessionIdManager.renewSessionId(id, extendedId, request);
 
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             switch (_state)
             {
@@ -996,7 +1039,25 @@ public class Session implements SessionHandler.SessionIf
      */
     public Lock lock()
     {
-        return _lock.lock();
+        return lockAndRecordWait();
+    }
+
+    /* ------------------------------------------------------------- */
+    /**
+     * Grab the lock on the session, recording the time spent
+     * waiting for it with the SessionHandler if it was held by another thread.
+     * 
+     * @return the lock
+     */
+    private Lock lockAndRecordWait()
+    {
+        if (!_lock.isLocked() || _lock.isHeldByCurrentThread() || _handler == null)
+            return _lock.lock();
+
+        long start = System.nanoTime();
+        Lock lock = _lock.lock();
+        _handler.recordSessionLockWait(System.nanoTime() - start);
+        return lock;
     }
 
 
@@ -1008,7 +1069,7 @@ public class Session implements SessionHandler.SessionIf
     {
         boolean result = false;
 
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
 
             while (true)
@@ -1078,7 +1139,7 @@ public class Session implements SessionHandler.SessionIf
      */
     protected void finishInvalidate() throws IllegalStateException
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             try
             {
@@ -1117,7 +1178,7 @@ public class Session implements SessionHandler.SessionIf
     @Override
     public boolean isNew() throws IllegalStateException
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             checkValidForRead();
             return _newSession;
@@ -1128,7 +1189,7 @@ public class Session implements SessionHandler.SessionIf
     /* ------------------------------------------------------------- */
     public void setIdChanged(boolean changed)
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             _idChanged = changed;
         }
@@ -1137,7 +1198,7 @@ public class Session implements SessionHandler.SessionIf
     /* ------------------------------------------------------------- */
     public boolean isIdChanged()
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             return _idChanged;
         }
@@ -1178,7 +1239,7 @@ public class Session implements SessionHandler.SessionIf
     @Override
     public String toString()
     {
-        try (Lock lock = _lock.lock())
+        try (Lock lock = lockAndRecordWait())
         {
             return String.format("%s@%x{id=%s,x=%s,req=%d,res=%b}",
                 getClass().getSimpleName(),
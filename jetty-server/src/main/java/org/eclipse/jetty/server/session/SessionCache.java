@@ -285,4 +285,18 @@ public interface SessionCache extends LifeCycle
      * @return if <code>true</code> unloadable session will be deleted
      */
     boolean isRemoveUnloadableSessions();
+    
+    
+    /**
+     * If true, concurrent requests for the same session share a single load
+     * of it from the SessionDataStore, only the last request to exit the session
+     * writes it through the cache, and the access times of the session are not
+     * updated by requests that arrive while others are still active in it.
+     *
+     * @return if <code>true</code> concurrent accesses to a session are coalesced
+     */
+    default boolean isCoalesceAccess()
+    {
+        return false;
+    }
 }
@@ -19,6 +19,7 @@
 
 package org.eclipse.jetty.server.session;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collections;
@@ -57,9 +58,100 @@ public class SessionData implements Serializable
     protected long _maxInactiveMs;
     protected Map<String,Object> _attributes;
     protected boolean _dirty;
+    protected transient Set<String> _dirtyAttributes = ConcurrentHashMap.newKeySet(); //names of attributes changed since last save
     protected long _lastSaved; //time in msec since last save
     
     
+    /**
+     * The serialized value of an attribute, that is only deserialized when
+     * the attribute is first accessed.
+     * 
+     * @see LazySessionDataSerializer
+     */
+    public static class LazyAttribute
+    {
+        private final byte[] _bytes;
+        private final SessionDataSerializer _serializer;
+        private final ClassLoader _loader;
+        private final boolean _activationListener;
+        
+        /**
+         * @param bytes the value as written by {@link SessionDataSerializer#serializeAttribute(Object, java.io.OutputStream)}
+         * @param serializer the serializer that wrote the value
+         * @param loader the classloader with which to deserialize the value, normally that of the webapp
+         * @param activationListener true if the value is a {@link javax.servlet.http.HttpSessionActivationListener}
+         */
+        public LazyAttribute(byte[] bytes, SessionDataSerializer serializer, ClassLoader loader, boolean activationListener)
+        {
+            _bytes = bytes;
+            _serializer = serializer;
+            _loader = loader;
+            _activationListener = activationListener;
+        }
+
+        /**
+         * @return the serialized value
+         */
+        public byte[] getBytes()
+        {
+            return _bytes;
+        }
+        
+        /**
+         * @return the serializer that wrote the value
+         */
+        public SessionDataSerializer getSerializer()
+        {
+            return _serializer;
+        }
+
+        /**
+         * @return true if the value is a {@link javax.servlet.http.HttpSessionActivationListener}
+         */
+        public boolean isActivationListener()
+        {
+            return _activationListener;
+        }
+        
+        /**
+         * Deserialize the value, with the classloader it was read with as 
+         * the thread context classloader.
+         * 
+         * @return the value
+         * @throws IOException if the value cannot be read
+         * @throws ClassNotFoundException if the class of the value cannot be loaded
+         */
+        public Object deserialize() throws IOException, ClassNotFoundException
+        {
+            Thread thread = Thread.currentThread();
+            ClassLoader old = thread.getContextClassLoader();
+            thread.setContextClassLoader(_loader);
+            try (ByteArrayInputStream in = new ByteArrayInputStream(_bytes))
+            {
+                return _serializer.deserializeAttribute(in);
+            }
+            finally
+            {
+                thread.setContextClassLoader(old);
+            }
+        }
+        
+        /**
+         * @return a new instance for the same serialized value
+         */
+        public LazyAttribute copy()
+        {
+            return new LazyAttribute(_bytes.clone(), _serializer, _loader, _activationListener);
+        }
+        
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%d bytes]", getClass().getSimpleName(), hashCode(), _bytes.length);
+        }
+    }
+    
+    
     /**
      * Serialize the attribute map of the session. 
      * 
@@ -78,22 +170,54 @@ public class SessionData implements Serializable
         out.writeObject(entries);
         for (Entry<String,Object> entry: data._attributes.entrySet())
         {
+            Object value = entry.getValue();
+            if (value instanceof LazyAttribute)
+                value = data.getAttribute(entry.getKey());
             out.writeUTF(entry.getKey());     
-            ClassLoader loader = entry.getValue().getClass().getClassLoader();
-            boolean isServerLoader = false;
-
-            if (loader == Thread.currentThread().getContextClassLoader()) //is it the webapp classloader?
-                isServerLoader = false;
-            else if (loader == Thread.currentThread().getContextClassLoader().getParent() || loader == SessionData.class.getClassLoader() || loader == null) // is it the container loader?
-                isServerLoader = true;
-            else
-                throw new IOException ("Unknown loader"); // we don't know what loader to use
-            
-            out.writeBoolean(isServerLoader);
-            out.writeObject(entry.getValue());
+            serializeAttribute(value, out);
         }
     }
     
+    /**
+     * Serialize the value of a single attribute, recording which classloader should be used
+     * to load it, as for {@link #serializeAttributes(SessionData, java.io.ObjectOutputStream)}.
+     * 
+     * @param value the value of the attribute
+     * @param out the stream to which to serialize
+     * @throws IOException
+     */
+    public static void serializeAttribute (Object value, java.io.ObjectOutputStream out)
+    throws IOException
+    {
+        ClassLoader loader = value.getClass().getClassLoader();
+        boolean isServerLoader = false;
+
+        if (loader == Thread.currentThread().getContextClassLoader()) //is it the webapp classloader?
+            isServerLoader = false;
+        else if (loader == Thread.currentThread().getContextClassLoader().getParent() || loader == SessionData.class.getClassLoader() || loader == null) // is it the container loader?
+            isServerLoader = true;
+        else
+            throw new IOException ("Unknown loader"); // we don't know what loader to use
+
+        out.writeBoolean(isServerLoader);
+        out.writeObject(value);
+    }
+    
+    /**
+     * De-serialize the value of a single attribute written by {@link #serializeAttribute(Object, java.io.ObjectOutputStream)}.
+     * 
+     * @param in the serialized stream
+     * @return the value of the attribute
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public static Object deserializeAttribute (ClassLoadingObjectInputStream in)
+    throws IOException, ClassNotFoundException
+    {
+        boolean isServerClassLoader = in.readBoolean(); //use server or webapp classloader to load
+        return in.readObject(isServerClassLoader?SessionData.class.getClassLoader():Thread.currentThread().getContextClassLoader());
+    }
+    
     /**
      * De-serialize the attribute map of a session.
      * 
@@ -121,9 +245,7 @@ public class SessionData implements Serializable
             for (int i=0; i < entries; i++)
             {
                 String name = in.readUTF(); //attribute name
-                boolean isServerClassLoader = in.readBoolean(); //use server or webapp classloader to load
-
-                Object value = ((ClassLoadingObjectInputStream)in).readObject(isServerClassLoader?SessionData.class.getClassLoader():Thread.currentThread().getContextClassLoader());
+                Object value = deserializeAttribute((ClassLoadingObjectInputStream)in);
                 data._attributes.put(name, value);
             }
         }
@@ -183,7 +305,14 @@ public class SessionData implements Serializable
         setExpiry(data.getExpiry());
         setLastSaved(data.getLastSaved());
         clearAllAttributes();
-        putAllAttributes(data.getAllAttributes());
+        for (Entry<String,Object> entry : data._attributes.entrySet())
+        {
+            //values not yet deserialized stay that way, but are resolved separately
+            Object value = entry.getValue();
+            if (value instanceof LazyAttribute)
+                value = ((LazyAttribute)value).copy();
+            _attributes.put(entry.getKey(), value);
+        }
     }
 
     /**
@@ -209,9 +338,24 @@ public class SessionData implements Serializable
         return _dirty;
     }
 
+    /**
+     * @param dirty true if the session needs to be written out, false once
+     * it has been written out, which also clears the dirty attributes
+     */
     public void setDirty(boolean dirty)
     {
         _dirty = dirty;
+        if (!dirty)
+            _dirtyAttributes.clear();
+    }
+    
+    /**
+     * @return the names of the attributes set or removed since the session
+     * was last written out
+     */
+    public Set<String> getDirtyAttributes()
+    {
+        return Collections.unmodifiableSet(_dirtyAttributes);
     }
     
     /**
@@ -220,7 +364,50 @@ public class SessionData implements Serializable
      */
     public Object getAttribute (String name)
     {
-        return _attributes.get(name);
+        Object value = _attributes.get(name);
+        if (value instanceof LazyAttribute)
+            value = resolve(name, (LazyAttribute)value);
+        return value;
+    }
+    
+    /**
+     * @param name the name of the attribute
+     * @return the serialized value of the attribute if it has not been
+     * accessed since it was loaded, otherwise null
+     */
+    public LazyAttribute getLazyAttribute (String name)
+    {
+        Object value = _attributes.get(name);
+        return (value instanceof LazyAttribute ? (LazyAttribute)value : null);
+    }
+    
+    /**
+     * Set the serialized value of an attribute, to be deserialized when the
+     * attribute is first accessed. The session is not made dirty.
+     * 
+     * @param name the name of the attribute
+     * @param value the serialized value
+     */
+    public void putLazyAttribute (String name, LazyAttribute value)
+    {
+        _attributes.put(name, value);
+    }
+    
+    private Object resolve (String name, LazyAttribute lazy)
+    {
+        Object value;
+        try
+        {
+            value = lazy.deserialize();
+        }
+        catch (Exception e)
+        {
+            throw new IllegalStateException("Unable to deserialize attribute "+name+" of session "+_id, e);
+        }
+        
+        if (_attributes.replace(name, lazy, value))
+            return value;
+        return getAttribute(name); //changed by another thread
     }
 
     /**
@@ -233,17 +420,33 @@ public class SessionData implements Serializable
     
     public Object setAttribute (String name, Object value)
     {
+        //the old value is passed to listeners
+        Object current = _attributes.get(name);
+        if (current instanceof LazyAttribute)
+        {
+            try
+            {
+                resolve(name, (LazyAttribute)current);
+            }
+            catch (IllegalStateException e)
+            {
+                //the old value is unavailable, but can still be replaced or removed
+                LOG.warn(e);
+            }
+        }
+        
         Object old = (value==null?_attributes.remove(name):_attributes.put(name,value));
         if (value == null && old == null)
             return old; //if same as remove attribute but attribute was already removed, no change
         
         setDirty (name);
-       return old;
+        return (old instanceof LazyAttribute ? null : old);
     }
     
     public void setDirty (String name)
     {
         setDirty (true);
+        _dirtyAttributes.add(name);
     }
     
     public void putAllAttributes (Map<String,Object> attributes)
@@ -264,6 +467,11 @@ public class SessionData implements Serializable
      */
     public Map<String,Object> getAllAttributes()
     {
+        for (Entry<String,Object> entry : _attributes.entrySet())
+        {
+            if (entry.getValue() instanceof LazyAttribute)
+                resolve(entry.getKey(), (LazyAttribute)entry.getValue());
+        }
         return Collections.unmodifiableMap(_attributes);
     }
     
@@ -438,6 +646,7 @@ public class SessionData implements Serializable
         _lastNode = in.readUTF(); //last managing node
         _expiry = in.readLong(); 
         _maxInactiveMs = in.readLong();
+        _dirtyAttributes = ConcurrentHashMap.newKeySet();
         deserializeAttributes(this, in);
     }
     
@@ -0,0 +1,79 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * SessionDataSerializer
+ *
+ * Converts the attributes of a {@link SessionData} to and from the bytes
+ * written by a persistent {@link SessionDataStore}.
+ * <p>
+ * A serializer may be shared by the stores of several contexts, so
+ * implementations must be thread safe. Serialization is called with the
+ * context classloader of the webapp as the thread context classloader.
+ * Implementations must not close the streams passed to them.
+ */
+public interface SessionDataSerializer
+{
+    /**
+     * Write all of the attributes of the session.
+     * 
+     * @param data the session data
+     * @param out the stream to write to
+     * @throws IOException if the attributes cannot be written
+     */
+    public void serializeAttributes(SessionData data, OutputStream out) throws IOException;
+
+
+    /**
+     * Replace the attributes of the session with those written by
+     * {@link #serializeAttributes(SessionData, OutputStream)}.
+     * 
+     * @param data the session data
+     * @param in the stream to read from
+     * @throws IOException if the attributes cannot be read
+     * @throws ClassNotFoundException if the class of an attribute cannot be loaded
+     */
+    public void deserializeAttributes(SessionData data, InputStream in) throws IOException, ClassNotFoundException;
+
+
+    /**
+     * Write the value of a single attribute.
+     * 
+     * @param value the non null value
+     * @param out the stream to write to
+     * @throws IOException if the value cannot be written
+     */
+    public void serializeAttribute(Object value, OutputStream out) throws IOException;
+
+
+    /**
+     * Read the value of a single attribute written by {@link #serializeAttribute(Object, OutputStream)}.
+     * 
+     * @param in the stream to read from
+     * @return the value
+     * @throws IOException if the value cannot be read
+     * @throws ClassNotFoundException if the class of the value cannot be loaded
+     */
+    public Object deserializeAttribute(InputStream in) throws IOException, ClassNotFoundException;
+}
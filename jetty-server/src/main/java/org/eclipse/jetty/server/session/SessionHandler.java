@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.AsyncEvent;
 import javax.servlet.AsyncListener;
@@ -248,6 +249,7 @@ public class SessionHandler extends ScopedHandler
     protected SessionCache _sessionCache;
     protected final SampleStatistic _sessionTimeStats = new SampleStatistic();
     protected final CounterStatistic _sessionsCreatedStats = new CounterStatistic();
+    protected final SampleStatistic _sessionLockWaitStats = new SampleStatistic();
     public Set<SessionTrackingMode> _sessionTrackingModes;
 
     protected boolean _usingURLs;
@@ -304,7 +306,7 @@ public class SessionHandler extends ScopedHandler
 
         Session s = ((SessionIf)session).getSession();
 
-       if (s.access(now))
+       if (s.access(now, _sessionCache != null && _sessionCache.isCoalesceAccess()))
        {
             // Do we need to refresh the cookie?
             if (isUsingCookies() &&
@@ -431,8 +433,17 @@ public class SessionHandler extends ScopedHandler
     
         try
         {
-            s.complete();
-            _sessionCache.put(s.getId(), s);
+            if (_sessionCache.isCoalesceAccess())
+            {
+                //only the last request to exit the session writes it through the cache
+                if (s.release())
+                    _sessionCache.put(s.getId(), s);
+            }
+            else
+            {
+                s.complete();
+                _sessionCache.put(s.getId(), s);
+            }
         }
         catch (Exception e)
         {
@@ -905,6 +916,7 @@ public class SessionHandler extends ScopedHandler
     {
         _sessionsCreatedStats.reset();
         _sessionTimeStats.reset();
+        _sessionLockWaitStats.reset();
     }
 
     /* ------------------------------------------------------------ */
@@ -1217,6 +1229,46 @@ public class SessionHandler extends ScopedHandler
         return _sessionTimeStats.getStdDev();
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * @return number of times a request waited for the lock of a session held by another thread
+     */
+    @ManagedAttribute("number of contended session lock acquisitions")
+    public long getSessionLockWaitCount()
+    {
+        return _sessionLockWaitStats.getCount();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return maximum time waited for the lock of a session
+     */
+    @ManagedAttribute("maximum time waited for a session lock (in us)")
+    public long getSessionLockWaitMax()
+    {
+        return _sessionLockWaitStats.getMax();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return total time waited for the locks of sessions
+     */
+    @ManagedAttribute("total time waited for session locks (in us)")
+    public long getSessionLockWaitTotal()
+    {
+        return _sessionLockWaitStats.getTotal();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return mean time waited for the lock of a session
+     */
+    @ManagedAttribute("mean time waited for a contended session lock (in us)")
+    public double getSessionLockWaitMean()
+    {
+        return _sessionLockWaitStats.getMean();
+    }
+
     /* ------------------------------------------------------------ */
     /**
      * @return True if absolute URLs are check for remoteness before being session encoded.
@@ -1276,6 +1328,17 @@ public class SessionHandler extends ScopedHandler
         _sessionTimeStats.record(round((System.currentTimeMillis() - session.getSessionData().getCreated())/1000.0));
     }
     
+    /**
+     * Record the time a thread waited for the lock of a session
+     * that was held by another thread.
+     * 
+     * @param nanos the time waited in nanoseconds
+     */
+    protected void recordSessionLockWait (long nanos)
+    {
+        _sessionLockWaitStats.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+    
     
     /* ------------------------------------------------------------ */
     /**
@@ -1655,6 +1718,19 @@ public class SessionHandler extends ScopedHandler
             if ((existingSession != null) && (old_session_handler != this))
             {
                 HttpCookie cookie = access(existingSession,request.isSecure());
+                
+                //a coalescing SessionCache returns sessions without locking them, so if the
+                //session was no longer resident when it was accessed, look it up again
+                while (existingSession != null && _sessionCache.isCoalesceAccess() && !((SessionIf)existingSession).getSession().isResident())
+                {
+                    existingSession = getSession(((SessionIf)existingSession).getSession().getId());
+                    if (existingSession != null && !isValid(existingSession))
+                        existingSession = null;
+                    baseRequest.setSession(existingSession);
+                    if (existingSession != null)
+                        cookie = access(existingSession,request.isSecure());
+                }
+                
                 // Handle changed ID or max-age refresh, but only if this is not a redispatched request
                 if ((cookie != null) && (request.getDispatcherType() == DispatcherType.ASYNC || request.getDispatcherType() == DispatcherType.REQUEST))
                     baseRequest.getResponse().replaceCookie(cookie);
@@ -0,0 +1,570 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+
+/**
+ * WriteBehindSessionDataStore
+ *
+ * A SessionDataStore that delegates to another SessionDataStore, but takes
+ * writes off the request thread. When a session is stored, a snapshot of its
+ * data is queued and the call returns immediately. Queued sessions are written
+ * to the delegate store in batches by a background thread at least every
+ * maxDelayMs, or sooner once maxBatchSize sessions are queued. Repeated stores
+ * of the same session before it is written are coalesced into a single write.
+ * <p>
+ * Loads, existence checks and expiry checks see queued sessions before
+ * they are written. On stop, all queued sessions are written before the
+ * delegate store is stopped.
+ * <p>
+ * Sessions stored in the last maxDelayMs (plus the time taken to write
+ * them) are lost if the server fails, and are not visible to other nodes
+ * until written. A write that fails is retried at the next flush.
+ */
+@ManagedObject
+public class WriteBehindSessionDataStore extends ContainerLifeCycle implements SessionDataStore
+{
+    private  final static Logger LOG = Log.getLogger("org.eclipse.jetty.server.session");
+
+    /**
+     * The actual store for the session data
+     */
+    protected SessionDataStore _store;
+
+    protected Scheduler _scheduler;
+    private boolean _ownScheduler;
+    private Scheduler.Task _task;
+    private int _maxDelayMs = 1000;
+    private int _maxBatchSize = 100;
+
+    private final ConcurrentHashMap<String, Pending> _pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean _flushScheduled = new AtomicBoolean();
+    private final Object _flushLock = new Object();
+
+    private final LongAdder _stores = new LongAdder();
+    private final LongAdder _coalesced = new LongAdder();
+    private final LongAdder _written = new LongAdder();
+    private final LongAdder _failed = new LongAdder();
+    private final SampleStatistic _flushLatency = new SampleStatistic();
+
+
+    /**
+     * @param store the actual store for the session data
+     */
+    public WriteBehindSessionDataStore (SessionDataStore store)
+    {
+        _store = store;
+        addBean(_store,true);
+    }
+
+
+    /**
+     * @return the delegate session store
+     */
+    public SessionDataStore getSessionStore()
+    {
+        return _store;
+    }
+
+
+    /**
+     * @return the scheduler used to write queued sessions
+     */
+    public Scheduler getScheduler()
+    {
+        return _scheduler;
+    }
+
+
+    /**
+     * @param scheduler the scheduler used to write queued sessions. If not set, a
+     * scheduler with a single daemon thread is created when the store starts.
+     */
+    public void setScheduler(Scheduler scheduler)
+    {
+        checkStarted();
+        updateBean(_scheduler, scheduler);
+        _scheduler = scheduler;
+    }
+
+
+    @ManagedAttribute(value="max ms a stored session waits before it is written", readonly=true)
+    public int getMaxDelayMs()
+    {
+        return _maxDelayMs;
+    }
+
+
+    /**
+     * @param maxDelayMs the maximum time in ms a session waits to be written, which
+     * is also the window in which sessions may be lost if the server fails
+     */
+    public void setMaxDelayMs(int maxDelayMs)
+    {
+        checkStarted();
+        if (maxDelayMs <= 0)
+            throw new IllegalArgumentException("maxDelayMs must be positive");
+        _maxDelayMs = maxDelayMs;
+    }
+
+
+    @ManagedAttribute(value="number of queued sessions that triggers a write", readonly=true)
+    public int getMaxBatchSize()
+    {
+        return _maxBatchSize;
+    }
+
+
+    /**
+     * @param maxBatchSize the number of queued sessions that triggers a write before maxDelayMs has passed
+     */
+    public void setMaxBatchSize(int maxBatchSize)
+    {
+        checkStarted();
+        if (maxBatchSize <= 0)
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        _maxBatchSize = maxBatchSize;
+    }
+
+
+    @ManagedAttribute("number of sessions waiting to be written")
+    public int getQueueDepth()
+    {
+        return _pending.size();
+    }
+
+
+    @ManagedAttribute("number of stores queued")
+    public long getStores()
+    {
+        return _stores.sum();
+    }
+
+
+    @ManagedAttribute("number of stores coalesced with a store of the same session")
+    public long getStoresCoalesced()
+    {
+        return _coalesced.sum();
+    }
+
+
+    @ManagedAttribute("number of sessions written to the delegate store")
+    public long getSessionsWritten()
+    {
+        return _written.sum();
+    }
+
+
+    @ManagedAttribute("number of failed session writes")
+    public long getWritesFailed()
+    {
+        return _failed.sum();
+    }
+
+
+    @ManagedAttribute("number of batches written")
+    public long getFlushes()
+    {
+        return _flushLatency.getCount();
+    }
+
+
+    @ManagedAttribute("mean time in ms to write a batch")
+    public double getFlushLatencyMean()
+    {
+        return _flushLatency.getMean();
+    }
+
+
+    @ManagedAttribute("max time in ms to write a batch")
+    public long getFlushLatencyMax()
+    {
+        return _flushLatency.getMax();
+    }
+
+
+    @ManagedOperation(value="reset the statistics", impact="ACTION")
+    public void resetStatistics()
+    {
+        _stores.reset();
+        _coalesced.reset();
+        _written.reset();
+        _failed.reset();
+        _flushLatency.reset();
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#load(java.lang.String)
+     */
+    @Override
+    public SessionData load(String id) throws Exception
+    {
+        Pending pending = _pending.get(id);
+        if (pending != null)
+        {
+            //not yet written, so the queued snapshot is the latest data
+            SessionData data = newSessionData(id, 0, 0, 0, 0);
+            data.copy(pending._data);
+            data.setLastSaved(pending._savedAt);
+            return data;
+        }
+        return _store.load(id);
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#delete(java.lang.String)
+     */
+    @Override
+    public boolean delete(String id) throws Exception
+    {
+        //wait for any write of the session in progress, so it can't undo the delete
+        synchronized (_flushLock)
+        {
+            boolean queued = _pending.remove(id) != null;
+            return _store.delete(id) || queued;
+        }
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#getExpired(Set)
+     */
+    @Override
+    public Set<String> getExpired(Set<String> candidates)
+    {
+        Set<String> expired = _store.getExpired(candidates);
+
+        //the delegate store may not have the latest expiry of queued sessions
+        long now = System.currentTimeMillis();
+        Set<String> result = new HashSet<>();
+        for (String id : expired)
+        {
+            Pending pending = _pending.get(id);
+            if (pending == null || pending._data.isExpiredAt(now))
+                result.add(id);
+        }
+        return result;
+    }
+
+
+    /**
+     * Queue a snapshot of the session to be written, if the delegate store
+     * would write it.
+     * 
+     * @see org.eclipse.jetty.server.session.SessionDataStore#store(java.lang.String, org.eclipse.jetty.server.session.SessionData)
+     */
+    @Override
+    public void store(String id, SessionData data) throws Exception
+    {
+        if (data == null)
+            return;
+
+        if (!isRunning())
+        {
+            _store.store(id, data);
+            return;
+        }
+
+        if (_store instanceof AbstractSessionDataStore && !((AbstractSessionDataStore)_store).isStoreRequired(data))
+            return;
+
+        SessionData snapshot = _store.newSessionData(id, data.getCreated(), data.getAccessed(), data.getLastAccessed(), data.getMaxInactiveMs());
+        snapshot.copy(data);
+        for (String name : data.getDirtyAttributes())
+            snapshot.setDirty(name);
+        snapshot.setDirty(true);
+
+        long now = System.currentTimeMillis();
+        _pending.merge(id, new Pending(snapshot, now), this::coalesce);
+        _stores.increment();
+
+        //the session is as good as saved
+        data.setLastSaved(now);
+        data.setDirty(false);
+
+        if (_pending.size() >= _maxBatchSize && _flushScheduled.compareAndSet(false, true))
+        {
+            _scheduler.schedule(() ->
+            {
+                _flushScheduled.set(false);
+                flush();
+            }, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    private Pending coalesce(Pending older, Pending newer)
+    {
+        //a snapshot being written is replaced, and newer is written afterwards
+        if (!older._flushing)
+        {
+            newer.inherit(older);
+            _coalesced.increment();
+        }
+        return newer;
+    }
+
+
+    /**
+     * Write all queued sessions to the delegate store.
+     */
+    @ManagedOperation(value="write all queued sessions", impact="ACTION")
+    public void flush()
+    {
+        synchronized (_flushLock)
+        {
+            if (_pending.isEmpty())
+                return;
+
+            long start = System.nanoTime();
+            Map<String, Pending> batch = new HashMap<>();
+            Map<String, SessionData> sessions = new HashMap<>();
+            for (String id : _pending.keySet())
+            {
+                Pending pending = _pending.computeIfPresent(id, (k, p) ->
+                {
+                    p._flushing = true;
+                    return p;
+                });
+                if (pending != null)
+                {
+                    batch.put(id, pending);
+                    sessions.put(id, pending._data);
+                }
+            }
+
+            Set<String> failed;
+            if (_store instanceof AbstractSessionDataStore)
+            {
+                failed = ((AbstractSessionDataStore)_store).storeAll(sessions);
+            }
+            else
+            {
+                failed = new HashSet<>();
+                for (Map.Entry<String, SessionData> entry : sessions.entrySet())
+                {
+                    try
+                    {
+                        _store.store(entry.getKey(), entry.getValue());
+                    }
+                    catch (Exception e)
+                    {
+                        LOG.warn("Unable to store session "+entry.getKey(), e);
+                        failed.add(entry.getKey());
+                    }
+                }
+            }
+
+            for (Map.Entry<String, Pending> entry : batch.entrySet())
+            {
+                Pending pending = entry.getValue();
+                if (failed.contains(entry.getKey()))
+                {
+                    //keep it queued to retry, unless a newer snapshot replaced it
+                    _pending.compute(entry.getKey(), (k, current) ->
+                    {
+                        pending._flushing = false;
+                        if (current == null || current == pending)
+                            return pending;
+                        current.inherit(pending);
+                        return current;
+                    });
+                }
+                else
+                {
+                    _pending.remove(entry.getKey(), pending);
+                }
+            }
+
+            _written.add(batch.size() - failed.size());
+            _failed.add(failed.size());
+            _flushLatency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Wrote {} sessions, {} failed, {} queued", batch.size() - failed.size(), failed.size(), _pending.size());
+        }
+    }
+
+
+    private void schedule()
+    {
+        _task = _scheduler.schedule(() ->
+        {
+            try
+            {
+                flush();
+            }
+            catch (Throwable x)
+            {
+                LOG.warn(x);
+            }
+            finally
+            {
+                if (isRunning())
+                    schedule();
+            }
+        }, _maxDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+
+    protected void checkStarted () throws IllegalStateException
+    {
+        if (isStarted())
+            throw new IllegalStateException("Already started");
+    }
+
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (_scheduler == null)
+        {
+            _ownScheduler = true;
+            _scheduler = new ScheduledExecutorScheduler(String.format("WriteBehindSessionDataStore@%x", hashCode()), true);
+            addBean(_scheduler, true);
+        }
+        super.doStart();
+        schedule();
+    }
+
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        if (_task != null)
+            _task.cancel();
+        _task = null;
+
+        flush();
+        if (!_pending.isEmpty())
+            LOG.warn("{} sessions could not be written", _pending.size());
+        _pending.clear();
+
+        super.doStop();
+
+        if (_ownScheduler)
+        {
+            removeBean(_scheduler);
+            _scheduler = null;
+            _ownScheduler = false;
+        }
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#isPassivating()
+     */
+    @Override
+    public boolean isPassivating()
+    {
+       return _store.isPassivating();
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#exists(java.lang.String)
+     */
+    @Override
+    public boolean exists(String id) throws Exception
+    {
+        Pending pending = _pending.get(id);
+        if (pending != null)
+            return !pending._data.isExpiredAt(System.currentTimeMillis());
+
+        return _store.exists(id);
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#initialize(org.eclipse.jetty.server.session.SessionContext)
+     */
+    @Override
+    public void initialize(SessionContext context) throws Exception
+    {
+        //pass through
+        _store.initialize(context);
+    }
+
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStore#newSessionData(java.lang.String, long, long, long, long)
+     */
+    @Override
+    public SessionData newSessionData(String id, long created, long accessed, long lastAccessed, long maxInactiveMs)
+    {
+        return _store.newSessionData(id, created, accessed, lastAccessed, maxInactiveMs);
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[maxDelayMs=%d,queued=%d,store=%s]", getClass().getSimpleName(), hashCode(), _maxDelayMs, _pending.size(), _store);
+    }
+
+
+    /**
+     * A snapshot of a session waiting to be written.
+     */
+    private static class Pending
+    {
+        final SessionData _data;
+        final long _savedAt; //when the live session was marked as saved
+        volatile boolean _flushing;
+
+        Pending(SessionData data, long savedAt)
+        {
+            _data = data;
+            _savedAt = savedAt;
+        }
+
+        /**
+         * Take over an older snapshot of the same session that will not be written.
+         * The older last save time is kept, so that a session never written is
+         * inserted, and the attributes changed in the older snapshot remain dirty.
+         */
+        void inherit(Pending older)
+        {
+            _data.setLastSaved(older._data.getLastSaved());
+            for (String name : older._data.getDirtyAttributes())
+                _data.setDirty(name);
+        }
+    }
+}
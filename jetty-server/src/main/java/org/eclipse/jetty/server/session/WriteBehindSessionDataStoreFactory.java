@@ -0,0 +1,95 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+/**
+ * WriteBehindSessionDataStoreFactory
+ *
+ *
+ */
+public class WriteBehindSessionDataStoreFactory extends AbstractSessionDataStoreFactory
+{
+    /**
+     * The factory for the SessionDataStore that will store session data.
+     */
+    protected SessionDataStoreFactory _sessionStoreFactory;
+
+    protected int _maxDelayMs = 1000;
+
+    protected int _maxBatchSize = 100;
+
+
+    /**
+     * @param factory The factory for the actual SessionDataStore that the
+     * WriteBehindSessionDataStore will delegate to
+     */
+    public void setSessionStoreFactory (SessionDataStoreFactory factory)
+    {
+        _sessionStoreFactory = factory;
+    }
+
+
+    /**
+     * @return the max ms a stored session waits before it is written
+     */
+    public int getMaxDelayMs()
+    {
+        return _maxDelayMs;
+    }
+
+
+    /**
+     * @param maxDelayMs the max ms a stored session waits before it is written
+     */
+    public void setMaxDelayMs(int maxDelayMs)
+    {
+        _maxDelayMs = maxDelayMs;
+    }
+
+
+    /**
+     * @return the number of queued sessions that triggers a write
+     */
+    public int getMaxBatchSize()
+    {
+        return _maxBatchSize;
+    }
+
+
+    /**
+     * @param maxBatchSize the number of queued sessions that triggers a write
+     */
+    public void setMaxBatchSize(int maxBatchSize)
+    {
+        _maxBatchSize = maxBatchSize;
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStoreFactory#getSessionDataStore(org.eclipse.jetty.server.session.SessionHandler)
+     */
+    @Override
+    public SessionDataStore getSessionDataStore(SessionHandler handler) throws Exception
+    {
+        WriteBehindSessionDataStore store = new WriteBehindSessionDataStore(_sessionStoreFactory.getSessionDataStore(handler));
+        store.setMaxDelayMs(getMaxDelayMs());
+        store.setMaxBatchSize(getMaxBatchSize());
+        return store;
+    }
+}
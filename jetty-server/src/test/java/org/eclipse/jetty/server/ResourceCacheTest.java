@@ -19,19 +19,30 @@
 package org.eclipse.jetty.server;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.GZIPInputStream;
 
 import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.HttpContent;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.http.ResourceHttpContent;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceCollection;
 import org.junit.jupiter.api.Test;
@@ -274,6 +285,214 @@ public class ResourceCacheTest
         cache.flushCache();
     }
 
+    @Test
+    public void testScanDoesNotEvictHotContent() throws Exception
+    {
+        File[] files=new File[20];
+        String[] names=new String[files.length];
+        for (int i=0;i<files.length;i++)
+        {
+            files[i]=File.createTempFile("S-"+i+"-",".txt");
+            files[i].deleteOnExit();
+            names[i]=files[i].getName();
+            try (OutputStream out = new FileOutputStream(files[i]))
+            {
+                out.write(("file "+i+"\n").getBytes());
+            }
+        }
+
+        Resource directory=Resource.newResource(files[0].getParentFile().getAbsolutePath());
+        CachedContentFactory cache=new CachedContentFactory(null,directory,new MimeTypes(),false,false,CompressedContentFormat.NONE);
+        cache.setMaxCachedFiles(4);
+
+        // Make the first two files hot.
+        HttpContent hot0=cache.getContent(names[0],4096);
+        HttpContent hot1=cache.getContent(names[1],4096);
+        for (int i=0;i<3;i++)
+        {
+            assertSame(hot0,cache.getContent(names[0],4096));
+            assertSame(hot1,cache.getContent(names[1],4096));
+        }
+
+        // Scan the other files once.
+        for (int i=2;i<files.length;i++)
+            assertTrue(cache.getContent(names[i],4096)!=null);
+
+        // The hot files are still cached.
+        assertSame(hot0,cache.getContent(names[0],4096));
+        assertSame(hot1,cache.getContent(names[1],4096));
+        assertEquals(4,cache.getCachedFiles());
+        assertEquals(8,cache.getHits());
+        assertEquals(files.length,cache.getMisses());
+        assertEquals(files.length-4,cache.getEvictions()+cache.getRejections());
+        assertFalse(cache.getHitRatio()==0.0D);
+
+        cache.flushCache();
+        assertEquals(0,cache.getCachedFiles());
+    }
+
+    @Test
+    public void testValidationInterval() throws Exception
+    {
+        File file=File.createTempFile("V-0-",".txt");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file))
+        {
+            out.write("original".getBytes());
+        }
+
+        Resource directory=Resource.newResource(file.getParentFile().getAbsolutePath());
+        CachedContentFactory cache=new CachedContentFactory(null,directory,new MimeTypes(),false,false,CompressedContentFormat.NONE);
+        cache.setValidationInterval(60000);
+
+        HttpContent content=cache.getContent(file.getName(),4096);
+        assertSame(content,cache.getContent(file.getName(),4096));
+        assertEquals(0,cache.getValidations());
+        assertEquals(1,cache.getSkippedValidations());
+
+        // The change is not detected within the validation interval.
+        try (OutputStream out = new FileOutputStream(file))
+        {
+            out.write("modified content".getBytes());
+        }
+        assertSame(content,cache.getContent(file.getName(),4096));
+
+        // The change is detected once validated again.
+        cache.setValidationInterval(0);
+        HttpContent modified=cache.getContent(file.getName(),4096);
+        assertTrue(content!=modified);
+        assertEquals("modified content".length(),modified.getContentLengthValue());
+        assertEquals(1,cache.getValidations());
+        assertEquals(2,cache.getSkippedValidations());
+    }
+
+    @Test
+    public void testGeneratePrecompressed() throws Exception
+    {
+        File file=File.createTempFile("G-0-",".txt");
+        file.deleteOnExit();
+        StringBuilder text=new StringBuilder();
+        for (int i=0;i<100;i++)
+            text.append("line ").append(i).append(" of a compressible text file\n");
+        try (OutputStream out = new FileOutputStream(file))
+        {
+            out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        Resource directory=Resource.newResource(file.getParentFile().getAbsolutePath());
+        CachedContentFactory cache=new CachedContentFactory(null,directory,new MimeTypes(),false,true,new CompressedContentFormat[]{CompressedContentFormat.GZIP});
+        cache.setGeneratePrecompressed(true);
+
+        HttpContent content=cache.getContent(file.getName(),4096);
+        Map<CompressedContentFormat,? extends HttpContent> precompressed=content.getPrecompressedContents();
+        HttpContent gzip=precompressed.get(CompressedContentFormat.GZIP);
+        assertTrue(gzip!=null);
+        assertEquals("gzip",gzip.getContentEncodingValue());
+        assertTrue(gzip.getContentLengthValue()<content.getContentLengthValue());
+        assertEquals(content.getResource().getWeakETag("--gzip"),gzip.getETagValue());
+        assertEquals(1,cache.getGeneratedPrecompressed());
+        assertEquals(gzip.getContentLengthValue(),cache.getCachedSize());
+
+        ByteBuffer buffer=gzip.getIndirectBuffer();
+        try (GZIPInputStream in=new GZIPInputStream(new ByteArrayInputStream(BufferUtil.toArray(buffer))))
+        {
+            assertEquals(text.toString(),IO.toString(in,StandardCharsets.UTF_8));
+        }
+
+        // The resource describes the compressed bytes.
+        assertEquals(gzip.getContentLengthValue(),gzip.getResource().length());
+        assertTrue(gzip.getResource().lastModified()>=content.getResource().lastModified());
+        try (GZIPInputStream in=new GZIPInputStream(gzip.getResource().getInputStream()))
+        {
+            assertEquals(text.toString(),IO.toString(in,StandardCharsets.UTF_8));
+        }
+
+        // Generated only once.
+        assertSame(gzip,cache.getContent(file.getName(),4096).getPrecompressedContents().get(CompressedContentFormat.GZIP));
+        assertEquals(1,cache.getGeneratedPrecompressed());
+
+        cache.flushCache();
+        assertEquals(0,cache.getCachedSize());
+    }
+
+    @Test
+    public void testGenerateLargePrecompressed() throws Exception
+    {
+        File file=File.createTempFile("G-1-",".txt");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file))
+        {
+            for (int i=0;i<10000;i++)
+                out.write(("line "+i+" of a large compressible text file\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        Resource directory=Resource.newResource(file.getParentFile().getAbsolutePath());
+        CachedContentFactory cache=new CachedContentFactory(null,directory,new MimeTypes(),false,true,new CompressedContentFormat[]{CompressedContentFormat.GZIP});
+        cache.setGeneratePrecompressed(true);
+
+        // Too large to be compressed in the requesting thread.
+        HttpContent content=cache.getContent(file.getName(),4096);
+        assertNull(content.getPrecompressedContents());
+        assertEquals(0,cache.getGeneratedPrecompressed());
+
+        // The identity content is served until compressed by the executor.
+        cache.flushCache();
+        Queue<Runnable> tasks=new ConcurrentLinkedQueue<>();
+        cache.setExecutor(tasks::offer);
+        content=cache.getContent(file.getName(),4096);
+        assertNull(content.getPrecompressedContents());
+        Runnable task;
+        while ((task=tasks.poll())!=null)
+            task.run();
+        HttpContent gzip=content.getPrecompressedContents().get(CompressedContentFormat.GZIP);
+        assertTrue(gzip!=null);
+        assertEquals(1,cache.getGeneratedPrecompressed());
+        assertEquals(gzip.getContentLengthValue(),gzip.getResource().length());
+    }
+
+    @Test
+    public void testContentEtags() throws Exception
+    {
+        File file1=File.createTempFile("E-1-",".txt");
+        file1.deleteOnExit();
+        File file2=File.createTempFile("E-2-",".txt");
+        file2.deleteOnExit();
+        for (File file : new File[]{file1,file2})
+        {
+            try (OutputStream out = new FileOutputStream(file))
+            {
+                out.write("same content".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        assertTrue(file2.setLastModified(file1.lastModified()-60000));
+
+        Resource directory=Resource.newResource(file1.getParentFile().getAbsolutePath());
+        CachedContentFactory cache=new CachedContentFactory(null,directory,new MimeTypes(),false,true,CompressedContentFormat.NONE);
+        cache.setContentEtags(true);
+
+        // Same content, same strong etag, regardless of the file metadata.
+        HttpContent content1=cache.getContent(file1.getName(),4096);
+        HttpContent content2=cache.getContent(file2.getName(),4096);
+        String etag=content1.getETagValue();
+        assertTrue(etag.startsWith("\""));
+        assertEquals(etag,content2.getETagValue());
+        assertTrue(!etag.equals(content1.getResource().getWeakETag()));
+        assertEquals(2,cache.getContentEtagsComputed());
+
+        // Computed once per version of a file.
+        assertEquals(etag,cache.getContent(file1.getName(),4096).getETagValue());
+        assertEquals(2,cache.getContentEtagsComputed());
+
+        try (OutputStream out = new FileOutputStream(file1))
+        {
+            out.write("other content".getBytes(StandardCharsets.UTF_8));
+        }
+        assertTrue(file1.setLastModified(file1.lastModified()+60000));
+        String modified=cache.getContent(file1.getName(),4096).getETagValue();
+        assertTrue(!etag.equals(modified));
+        assertEquals(3,cache.getContentEtagsComputed());
+    }
+
     @Test
     public void testNoextension() throws Exception
     {
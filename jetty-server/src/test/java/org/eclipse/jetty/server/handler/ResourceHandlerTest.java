@@ -22,23 +22,35 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpTester;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnection;
 import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IO;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.AfterAll;
@@ -49,6 +61,7 @@ import org.junit.jupiter.api.condition.DisabledIfSystemProperty;
 
 import static org.eclipse.jetty.http.HttpHeader.CONTENT_LENGTH;
 import static org.eclipse.jetty.http.HttpHeader.CONTENT_TYPE;
+import static org.eclipse.jetty.http.HttpHeader.ETAG;
 import static org.eclipse.jetty.http.HttpHeader.LAST_MODIFIED;
 import static org.eclipse.jetty.http.HttpHeader.LOCATION;
 import static org.eclipse.jetty.http.HttpHeader.SERVER;
@@ -73,6 +86,7 @@ public class ResourceHandlerTest
     private static LocalConnector _local;
     private static ContextHandler _contextHandler;
     private static ResourceHandler _resourceHandler;
+    private static final AtomicLong _transferred = new AtomicLong();
 
     @BeforeAll
     public static void setUp() throws Exception
@@ -93,6 +107,14 @@ public class ResourceHandlerTest
         
         bigger.deleteOnExit();
 
+        // a file of a type with no known mimetype
+        File unknown = new File(dir,"simple.unknown");
+        try (OutputStream out = new FileOutputStream(unknown))
+        {
+            out.write("simple text".getBytes(StandardCharsets.ISO_8859_1));
+        }
+        unknown.deleteOnExit();
+
         // determine how the SCM of choice checked out the big.txt EOL
         // we can't just use whatever is the OS default.
         // because, for example, a windows system using git can be configured for EOL handling using
@@ -122,7 +144,23 @@ public class ResourceHandlerTest
         _server = new Server();
         _config = new HttpConfiguration();
         _config.setOutputBufferSize(2048);
-        _connector = new ServerConnector(_server,new HttpConnectionFactory(_config));
+        _connector = new ServerConnector(_server,new HttpConnectionFactory(_config)
+        {
+            @Override
+            public Connection newConnection(Connector connector, EndPoint endPoint)
+            {
+                HttpConnection connection = new HttpConnection(getHttpConfiguration(), connector, endPoint, getHttpCompliance(), isRecordHttpComplianceViolations())
+                {
+                    @Override
+                    public void transfer(FileChannel file, long position, long length, Callback callback)
+                    {
+                        _transferred.addAndGet(length);
+                        super.transfer(file, position, length, callback);
+                    }
+                };
+                return configure(connection, connector, endPoint);
+            }
+        });
 
         _local = new LocalConnector(_server);
         
@@ -135,7 +173,24 @@ public class ResourceHandlerTest
 
         _contextHandler = new ContextHandler("/resource");
         _contextHandler.setHandler(_resourceHandler);
-        _server.setHandler(_contextHandler);
+
+        // a context where the response has been written through a writer before the resource is sent
+        ResourceHandler writerResourceHandler = new ResourceHandler();
+        writerResourceHandler.setResourceBase(MavenTestingUtils.getTargetFile("test-classes/simple").getAbsolutePath());
+        HandlerWrapper writerHandler = new HandlerWrapper()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                response.getWriter();
+                super.handle(target,baseRequest,request,response);
+            }
+        };
+        writerHandler.setHandler(writerResourceHandler);
+        ContextHandler writerContextHandler = new ContextHandler("/writer");
+        writerContextHandler.setHandler(writerHandler);
+
+        _server.setHandler(new ContextHandlerCollection(_contextHandler,writerContextHandler));
         _server.start();
     }
 
@@ -149,6 +204,7 @@ public class ResourceHandlerTest
     public void before()
     {
         _config.setOutputBufferSize(4096);
+        _transferred.set(0);
     }
 
     @Test
@@ -255,6 +311,40 @@ public class ResourceHandlerTest
         }
     }
     
+    @Test
+    public void testBiggerPersistentWithRange() throws Exception
+    {
+        File bigger = MavenTestingUtils.getTargetFile("test-classes/simple/bigger.txt");
+        long length = bigger.length();
+        try (Socket socket = new Socket("localhost",_connector.getLocalPort()))
+        {
+            OutputStream out = socket.getOutputStream();
+            HttpTester.Input in = HttpTester.from(socket.getInputStream());
+
+            out.write("GET /resource/bigger.txt HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            HttpTester.Response response = HttpTester.parseResponse(in);
+            assertThat(response.getStatus(),equalTo(200));
+            assertThat(response.get(CONTENT_LENGTH),equalTo(Long.toString(length)));
+            assertThat(response.getContentBytes().length,equalTo((int)length));
+            assertThat(response.getContent(),startsWith("     1\tThis is a big file"));
+            assertThat(response.getContent(),endsWith("   400\tThis is a big file" + LN));
+            assertThat(_transferred.get(),equalTo(length));
+
+            out.write(("GET /resource/bigger.txt HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Range: bytes=10-" + (length - 1) + "\r\n" +
+                "Connection: close\r\n" +
+                "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            response = HttpTester.parseResponse(in);
+            assertThat(response.getStatus(),equalTo(HttpStatus.PARTIAL_CONTENT_206));
+            assertThat(response.get(CONTENT_LENGTH),equalTo(Long.toString(length - 10)));
+            assertThat(response.getContentBytes().length,equalTo((int)(length - 10)));
+            assertThat(response.getContent(),startsWith("s is a big file"));
+            assertThat(response.getContent(),endsWith("   400\tThis is a big file" + LN));
+            assertThat(_transferred.get(),equalTo(length + length - 10));
+        }
+    }
+
     @Test
     public void testWelcome() throws Exception
     {
@@ -326,6 +416,63 @@ public class ResourceHandlerTest
     }
 
 
+    @Test
+    public void testBiggerPersistentWithMultipleRanges() throws Exception
+    {
+        File bigger = MavenTestingUtils.getTargetFile("test-classes/simple/bigger.txt");
+        long length = bigger.length();
+        try (Socket socket = new Socket("localhost",_connector.getLocalPort()))
+        {
+            OutputStream out = socket.getOutputStream();
+            HttpTester.Input in = HttpTester.from(socket.getInputStream());
+
+            for (String path : new String[]{"bigger.txt", "simple.txt"})
+            {
+                out.write(("GET /resource/" + path + " HTTP/1.1\r\n" +
+                    "Host: localhost\r\n" +
+                    "Range: bytes=0-1,7-8\r\n" +
+                    "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                HttpTester.Response response = HttpTester.parseResponse(in);
+                assertThat(response.getStatus(),equalTo(HttpStatus.PARTIAL_CONTENT_206));
+                String contentType = response.get(CONTENT_TYPE);
+                assertThat(contentType,startsWith("multipart/byteranges; boundary="));
+                String boundary = contentType.substring(contentType.indexOf('=') + 1);
+                long size = path.equals("bigger.txt") ? length : 11;
+                String content = response.getContent();
+                assertThat(response.get(CONTENT_LENGTH),equalTo(Integer.toString(content.length())));
+                String expected = path.equals("bigger.txt")
+                    ? "--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 0-1/" + size + "\r\n\r\n  " +
+                      "\r\n--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 7-8/" + size + "\r\n\r\nTh" +
+                      "\r\n--" + boundary + "--\r\n"
+                    : "--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 0-1/" + size + "\r\n\r\nsi" +
+                      "\r\n--" + boundary + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 7-8/" + size + "\r\n\r\nte" +
+                      "\r\n--" + boundary + "--\r\n";
+                assertThat(content,equalTo(expected));
+            }
+        }
+    }
+
+    @Test
+    public void testMultipleRangesUnknownMimeType() throws Exception
+    {
+        // sent from the file, then through a writer
+        for (String context : new String[]{"resource", "writer"})
+        {
+            HttpTester.Response response = HttpTester.parseResponse(_local.getResponse("GET /" + context + "/simple.unknown HTTP/1.0\r\n" +
+                                                                                          "Range: bytes=0-1,7-8\r\n" +
+                                                                                          "\r\n"));
+            assertThat(response.getStatus(),equalTo(HttpStatus.PARTIAL_CONTENT_206));
+            String contentType = response.get(CONTENT_TYPE);
+            assertThat(contentType,startsWith("multipart/byteranges; boundary="));
+            String boundary = contentType.substring(contentType.indexOf('=') + 1).split(";")[0];
+            String content = response.getContent();
+            assertThat(response.get(CONTENT_LENGTH),equalTo(Integer.toString(content.length())));
+            assertThat(content,equalTo("--" + boundary + "\r\nContent-Range: bytes 0-1/11\r\n\r\nsi" +
+                                       "\r\n--" + boundary + "\r\nContent-Range: bytes 7-8/11\r\n\r\nte" +
+                                       "\r\n--" + boundary + "--\r\n"));
+        }
+    }
+
     @Test
     public void testConditionalGetResponseCommitted() throws Exception
     {
@@ -352,4 +499,39 @@ public class ResourceHandlerTest
 
         assertThat(response.getStatus(),equalTo(HttpStatus.PRECONDITION_FAILED_412));
     }
+
+    @Test
+    public void testIfRange() throws Exception
+    {
+        _resourceHandler.setEtags(true);
+
+        HttpTester.Response response = HttpTester.parseResponse(_local.getResponse("GET /resource/simple.txt HTTP/1.0\r\n\r\n"));
+        String lastModified = response.get(LAST_MODIFIED);
+        String etag = response.get(ETAG);
+        assertThat(etag,startsWith("W/"));
+
+        // The representation has not changed
+        response = HttpTester.parseResponse(_local.getResponse("GET /resource/simple.txt HTTP/1.0\r\n" +
+                                                                "Range: bytes=0-1\r\n" +
+                                                                "If-Range: " + lastModified + "\r\n" +
+                                                                "\r\n"));
+        assertThat(response.getStatus(),equalTo(HttpStatus.PARTIAL_CONTENT_206));
+        assertThat(response.getContent(),equalTo("si"));
+
+        // The representation has changed since
+        response = HttpTester.parseResponse(_local.getResponse("GET /resource/simple.txt HTTP/1.0\r\n" +
+                                                                "Range: bytes=0-1\r\n" +
+                                                                "If-Range: Thu, 01 Jan 1970 00:00:00 GMT\r\n" +
+                                                                "\r\n"));
+        assertThat(response.getStatus(),equalTo(HttpStatus.OK_200));
+        assertThat(response.getContent(),equalTo("simple text"));
+
+        // A weak etag cannot validate a range
+        response = HttpTester.parseResponse(_local.getResponse("GET /resource/simple.txt HTTP/1.0\r\n" +
+                                                                "Range: bytes=0-1\r\n" +
+                                                                "If-Range: " + etag + "\r\n" +
+                                                                "\r\n"));
+        assertThat(response.getStatus(),equalTo(HttpStatus.OK_200));
+        assertThat(response.getContent(),equalTo("simple text"));
+    }
 }
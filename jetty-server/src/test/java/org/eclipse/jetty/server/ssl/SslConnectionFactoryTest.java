@@ -41,6 +41,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.ssl.SslHandshakeStatistics;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Request;
@@ -51,6 +52,7 @@ import org.eclipse.jetty.server.SocketCustomizationListener;
 import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.ssl.LocalSslSessionStore;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.AfterEach;
@@ -191,6 +193,75 @@ public class SslConnectionFactoryTest
         assertEquals(0, history.size());
     }
 
+    @Test
+    public void testHandshakeStatistics() throws Exception
+    {
+        SslHandshakeStatistics statistics = new SslHandshakeStatistics();
+        _connector.addBean(statistics);
+
+        SslContextFactory clientContextFactory = new SslContextFactory.Client(true);
+        clientContextFactory.start();
+        try
+        {
+            SSLSocketFactory factory = clientContextFactory.getSslContext().getSocketFactory();
+            for (int i = 0; i < 2; ++i)
+            {
+                try (SSLSocket sslSocket = (SSLSocket)factory.createSocket("127.0.0.1", _port))
+                {
+                    sslSocket.getOutputStream().write(("GET /ctx/path HTTP/1.0\r\nHost: localhost:" + _port + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                    String response = IO.toString(sslSocket.getInputStream());
+                    assertThat(response, Matchers.startsWith("HTTP/1.1 200 OK"));
+                }
+            }
+        }
+        finally
+        {
+            clientContextFactory.stop();
+        }
+
+        assertEquals(1, statistics.getFullHandshakes());
+        assertEquals(1, statistics.getResumedHandshakes());
+        assertEquals(0, statistics.getFailedHandshakes());
+        assertEquals(0.5D, statistics.getResumedHandshakesRatio());
+    }
+
+    @Test
+    public void testSslSessionStoreResumesAcrossRestart() throws Exception
+    {
+        _server.stop();
+        // The client caches TLS sessions by host and port.
+        _connector.setPort(_port);
+        SslContextFactory sslContextFactory = _connector.getBean(SslConnectionFactory.class).getSslContextFactory();
+        sslContextFactory.setSslSessionStore(new LocalSslSessionStore());
+        SslHandshakeStatistics statistics = new SslHandshakeStatistics();
+        _connector.addBean(statistics);
+
+        SslContextFactory clientContextFactory = new SslContextFactory.Client(true);
+        clientContextFactory.start();
+        try
+        {
+            SSLSocketFactory factory = clientContextFactory.getSslContext().getSocketFactory();
+            for (int i = 0; i < 2; ++i)
+            {
+                _server.start();
+                try (SSLSocket sslSocket = (SSLSocket)factory.createSocket("127.0.0.1", _port))
+                {
+                    sslSocket.getOutputStream().write(("GET /ctx/path HTTP/1.0\r\nHost: localhost:" + _port + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                    String response = IO.toString(sslSocket.getInputStream());
+                    assertThat(response, Matchers.startsWith("HTTP/1.1 200 OK"));
+                }
+                _server.stop();
+            }
+        }
+        finally
+        {
+            clientContextFactory.stop();
+        }
+
+        assertEquals(1, statistics.getFullHandshakes());
+        assertEquals(1, statistics.getResumedHandshakes());
+    }
+
     @Test
     public void testServerWithoutHttpConnectionFactory() throws Exception
     {
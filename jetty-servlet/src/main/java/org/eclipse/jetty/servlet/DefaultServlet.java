@@ -107,6 +107,15 @@ import org.eclipse.jetty.util.resource.ResourceFactory;
  *  maxCacheSize      The maximum total size of the cache or 0 for no cache.
  *  maxCachedFileSize The maximum size of a file to cache
  *  maxCachedFiles    The maximum number of files to cache
+ *  generatePrecompressed
+ *                    If set to true and gzip is one of the precompressed formats, gzip
+ *                    precompressed content is generated and cached in memory for cached
+ *                    compressible content that has no precompressed file.
+ *  cacheValidationInterval
+ *                    The interval in ms during which a cached file is not validated
+ *                    again against the file system, or 0 (default) to validate on every access
+ *  contentEtags      If set to true with etags, cached files have a strong etag computed
+ *                    from a hash of their content, that is the same on every server.
  *
  *  useFileMappedBuffer
  *                    If set to true, it will use mapped file buffer to serve static content
@@ -246,6 +255,7 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
         int max_cache_size=getInitInt("maxCacheSize", -2);
         int max_cached_file_size=getInitInt("maxCachedFileSize", -2);
         int max_cached_files=getInitInt("maxCachedFiles", -2);
+        int cache_validation_interval=getInitInt("cacheValidationInterval", -2);
         if (resourceCache!=null)
         {
             if (max_cache_size!=-1 || max_cached_file_size!= -2 || max_cached_files!=-2)
@@ -266,7 +276,14 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
                     _cache.setMaxCachedFileSize(max_cached_file_size);
                 if (max_cached_files>=-1)
                     _cache.setMaxCachedFiles(max_cached_files);
+                if (cache_validation_interval>=0)
+                    _cache.setValidationInterval(cache_validation_interval);
+                _cache.setGeneratePrecompressed(getInitBoolean("generatePrecompressed",false));
+                _cache.setContentEtags(getInitBoolean("contentEtags",false));
+                if (_contextHandler.getServer()!=null)
+                    _cache.setExecutor(_contextHandler.getServer().getThreadPool());
                 _servletContext.setAttribute(resourceCache==null?"resourceCache":resourceCache,_cache);
+                _contextHandler.addBean(_cache);
             }
         }
         catch (Exception e)
@@ -492,7 +509,10 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
     public void destroy()
     {
         if (_cache!=null)
+        {
+            _contextHandler.removeBean(_cache);
             _cache.flushCache();
+        }
         super.destroy();
     }
 
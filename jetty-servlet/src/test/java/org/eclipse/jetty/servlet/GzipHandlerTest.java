@@ -18,11 +18,15 @@
 
 package org.eclipse.jetty.servlet;
 
+import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.HttpTester;
 import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.gzip.ContentEncoder;
 import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -48,8 +52,12 @@ import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -278,6 +286,152 @@ public class GzipHandlerTest
         assertEquals(__content, testOut.toString("UTF8"));
     }
     
+    @Test
+    public void testLowThreadsCompressionLevel() throws Exception
+    {
+        AtomicBoolean lowOnThreads = new AtomicBoolean();
+        Server server = new Server(new QueuedThreadPool()
+        {
+            @Override
+            public boolean isLowOnThreads()
+            {
+                return lowOnThreads.get();
+            }
+        });
+        LocalConnector connector = new LocalConnector(server);
+        server.addConnector(connector);
+        GzipHandler gzipHandler = new GzipHandler();
+        gzipHandler.setExcludedAgentPatterns();
+        gzipHandler.setCompressionLevel(Deflater.BEST_COMPRESSION);
+        gzipHandler.setLowThreadsCompressionLevel(Deflater.NO_COMPRESSION);
+        ServletContextHandler context = new ServletContextHandler(gzipHandler,"/ctx");
+        context.getServletHandler().addServletWithMapping(TestServlet.class,"/content");
+        server.setHandler(gzipHandler);
+        server.start();
+        try
+        {
+            HttpTester.Request request = HttpTester.newRequest();
+            request.setMethod("GET");
+            request.setURI("/ctx/content");
+            request.setVersion("HTTP/1.0");
+            request.setHeader("Host","tester");
+            request.setHeader("Accept-Encoding","gzip");
+
+            HttpTester.Response response = HttpTester.parseResponse(connector.getResponse(request.generate()));
+            assertThat(response.get("Content-Encoding"),equalToIgnoringCase("gzip"));
+            int compressed = response.getContentBytes().length;
+            assertThat(compressed,lessThan(__content.length()));
+
+            // The same pooled deflater does not compress when low on threads.
+            lowOnThreads.set(true);
+            response = HttpTester.parseResponse(connector.getResponse(request.generate()));
+            assertThat(response.get("Content-Encoding"),equalToIgnoringCase("gzip"));
+            assertThat(response.getContentBytes().length,greaterThan(__content.length()));
+            assertEquals(__content,IO.toString(new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes())),StandardCharsets.UTF_8));
+
+            lowOnThreads.set(false);
+            response = HttpTester.parseResponse(connector.getResponse(request.generate()));
+            assertThat(response.getContentBytes().length,is(compressed));
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testContentEncoder() throws Exception
+    {
+        CompressedContentFormat deflate = new CompressedContentFormat("deflate",".zz");
+        GzipHandler gzipHandler = (GzipHandler)_server.getHandler();
+        gzipHandler.addContentEncoder(new ContentEncoder()
+        {
+            @Override
+            public CompressedContentFormat getFormat()
+            {
+                return deflate;
+            }
+
+            @Override
+            public Compressor newCompressor(Request request, long contentLength)
+            {
+                Deflater deflater = new Deflater();
+                return new Compressor()
+                {
+                    @Override
+                    public CompressedContentFormat getFormat()
+                    {
+                        return deflate;
+                    }
+
+                    @Override
+                    public boolean needsInput()
+                    {
+                        return deflater.needsInput();
+                    }
+
+                    @Override
+                    public void setInput(byte[] bytes, int offset, int length)
+                    {
+                        deflater.setInput(bytes,offset,length);
+                    }
+
+                    @Override
+                    public void finish()
+                    {
+                        deflater.finish();
+                    }
+
+                    @Override
+                    public boolean finished()
+                    {
+                        return deflater.finished();
+                    }
+
+                    @Override
+                    public int compress(byte[] bytes, int offset, int length, boolean flush)
+                    {
+                        return deflater.deflate(bytes,offset,length,flush?Deflater.SYNC_FLUSH:Deflater.NO_FLUSH);
+                    }
+
+                    @Override
+                    public void release()
+                    {
+                        deflater.end();
+                    }
+                };
+            }
+        });
+        assertThat(gzipHandler.getContentEncoders().size(),is(2));
+
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/content");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host","tester");
+
+        // The added encoder is preferred for the same quality
+        request.setHeader("Accept-Encoding","gzip, deflate");
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(),is(200));
+        assertThat(response.get("Content-Encoding"),is("deflate"));
+        assertThat(response.get("ETag"),is(String.format("W/\"%x--deflate\"",__content.hashCode())));
+        assertEquals(__content,IO.toString(new InflaterInputStream(new ByteArrayInputStream(response.getContentBytes())),StandardCharsets.UTF_8));
+
+        // The quality is respected
+        request.setHeader("Accept-Encoding","gzip, deflate;q=0.5");
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.get("Content-Encoding"),is("gzip"));
+        assertEquals(__content,IO.toString(new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes())),StandardCharsets.UTF_8));
+
+        // The etag suffix of the encoding is stripped from conditional requests
+        request.setHeader("Accept-Encoding","deflate");
+        request.setHeader("If-None-Match",String.format("W/\"%x--deflate\"",__content.hashCode()));
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(),is(304));
+        assertThat(response.get("ETag"),is(String.format("W/\"%x--deflate\"",__content.hashCode())));
+    }
+
     @Test
     public void testGzipNotMicro() throws Exception
     {
@@ -603,6 +757,107 @@ public class GzipHandlerTest
         assertThat(response.getContentBytes().length,is(512*1024));
     }
 
+    @Test
+    public void testGzipBombMaxInflatedSize() throws Exception
+    {
+        GzipHandler gzipHandler = (GzipHandler)_server.getHandler();
+        gzipHandler.setMaxInflatedSize(16*1024);
+
+        byte[] data = new byte[512*1024];
+        Arrays.fill(data,(byte)'X');
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        GZIPOutputStream output = new GZIPOutputStream(baos);
+        output.write(data);
+        output.close();
+
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("POST");
+        request.setURI("/ctx/echo");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host","tester");
+        request.setHeader("Content-Type","text/plain");
+        request.setHeader("Content-Encoding","gzip");
+        request.setContent(baos.toByteArray());
+
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(),is(413));
+    }
+
+    @Test
+    public void testGzipBombMaxInflateRatio() throws Exception
+    {
+        GzipHandler gzipHandler = (GzipHandler)_server.getHandler();
+        gzipHandler.setMaxInflateRatio(10);
+
+        byte[] data = new byte[512*1024];
+        Arrays.fill(data,(byte)'X');
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        GZIPOutputStream output = new GZIPOutputStream(baos);
+        output.write(data);
+        output.close();
+
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("POST");
+        request.setURI("/ctx/echo");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host","tester");
+        request.setHeader("Content-Type","text/plain");
+        request.setHeader("Content-Encoding","gzip");
+        request.setContent(baos.toByteArray());
+
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(),is(413));
+
+        // Content with a normal compression ratio is still inflated
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 4096; ++i)
+            builder.append(i).append(' ');
+        String text = builder.toString();
+        baos = new ByteArrayOutputStream();
+        output = new GZIPOutputStream(baos);
+        output.write(text.getBytes(StandardCharsets.UTF_8));
+        output.close();
+        request.setContent(baos.toByteArray());
+
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(),is(200));
+        assertThat(response.getContent(),is(text));
+    }
+
+    @Test
+    public void testDeflateRequest() throws Exception
+    {
+        String data = "Hello Nice World! ";
+        for (int i = 0; i < 10; ++i)
+            data += data;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DeflaterOutputStream output = new DeflaterOutputStream(baos);
+        output.write(data.getBytes(StandardCharsets.UTF_8));
+        output.close();
+        byte[] bytes = baos.toByteArray();
+
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("POST");
+        request.setURI("/ctx/echo");
+        request.setVersion("HTTP/1.1");
+        request.setHeader("Host","tester");
+        request.setHeader("Content-Type","text/plain");
+        request.setHeader("Content-Encoding","deflate");
+        request.add("Transfer-Encoding", "chunked");
+        request.setContent(bytes);
+
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(),is(200));
+        assertThat(response.getContent(),is(data));
+
+        // The pooled inflater is reused for the next request
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(),is(200));
+        assertThat(response.getContent(),is(data));
+    }
+
     public static class CheckFilter implements Filter
     {
         @Override
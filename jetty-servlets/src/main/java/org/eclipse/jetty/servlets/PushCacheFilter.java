@@ -74,6 +74,9 @@ import org.eclipse.jetty.util.log.Logger;
  * cache.</p>
  * <p>If the init param useQueryInKey is set, then the query string is used as
  * as part of the key to identify a resource</p>
+ * <p>The init param maxPrimaryResources bounds the number of primary resources
+ * held in the cache; when exceeded, the primary resource that was least recently
+ * requested is evicted.</p>
  */
 @ManagedObject("Push cache based on the HTTP 'Referer' header")
 public class PushCacheFilter implements Filter
@@ -85,6 +88,7 @@ public class PushCacheFilter implements Filter
     private final ConcurrentMap<String, PrimaryResource> _cache = new ConcurrentHashMap<>();
     private long _associatePeriod = 4000L;
     private int _maxAssociations = 16;
+    private int _maxPrimaryResources = 4096;
     private long _renew = System.nanoTime();
     private boolean _useQueryInKey;
 
@@ -99,6 +103,10 @@ public class PushCacheFilter implements Filter
         if (maxAssociations != null)
             _maxAssociations = Integer.parseInt(maxAssociations);
 
+        String maxPrimaryResources = config.getInitParameter("maxPrimaryResources");
+        if (maxPrimaryResources != null)
+            _maxPrimaryResources = Integer.parseInt(maxPrimaryResources);
+
         String hosts = config.getInitParameter("hosts");
         if (hosts != null)
             Collections.addAll(_hosts, StringUtil.csvSplit(hosts));
@@ -114,7 +122,7 @@ public class PushCacheFilter implements Filter
         config.getServletContext().setAttribute(config.getFilterName(), this);
 
         if (LOG.isDebugEnabled())
-            LOG.debug("period={} max={} hosts={} ports={}", _associatePeriod, _maxAssociations, _hosts, _ports);
+            LOG.debug("period={} max={} primaries={} hosts={} ports={}", _associatePeriod, _maxAssociations, _maxPrimaryResources, _hosts, _ports);
     }
 
     @Override
@@ -254,8 +262,14 @@ public class PushCacheFilter implements Filter
         if (primaryResource == null)
         {
             PrimaryResource r = new PrimaryResource();
+            r._accessed.set(now);
             primaryResource = _cache.putIfAbsent(path, r);
-            primaryResource = primaryResource == null ? r : primaryResource;
+            if (primaryResource == null)
+            {
+                primaryResource = r;
+                if (_maxPrimaryResources >= 0 && _cache.size() > _maxPrimaryResources)
+                    evictPrimaryResource();
+            }
             primaryResource._timestamp.compareAndSet(0, now);
             if (LOG.isDebugEnabled())
                 LOG.debug("Cached primary resource {}", path);
@@ -270,6 +284,8 @@ public class PushCacheFilter implements Filter
                     LOG.debug("Clear associated resources for {}", path);
             }
         }
+        if (_maxPrimaryResources >= 0)
+            primaryResource._accessed.set(now);
 
         // Push associated resources.
         if (!conditional && !primaryResource._associated.isEmpty())
@@ -277,6 +293,9 @@ public class PushCacheFilter implements Filter
             PushBuilder pushBuilder = jettyRequest.getPushBuilder();
 
             // Breadth-first push of associated resources.
+            // Associations may form cycles, so track what has been visited.
+            Set<String> visited = new HashSet<>();
+            visited.add(path);
             Queue<PrimaryResource> queue = new ArrayDeque<>();
             queue.offer(primaryResource);
             while (!queue.isEmpty())
@@ -284,6 +303,9 @@ public class PushCacheFilter implements Filter
                 PrimaryResource parent = queue.poll();
                 for (String childPath : parent._associated)
                 {
+                    if (!visited.add(childPath))
+                        continue;
+
                     PrimaryResource child = _cache.get(childPath);
                     if (child != null)
                         queue.offer(child);
@@ -298,6 +320,23 @@ public class PushCacheFilter implements Filter
         chain.doFilter(request, resp);
     }
 
+    private void evictPrimaryResource()
+    {
+        // Only scanned when a new primary resource exceeds the max, so requests
+        // for cached primary resources just record their access time.
+        Map.Entry<String, PrimaryResource> eldest = null;
+        for (Map.Entry<String, PrimaryResource> entry : _cache.entrySet())
+        {
+            if (eldest == null || entry.getValue()._accessed.get() - eldest.getValue()._accessed.get() < 0)
+                eldest = entry;
+        }
+        if (eldest != null && _cache.remove(eldest.getKey(), eldest.getValue()))
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Evicted primary resource {}, exceeded max primary resources of {}", eldest.getKey(), _maxPrimaryResources);
+        }
+    }
+
     @Override
     public void destroy()
     {
@@ -317,6 +356,12 @@ public class PushCacheFilter implements Filter
         return result;
     }
 
+    @ManagedAttribute("The max number of primary resources in the push cache")
+    public int getMaxPrimaryResources()
+    {
+        return _maxPrimaryResources;
+    }
+
     @ManagedOperation(value = "Renews the push cache contents", impact = "ACTION")
     public void renewPushCache()
     {
@@ -333,5 +378,6 @@ public class PushCacheFilter implements Filter
     {
         private final Set<String> _associated = Collections.newSetFromMap(new ConcurrentHashMap<>());
         private final AtomicLong _timestamp = new AtomicLong();
+        private final AtomicLong _accessed = new AtomicLong();
     }
 }
@@ -0,0 +1,246 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>A concurrent map with primitive {@code int} keys.</p>
+ * <p>Lookups are lock-free and do not box the key, so this map is suitable
+ * for hot paths such as looking up a HTTP/2 stream by id for every frame.
+ * Modifications are serialized, as they are expected to be much less
+ * frequent than lookups.</p>
+ * <p>Buckets are chains of nodes whose {@code next} links never change once
+ * published: removals and resizes replace chains rather than mutating them,
+ * so a concurrent lookup always sees a consistent chain.</p>
+ *
+ * @param <V> the type of the values
+ */
+public class ConcurrentIntHashMap<V>
+{
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private volatile AtomicReferenceArray<Node<V>> _table;
+    private volatile int _size;
+
+    public ConcurrentIntHashMap()
+    {
+        this(16);
+    }
+
+    /**
+     * @param initialCapacity the initial number of buckets, rounded up to a power of 2
+     */
+    public ConcurrentIntHashMap(int initialCapacity)
+    {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Invalid capacity " + initialCapacity);
+        int capacity = 1;
+        while (capacity < initialCapacity && capacity < MAXIMUM_CAPACITY)
+            capacity <<= 1;
+        _table = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the value mapped to the key, or null if there is no mapping
+     */
+    public V get(int key)
+    {
+        while (true)
+        {
+            AtomicReferenceArray<Node<V>> table = _table;
+            Node<V> node = table.get(index(key, table.length()));
+            while (node != null)
+            {
+                if (node.key == key)
+                    return node.value;
+                node = node.next;
+            }
+            // A concurrent resize may have moved the key to a new table.
+            if (table == _table)
+                return null;
+        }
+    }
+
+    /**
+     * @param key the key to look up
+     * @return whether the key is mapped to a value
+     */
+    public boolean containsKey(int key)
+    {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key the key
+     * @param value the non-null value
+     * @return the value previously mapped to the key, or null if there was no mapping
+     */
+    public synchronized V put(int key, V value)
+    {
+        return put(key, value, false);
+    }
+
+    /**
+     * @param key the key
+     * @param value the non-null value
+     * @return the value already mapped to the key, or null if the value has been mapped
+     */
+    public synchronized V putIfAbsent(int key, V value)
+    {
+        return put(key, value, true);
+    }
+
+    private V put(int key, V value, boolean onlyIfAbsent)
+    {
+        if (value == null)
+            throw new NullPointerException();
+        AtomicReferenceArray<Node<V>> table = _table;
+        int index = index(key, table.length());
+        Node<V> head = table.get(index);
+        for (Node<V> node = head; node != null; node = node.next)
+        {
+            if (node.key == key)
+            {
+                V old = node.value;
+                if (!onlyIfAbsent)
+                    node.value = value;
+                return old;
+            }
+        }
+        table.set(index, new Node<>(key, value, head));
+        int size = _size + 1;
+        _size = size;
+        if (size > table.length() - (table.length() >>> 2))
+            resize(table);
+        return null;
+    }
+
+    /**
+     * @param key the key to remove
+     * @return the value that was mapped to the key, or null if there was no mapping
+     */
+    public synchronized V remove(int key)
+    {
+        AtomicReferenceArray<Node<V>> table = _table;
+        int index = index(key, table.length());
+        Node<V> head = table.get(index);
+        for (Node<V> node = head; node != null; node = node.next)
+        {
+            if (node.key == key)
+            {
+                // Copy the nodes preceding the removed one.
+                Node<V> chain = node.next;
+                for (Node<V> n = head; n != node; n = n.next)
+                    chain = new Node<>(n.key, n.value, chain);
+                table.set(index, chain);
+                _size = _size - 1;
+                return node.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes all the mappings.
+     */
+    public synchronized void clear()
+    {
+        _table = new AtomicReferenceArray<>(_table.length());
+        _size = 0;
+    }
+
+    /**
+     * @return the number of mappings
+     */
+    public int size()
+    {
+        return _size;
+    }
+
+    /**
+     * @return whether there are no mappings
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * @return a snapshot list of the values of this map
+     */
+    public List<V> values()
+    {
+        AtomicReferenceArray<Node<V>> table = _table;
+        List<V> result = new ArrayList<>(size());
+        for (int i = 0; i < table.length(); ++i)
+        {
+            for (Node<V> node = table.get(i); node != null; node = node.next)
+                result.add(node.value);
+        }
+        return result;
+    }
+
+    private void resize(AtomicReferenceArray<Node<V>> table)
+    {
+        int length = table.length();
+        if (length >= MAXIMUM_CAPACITY)
+            return;
+        AtomicReferenceArray<Node<V>> newTable = new AtomicReferenceArray<>(length << 1);
+        for (int i = 0; i < length; ++i)
+        {
+            for (Node<V> node = table.get(i); node != null; node = node.next)
+            {
+                int index = index(node.key, newTable.length());
+                newTable.set(index, new Node<>(node.key, node.value, newTable.get(index)));
+            }
+        }
+        _table = newTable;
+    }
+
+    private static int index(int key, int length)
+    {
+        // Spread sequential keys, such as odd or even HTTP/2 stream ids, over all buckets.
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (length - 1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{size=%d}", getClass().getSimpleName(), hashCode(), size());
+    }
+
+    private static class Node<V>
+    {
+        private final int key;
+        private final Node<V> next;
+        private volatile V value;
+
+        private Node(int key, V value, Node<V> next)
+        {
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+}
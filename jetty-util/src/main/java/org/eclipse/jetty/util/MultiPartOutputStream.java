@@ -112,8 +112,10 @@ public class MultiPartOutputStream extends FilterOutputStream
         out.write(boundaryBytes);
         out.write(__CRLF);
         if (contentType != null)
+        {
             out.write(("Content-Type: "+contentType).getBytes(StandardCharsets.ISO_8859_1));
-        out.write(__CRLF);
+            out.write(__CRLF);
+        }
         out.write(__CRLF);
     }
         
@@ -133,8 +135,10 @@ public class MultiPartOutputStream extends FilterOutputStream
         out.write(boundaryBytes);
         out.write(__CRLF);
         if (contentType != null)
+        {
             out.write(("Content-Type: "+contentType).getBytes(StandardCharsets.ISO_8859_1));
-        out.write(__CRLF);
+            out.write(__CRLF);
+        }
         for (int i=0;headers!=null && i<headers.length;i++)
         {
             out.write(headers[i].getBytes(StandardCharsets.ISO_8859_1));
@@ -0,0 +1,418 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>An index of the central directory of a jar (or zip) file.</p>
+ * <p>The central directory of the jar file is read once and parsed into a map,
+ * so that the existence, size and last modified time of an entry are map lookups.
+ * The content of a STORED (uncompressed) entry is available as a read only memory
+ * mapped buffer by {@link #getMappedBuffer(String)}, without any copy.</p>
+ * <p>The index holds neither an open file nor a mapping of the jar file: each mapped
+ * buffer is owned by its caller and is unmapped once it is garbage collected.</p>
+ * <p>Indexes are shared by {@link #getIndex(File)} and are rebuilt if the jar file is modified.
+ * At most {@link #getMaxIndexes()} indexes are kept, the least recently used being evicted,
+ * and the index of a jar file can be released with {@link #release(File)}.
+ * Zip64 archives, archives larger than 2GiB and encrypted entries are not indexed.</p>
+ */
+public class JarFileIndex
+{
+    private static final Logger LOG = Log.getLogger(JarFileIndex.class);
+    private static final int EOCD_SIG = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int CEN_SIZE = 46;
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int LOC_SIZE = 30;
+    private static final int STORED = 0;
+    private static final Map<File, JarFileIndex> __indexes = new LinkedHashMap<File, JarFileIndex>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, JarFileIndex> eldest)
+        {
+            return size() > __maxIndexes;
+        }
+    };
+    private static int __maxIndexes = 128;
+
+    /**
+     * @return the maximum number of shared indexes kept
+     */
+    public static int getMaxIndexes()
+    {
+        synchronized (__indexes)
+        {
+            return __maxIndexes;
+        }
+    }
+
+    /**
+     * @param maxIndexes the maximum number of shared indexes kept, the least recently used being evicted
+     */
+    public static void setMaxIndexes(int maxIndexes)
+    {
+        synchronized (__indexes)
+        {
+            __maxIndexes = maxIndexes;
+            while (__indexes.size() > maxIndexes)
+            {
+                File eldest = __indexes.keySet().iterator().next();
+                __indexes.remove(eldest);
+            }
+        }
+    }
+
+    /**
+     * Get the shared index of a jar file.
+     *
+     * @param jarFile the jar file
+     * @return the index of the jar file, or null if the file cannot be indexed
+     */
+    public static JarFileIndex getIndex(File jarFile)
+    {
+        long lastModified = jarFile.lastModified();
+        JarFileIndex index;
+        synchronized (__indexes)
+        {
+            index = __indexes.get(jarFile);
+        }
+        if (index != null && index._lastModified == lastModified)
+            return index;
+
+        index = newIndex(jarFile, lastModified);
+        synchronized (__indexes)
+        {
+            if (index == null)
+                __indexes.remove(jarFile);
+            else if (__maxIndexes > 0)
+                __indexes.put(jarFile, index);
+        }
+        return index;
+    }
+
+    /**
+     * Release the shared index of a jar file, for example when the jar file
+     * is undeployed.
+     *
+     * @param jarFile the jar file
+     * @return whether an index of the jar file was released
+     */
+    public static boolean release(File jarFile)
+    {
+        synchronized (__indexes)
+        {
+            return __indexes.remove(jarFile) != null;
+        }
+    }
+
+    /**
+     * @return the number of shared indexes
+     */
+    public static int getIndexes()
+    {
+        synchronized (__indexes)
+        {
+            return __indexes.size();
+        }
+    }
+
+    private static JarFileIndex newIndex(File jarFile, long lastModified)
+    {
+        if (lastModified == 0)
+            return null;
+        try (FileChannel channel = FileChannel.open(jarFile.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size < EOCD_SIZE || size > Integer.MAX_VALUE)
+                return null;
+            JarFileIndex index = new JarFileIndex(jarFile, lastModified, (int)size);
+            return index.parse(channel) ? index : null;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            LOG.ignore(e);
+            return null;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Truncated " + channel);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private final File _file;
+    private final long _lastModified;
+    private final int _size;
+    private final Map<String, Entry> _entries = new HashMap<>();
+
+    private JarFileIndex(File file, long lastModified, int size)
+    {
+        _file = file;
+        _lastModified = lastModified;
+        _size = size;
+    }
+
+    private boolean parse(FileChannel channel) throws IOException
+    {
+        // Find the end of central directory record, which may be followed by a comment
+        int tailLength = Math.min(_size, EOCD_SIZE + 0xFFFF);
+        ByteBuffer tail = read(channel, _size - tailLength, tailLength);
+        int eocd = -1;
+        for (int i = tailLength - EOCD_SIZE; i >= 0; i--)
+        {
+            if (tail.getInt(i) == EOCD_SIG)
+            {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0)
+            return false;
+
+        int count = tail.getShort(eocd + 10) & 0xFFFF;
+        long length = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long offset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || length == 0xFFFFFFFFL || offset == 0xFFFFFFFFL)
+            return false; // Zip64
+        if (offset + length > _size)
+            return false;
+
+        // Only the central directory is read, and it is discarded once parsed.
+        ByteBuffer directory = read(channel, offset, (int)length);
+        int cen = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (cen + CEN_SIZE > directory.limit() || directory.getInt(cen) != CEN_SIG)
+                return false;
+            int flags = directory.getShort(cen + 8) & 0xFFFF;
+            int method = directory.getShort(cen + 10) & 0xFFFF;
+            int dosTime = directory.getInt(cen + 12);
+            long compressedSize = directory.getInt(cen + 20) & 0xFFFFFFFFL;
+            long size = directory.getInt(cen + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(cen + 28) & 0xFFFF;
+            int extraLength = directory.getShort(cen + 30) & 0xFFFF;
+            int commentLength = directory.getShort(cen + 32) & 0xFFFF;
+            long local = directory.getInt(cen + 42) & 0xFFFFFFFFL;
+            if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || local == 0xFFFFFFFFL)
+                return false; // Zip64
+            if (cen + CEN_SIZE + nameLength + extraLength > directory.limit())
+                return false;
+
+            byte[] name = new byte[nameLength];
+            ByteBuffer slice = directory.duplicate();
+            slice.position(cen + CEN_SIZE);
+            slice.get(name);
+            long time = extraTime(directory, cen + CEN_SIZE + nameLength, extraLength);
+            if (time == -1)
+                time = dosToJavaTime(dosTime);
+
+            Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), flags, method, compressedSize, size, time, (int)local);
+            _entries.putIfAbsent(entry._name, entry);
+            cen += CEN_SIZE + nameLength + extraLength + commentLength;
+        }
+        return true;
+    }
+
+    /**
+     * Get the modification time from an extended timestamp or NTFS extra field,
+     * as is done by {@link java.util.zip.ZipEntry#getTime()}.
+     */
+    private static long extraTime(ByteBuffer directory, int offset, int length)
+    {
+        long time = -1;
+        int end = offset + length;
+        while (offset + 4 <= end)
+        {
+            int tag = directory.getShort(offset) & 0xFFFF;
+            int size = directory.getShort(offset + 2) & 0xFFFF;
+            offset += 4;
+            if (offset + size > end)
+                break;
+            if (tag == 0x5455 && size >= 5 && (directory.get(offset) & 0x1) != 0)
+                time = (directory.getInt(offset + 1) & 0xFFFFFFFFL) * 1000;
+            else if (tag == 0x000A && size >= 32 && directory.getShort(offset + 4) == 0x0001 && directory.getShort(offset + 6) == 24)
+                time = (directory.getLong(offset + 8) / 10 - 11644473600000000L) / 1000;
+            offset += size;
+        }
+        return time;
+    }
+
+    private static long dosToJavaTime(int dosTime)
+    {
+        return new GregorianCalendar(
+            ((dosTime >> 25) & 0x7f) + 1980,
+            ((dosTime >> 21) & 0x0f) - 1,
+            (dosTime >> 16) & 0x1f,
+            (dosTime >> 11) & 0x1f,
+            (dosTime >> 5) & 0x3f,
+            (dosTime << 1) & 0x3e).getTimeInMillis();
+    }
+
+    /**
+     * @return the indexed jar file
+     */
+    public File getFile()
+    {
+        return _file;
+    }
+
+    /**
+     * @param name the name of an entry
+     * @return the entry, or null if there is no such entry
+     */
+    public Entry getEntry(String name)
+    {
+        return _entries.get(name);
+    }
+
+    /**
+     * @param name the name of an entry, with or without a trailing '/'
+     * @return the directory entry, or null if there is no such directory
+     */
+    public Entry getDirectory(String name)
+    {
+        return _entries.get(name.endsWith("/") ? name : name + "/");
+    }
+
+    /**
+     * Get the content of a STORED entry as a memory mapped region of the jar file.
+     * <p>The mapping is owned by the caller and is unmapped once the returned buffer
+     * is garbage collected.</p>
+     *
+     * @param name the name of an entry
+     * @return a read only buffer with the content of the entry, or null if the entry
+     * does not exist, is a directory, is compressed or the jar file has been modified
+     */
+    public ByteBuffer getMappedBuffer(String name)
+    {
+        Entry entry = getEntry(name);
+        if (entry == null || !entry.isMappable() || _file.lastModified() != _lastModified)
+            return null;
+
+        try (FileChannel channel = FileChannel.open(_file.toPath(), StandardOpenOption.READ))
+        {
+            int data = entry._data;
+            if (data < 0)
+            {
+                int local = entry._local;
+                if (local + LOC_SIZE > _size)
+                    return null;
+                ByteBuffer header = read(channel, local, LOC_SIZE);
+                if (header.getInt(0) != LOC_SIG)
+                    return null;
+                data = local + LOC_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+                if (data + entry._size > _size)
+                    return null;
+                entry._data = data;
+            }
+            return channel.map(MapMode.READ_ONLY, data, entry._size);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            LOG.ignore(e);
+            return null;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,entries=%d}", getClass().getSimpleName(), hashCode(), _file, _entries.size());
+    }
+
+    public static class Entry
+    {
+        private final String _name;
+        private final int _flags;
+        private final int _method;
+        private final long _compressedSize;
+        private final long _size;
+        private final long _time;
+        private final int _local;
+        private volatile int _data = -1;
+
+        private Entry(String name, int flags, int method, long compressedSize, long size, long time, int local)
+        {
+            _name = name;
+            _flags = flags;
+            _method = method;
+            _compressedSize = compressedSize;
+            _size = size;
+            _time = time;
+            _local = local;
+        }
+
+        public String getName()
+        {
+            return _name;
+        }
+
+        public boolean isDirectory()
+        {
+            return _name.endsWith("/");
+        }
+
+        public long getSize()
+        {
+            return _size;
+        }
+
+        public long getTime()
+        {
+            return _time;
+        }
+
+        /**
+         * @return true if the entry is a STORED, unencrypted file whose content can be mapped
+         */
+        public boolean isMappable()
+        {
+            return !isDirectory() && _method == STORED && (_flags & 0x1) == 0 && _compressedSize == _size;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s{%s,size=%d,stored=%b}", getClass().getSimpleName(), _name, _size, _method == STORED);
+        }
+    }
+}
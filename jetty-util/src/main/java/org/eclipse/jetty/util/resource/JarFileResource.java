@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.net.JarURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
@@ -45,6 +46,9 @@ public class JarFileResource extends JarResource
     private String _jarUrl;
     private String _path;
     private boolean _exists;
+    private File _indexFile;
+    private String _indexPath;
+    private JarFileIndex.Entry _indexEntry;
     
     /* -------------------------------------------------------- */
     protected JarFileResource(URL url)
@@ -65,6 +69,7 @@ public class JarFileResource extends JarResource
         _exists=false;
         _list=null;
         _entry=null;
+        _indexEntry=null;
         _file=null;
         //if the jvm is not doing url caching, then the JarFiles will not be cached either,
         //and so they are safe to close
@@ -149,6 +154,17 @@ public class JarFileResource extends JarResource
             try{return newResource(file_url).exists();}
             catch(Exception e) {LOG.ignore(e); return false;}
         }
+
+        // Can we look up the entry in the index of the jar file?
+        JarFileIndex index=getIndex();
+        if (index!=null)
+        {
+            JarFileIndex.Entry directory=index.getDirectory(_indexPath);
+            _directory=directory!=null;
+            _indexEntry=_directory?directory:index.getEntry(_indexPath);
+            _exists=_indexEntry!=null;
+            return _exists;
+        }
         
         boolean check=checkConnection();
         
@@ -253,6 +269,14 @@ public class JarFileResource extends JarResource
     @Override
     public long lastModified()
     {
+        JarFileIndex index=getIndex();
+        if (index!=null)
+        {
+            if (exists() && _indexEntry!=null)
+                return _indexEntry.getTime();
+            return index.getFile().lastModified();
+        }
+
         if (checkConnection() && _file!=null)
         {
             if (exists() && _entry!=null)
@@ -373,10 +397,57 @@ public class JarFileResource extends JarResource
 
         if (_entry!=null)
             return _entry.getSize();
+
+        if (_indexEntry!=null)
+            return _indexEntry.getSize();
         
         return -1;
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * Get the content of a STORED (uncompressed) jar entry as a memory mapped region of
+     * the jar file, located with the shared index of the jar.
+     * @return a read only buffer with the content, or null if the entry is compressed, is a
+     * directory or its jar file cannot be indexed.
+     */
+    public ByteBuffer getMappedBuffer()
+    {
+        JarFileIndex index=getIndex();
+        if (index==null || !exists() || _directory)
+            return null;
+        return index.getMappedBuffer(_indexPath);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the shared index of the jar file of a jar:file: entry, or null if the
+     * resource is not a caching resource for an entry of a local jar file.
+     */
+    private JarFileIndex getIndex()
+    {
+        if (!getUseCaches())
+            return null;
+
+        if (_indexFile==null)
+        {
+            int sep=_urlString.indexOf("!/");
+            if (!_urlString.startsWith("jar:file:") || sep<0 || sep!=_urlString.lastIndexOf("!/") || _urlString.endsWith("!/"))
+                return null;
+            try
+            {
+                _indexPath=URIUtil.decodePath(_urlString.substring(sep+2));
+                _indexFile=new File(new URL(_urlString.substring(4,sep)).toURI());
+            }
+            catch(Exception e)
+            {
+                LOG.ignore(e);
+                return null;
+            }
+        }
+        return JarFileIndex.getIndex(_indexFile);
+    }
+
     
     /**
      * Take a Resource that possibly might use URLConnection caching
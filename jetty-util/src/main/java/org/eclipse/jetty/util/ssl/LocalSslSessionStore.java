@@ -0,0 +1,125 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.ssl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+/**
+ * <p>A {@link SslSessionStore} that keeps the SSLContexts, and so their TLS
+ * session caches, in memory.</p>
+ * <p>At most {@link #getMaxContexts()} SSLContexts are kept; when exceeded, for example
+ * after the certificates have been reloaded several times, the least recently
+ * used SSLContext is discarded.</p>
+ */
+@ManagedObject("In memory TLS session store")
+public class LocalSslSessionStore implements SslSessionStore
+{
+    private final Map<String, SSLContext> _contexts = new LinkedHashMap<String, SSLContext>(16, 0.75F, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SSLContext> eldest)
+        {
+            return size() > _maxContexts;
+        }
+    };
+    private int _maxContexts = 16;
+
+    @Override
+    public SSLContext getSSLContext(String key, Callable<SSLContext> factory) throws Exception
+    {
+        synchronized (_contexts)
+        {
+            SSLContext context = _contexts.get(key);
+            if (context == null)
+            {
+                context = factory.call();
+                _contexts.put(key, context);
+            }
+            return context;
+        }
+    }
+
+    @ManagedAttribute("The max number of SSLContexts kept")
+    public int getMaxContexts()
+    {
+        return _maxContexts;
+    }
+
+    /**
+     * @param maxContexts the max number of SSLContexts kept
+     */
+    public void setMaxContexts(int maxContexts)
+    {
+        _maxContexts = maxContexts;
+    }
+
+    @ManagedAttribute("The number of SSLContexts kept")
+    public int getContexts()
+    {
+        synchronized (_contexts)
+        {
+            return _contexts.size();
+        }
+    }
+
+    @ManagedAttribute("The number of TLS sessions held by the server session caches")
+    public int getSessions()
+    {
+        List<SSLContext> contexts;
+        synchronized (_contexts)
+        {
+            contexts = new ArrayList<>(_contexts.values());
+        }
+        int sessions = 0;
+        for (SSLContext context : contexts)
+        {
+            SSLSessionContext sessionContext = context.getServerSessionContext();
+            if (sessionContext != null)
+                sessions += Collections.list(sessionContext.getIds()).size();
+        }
+        return sessions;
+    }
+
+    @ManagedOperation(value = "Discards the SSLContexts and their TLS sessions", impact = "ACTION")
+    public void clear()
+    {
+        synchronized (_contexts)
+        {
+            _contexts.clear();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{contexts=%d,max=%d}", getClass().getSimpleName(), hashCode(), getContexts(), getMaxContexts());
+    }
+}
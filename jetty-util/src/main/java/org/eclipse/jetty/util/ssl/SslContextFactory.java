@@ -22,8 +22,10 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyStore;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.Security;
@@ -78,6 +80,7 @@ import javax.net.ssl.X509ExtendedKeyManager;
 import javax.net.ssl.X509TrustManager;
 
 import org.eclipse.jetty.util.StringUtil;
+import org.eclipse.jetty.util.TypeUtil;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
@@ -189,6 +192,7 @@ public class SslContextFactory extends AbstractLifeCycle implements Dumpable
     private int _sslSessionCacheSize = -1;
     private int _sslSessionTimeout = -1;
     private SSLContext _setContext;
+    private SslSessionStore _sslSessionStore;
     private String _endpointIdentificationAlgorithm = "HTTPS";
     private boolean _trustAll;
     private boolean _renegotiationAllowed = true;
@@ -325,8 +329,7 @@ public class SslContextFactory extends AbstractLifeCycle implements Dumpable
                     trust_managers = TRUST_ALL_CERTS;
                 }
 
-                context = getSSLContextInstance();
-                context.init(null, trust_managers, getSecureRandomInstance());
+                context = newSSLContext(null, trust_managers, null, null);
             }
             else
             {
@@ -382,8 +385,7 @@ public class SslContextFactory extends AbstractLifeCycle implements Dumpable
                 TrustManager[] trustManagers = getTrustManagers(trustStore, crls);
 
                 // Initialize context
-                context = getSSLContextInstance();
-                context.init(keyManagers, trustManagers, getSecureRandomInstance());
+                context = newSSLContext(keyManagers, trustManagers, keyStore, trustStore);
             }
         }
 
@@ -411,6 +413,83 @@ public class SslContextFactory extends AbstractLifeCycle implements Dumpable
         }
     }
     
+    private SSLContext newSSLContext(KeyManager[] keyManagers, TrustManager[] trustManagers, KeyStore keyStore, KeyStore trustStore) throws Exception
+    {
+        SslSessionStore store = getSslSessionStore();
+        if (store == null)
+        {
+            SSLContext context = getSSLContextInstance();
+            context.init(keyManagers, trustManagers, getSecureRandomInstance());
+            return context;
+        }
+
+        String key = getSslSessionStoreKey(keyStore, trustStore);
+        if (LOG.isDebugEnabled())
+            LOG.debug("SSLContext key {} in {} for {}", key, store, this);
+        return store.getSSLContext(key, () ->
+        {
+            SSLContext context = getSSLContextInstance();
+            context.init(keyManagers, trustManagers, getSecureRandomInstance());
+            return context;
+        });
+    }
+
+    /**
+     * <p>Returns the fingerprint of the TLS configuration of this factory, used as key
+     * in the {@link SslSessionStore}: factories with the same key share an SSLContext.</p>
+     * <p>The fingerprint covers the configuration used to create the key and trust managers,
+     * and the certificates in the key and trust stores, so that an SSLContext is not
+     * shared after the certificates change.</p>
+     *
+     * @param keyStore the key store, or null
+     * @param trustStore the trust store, or null
+     * @return the fingerprint of the TLS configuration
+     * @throws Exception if the fingerprint cannot be computed
+     */
+    protected String getSslSessionStoreKey(KeyStore keyStore, KeyStore trustStore) throws Exception
+    {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        Object[] configuration = {
+            getClass().getName(), getProvider(), getProtocol(), getSecureRandomAlgorithm(),
+            getKeyManagerFactoryAlgorithm(), getCertAlias(), getTrustManagerFactoryAlgorithm(),
+            isTrustAll(), isValidatePeerCerts(), getCrlPath(), isEnableCRLDP(), isEnableOCSP(),
+            getOcspResponderURL(), getMaxCertPathLength(),
+            _pkixCertPathChecker == null ? null : System.identityHashCode(_pkixCertPathChecker)
+        };
+        for (Object value : configuration)
+        {
+            digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte)0);
+        }
+        updateDigest(digest, keyStore);
+        updateDigest(digest, trustStore);
+        return TypeUtil.toHexString(digest.digest());
+    }
+
+    private void updateDigest(MessageDigest digest, KeyStore store) throws Exception
+    {
+        if (store == null)
+        {
+            digest.update((byte)0);
+            return;
+        }
+        List<String> aliases = Collections.list(store.aliases());
+        Collections.sort(aliases);
+        for (String alias : aliases)
+        {
+            digest.update(alias.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte)(store.isKeyEntry(alias) ? 1 : 2));
+            Certificate[] chain = store.getCertificateChain(alias);
+            if (chain == null)
+            {
+                Certificate certificate = store.getCertificate(alias);
+                chain = certificate == null ? new Certificate[0] : new Certificate[]{certificate};
+            }
+            for (Certificate certificate : chain)
+                digest.update(certificate.getEncoded());
+        }
+    }
+
     @Override
     public String dump()
     {
@@ -1653,6 +1732,35 @@ public class SslContextFactory extends AbstractLifeCycle implements Dumpable
         _sslSessionTimeout = sslSessionTimeout;
     }
 
+    /**
+     * @return the store of TLS sessions, or null if TLS sessions are only cached by this factory's SSLContext
+     */
+    @ManagedAttribute("The TLS session store")
+    public SslSessionStore getSslSessionStore()
+    {
+        return _sslSessionStore;
+    }
+
+    /**
+     * <p>Sets the store of TLS sessions.</p>
+     * <p>By default each start or reload of this factory creates a new SSLContext,
+     * and so a new empty TLS session cache, so clients must do full handshakes.
+     * With a store, the SSLContext is obtained from the store, so TLS sessions can be
+     * resumed across restarts and reloads of this factory, as long as the TLS configuration
+     * and the certificates do not change, and across factories with the same TLS
+     * configuration that use the same store.</p>
+     * <p>The {@link #setSslSessionCacheSize(int) cache size} and the
+     * {@link #setSslSessionTimeout(int) timeout} of the TLS sessions are applied
+     * to the shared SSLContext when this factory is started.</p>
+     * <p>The store is not used when an SSLContext is {@link #setSslContext(SSLContext) set}.</p>
+     *
+     * @param sslSessionStore the store of TLS sessions, or null
+     */
+    public void setSslSessionStore(SslSessionStore sslSessionStore)
+    {
+        _sslSessionStore = sslSessionStore;
+    }
+
     /**
      * @return the HostnameVerifier used by a client to verify host names in the server certificate
      */
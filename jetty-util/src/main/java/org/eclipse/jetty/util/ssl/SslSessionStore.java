@@ -0,0 +1,45 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.ssl;
+
+import java.util.concurrent.Callable;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * <p>A store of the TLS sessions that clients may resume with abbreviated handshakes.</p>
+ * <p>JSSE only resumes a TLS session from the {@link SSLSessionContext} of the
+ * {@link SSLContext} that created it, so a store keeps the SSLContexts it is asked for:
+ * {@link SslContextFactory} instances that use the same store and that have the same
+ * TLS configuration share an SSLContext and therefore a TLS session cache, also
+ * across their restarts and reloads.</p>
+ *
+ * @see SslContextFactory#setSslSessionStore(SslSessionStore)
+ */
+public interface SslSessionStore
+{
+    /**
+     * @param key the fingerprint of the TLS configuration, see {@link SslContextFactory#getSslSessionStoreKey(java.security.KeyStore, java.security.KeyStore)}
+     * @param factory creates and initializes the SSLContext when the store has none for the key
+     * @return the SSLContext for the key
+     * @throws Exception if the SSLContext cannot be created
+     */
+    SSLContext getSSLContext(String key, Callable<SSLContext> factory) throws Exception;
+}
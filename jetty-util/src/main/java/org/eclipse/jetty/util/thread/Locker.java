@@ -65,6 +65,14 @@ public class Locker
         return _lock.isLocked();
     }
 
+    /**
+     * @return whether this lock is held by the current thread
+     */
+    public boolean isHeldByCurrentThread()
+    {
+        return _lock.isHeldByCurrentThread();
+    }
+
     /**
      * @return a {@link Condition} associated with this lock
      */
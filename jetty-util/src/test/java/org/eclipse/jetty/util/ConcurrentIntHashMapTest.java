@@ -0,0 +1,143 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrentIntHashMapTest
+{
+    @Test
+    public void testPutGetRemove()
+    {
+        ConcurrentIntHashMap<String> map = new ConcurrentIntHashMap<>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(1, "one"));
+        assertNull(map.putIfAbsent(3, "three"));
+        assertThat(map.putIfAbsent(3, "tres"), is("three"));
+        assertThat(map.get(3), is("three"));
+        assertThat(map.put(3, "tres"), is("three"));
+        assertThat(map.get(3), is("tres"));
+        assertThat(map.size(), is(2));
+        assertTrue(map.containsKey(1));
+        assertFalse(map.containsKey(2));
+
+        assertThat(map.remove(1), is("one"));
+        assertThat(map.remove(1), nullValue());
+        assertThat(map.get(1), nullValue());
+        assertThat(map.size(), is(1));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertThat(map.get(3), nullValue());
+    }
+
+    @Test
+    public void testResizeAndCollisions()
+    {
+        ConcurrentIntHashMap<Integer> map = new ConcurrentIntHashMap<>(2);
+        int count = 10_000;
+        for (int i = 1; i < 2 * count; i += 2)
+            assertNull(map.putIfAbsent(i, i));
+        assertThat(map.size(), is(count));
+        for (int i = 1; i < 2 * count; i += 2)
+        {
+            assertThat(map.get(i), is(i));
+            assertThat(map.get(i + 1), nullValue());
+        }
+
+        // Remove every other entry, which exercises removal from the middle of chains.
+        for (int i = 1; i < 2 * count; i += 4)
+            assertThat(map.remove(i), is(i));
+        assertThat(map.size(), is(count / 2));
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 3; i < 2 * count; i += 4)
+        {
+            assertThat(map.get(i), is(i));
+            expected.add(i);
+        }
+        assertThat(map.values(), containsInAnyOrder(expected.toArray()));
+    }
+
+    @Test
+    public void testConcurrentReadsDuringWrites() throws Exception
+    {
+        ConcurrentIntHashMap<Integer> map = new ConcurrentIntHashMap<>();
+        // Keys that are always present must always be found by readers.
+        for (int i = 0; i < 64; ++i)
+            map.put(-i - 1, i);
+
+        int readers = 4;
+        CountDownLatch latch = new CountDownLatch(readers);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; ++r)
+        {
+            Thread thread = new Thread(() ->
+            {
+                try
+                {
+                    for (int n = 0; n < 200; ++n)
+                    {
+                        for (int i = 0; i < 64; ++i)
+                        {
+                            Integer value = map.get(-i - 1);
+                            if (value == null || value != i)
+                                throw new AssertionError("Missing key " + (-i - 1));
+                        }
+                    }
+                }
+                catch (Throwable x)
+                {
+                    failure.compareAndSet(null, x);
+                }
+                finally
+                {
+                    latch.countDown();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        // Churn the map, causing resizes and chain rewrites.
+        for (int i = 1; i < 100_000 && latch.getCount() > 0; ++i)
+        {
+            map.put(i, i);
+            if (i > 32)
+                map.remove(i - 32);
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertNull(failure.get());
+    }
+}
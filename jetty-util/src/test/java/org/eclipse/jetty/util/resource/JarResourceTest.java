@@ -22,17 +22,26 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.IO;
 import org.junit.jupiter.api.Test;
 
@@ -193,6 +202,80 @@ public class JarResourceTest
         assertFalse(dest.exists());
     }
 
+    @Test
+    public void testJarFileMappedBuffer() throws Exception
+    {
+        byte[] stored = "Stored content".getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = "Deflated content".getBytes(StandardCharsets.UTF_8);
+
+        File jar = File.createTempFile("mapped", ".jar");
+        jar.deleteOnExit();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar)))
+        {
+            ZipEntry entry = new ZipEntry("static/");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(0);
+            entry.setCrc(0);
+            out.putNextEntry(entry);
+            out.closeEntry();
+
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            entry = new ZipEntry("static/stored.txt");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(stored.length);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(stored);
+            out.closeEntry();
+
+            out.putNextEntry(new ZipEntry("static/deflated.txt"));
+            out.write(deflated);
+            out.closeEntry();
+        }
+
+        String base = "jar:" + jar.toURI().toASCIIString() + "!/static/";
+        JarFileResource storedResource = (JarFileResource)Resource.newResource(base + "stored.txt");
+        JarFileResource deflatedResource = (JarFileResource)Resource.newResource(base + "deflated.txt");
+
+        try (ZipFile zf = new ZipFile(jar))
+        {
+            assertTrue(storedResource.exists());
+            assertFalse(storedResource.isDirectory());
+            assertEquals(stored.length, storedResource.length());
+            assertEquals(zf.getEntry("static/stored.txt").getTime(), storedResource.lastModified());
+            ByteBuffer buffer = storedResource.getMappedBuffer();
+            assertNotNull(buffer);
+            assertEquals("Stored content", BufferUtil.toString(buffer));
+
+            assertTrue(deflatedResource.exists());
+            assertEquals(deflated.length, deflatedResource.length());
+            assertNull(deflatedResource.getMappedBuffer());
+            assertEquals("Deflated content", IO.toString(deflatedResource.getInputStream()));
+        }
+
+        assertTrue(Resource.newResource(base).isDirectory());
+        assertTrue(Resource.newResource(base.substring(0, base.length() - 1)).isDirectory());
+        assertFalse(Resource.newResource(base + "missing.txt").exists());
+
+        // The index is released explicitly or when evicted, and rebuilt on demand.
+        assertTrue(JarFileIndex.release(jar));
+        assertFalse(JarFileIndex.release(jar));
+        assertNotNull(JarFileIndex.getIndex(jar));
+        int maxIndexes = JarFileIndex.getMaxIndexes();
+        try
+        {
+            JarFileIndex.setMaxIndexes(0);
+            assertEquals(0, JarFileIndex.getIndexes());
+            assertEquals("Stored content", BufferUtil.toString(storedResource.getMappedBuffer()));
+            assertEquals(0, JarFileIndex.getIndexes());
+        }
+        finally
+        {
+            JarFileIndex.setMaxIndexes(maxIndexes);
+        }
+    }
+
     @Test
     public void testEncodedFileName()
     throws Exception
@@ -47,7 +47,9 @@ import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -358,4 +360,62 @@ public class SslContextFactoryTest
 
         assertNull(cf.getEndpointIdentificationAlgorithm());
     }
+
+    private SslContextFactory newSslContextFactory(String keyStore, SslSessionStore store) throws Exception
+    {
+        SslContextFactory factory = new SslContextFactory.Server();
+        factory.setKeyStoreResource(Resource.newSystemResource(keyStore));
+        factory.setKeyStorePassword("storepwd");
+        factory.setKeyManagerPassword("keypwd");
+        factory.setSslSessionStore(store);
+        return factory;
+    }
+
+    @Test
+    public void testSslSessionStore() throws Exception
+    {
+        LocalSslSessionStore store = new LocalSslSessionStore();
+
+        SslContextFactory factory1 = newSslContextFactory("keystore", store);
+        factory1.setSslSessionTimeout(120);
+        factory1.start();
+        SSLContext context = factory1.getSslContext();
+        assertEquals(120, context.getServerSessionContext().getSessionTimeout());
+
+        // The SSLContext, and so its TLS sessions, survives a restart.
+        factory1.stop();
+        factory1.start();
+        assertSame(context, factory1.getSslContext());
+
+        // and a reload that does not change the certificates.
+        factory1.reload(f -> {});
+        assertSame(context, factory1.getSslContext());
+
+        // Factories with the same TLS configuration share the SSLContext.
+        SslContextFactory factory2 = newSslContextFactory("keystore", store);
+        factory2.start();
+        assertSame(context, factory2.getSslContext());
+
+        // Factories with other certificates don't.
+        SslContextFactory factory3 = newSslContextFactory("snikeystore", store);
+        factory3.start();
+        assertNotSame(context, factory3.getSslContext());
+        assertEquals(2, store.getContexts());
+
+        factory1.stop();
+        factory2.stop();
+        factory3.stop();
+    }
+
+    @Test
+    public void testNoSslSessionStore() throws Exception
+    {
+        SslContextFactory factory = newSslContextFactory("keystore", null);
+        factory.start();
+        SSLContext context = factory.getSslContext();
+        factory.stop();
+        factory.start();
+        assertNotSame(context, factory.getSslContext());
+        factory.stop();
+    }
 }
@@ -0,0 +1,318 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * MappedFileSessionDataStoreTest
+ *
+ *
+ */
+public class MappedFileSessionDataStoreTest extends AbstractSessionDataStoreTest
+{
+    @BeforeEach
+    public void before() throws Exception
+    {
+       FileTestHelper.setup();
+    }
+    
+    @AfterEach
+    public void after()
+    {
+       FileTestHelper.teardown();
+    }
+ 
+
+    @Override
+    public SessionDataStoreFactory createSessionDataStoreFactory()
+    {
+        MappedFileSessionDataStoreFactory factory = new MappedFileSessionDataStoreFactory();
+        factory.setStoreDir(FileTestHelper._tmpDir);
+        return factory;
+    }
+
+    
+    @Override
+    public void persistSession(SessionData data) throws Exception
+    {
+        MappedFileSessionDataStore store = newStore(data.getContextPath(), null);
+        try
+        {
+            store.doStore(data.getId(), data, 0);
+        }
+        finally
+        {
+            store.stop();
+        }
+    }
+
+   
+    @Override
+    public void persistUnreadableSession(SessionData data) throws Exception
+    {
+        //write attributes that cannot be deserialized
+        SessionDataSerializer serializer = new JavaSessionDataSerializer()
+        {
+            @Override
+            public void serializeAttributes(SessionData data, OutputStream out) throws IOException
+            {
+                out.write(new byte[] {1, 2, 3, 4});
+            }
+        };
+        MappedFileSessionDataStore store = newStore(data.getContextPath(), null, 1024 * 1024, serializer);
+        try
+        {
+            store.doStore(data.getId(), data, 0);
+        }
+        finally
+        {
+            store.stop();
+        }
+    }
+
+   
+    @Override
+    public boolean checkSessionExists(SessionData data) throws Exception
+    {
+        MappedFileSessionDataStore store = newStore(data.getContextPath(), _contextClassLoader);
+        try
+        {
+            return store.exists(data.getId());
+        }
+        finally
+        {
+            store.stop();
+        }
+    }
+
+
+    @Override
+    public boolean checkSessionPersisted(SessionData data) throws Exception
+    {
+        ClassLoader old = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(_contextClassLoader);
+        MappedFileSessionDataStore store = newStore(data.getContextPath(), _contextClassLoader);
+        try
+        {
+            SessionData saved = store.doLoad(data.getId());
+            assertNotNull(saved);
+            assertEquals(data.getId(), saved.getId());
+            assertEquals(data.getContextPath(), saved.getContextPath());
+            assertEquals(data.getVhost(), saved.getVhost());
+            assertEquals(data.getLastNode(), saved.getLastNode());
+            assertEquals(data.getCreated(), saved.getCreated());
+            assertEquals(data.getAccessed(), saved.getAccessed());
+            assertEquals(data.getLastAccessed(), saved.getLastAccessed());
+            assertEquals(data.getCookieSet(), saved.getCookieSet());
+            assertEquals(data.getExpiry(), saved.getExpiry());
+            assertEquals(data.getMaxInactiveMs(), saved.getMaxInactiveMs());
+            
+            //same attributes
+            assertEquals(data.getAllAttributes().size(), saved.getAllAttributes().size());
+            assertEquals(data.getKeys(), saved.getKeys());
+            for (String name:data.getKeys())
+                assertEquals(data.getAttribute(name), saved.getAttribute(name));
+            return true;
+        }
+        finally
+        {
+            store.stop();
+            Thread.currentThread().setContextClassLoader(old);
+        }
+    }
+
+
+    /**
+     * Test that superseded segments are compacted, and that the sessions
+     * are recovered from the remaining segments by a new store.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCompaction() throws Exception
+    {
+        MappedFileSessionDataStore store = newStore("_test", null, 1024, null);
+        long now = System.currentTimeMillis();
+        try
+        {
+            //update the same few sessions until many segments have been filled
+            for (int i = 0; i < 500; i++)
+            {
+                SessionData data = store.newSessionData("s"+(i%5), 100, now, now-1, TimeUnit.MINUTES.toMillis(60));
+                data.setLastNode("node0");
+                data.setExpiry(now + TimeUnit.MINUTES.toMillis(60));
+                data.setAttribute("count", i);
+                store.doStore(data.getId(), data, 0);
+            }
+            SessionData gone = store.newSessionData("gone", 100, now, now-1, -1);
+            gone.setLastNode("node0");
+            store.doStore("gone", gone, 0);
+            assertTrue(store.delete("gone"));
+
+            store.compact();
+            assertTrue(store.getCompactions() > 0);
+            assertTrue(store.getSegmentCount() < 10);
+        }
+        finally
+        {
+            store.stop();
+        }
+
+        store = newStore("_test", null, 1024, null);
+        try
+        {
+            assertEquals(5, store.getSessionCount());
+            for (int i = 0; i < 5; i++)
+            {
+                SessionData data = store.doLoad("s"+i);
+                assertNotNull(data);
+                assertEquals(495+i, data.getAttribute("count"));
+            }
+            assertFalse(store.exists("gone"));
+            assertNull(store.doLoad("gone"));
+        }
+        finally
+        {
+            store.stop();
+        }
+    }
+
+
+    /**
+     * Test that a damaged record at the end of a segment is ignored,
+     * and that the records before it are recovered.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testDamagedRecord() throws Exception
+    {
+        MappedFileSessionDataStore store = newStore("_test", null);
+        long now = System.currentTimeMillis();
+        try
+        {
+            SessionData data = store.newSessionData("good", 100, now, now-1, -1);
+            data.setLastNode("node0");
+            store.doStore("good", data, 0);
+            data = store.newSessionData("bad", 100, now, now-1, -1);
+            data.setLastNode("node0");
+            data.setAttribute("a", "value");
+            store.doStore("bad", data, 0);
+        }
+        finally
+        {
+            store.stop();
+        }
+        
+        //corrupt the last byte of the last record
+        File[] segments = new File(FileTestHelper._tmpDir, "_test_0.0.0.0").listFiles();
+        assertNotNull(segments);
+        assertEquals(1, segments.length);
+        try (RandomAccessFile file = new RandomAccessFile(segments[0], "rw"))
+        {
+            long end = 0;
+            while (true)
+            {
+                file.seek(end);
+                int length = file.readInt();
+                if (length == 0)
+                    break;
+                end += 4 + length;
+            }
+            file.seek(end - 1);
+            int b = file.read();
+            file.seek(end - 1);
+            file.write(b ^ 0xFF);
+        }
+        
+        store = newStore("_test", null);
+        try
+        {
+            assertTrue(store.exists("good"));
+            assertFalse(store.exists("bad"));
+            
+            //new records are written over the damaged one
+            SessionData data = store.newSessionData("new", 100, now, now-1, -1);
+            data.setLastNode("node0");
+            store.doStore("new", data, 0);
+        }
+        finally
+        {
+            store.stop();
+        }
+        
+        store = newStore("_test", null);
+        try
+        {
+            assertTrue(store.exists("good"));
+            assertTrue(store.exists("new"));
+        }
+        finally
+        {
+            store.stop();
+        }
+    }
+
+
+    /**
+     * Start a store for the context of some session data.
+     * 
+     * @param contextPath the canonical context path of the session data
+     * @param classLoader the classloader of the context or null
+     * @return the started store
+     * @throws Exception
+     */
+    private MappedFileSessionDataStore newStore(String contextPath, ClassLoader classLoader) throws Exception
+    {
+        return newStore(contextPath, classLoader, 1024 * 1024, null);
+    }
+
+
+    private MappedFileSessionDataStore newStore(String contextPath, ClassLoader classLoader, int segmentSize, SessionDataSerializer serializer) throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath(contextPath.replace('_', '/'));
+        if (classLoader != null)
+            context.setClassLoader(classLoader);
+        MappedFileSessionDataStore store = new MappedFileSessionDataStore();
+        store.setStoreDir(FileTestHelper._tmpDir);
+        store.setSegmentSize(segmentSize);
+        if (serializer != null)
+            store.setSerializer(serializer);
+        store.initialize(new SessionContext("foo", context.getServletContext()));
+        store.start();
+        return store;
+    }
+}
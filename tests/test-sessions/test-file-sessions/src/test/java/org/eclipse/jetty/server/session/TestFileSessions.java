@@ -21,10 +21,14 @@ package org.eclipse.jetty.server.session;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jetty.servlet.ServletContextHandler;
@@ -444,4 +448,191 @@ public class TestFileSessions extends AbstractTestBase
         FileTestHelper.assertFileExists(name3, true);        
     }
 
+    
+    
+    /**
+     * Test that session files are spread over subdirectories,
+     * and that an existing flat store is moved into them.
+     * @throws Exception
+     */
+    @Test
+    public void testShardedStore ()
+    throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");       
+        FileSessionDataStoreFactory factory = FileTestHelper.newSessionDataStoreFactory();
+        factory.setShardDepth(2);
+        FileSessionDataStore store = (FileSessionDataStore)factory.getSessionDataStore(context.getSessionHandler());
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+        store.initialize(sessionContext);
+        
+        //a file written with the flat layout
+        long now = System.currentTimeMillis();
+        long expiry = now + TimeUnit.DAYS.toMillis(1);
+        FileTestHelper.createFile("flat", "_test", "0.0.0.0", "foo", now, now, now, TimeUnit.DAYS.toMillis(1), expiry, 0, Collections.emptyMap());
+        String flatName = expiry+"__test_0.0.0.0_flat";
+        
+        store.start();
+        
+        FileTestHelper.assertFileExists(flatName, false);
+        assertTrue(new File(store.getShardDir("flat"), flatName).exists());
+        assertNotNull(store.load("flat"));
+        
+        SessionData data = store.newSessionData("sharded", now, now, now, TimeUnit.DAYS.toMillis(1));
+        data.setExpiry(expiry);
+        data.setLastNode("foo");
+        store.store("sharded", data);
+        File file = new File(store.getShardDir("sharded"), expiry+"__test_0.0.0.0_sharded");
+        assertTrue(file.exists());
+        assertEquals(2, store.getStoreDir().toPath().relativize(file.toPath()).getNameCount() - 1);
+        
+        assertTrue(store.delete("sharded"));
+        assertFalse(file.exists());
+        store.stop();
+    }
+    
+    
+    /**
+     * Test that an indexed store is initialized from its index
+     * rather than from the files in the store.
+     * @throws Exception
+     */
+    @Test
+    public void testIndexedStore ()
+    throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");       
+        FileSessionDataStoreFactory factory = FileTestHelper.newSessionDataStoreFactory();
+        factory.setShardDepth(1);
+        factory.setIndexed(true);
+        factory.setSyncIntervalMs(10);
+        FileSessionDataStore store = (FileSessionDataStore)factory.getSessionDataStore(context.getSessionHandler());
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+        store.initialize(sessionContext);
+        store.start();
+        
+        long now = System.currentTimeMillis();
+        for (String id : new String[] {"one", "two", "three"})
+        {
+            SessionData data = store.newSessionData(id, now, now, now, TimeUnit.DAYS.toMillis(1));
+            data.setExpiry(now + TimeUnit.DAYS.toMillis(1));
+            data.setLastNode("foo");
+            store.store(id, data);
+        }
+        store.delete("two");
+        store.sync();
+        store.stop();
+        
+        //a file that is not in the index is not seen
+        FileTestHelper.createFile("stray", "_test", "0.0.0.0", "foo", now, now, now, TimeUnit.DAYS.toMillis(1), now + TimeUnit.DAYS.toMillis(1), 0, Collections.emptyMap());
+        
+        store = (FileSessionDataStore)factory.getSessionDataStore(context.getSessionHandler());
+        store.initialize(sessionContext);
+        store.start();
+        assertTrue(store.exists("one"));
+        assertFalse(store.exists("two"));
+        assertTrue(store.exists("three"));
+        assertFalse(store.exists("stray"));
+        assertNotNull(store.load("three"));
+        store.stop();
+        
+        //without the index the store directories are scanned
+        factory.setIndexed(false);
+        store = (FileSessionDataStore)factory.getSessionDataStore(context.getSessionHandler());
+        store.initialize(sessionContext);
+        store.start();
+        assertTrue(store.exists("one"));
+        assertTrue(store.exists("stray"));
+        store.stop();
+    }
+    
+    
+    /**
+     * Test that an index that was not closed by a clean stop is
+     * not trusted, and the store directories are scanned instead.
+     * @throws Exception
+     */
+    @Test
+    public void testIndexNotClosed ()
+    throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");       
+        FileSessionDataStoreFactory factory = FileTestHelper.newSessionDataStoreFactory();
+        factory.setShardDepth(1);
+        factory.setIndexed(true);
+        FileSessionDataStore store = (FileSessionDataStore)factory.getSessionDataStore(context.getSessionHandler());
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+        store.initialize(sessionContext);
+        store.start();
+        
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("one", now, now, now, TimeUnit.DAYS.toMillis(1));
+        data.setExpiry(now + TimeUnit.DAYS.toMillis(1));
+        data.setLastNode("foo");
+        store.store("one", data);
+        
+        //simulate a crash, leaving the index as it was before the stop
+        byte[] index = Files.readAllBytes(store._indexFile.toPath());
+        store.stop();
+        Files.write(store._indexFile.toPath(), index);
+        
+        //a file written before the crash, without its record in the index
+        FileTestHelper.createFile("stray", "_test", "0.0.0.0", "foo", now, now, now, TimeUnit.DAYS.toMillis(1), now + TimeUnit.DAYS.toMillis(1), 0, Collections.emptyMap());
+        
+        store = (FileSessionDataStore)factory.getSessionDataStore(context.getSessionHandler());
+        store.initialize(sessionContext);
+        store.start();
+        assertTrue(store.exists("one"));
+        assertTrue(store.exists("stray"));
+        store.stop();
+    }
+    
+    
+    /**
+     * Test that an indexed store sweeps the files listed in the
+     * indexes of the other contexts, without walking the store.
+     * @throws Exception
+     */
+    @Test
+    public void testIndexedSweep ()
+    throws Exception
+    {
+        FileSessionDataStoreFactory factory = FileTestHelper.newSessionDataStoreFactory();
+        factory.setShardDepth(1);
+        factory.setIndexed(true);
+        factory.setGracePeriodSec(10);
+        
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");
+        FileSessionDataStore store = (FileSessionDataStore)factory.getSessionDataStore(context.getSessionHandler());
+        store.initialize(new SessionContext("foo", context.getServletContext()));
+        store.start();
+        
+        //another context with a session that expired long ago
+        ServletContextHandler otherContext = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        otherContext.setContextPath("/other");
+        FileSessionDataStore otherStore = (FileSessionDataStore)factory.getSessionDataStore(otherContext.getSessionHandler());
+        otherStore.initialize(new SessionContext("foo", otherContext.getServletContext()));
+        otherStore.start();
+        SessionData data = otherStore.newSessionData("ancient", 100, 100, 100, 1);
+        data.setExpiry(101);
+        data.setLastNode("foo");
+        otherStore.store("ancient", data);
+        File ancient = new File(otherStore.getShardDir("ancient"), "101__other_0.0.0.0_ancient");
+        assertTrue(ancient.exists());
+        
+        //an old file that is in no index
+        FileTestHelper.createFile("101__foobar_0.0.0.0_sessiona");
+        
+        store.sweepDisk();
+        assertFalse(ancient.exists());
+        FileTestHelper.assertSessionExists("sessiona", true);
+        
+        otherStore.stop();
+        store.stop();
+    }
 }
+
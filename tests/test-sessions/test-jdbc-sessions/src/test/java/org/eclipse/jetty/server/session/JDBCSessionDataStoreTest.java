@@ -19,8 +19,24 @@
 
 package org.eclipse.jetty.server.session;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 
 /**
  * JDBCSessionDataStoreTest
@@ -101,5 +117,248 @@ public class JDBCSessionDataStoreTest extends AbstractSessionDataStoreTest
         }
 
     }
+    
+    
+    /**
+     * Test that with delta stores only the changed attributes are written
+     * to the attribute table, and that they are applied when the session is loaded.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testStoreDeltas() throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");
+        SessionDataStoreFactory factory = createSessionDataStoreFactory();
+        ((AbstractSessionDataStoreFactory)factory).setGracePeriodSec(GRACE_PERIOD_SEC);
+        ((AbstractSessionDataStoreFactory)factory).setStoreDeltas(true);
+        SessionDataStore store = factory.getSessionDataStore(context.getSessionHandler());
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+        store.initialize(sessionContext);
+        store.start();
+
+        //the first store writes the whole session
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", 100, now, now-1, TimeUnit.MINUTES.toMillis(10));
+        data.setLastNode(sessionContext.getWorkerName());
+        data.setAttribute("a", "a1");
+        data.setAttribute("b", "b1");
+        store.store("1234", data);
+
+        //subsequent stores only write the changes
+        data.setAttribute("b", "b2");
+        data.setAttribute("c", "c1");
+        data.setAttribute("a", null);
+        data.setAccessed(now+1);
+        store.store("1234", data);
+
+        data.setAttribute("c", "c2");
+        store.store("1234", data);
+
+        //the map column still holds the attributes of the first store
+        SessionDataStore fullStore = createSessionDataStoreFactory().getSessionDataStore(context.getSessionHandler());
+        fullStore.initialize(sessionContext);
+        fullStore.start();
+        SessionData baseline = fullStore.load("1234");
+        assertThat(baseline.getKeys(), containsInAnyOrder("a", "b"));
+        assertEquals("b1", baseline.getAttribute("b"));
+
+        //the deltas are applied on load
+        SessionData loaded = store.load("1234");
+        assertThat(loaded.getKeys(), containsInAnyOrder("b", "c"));
+        assertNull(loaded.getAttribute("a"));
+        assertEquals("b2", loaded.getAttribute("b"));
+        assertEquals("c2", loaded.getAttribute("c"));
+        assertEquals(now+1, loaded.getAccessed());
+        assertFalse(loaded.isDirty());
+
+        //deleting the session removes the deltas too
+        store.delete("1234");
+        assertNull(store.load("1234"));
+    }
+
+    
+    
+    /**
+     * Test that several sessions can be inserted and updated in a batch.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testStoreAll() throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");
+        SessionDataStoreFactory factory = createSessionDataStoreFactory();
+        ((AbstractSessionDataStoreFactory)factory).setGracePeriodSec(GRACE_PERIOD_SEC);
+        JDBCSessionDataStore store = (JDBCSessionDataStore)factory.getSessionDataStore(context.getSessionHandler());
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+        store.initialize(sessionContext);
+        store.start();
+
+        long now = System.currentTimeMillis();
+        Map<String, SessionData> sessions = new HashMap<>();
+        for (int i = 0; i < 3; i++)
+        {
+            SessionData data = store.newSessionData("s"+i, now, now, now-1, TimeUnit.MINUTES.toMillis(10));
+            data.setLastNode(sessionContext.getWorkerName());
+            data.setAttribute("a", i);
+            sessions.put(data.getId(), data);
+        }
+
+        //all new, so inserted
+        assertTrue(store.storeAll(sessions).isEmpty());
+        for (SessionData data : sessions.values())
+        {
+            assertFalse(data.isDirty());
+            assertTrue(data.getLastSaved() > 0);
+            assertTrue(checkSessionPersisted(data));
+        }
+
+        //a mix of new and existing sessions
+        sessions.get("s0").setAttribute("a", "changed");
+        SessionData data = store.newSessionData("s3", now, now, now-1, TimeUnit.MINUTES.toMillis(10));
+        data.setLastNode(sessionContext.getWorkerName());
+        sessions.put(data.getId(), data);
+        assertTrue(store.storeAll(sessions).isEmpty());
+        for (SessionData d : sessions.values())
+            assertTrue(checkSessionPersisted(d));
+        assertEquals("changed", store.load("s0").getAttribute("a"));
+    }
+
+
+    /**
+     * Test that with upsert a session is written whether or not it is
+     * already in the database.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testUpsert() throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");
+        JDBCSessionDataStoreFactory factory = (JDBCSessionDataStoreFactory)createSessionDataStoreFactory();
+        factory.setGracePeriodSec(GRACE_PERIOD_SEC);
+        factory.setUpsert(true);
+        JDBCSessionDataStore store = (JDBCSessionDataStore)factory.getSessionDataStore(context.getSessionHandler());
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+        store.initialize(sessionContext);
+        store.start();
+        assertTrue(store.isUpsert());
+
+        //a new session is inserted
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", 100, now, now-1, TimeUnit.MINUTES.toMillis(10));
+        data.setLastNode(sessionContext.getWorkerName());
+        data.setAttribute("a", "a1");
+        store.store("1234", data);
+        assertTrue(checkSessionPersisted(data));
+
+        //a saved session is updated
+        data.setAttribute("a", "a2");
+        data.setAccessed(now+1);
+        store.store("1234", data);
+        assertTrue(checkSessionPersisted(data));
+
+        //a new session with the id of a stored session replaces it
+        SessionData other = store.newSessionData("1234", 200, now, now-1, TimeUnit.MINUTES.toMillis(10));
+        other.setLastNode(sessionContext.getWorkerName());
+        other.setAttribute("b", "b1");
+        store.store("1234", other);
+        assertTrue(checkSessionPersisted(other));
+
+        //a saved session that was removed from the database is written again
+        JdbcTestHelper.deleteSession("1234");
+        other.setAttribute("b", "b2");
+        store.store("1234", other);
+        assertTrue(checkSessionPersisted(other));
+        assertEquals(1, JdbcTestHelper.getSessionIds().size());
+    }
+
+
+    /**
+     * Test that many candidates for expiry are checked, and that the long
+     * expired sessions of other contexts are deleted.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGetExpiredManyCandidates() throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");
+        SessionDataStoreFactory factory = createSessionDataStoreFactory();
+        ((AbstractSessionDataStoreFactory)factory).setGracePeriodSec(GRACE_PERIOD_SEC);
+        SessionDataStore store = factory.getSessionDataStore(context.getSessionHandler());
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+        store.initialize(sessionContext);
+        store.start();
+
+        //sessions of this context that have not expired, and an orphaned session of another
+        long now = System.currentTimeMillis();
+        Set<String> candidates = new HashSet<>();
+        for (int i = 0; i < 250; i++)
+        {
+            String id = "c"+i;
+            candidates.add(id);
+            if (i % 2 == 0)
+                JdbcTestHelper.insertSession(id, sessionContext.getCanonicalContextPath(), sessionContext.getVhost(), sessionContext.getWorkerName(),
+                                             now, now, now, TimeUnit.MINUTES.toMillis(10), now + TimeUnit.MINUTES.toMillis(10), now, now, null);
+        }
+        JdbcTestHelper.insertSession("orphan", "_other", "0.0.0.0", "other", 100, 100, 100, 10, 110, 100, 100, null);
+
+        //the candidates that are not in the database have expired
+        Set<String> expired = store.getExpired(candidates);
+        for (int i = 0; i < 250; i++)
+            assertEquals(i % 2 != 0, expired.contains("c"+i));
+        assertTrue(expired.contains("orphan"));
+        assertFalse(JdbcTestHelper.getSessionIds().contains("orphan"));
+        assertEquals(125, JdbcTestHelper.getSessionIds().size());
+    }
+
+
+    /**
+     * Test that without a grace period another context does not delete the
+     * expired sessions of a context, so that its listeners are still called.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testGetExpiredNoGracePeriod() throws Exception
+    {
+        DefaultSessionCacheFactory cacheFactory = new DefaultSessionCacheFactory();
+        cacheFactory.setEvictionPolicy(SessionCache.NEVER_EVICT);
+        AbstractSessionDataStoreFactory storeFactory = (AbstractSessionDataStoreFactory)createSessionDataStoreFactory();
+        storeFactory.setGracePeriodSec(0);
+        TestServer server = new TestServer(0, 10, 0, cacheFactory, storeFactory);
+        ServletContextHandler owner = server.addContext("/owner");
+        TestHttpSessionListener listener = new TestHttpSessionListener();
+        owner.getSessionHandler().addEventListener(listener);
+        ServletContextHandler other = server.addContext("/other");
+        server.start();
+        try
+        {
+            //a session of the owner that has expired
+            long now = System.currentTimeMillis();
+            String workerName = server.getServer().getSessionIdManager().getWorkerName();
+            JdbcTestHelper.insertSession("expired", "_owner", "0.0.0.0", workerName, now - 20000, now - 10000, now - 10000,
+                                         5000, now - 5000, now - 20000, now - 10000, new HashMap<>());
+
+            //the other context checks for expired sessions first, but leaves the session to its owner
+            other.getSessionHandler().getSessionCache().getSessionDataStore().getExpired(new HashSet<>());
+            assertTrue(JdbcTestHelper.getSessionIds().contains("expired"));
+
+            //the owner expires the session and calls its listeners
+            owner.getSessionHandler().scavenge();
+            assertThat(listener.destroyedSessions, contains("expired"));
+            assertFalse(JdbcTestHelper.getSessionIds().contains("expired"));
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
 
 }
@@ -329,6 +329,19 @@ public class JdbcTestHelper
     
 
     
+    public static void deleteSession (String id)
+    throws Exception
+    {
+        Class.forName(DRIVER_CLASS);
+        try (Connection con=DriverManager.getConnection(DEFAULT_CONNECTION_URL);
+             PreparedStatement statement = con.prepareStatement("delete from "+TABLE+" where "+ID_COL+" = ?"))
+        {
+            statement.setString(1, id);
+            statement.execute();
+        }
+    }
+    
+    
     public static Set<String> getSessionIds ()
     throws Exception
     {
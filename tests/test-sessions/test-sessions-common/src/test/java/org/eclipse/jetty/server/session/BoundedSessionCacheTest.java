@@ -0,0 +1,203 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * BoundedSessionCacheTest
+ *
+ *
+ */
+public class BoundedSessionCacheTest
+{
+    private ServletContextHandler _context;
+    private BoundedSessionCache _cache;
+    private TestSessionDataStore _store;
+    
+    @BeforeEach
+    public void before() throws Exception
+    {
+        Server server = new Server();
+        _context = new ServletContextHandler(ServletContextHandler.SESSIONS);       
+        _context.setContextPath("/test");
+        _context.setServer(server);
+        
+        BoundedSessionCacheFactory cacheFactory = new BoundedSessionCacheFactory();
+        cacheFactory.setEvictionPolicy(SessionCache.NEVER_EVICT);
+        _cache = (BoundedSessionCache)cacheFactory.getSessionCache(_context.getSessionHandler());
+        
+        _store = new TestSessionDataStore();
+        _cache.setSessionDataStore(_store);
+        _context.getSessionHandler().setSessionCache(_cache);
+    }
+    
+    @AfterEach
+    public void after() throws Exception
+    {
+        _context.stop();
+    }
+    
+    private Session makeSession (String id, Object value) throws Exception
+    {
+        long now = System.currentTimeMillis();
+        SessionData data = _store.newSessionData(id, now-20, now-10, now-20, TimeUnit.MINUTES.toMillis(10));
+        data.setExpiry(now+TimeUnit.DAYS.toMillis(1));
+        if (value != null)
+            data.setAttribute("value", value);
+        Session session = _cache.newSession(data);
+        session.access(now);
+        session.complete();
+        _cache.put(id, session);
+        return session;
+    }
+    
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception
+    {
+        _context.start();
+        
+        Session s1 = makeSession("1", null);
+        Session s2 = makeSession("2", null);
+        Session s3 = makeSession("3", null);
+        
+        //use 1 so that 2 is least recently used
+        assertTrue(s1 == _cache.get("1"));
+        assertEquals(1, _cache.getHits());
+        
+        _cache.setMaxSessions(2);
+        _cache.evict();
+        
+        assertEquals(2, _cache.getSessionsCurrent());
+        assertEquals(1, _cache.getEvictions());
+        assertFalse(_cache.contains("2"));
+        assertFalse(s2.isResident());
+        assertTrue(s1.isResident());
+        assertTrue(s3.isResident());
+        assertTrue(_store.exists("2"));
+        
+        //evicted session is reloaded from the store
+        Session reloaded = _cache.get("2");
+        assertEquals(1, _cache.getMisses());
+        assertEquals("2", reloaded.getId());
+        assertTrue(reloaded.isResident());
+    }
+    
+    @Test
+    public void testEvictLeastFrequentlyUsed() throws Exception
+    {
+        _cache.setEvictionOrder(BoundedSessionCache.EvictionOrder.LFU);
+        _context.start();
+        
+        makeSession("1", null);
+        makeSession("2", null);
+        makeSession("3", null);
+        
+        //3 is the most recently used, but the least frequently used
+        for (int i = 0; i < 3; i++)
+        {
+            _cache.get("1");
+            _cache.get("2");
+        }
+        _cache.get("3");
+        
+        _cache.setMaxSessions(2);
+        _cache.evict();
+        
+        assertEquals(1, _cache.getEvictions());
+        assertFalse(_cache.contains("3"));
+        assertTrue(_cache.contains("1"));
+        assertTrue(_cache.contains("2"));
+    }
+    
+    @Test
+    public void testEvictByWeight() throws Exception
+    {
+        _cache.setMaxWeight(Long.MAX_VALUE);
+        _context.start();
+        
+        makeSession("small", "x");
+        long small = _cache.getWeight();
+        assertTrue(small > 0);
+        
+        makeSession("large", new byte[128 * 1024]);
+        assertTrue(_cache.getWeight() > 128 * 1024);
+        _cache.get("small");
+        
+        _cache.setMaxWeight(64 * 1024);
+        _cache.evict();
+        
+        assertTrue(_cache.getWeight() <= _cache.getMaxWeight());
+        assertEquals(small, _cache.getWeight());
+        assertFalse(_cache.contains("large"));
+        assertTrue(_store.exists("large"));
+    }
+    
+    @Test
+    public void testWeighLazyAttribute() throws Exception
+    {
+        _cache.setMaxWeight(Long.MAX_VALUE);
+        _context.start();
+        
+        //an attribute that has not been deserialized, and could not be
+        long now = System.currentTimeMillis();
+        SessionData data = _store.newSessionData("lazy", now-20, now-10, now-20, TimeUnit.MINUTES.toMillis(10));
+        data.setExpiry(now+TimeUnit.DAYS.toMillis(1));
+        SessionData.LazyAttribute lazy = new SessionData.LazyAttribute(new byte[128 * 1024], new LazySessionDataSerializer(), null, false);
+        data.putLazyAttribute("value", lazy);
+        Session session = _cache.newSession(data);
+        session.access(now);
+        session.complete();
+        _cache.put("lazy", session);
+        
+        //weighed by its serialized size, without deserializing it
+        assertTrue(_cache.getWeight() > 128 * 1024);
+        assertSame(lazy, data.getLazyAttribute("value"));
+    }
+    
+    @Test
+    public void testInUseNotEvicted() throws Exception
+    {
+        _context.start();
+        
+        Session s1 = makeSession("1", null);
+        makeSession("2", null);
+        
+        //a request is still using the least recently used session
+        s1.access(System.currentTimeMillis());
+        
+        _cache.setMaxSessions(1);
+        _cache.evict();
+        
+        assertTrue(_cache.contains("1"));
+        assertFalse(_cache.contains("2"));
+        assertEquals(1, _cache.getEvictions());
+    }
+}
@@ -0,0 +1,271 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.thread.Locker.Lock;
+import org.junit.jupiter.api.Test;
+
+/**
+ * CoalesceAccessTest
+ *
+ * Test concurrent accesses to the same session with a SessionCache
+ * that coalesces them.
+ */
+public class CoalesceAccessTest
+{
+    /**
+     * A store whose loads wait until released by the test.
+     */
+    public static class SlowLoadSessionDataStore extends TestSessionDataStore
+    {
+        public final AtomicInteger _numLoads = new AtomicInteger();
+        public final CountDownLatch _loading = new CountDownLatch(1);
+        public final CountDownLatch _proceed = new CountDownLatch(1);
+
+        @Override
+        public SessionData doLoad(String id) throws Exception
+        {
+            _numLoads.incrementAndGet();
+            _loading.countDown();
+            _proceed.await(10, TimeUnit.SECONDS);
+            return super.doLoad(id);
+        }
+    }
+
+    /**
+     * A cache that counts the sessions put into its map.
+     */
+    public static class PutCountingSessionCache extends DefaultSessionCache
+    {
+        public final AtomicInteger _numPuts = new AtomicInteger();
+
+        public PutCountingSessionCache(SessionHandler handler)
+        {
+            super(handler);
+        }
+
+        @Override
+        public Session doPutIfAbsent(String id, Session session)
+        {
+            _numPuts.incrementAndGet();
+            return super.doPutIfAbsent(id, session);
+        }
+    }
+
+    private ServletContextHandler newContext(TestSessionDataStore store) throws Exception
+    {
+        Server server = new Server();
+
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");
+        context.setServer(server);
+
+        PutCountingSessionCache cache = new PutCountingSessionCache(context.getSessionHandler());
+        cache.setEvictionPolicy(SessionCache.NEVER_EVICT);
+        cache.setCoalesceAccess(true);
+        cache.setSessionDataStore(store);
+        context.getSessionHandler().setSessionCache(cache);
+        context.start();
+        return context;
+    }
+
+    private List<Session> getConcurrently(SessionCache cache, SlowLoadSessionDataStore store, String id, int threads) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<Session>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++)
+                futures.add(executor.submit(() -> cache.get(id)));
+
+            //let the other lookups queue up behind the load in progress
+            assertTrue(store._loading.await(10, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            store._proceed.countDown();
+
+            List<Session> sessions = new ArrayList<>();
+            for (Future<Session> f : futures)
+                sessions.add(f.get(10, TimeUnit.SECONDS));
+            return sessions;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentGetSharesLoad() throws Exception
+    {
+        SlowLoadSessionDataStore store = new SlowLoadSessionDataStore();
+        ServletContextHandler context = newContext(store);
+        SessionCache cache = context.getSessionHandler().getSessionCache();
+
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", now-20, now-10, now-20, TimeUnit.MINUTES.toMillis(10));
+        data.setExpiry(now+TimeUnit.DAYS.toMillis(1));
+        store.store("1234", data);
+
+        List<Session> sessions = getConcurrently(cache, store, "1234", 8);
+        assertEquals(1, store._numLoads.get());
+        Session session = sessions.get(0);
+        assertNotNull(session);
+        assertTrue(session.isResident());
+        for (Session s : sessions)
+            assertSame(session, s);
+    }
+
+    @Test
+    public void testConcurrentGetSharesMissingLoad() throws Exception
+    {
+        SlowLoadSessionDataStore store = new SlowLoadSessionDataStore();
+        ServletContextHandler context = newContext(store);
+        SessionCache cache = context.getSessionHandler().getSessionCache();
+
+        List<Session> sessions = getConcurrently(cache, store, "1234", 8);
+        //the lookups that waited for the load don't repeat it
+        assertEquals(1, store._numLoads.get());
+        for (Session s : sessions)
+            assertNull(s);
+        assertFalse(cache.contains("1234"));
+    }
+
+    @Test
+    public void testOnlyLastRequestPuts() throws Exception
+    {
+        TestSessionDataStore store = new TestSessionDataStore();
+        ServletContextHandler context = newContext(store);
+        SessionHandler handler = context.getSessionHandler();
+        PutCountingSessionCache cache = (PutCountingSessionCache)handler.getSessionCache();
+
+        Session session = (Session)handler.newHttpSession(null);
+        handler.complete(session);
+        int saves = store._numSaves.get();
+        int puts = cache._numPuts.get();
+
+        //three concurrent requests in the session
+        for (int i = 0; i < 3; i++)
+            handler.access(session, false);
+        session.setAttribute("a", "b");
+
+        //requests that exit while others are active don't put the session back in the cache
+        handler.complete(session);
+        handler.complete(session);
+        assertEquals(puts, cache._numPuts.get());
+        assertEquals(saves, store._numSaves.get());
+        assertEquals(1, session.getRequests());
+
+        //the last request to exit puts and stores the session
+        handler.complete(session);
+        assertEquals(puts+1, cache._numPuts.get());
+        assertEquals(saves+1, store._numSaves.get());
+        assertEquals(0, session.getRequests());
+        assertTrue(store.exists(session.getId()));
+    }
+
+    @Test
+    public void testCoalescedAccessTimes() throws Exception
+    {
+        TestSessionDataStore store = new TestSessionDataStore();
+        ServletContextHandler context = newContext(store);
+        SessionCache cache = context.getSessionHandler().getSessionCache();
+
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", now-20, now-10, now-20, TimeUnit.MINUTES.toMillis(10));
+        Session session = cache.newSession(data);
+        session.setResident(true);
+
+        assertTrue(session.access(now, true));
+        assertEquals(now, session.getSessionData().getAccessed());
+        assertEquals(now-10, session.getSessionData().getLastAccessed());
+
+        //a request arriving while another is active doesn't move the access times
+        assertTrue(session.access(now+100, true));
+        assertEquals(now, session.getSessionData().getAccessed());
+        assertEquals(now-10, session.getSessionData().getLastAccessed());
+        assertEquals(2, session.getRequests());
+
+        assertFalse(session.release());
+        assertTrue(session.release());
+
+        //the next request after all have exited does
+        assertTrue(session.access(now+200, true));
+        assertEquals(now+200, session.getSessionData().getAccessed());
+        assertEquals(now, session.getSessionData().getLastAccessed());
+        assertTrue(session.release());
+
+        //a session evicted after it was returned by the cache is not accessed
+        session.setResident(false);
+        assertFalse(session.access(now+300, true));
+        assertEquals(0, session.getRequests());
+    }
+
+    @Test
+    public void testLockWaitStatistics() throws Exception
+    {
+        TestSessionDataStore store = new TestSessionDataStore();
+        ServletContextHandler context = newContext(store);
+        SessionHandler handler = context.getSessionHandler();
+
+        Session session = (Session)handler.newHttpSession(null);
+        handler.complete(session);
+        handler.statsReset();
+        assertEquals(0, handler.getSessionLockWaitCount());
+
+        Thread t;
+        try (Lock lock = session.lock())
+        {
+            //acquiring the lock again on the same thread is not a wait
+            assertEquals(0, session.getRequests());
+            assertEquals(0, handler.getSessionLockWaitCount());
+
+            t = new Thread(() -> handler.access(session, false));
+            t.start();
+            Thread.sleep(100);
+        }
+        t.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertEquals(1, handler.getSessionLockWaitCount());
+        assertThat(handler.getSessionLockWaitMax(), greaterThan(0L));
+        assertEquals(1, session.getRequests());
+
+        handler.statsReset();
+        assertEquals(0, handler.getSessionLockWaitCount());
+    }
+}
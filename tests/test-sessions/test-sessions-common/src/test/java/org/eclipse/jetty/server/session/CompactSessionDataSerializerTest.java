@@ -0,0 +1,162 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * CompactSessionDataSerializerTest
+ */
+public class CompactSessionDataSerializerTest
+{
+    private SessionData newSessionData()
+    {
+        SessionData data = new SessionData("1234", "/test", "0.0.0.0", 100, 200, 199, -1);
+        data.setAttribute("string", "hello é世\ud800 world");
+        data.setAttribute("int", -42);
+        data.setAttribute("long", Long.MAX_VALUE);
+        data.setAttribute("boolean", Boolean.TRUE);
+        data.setAttribute("double", 3.14d);
+        data.setAttribute("float", -1.5f);
+        data.setAttribute("short", (short)-7);
+        data.setAttribute("byte", (byte)0xFE);
+        data.setAttribute("char", '世');
+        data.setAttribute("bytes", new byte[]{1, 2, 3});
+
+        List<Object> list = new ArrayList<>();
+        list.add("a");
+        list.add(null);
+        list.add(1L);
+        data.setAttribute("list", list);
+
+        Map<Object,Object> map = new LinkedHashMap<>();
+        map.put("z", 1);
+        map.put("a", Arrays.asList("not", "compact"));
+        data.setAttribute("linked", map);
+
+        Map<String,Object> nested = new HashMap<>();
+        nested.put("list", new ArrayList<>(list));
+        data.setAttribute("nested", nested);
+
+        //not a compact type, so written with java serialization
+        data.setAttribute("date", new Date(1000L));
+        return data;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        SessionData data = newSessionData();
+        CompactSessionDataSerializer serializer = new CompactSessionDataSerializer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serializeAttributes(data, out);
+
+        SessionData loaded = new SessionData("1234", "/test", "0.0.0.0", 100, 200, 199, -1);
+        serializer.deserializeAttributes(loaded, new ByteArrayInputStream(out.toByteArray()));
+
+        assertThat(loaded.getKeys(), containsInAnyOrder(data.getKeys().toArray()));
+        for (String name : data.getKeys())
+        {
+            if (name.equals("bytes"))
+                assertArrayEquals((byte[])data.getAttribute(name), (byte[])loaded.getAttribute(name));
+            else
+                assertEquals(data.getAttribute(name), loaded.getAttribute(name), name);
+        }
+        assertEquals(LinkedHashMap.class, loaded.getAttribute("linked").getClass());
+        assertEquals(Arrays.asList("z", "a"), new ArrayList<>(((Map<?,?>)loaded.getAttribute("linked")).keySet()));
+    }
+
+    @Test
+    public void testSmallerThanJava() throws Exception
+    {
+        SessionData data = new SessionData("1234", "/test", "0.0.0.0", 100, 200, 199, -1);
+        data.setAttribute("user", "someone@example.com");
+        data.setAttribute("visits", 12);
+        data.setAttribute("lastLogin", 1556000000000L);
+
+        ByteArrayOutputStream compact = new ByteArrayOutputStream();
+        new CompactSessionDataSerializer().serializeAttributes(data, compact);
+        ByteArrayOutputStream java = new ByteArrayOutputStream();
+        new JavaSessionDataSerializer().serializeAttributes(data, java);
+
+        assertThat(compact.size(), lessThan(java.size() / 2));
+    }
+
+    @Test
+    public void testReadJavaFormat() throws Exception
+    {
+        SessionData data = newSessionData();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JavaSessionDataSerializer().serializeAttributes(data, out);
+
+        SessionData loaded = new SessionData("1234", "/test", "0.0.0.0", 100, 200, 199, -1);
+        new CompactSessionDataSerializer().deserializeAttributes(loaded, new ByteArrayInputStream(out.toByteArray()));
+        assertThat(loaded.getKeys(), containsInAnyOrder(data.getKeys().toArray()));
+        assertEquals(data.getAttribute("date"), loaded.getAttribute("date"));
+    }
+
+    @Test
+    public void testSingleAttribute() throws Exception
+    {
+        CompactSessionDataSerializer serializer = new CompactSessionDataSerializer();
+        for (Object value : new Object[]{"value", 17, new Date(2000L)})
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.serializeAttribute(value, out);
+            assertEquals(value, serializer.deserializeAttribute(new ByteArrayInputStream(out.toByteArray())));
+
+            out = new ByteArrayOutputStream();
+            new JavaSessionDataSerializer().serializeAttribute(value, out);
+            assertEquals(value, serializer.deserializeAttribute(new ByteArrayInputStream(out.toByteArray())));
+        }
+    }
+
+    @Test
+    public void testTrailingData() throws Exception
+    {
+        SessionData data = newSessionData();
+        CompactSessionDataSerializer serializer = new CompactSessionDataSerializer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serializeAttributes(data, out);
+        out.write(99);
+
+        //the serializer reads no more than it wrote
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        serializer.deserializeAttributes(new SessionData("1234", "/test", "0.0.0.0", 100, 200, 199, -1), in);
+        assertEquals(99, in.read());
+        assertTrue(in.read() < 0);
+    }
+}
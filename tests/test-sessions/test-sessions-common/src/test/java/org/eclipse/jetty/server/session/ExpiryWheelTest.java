@@ -0,0 +1,121 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ExpiryWheelTest
+ *
+ *
+ */
+public class ExpiryWheelTest
+{
+    @Test
+    public void testExpiry() throws Exception
+    {
+        ExpiryWheel wheel = new ExpiryWheel(10);
+        long now = System.currentTimeMillis();
+        
+        wheel.update("past", now - 1);
+        wheel.update("soon", now + 25);
+        wheel.update("later", now + TimeUnit.HOURS.toMillis(1));
+        wheel.update("never", -1);
+        assertEquals(3, wheel.size());
+        
+        assertThat(wheel.getExpired(now), containsInAnyOrder("past"));
+        assertThat(wheel.getExpired(now + 25), containsInAnyOrder("past", "soon"));
+        
+        //expired sessions stay until removed or updated
+        assertTrue(wheel.remove("past"));
+        assertFalse(wheel.remove("past"));
+        wheel.update("soon", now + TimeUnit.HOURS.toMillis(2));
+        assertThat(wheel.getExpired(now + 30), empty());
+        
+        assertThat(wheel.getExpired(now + TimeUnit.HOURS.toMillis(1)), containsInAnyOrder("later"));
+        wheel.clear();
+        assertEquals(0, wheel.size());
+        assertThat(wheel.getExpired(now + TimeUnit.DAYS.toMillis(1)), empty());
+    }
+    
+    @Test
+    public void testAgainstScan() throws Exception
+    {
+        //check every level of the wheel, including the overflow, against a full scan
+        ExpiryWheel wheel = new ExpiryWheel(1);
+        Map<String, Long> expiries = new HashMap<>();
+        Random random = new Random(1234);
+        long start = System.currentTimeMillis();
+        
+        long now = start;
+        for (int round = 0; round < 200; round++)
+        {
+            for (int i = 0; i < 50; i++)
+            {
+                String id = "s" + random.nextInt(2000);
+                long range = 1L << (6 * (1 + random.nextInt(5)));
+                long expiry = now + (long)(random.nextDouble() * range);
+                wheel.update(id, expiry);
+                expiries.put(id, expiry);
+            }
+            for (int i = 0; i < 5; i++)
+            {
+                String id = "s" + random.nextInt(2000);
+                wheel.remove(id);
+                expiries.remove(id);
+            }
+            
+            now += 1 + random.nextInt(1 << (6 * (1 + random.nextInt(4))));
+            
+            Set<String> expected = new HashSet<>();
+            for (Map.Entry<String, Long> e : expiries.entrySet())
+            {
+                if (e.getValue() <= now)
+                    expected.add(e.getKey());
+            }
+            assertEquals(expected, wheel.getExpired(now));
+            
+            //refresh some of the expired ones
+            for (String id : expected)
+            {
+                if (random.nextBoolean())
+                {
+                    long expiry = now + 1 + random.nextInt(100000);
+                    wheel.update(id, expiry);
+                    expiries.put(id, expiry);
+                }
+            }
+        }
+        assertEquals(expiries.size(), wheel.size());
+    }
+}
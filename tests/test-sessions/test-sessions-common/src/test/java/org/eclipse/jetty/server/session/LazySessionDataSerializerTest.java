@@ -0,0 +1,280 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpSessionActivationListener;
+import javax.servlet.http.HttpSessionEvent;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
+import org.eclipse.jetty.util.IO;
+import org.junit.jupiter.api.Test;
+
+/**
+ * LazySessionDataSerializerTest
+ */
+public class LazySessionDataSerializerTest
+{
+    private static final AtomicInteger __reads = new AtomicInteger();
+
+    /**
+     * A value that counts how often it is deserialized
+     */
+    public static class Counted implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+        private final String _value;
+
+        public Counted(String value)
+        {
+            _value = value;
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+        {
+            in.defaultReadObject();
+            __reads.incrementAndGet();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Counted && ((Counted)o)._value.equals(_value);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return _value.hashCode();
+        }
+    }
+
+    public static class Listener implements HttpSessionActivationListener, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void sessionWillPassivate(HttpSessionEvent se)
+        {
+        }
+
+        @Override
+        public void sessionDidActivate(HttpSessionEvent se)
+        {
+        }
+    }
+
+    private static byte[] serialize(SessionDataSerializer serializer, SessionData data) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serializeAttributes(data, out);
+        return out.toByteArray();
+    }
+
+    private static SessionData deserialize(SessionDataSerializer serializer, byte[] bytes) throws Exception
+    {
+        SessionData data = new SessionData("1234", "/test", "0.0.0.0", 100, 200, 199, -1);
+        serializer.deserializeAttributes(data, new ByteArrayInputStream(bytes));
+        return data;
+    }
+
+    @Test
+    public void testDeserializedOnAccess() throws Exception
+    {
+        LazySessionDataSerializer serializer = new LazySessionDataSerializer();
+        SessionData data = new SessionData("1234", "/test", "0.0.0.0", 100, 200, 199, -1);
+        data.setAttribute("small", "value");
+        data.setAttribute("large", new Counted("large"));
+        data.setAttribute("listener", new Listener());
+
+        __reads.set(0);
+        SessionData loaded = deserialize(serializer, serialize(serializer, data));
+        assertThat(loaded.getKeys(), containsInAnyOrder("small", "large", "listener"));
+        assertFalse(loaded.isDirty());
+        assertEquals(0, __reads.get());
+        assertFalse(loaded.getLazyAttribute("large").isActivationListener());
+        assertTrue(loaded.getLazyAttribute("listener").isActivationListener());
+
+        assertEquals("value", loaded.getAttribute("small"));
+        assertEquals(0, __reads.get());
+        assertNotNull(loaded.getLazyAttribute("large"));
+
+        assertEquals(new Counted("large"), loaded.getAttribute("large"));
+        assertEquals(new Counted("large"), loaded.getAttribute("large"));
+        assertEquals(1, __reads.get());
+        assertNull(loaded.getLazyAttribute("large"));
+    }
+
+    @Test
+    public void testUntouchedNotReserialized() throws Exception
+    {
+        LazySessionDataSerializer serializer = new LazySessionDataSerializer();
+        SessionData data = new SessionData("1234", "/test", "0.0.0.0", 100, 200, 199, -1);
+        data.setAttribute("small", "value");
+        data.setAttribute("large", new Counted("large"));
+        data.setAttribute("removed", "gone");
+
+        __reads.set(0);
+        SessionData loaded = deserialize(serializer, serialize(serializer, data));
+        loaded.setAttribute("small", "changed");
+        loaded.setAttribute("removed", null);
+        byte[] bytes = serialize(serializer, loaded);
+        assertEquals(0, __reads.get());
+
+        SessionData reloaded = deserialize(serializer, bytes);
+        assertThat(reloaded.getKeys(), containsInAnyOrder("small", "large"));
+        assertEquals("changed", reloaded.getAttribute("small"));
+        assertEquals(new Counted("large"), reloaded.getAttribute("large"));
+        assertEquals(1, __reads.get());
+
+        //the old value is resolved for listeners when it is replaced
+        SessionData replaced = deserialize(serializer, bytes);
+        assertEquals(new Counted("large"), replaced.setAttribute("large", "new"));
+    }
+
+    @Test
+    public void testCopyNotShared() throws Exception
+    {
+        LazySessionDataSerializer serializer = new LazySessionDataSerializer();
+        SessionData data = new SessionData("1234", "/test", "0.0.0.0", 100, 200, 199, -1);
+        data.setAttribute("large", new Counted("large"));
+        SessionData loaded = deserialize(serializer, serialize(serializer, data));
+
+        SessionData copy = new SessionData("1234", "/test", "0.0.0.0", 100, 200, 199, -1);
+        copy.copy(loaded);
+        assertNotNull(copy.getLazyAttribute("large"));
+        assertNotSame(loaded.getLazyAttribute("large"), copy.getLazyAttribute("large"));
+
+        //resolving one copy leaves the other untouched
+        __reads.set(0);
+        assertEquals(new Counted("large"), copy.getAttribute("large"));
+        assertNotNull(loaded.getLazyAttribute("large"));
+        assertEquals(new Counted("large"), loaded.getAttribute("large"));
+        assertNotSame(loaded.getAttribute("large"), copy.getAttribute("large"));
+        assertEquals(2, __reads.get());
+    }
+
+    @Test
+    public void testInvalidateUnreadable() throws Exception
+    {
+        Server server = new Server();
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");
+        server.setHandler(context);
+        TestHttpSessionListener listener = new TestHttpSessionListener();
+        context.getSessionHandler().addEventListener(listener);
+        server.start();
+        try
+        {
+            //a session with an attribute that cannot be deserialized
+            SessionCache cache = context.getSessionHandler().getSessionCache();
+            long now = System.currentTimeMillis();
+            SessionData data = cache.getSessionDataStore().newSessionData("1234", now, now, now, TimeUnit.MINUTES.toMillis(10));
+            data.putLazyAttribute("broken", new SessionData.LazyAttribute(new byte[] {1, 2, 3}, new JavaSessionDataSerializer(), null, false));
+            data.setAttribute("small", "value");
+            Session session = cache.newSession(data);
+            cache.put("1234", session);
+
+            //the unavailable value is removed without being passed to listeners
+            session.invalidate();
+            assertFalse(session.isValid());
+            assertThat(listener.destroyedSessions, contains("1234"));
+            assertTrue(data.getKeys().isEmpty());
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testDeserializedWithLoadClassLoader() throws Exception
+    {
+        //a class only known to the webapp classloader
+        File foodir = new File(MavenTestingUtils.getTargetDir(), "foo");
+        foodir.mkdirs();
+        try (InputStream foostream = Thread.currentThread().getContextClassLoader().getResourceAsStream("Foo.clazz");
+             FileOutputStream out = new FileOutputStream(new File(foodir, "Foo.class")))
+        {
+            IO.copy(foostream, out);
+        }
+        URLClassLoader webappLoader = new URLClassLoader(new URL[]{foodir.toURI().toURL()}, Thread.currentThread().getContextClassLoader());
+
+        LazySessionDataSerializer serializer = new LazySessionDataSerializer();
+        ClassLoader old = Thread.currentThread().getContextClassLoader();
+        SessionData loaded;
+        try
+        {
+            Thread.currentThread().setContextClassLoader(webappLoader);
+            SessionData data = new SessionData("1234", "/test", "0.0.0.0", 100, 200, 199, -1);
+            data.setAttribute("foo", Class.forName("Foo", true, webappLoader).getConstructor().newInstance());
+            loaded = deserialize(serializer, serialize(serializer, data));
+        }
+        finally
+        {
+            Thread.currentThread().setContextClassLoader(old);
+        }
+
+        //accessed from a thread without the webapp classloader
+        Object foo = loaded.getAttribute("foo");
+        assertEquals(webappLoader, foo.getClass().getClassLoader());
+    }
+
+    @Test
+    public void testReadDelegateFormat() throws Exception
+    {
+        SessionData data = new SessionData("1234", "/test", "0.0.0.0", 100, 200, 199, -1);
+        data.setAttribute("a", "value");
+        data.setAttribute("b", 42);
+        byte[] bytes = serialize(new JavaSessionDataSerializer(), data);
+
+        SessionData loaded = deserialize(new LazySessionDataSerializer(), bytes);
+        assertEquals("value", loaded.getAttribute("a"));
+        assertEquals(42, loaded.getAttribute("b"));
+
+        //a compact delegate
+        bytes = serialize(new CompactSessionDataSerializer(), data);
+        loaded = deserialize(new LazySessionDataSerializer(new CompactSessionDataSerializer()), bytes);
+        assertEquals("value", loaded.getAttribute("a"));
+    }
+}
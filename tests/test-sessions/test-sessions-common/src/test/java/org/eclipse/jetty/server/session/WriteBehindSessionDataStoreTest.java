@@ -0,0 +1,173 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * WriteBehindSessionDataStoreTest
+ */
+public class WriteBehindSessionDataStoreTest
+{
+    public static class RecordingSessionDataStore extends TestSessionDataStore
+    {
+        Set<String> _inserted = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void doStore(String id, SessionData data, long lastSaveTime) throws Exception
+        {
+            if (lastSaveTime <= 0)
+                _inserted.add(id);
+            super.doStore(id, data, lastSaveTime);
+        }
+    }
+
+    RecordingSessionDataStore _delegate;
+    WriteBehindSessionDataStore _store;
+
+    @BeforeEach
+    public void before() throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+
+        _delegate = new RecordingSessionDataStore();
+        _store = new WriteBehindSessionDataStore(_delegate);
+        _store.setMaxDelayMs((int)TimeUnit.MINUTES.toMillis(10));
+        _store.initialize(sessionContext);
+    }
+
+    @Test
+    public void testCoalesce() throws Exception
+    {
+        _store.start();
+
+        long now = System.currentTimeMillis();
+        SessionData data = _store.newSessionData("1234", now, now, now, -1);
+        for (int i = 0; i < 5; i++)
+        {
+            data.setAttribute("count", i);
+            _store.store("1234", data);
+            assertFalse(data.isDirty());
+            assertTrue(data.getLastSaved() > 0);
+        }
+
+        //nothing written yet, but the latest data is visible
+        assertEquals(0, _delegate._numSaves.get());
+        assertEquals(1, _store.getQueueDepth());
+        assertTrue(_store.exists("1234"));
+        assertEquals(4, _store.load("1234").getAttribute("count"));
+
+        _store.flush();
+
+        //written once, as a new session
+        assertEquals(1, _delegate._numSaves.get());
+        assertTrue(_delegate._inserted.contains("1234"));
+        assertEquals(4, _delegate.load("1234").getAttribute("count"));
+        assertEquals(0, _store.getQueueDepth());
+        assertEquals(5, _store.getStores());
+        assertEquals(4, _store.getStoresCoalesced());
+        assertEquals(1, _store.getSessionsWritten());
+        assertEquals(1, _store.getFlushes());
+
+        //subsequent writes are updates
+        data.setAttribute("count", 5);
+        _store.store("1234", data);
+        _store.flush();
+        assertEquals(2, _delegate._numSaves.get());
+        assertEquals(5, _delegate.load("1234").getAttribute("count"));
+        _store.stop();
+    }
+
+    @Test
+    public void testMaxBatchSize() throws Exception
+    {
+        _store.setMaxBatchSize(3);
+        _store.start();
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++)
+            _store.store("s" + i, _store.newSessionData("s" + i, now, now, now, -1));
+
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (_delegate._numSaves.get() < 3 && System.currentTimeMillis() < end)
+            Thread.sleep(10);
+        assertEquals(3, _delegate._numSaves.get());
+        _store.stop();
+    }
+
+    @Test
+    public void testMaxDelay() throws Exception
+    {
+        _store.setMaxDelayMs(100);
+        _store.start();
+
+        long now = System.currentTimeMillis();
+        _store.store("1234", _store.newSessionData("1234", now, now, now, -1));
+
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (_delegate._numSaves.get() < 1 && System.currentTimeMillis() < end)
+            Thread.sleep(10);
+        assertEquals(1, _delegate._numSaves.get());
+        _store.stop();
+    }
+
+    @Test
+    public void testStopFlushes() throws Exception
+    {
+        _store.start();
+
+        long now = System.currentTimeMillis();
+        SessionData data = _store.newSessionData("1234", now, now, now, -1);
+        data.setAttribute("a", "b");
+        _store.store("1234", data);
+        assertEquals(0, _delegate._numSaves.get());
+
+        _store.stop();
+        assertEquals(1, _delegate._numSaves.get());
+        assertEquals("b", _delegate.load("1234").getAttribute("a"));
+    }
+
+    @Test
+    public void testDelete() throws Exception
+    {
+        _store.start();
+
+        long now = System.currentTimeMillis();
+        _store.store("1234", _store.newSessionData("1234", now, now, now, -1));
+        assertTrue(_store.delete("1234"));
+        assertNull(_store.load("1234"));
+
+        _store.flush();
+        assertEquals(0, _delegate._numSaves.get());
+        _store.stop();
+    }
+}